@@ -3,6 +3,11 @@ package edu.scau.imagemanagementsystem;
 import java.io.IOException;
 import java.util.Objects;
 
+import edu.scau.imagemanagementsystem.services.CatalogService;
+import edu.scau.imagemanagementsystem.services.DirectoryWatchService;
+import edu.scau.imagemanagementsystem.services.LibraryCrawlerService;
+import edu.scau.imagemanagementsystem.services.TaskSchedulerService;
+import edu.scau.imagemanagementsystem.services.ThumbnailCacheService;
 import javafx.application.Application;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Parent;
@@ -21,6 +26,15 @@ public class MainApp extends Application {
         primaryStage.show();
     }
 
+    @Override
+    public void stop() {
+        LibraryCrawlerService.getInstance().shutdown();
+        DirectoryWatchService.getInstance().close();
+        TaskSchedulerService.getInstance().shutdown();
+        ThumbnailCacheService.getInstance().close();
+        CatalogService.getInstance().close();
+    }
+
     public static void main(String[] args) {
         launch(args);
     }
@@ -0,0 +1,243 @@
+package edu.scau.imagemanagementsystem.controllers;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.scau.imagemanagementsystem.model.DuplicateGroup;
+import edu.scau.imagemanagementsystem.services.FileOperationService;
+import edu.scau.imagemanagementsystem.services.TaskSchedulerService;
+import edu.scau.imagemanagementsystem.services.TaskSchedulerService.Priority;
+import edu.scau.imagemanagementsystem.services.TaskSchedulerService.WorkClass;
+import edu.scau.imagemanagementsystem.utils.FileUtils;
+import edu.scau.imagemanagementsystem.utils.UiUtils;
+import javafx.beans.property.BooleanProperty;
+import javafx.beans.property.SimpleBooleanProperty;
+import javafx.concurrent.Task;
+import javafx.fxml.FXML;
+import javafx.scene.control.Button;
+import javafx.scene.control.ButtonType;
+import javafx.scene.control.CheckBox;
+import javafx.scene.control.Label;
+import javafx.scene.control.Tooltip;
+import javafx.scene.control.TreeCell;
+import javafx.scene.control.TreeItem;
+import javafx.scene.control.TreeView;
+import javafx.stage.Stage;
+
+/**
+ * 重复图片窗口：按组列出内容相同的文件，勾选要删除的文件后通过 {@link FileOperationService} 删除。
+ * <p>
+ * 每组至少保留一个文件：如果某组的文件全部被勾选，删除会被拒绝。
+ */
+public class DuplicatesDialogController {
+    private static final Logger logger = LoggerFactory.getLogger(DuplicatesDialogController.class);
+
+    @FXML
+    private Label summaryLabel;
+    @FXML
+    private TreeView<Object> duplicatesTree;
+    @FXML
+    private Button deleteButton;
+
+    private final TaskSchedulerService taskScheduler = TaskSchedulerService.getInstance();
+    private FileOperationService fileOperationService;
+    private List<DuplicateGroup> groups = new ArrayList<>();
+    // 每个文件是否被勾选删除
+    private final Map<File, BooleanProperty> marked = new HashMap<>();
+    // 批量修改勾选状态时暂停更新摘要，修改完成后只更新一次
+    private boolean bulkUpdating;
+
+    @FXML
+    private void initialize() {
+        duplicatesTree.setRoot(new TreeItem<>());
+        duplicatesTree.setCellFactory(tree -> new DuplicateCell());
+    }
+
+    /**
+     * @param groups               重复文件的分组
+     * @param fileOperationService 用于删除文件的服务，删除结果会通过它报告给主窗口
+     */
+    public void initializeData(List<DuplicateGroup> groups, FileOperationService fileOperationService) {
+        this.groups = new ArrayList<>(groups);
+        this.fileOperationService = fileOperationService;
+        rebuildTree();
+    }
+
+    private void rebuildTree() {
+        marked.clear();
+        TreeItem<Object> root = duplicatesTree.getRoot();
+        root.getChildren().clear();
+        for (DuplicateGroup group : groups) {
+            TreeItem<Object> groupItem = new TreeItem<>(group);
+            groupItem.setExpanded(true);
+            for (File file : group.getFiles()) {
+                BooleanProperty property = new SimpleBooleanProperty(false);
+                property.addListener((obs, old, ne) -> {
+                    if (!bulkUpdating) {
+                        updateSummary();
+                    }
+                });
+                marked.put(file, property);
+                groupItem.getChildren().add(new TreeItem<>(file));
+            }
+            root.getChildren().add(groupItem);
+        }
+        updateSummary();
+    }
+
+    private void updateSummary() {
+        long redundantFiles = 0;
+        long redundantBytes = 0;
+        long markedFiles = 0;
+        long markedBytes = 0;
+        for (DuplicateGroup group : groups) {
+            redundantFiles += group.getFiles().size() - 1;
+            redundantBytes += group.getRedundantBytes();
+            for (File file : group.getFiles()) {
+                if (marked.get(file).get()) {
+                    markedFiles++;
+                    markedBytes += group.getSize();
+                }
+            }
+        }
+        if (groups.isEmpty()) {
+            summaryLabel.setText("没有找到重复的图片。");
+        } else {
+            summaryLabel.setText(String.format("找到 %,d 组重复的图片，共 %,d 个多余的文件，可释放 %s。已选中 %,d 个文件 (%s)。",
+                    groups.size(), redundantFiles, FileUtils.formatFileSize(redundantBytes), markedFiles,
+                    FileUtils.formatFileSize(markedBytes)));
+        }
+        deleteButton.setDisable(markedFiles == 0);
+    }
+
+    @FXML
+    private void handleSelectRedundant() {
+        bulkUpdating = true;
+        for (DuplicateGroup group : groups) {
+            List<File> files = group.getFiles();
+            for (int i = 0; i < files.size(); i++) {
+                marked.get(files.get(i)).set(i > 0);
+            }
+        }
+        bulkUpdating = false;
+        updateSummary();
+    }
+
+    @FXML
+    private void handleClearSelection() {
+        bulkUpdating = true;
+        marked.values().forEach(property -> property.set(false));
+        bulkUpdating = false;
+        updateSummary();
+    }
+
+    @FXML
+    private void handleDeleteMarked() {
+        List<File> filesToDelete = new ArrayList<>();
+        for (DuplicateGroup group : groups) {
+            int markedInGroup = 0;
+            for (File file : group.getFiles()) {
+                if (marked.get(file).get()) {
+                    filesToDelete.add(file);
+                    markedInGroup++;
+                }
+            }
+            if (markedInGroup == group.getFiles().size()) {
+                UiUtils.showErrorDialog("无法删除", "每组重复的图片至少要保留一个。",
+                        "以下文件全部被选中：" + group.getFiles().get(0).getName() + " 等 " + markedInGroup + " 个文件。");
+                return;
+            }
+        }
+        if (filesToDelete.isEmpty()) {
+            return;
+        }
+        Optional<ButtonType> result = UiUtils.showConfirmationDialog("确认删除",
+                "确定要删除选中的 " + filesToDelete.size() + " 个重复文件吗?", "此操作无法撤销。");
+        if (result.isEmpty() || result.get() != ButtonType.OK) {
+            return;
+        }
+        deleteButton.setDisable(true);
+        Task<Boolean> deleteTask = fileOperationService.deleteFilesAsync(filesToDelete);
+        deleteTask.setOnSucceeded(e -> {
+            if (!deleteTask.getValue()) {
+                UiUtils.showErrorDialog("删除失败", "部分文件删除失败。", "请检查文件权限或文件是否被占用。");
+            }
+            logger.info("Deleted duplicates: {} files requested.", filesToDelete.size());
+            removeDeletedFiles();
+        });
+        deleteTask.setOnFailed(e -> {
+            Throwable ex = deleteTask.getException();
+            UiUtils.showErrorDialog("删除错误", "删除操作执行失败。", ex != null ? ex.getMessage() : "");
+            removeDeletedFiles();
+        });
+        taskScheduler.submit(deleteTask, WorkClass.FILE_OPERATION, Priority.BACKGROUND);
+    }
+
+    /**
+     * 从分组中去掉已经不存在的文件，只剩一个文件的组不再显示。
+     */
+    private void removeDeletedFiles() {
+        List<DuplicateGroup> remaining = new ArrayList<>();
+        for (DuplicateGroup group : groups) {
+            List<File> existing = new ArrayList<>();
+            for (File file : group.getFiles()) {
+                if (file.exists()) {
+                    existing.add(file);
+                }
+            }
+            if (existing.size() > 1) {
+                remaining.add(new DuplicateGroup(group.getSize(), existing));
+            }
+        }
+        groups = remaining;
+        rebuildTree();
+    }
+
+    @FXML
+    private void handleClose() {
+        ((Stage) duplicatesTree.getScene().getWindow()).close();
+    }
+
+    /**
+     * 组显示为标题，文件显示为可勾选的路径。
+     */
+    private class DuplicateCell extends TreeCell<Object> {
+        private final CheckBox checkBox = new CheckBox();
+        private BooleanProperty boundProperty;
+
+        @Override
+        protected void updateItem(Object item, boolean empty) {
+            super.updateItem(item, empty);
+            if (boundProperty != null) {
+                checkBox.selectedProperty().unbindBidirectional(boundProperty);
+                boundProperty = null;
+            }
+            setTooltip(null);
+            if (empty || item == null) {
+                setText(null);
+                setGraphic(null);
+            } else if (item instanceof DuplicateGroup) {
+                DuplicateGroup group = (DuplicateGroup) item;
+                setText(String.format("%d 个相同的文件，每个 %s", group.getFiles().size(),
+                        FileUtils.formatFileSize(group.getSize())));
+                setGraphic(null);
+            } else {
+                File file = (File) item;
+                boundProperty = marked.get(file);
+                if (boundProperty != null) {
+                    checkBox.selectedProperty().bindBidirectional(boundProperty);
+                }
+                setText(file.getPath());
+                setTooltip(new Tooltip(file.getPath()));
+                setGraphic(checkBox);
+            }
+        }
+    }
+}
@@ -1,26 +1,61 @@
 package edu.scau.imagemanagementsystem.controllers;
 
 import java.io.File;
-import java.text.DecimalFormat;
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import edu.scau.imagemanagementsystem.controls.GridCell;
+import edu.scau.imagemanagementsystem.controls.VirtualGridPane;
 import edu.scau.imagemanagementsystem.model.BatchRenameParams;
+import edu.scau.imagemanagementsystem.model.CatalogEntry;
+import edu.scau.imagemanagementsystem.model.CrawlProgress;
+import edu.scau.imagemanagementsystem.model.DuplicateGroup;
+import edu.scau.imagemanagementsystem.model.DirectoryDelta;
+import edu.scau.imagemanagementsystem.model.DiscoveredFile;
+import edu.scau.imagemanagementsystem.model.FileAttributes;
 import edu.scau.imagemanagementsystem.model.ImageFileItem;
+import edu.scau.imagemanagementsystem.model.SearchMatch;
+import edu.scau.imagemanagementsystem.model.SimilarImageGroup;
+import edu.scau.imagemanagementsystem.services.CatalogService;
+import edu.scau.imagemanagementsystem.services.DirectoryWatchService;
+import edu.scau.imagemanagementsystem.services.DuplicateFinderService;
 import edu.scau.imagemanagementsystem.services.FileDiscoveryService;
 import edu.scau.imagemanagementsystem.services.FileOperationService;
+import edu.scau.imagemanagementsystem.services.ImageMemoryCache;
 import edu.scau.imagemanagementsystem.services.ImageLoadService;
+import edu.scau.imagemanagementsystem.services.ImageSortService;
+import edu.scau.imagemanagementsystem.services.ImageSortService.SortField;
+import edu.scau.imagemanagementsystem.services.LibraryCrawlerService;
+import edu.scau.imagemanagementsystem.services.MetadataService;
+import edu.scau.imagemanagementsystem.services.SearchService;
+import edu.scau.imagemanagementsystem.services.SimilarImageService;
+import edu.scau.imagemanagementsystem.services.TaskSchedulerService;
+import edu.scau.imagemanagementsystem.services.TaskSchedulerService.Priority;
+import edu.scau.imagemanagementsystem.services.TaskSchedulerService.WorkClass;
+import edu.scau.imagemanagementsystem.services.ThumbnailPrefetchService;
 import edu.scau.imagemanagementsystem.utils.FileUtils;
 import edu.scau.imagemanagementsystem.utils.FxmlUtils;
+import edu.scau.imagemanagementsystem.utils.ImageQuery;
+import edu.scau.imagemanagementsystem.utils.NameIndex;
 import edu.scau.imagemanagementsystem.utils.UiUtils;
+import javafx.animation.PauseTransition;
 import javafx.application.Platform;
+import javafx.beans.value.ChangeListener;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.concurrent.Task;
@@ -34,10 +69,13 @@ import javafx.scene.control.ButtonType;
 import javafx.scene.control.ComboBox;
 import javafx.scene.control.ContextMenu;
 import javafx.scene.control.Label;
+import javafx.scene.control.Menu;
+import javafx.scene.control.MenuButton;
 import javafx.scene.control.MenuItem;
 import javafx.scene.control.ScrollPane;
 import javafx.scene.control.SelectionMode;
 import javafx.scene.control.TextField;
+import javafx.scene.control.Tooltip;
 import javafx.scene.control.TreeCell;
 import javafx.scene.control.TreeItem;
 import javafx.scene.control.TreeView;
@@ -49,12 +87,13 @@ import javafx.scene.input.KeyCombination;
 import javafx.scene.input.MouseButton;
 import javafx.scene.input.MouseEvent;
 import javafx.scene.layout.AnchorPane;
-import javafx.scene.layout.FlowPane;
 import javafx.scene.layout.HBox;
 import javafx.scene.layout.VBox;
 import javafx.scene.text.TextAlignment;
+import javafx.stage.DirectoryChooser;
 import javafx.stage.PopupWindow;
 import javafx.stage.Window;
+import javafx.util.Duration;
 
 public class MainViewController {
     private static final Logger logger = LoggerFactory.getLogger(MainViewController.class);
@@ -62,14 +101,34 @@ public class MainViewController {
     private final FileDiscoveryService fileDiscoveryService = new FileDiscoveryService();
     private final ImageLoadService imageLoadService = new ImageLoadService();
     private final edu.scau.imagemanagementsystem.services.ClipboardService clipboardService = new edu.scau.imagemanagementsystem.services.ClipboardService();
+    private final TaskSchedulerService taskScheduler = TaskSchedulerService.getInstance();
+    private final ImageMemoryCache imageMemoryCache = ImageMemoryCache.getInstance();
+    private final DirectoryWatchService directoryWatchService = DirectoryWatchService.getInstance();
+    private final CatalogService catalogService = CatalogService.getInstance();
+    private final MetadataService metadataService = new MetadataService();
+    private final LibraryCrawlerService libraryCrawlerService = LibraryCrawlerService.getInstance();
+    private final SearchService searchService = new SearchService();
+    private final ImageSortService imageSortService = new ImageSortService();
+    private final DuplicateFinderService duplicateFinderService = new DuplicateFinderService();
+    // 正在进行的重复图片查找，再次选择菜单项时取消
+    private Task<List<DuplicateGroup>> duplicateTask;
+    private final SimilarImageService similarImageService = new SimilarImageService();
+    // 正在进行的相似图片分组，再次选择菜单项时取消
+    private Task<List<SimilarImageGroup>> similarGroupsTask;
 
     private ObservableList<ImageFileItem> selectedImageItems = FXCollections.observableArrayList();
     private ObservableList<ImageFileItem> imageFileItemObservableList = FXCollections.observableArrayList();
+    // 缩略图缓存键到数据项的映射，用于在缓存淘汰时释放数据项持有的缩略图
+    private final Map<String, ImageFileItem> itemsByThumbnailKey = new HashMap<>();
+    // 文件到数据项的映射，用于把目录变化应用到已有的数据项上
+    private final Map<File, ImageFileItem> itemsByFile = new HashMap<>();
+    // 文件名索引，与 imageFileItemObservableList 同步增删，用于按关键字过滤
+    private final NameIndex<ImageFileItem> nameIndex = new NameIndex<>();
 
     @FXML
     private TreeView<File> directoryTreeView;
     @FXML
-    private FlowPane imagePreviewPane;
+    private VirtualGridPane<Object> imagePreviewPane;
     @FXML
     private ScrollPane imageScrollPane;
     @FXML
@@ -82,45 +141,115 @@ public class MainViewController {
     private Button slideshowButton;
     @FXML
     private AnchorPane imagePreviewAnchorPane;
+    @FXML
+    private Label libraryStatusLabel;
+    @FXML
+    private MenuButton libraryMenuButton;
+    @FXML
+    private Menu removeLibraryRootMenu;
+    @FXML
+    private MenuItem startLibraryCrawlItem;
+    @FXML
+    private MenuItem stopLibraryCrawlItem;
+    @FXML
+    private MenuItem findDuplicatesItem;
+    @FXML
+    private MenuItem findSimilarGroupsItem;
 
     // 用于空白区域的粘贴菜单
     private ContextMenu blankContextMenu;
 
     private ImageFileItem lastSelectedItemForShift;
+    // 当前目录的子目录，显示在网格最前面
+    private List<File> currentSubDirectories = new ArrayList<>();
+    // 单击选中的目录项
+    private File highlightedDirectory;
+    // 正在网格单元格中显示的数据项，其缩略图不会因缓存淘汰而被释放
+    private final Set<ImageFileItem> displayedItems = new HashSet<>();
+    private final ThumbnailPrefetchService thumbnailPrefetchService = new ThumbnailPrefetchService(imageLoadService,
+            THUMBNAIL_WIDTH, THUMBNAIL_HEIGHT);
+    // 上一次视口的第一个可见索引，用于判断滚动方向
+    private int lastFirstVisibleIndex;
     private long currentDirectoryTotalSizeInBytes = 0L;
+    // 当前打开的目录，以及它的图片是否仍在扫描
+    private File currentDirectory;
+    private boolean scanningDirectory;
+    // 网格是否正在显示递归搜索的结果，以及搜索开始前打开的目录
+    private boolean searchActive;
+    private File searchBaseDirectory;
+    // 过滤与排序在后台计算：是否有计算正在进行，以及是否有等待执行的请求
+    private boolean viewUpdateRunning;
+    private boolean viewUpdatePending;
+    // 图片集合与元数据的版本，变化后排序服务才重新计算排序键
+    private long itemsVersion;
+    private long metadataVersion;
+    private long sortedItemsVersion = -1;
+    // 输入停顿后才重新过滤，连续输入时不会为每个字符计算一次
+    private final PauseTransition searchDebounce = new PauseTransition(Duration.millis(150));
+    // 当前目录对应的任务代编号，切换目录时递增以取消旧目录的任务
+    private long directoryGeneration = TaskSchedulerService.NO_GENERATION;
 
     private static final double THUMBNAIL_WIDTH = 120;
     private static final double THUMBNAIL_HEIGHT = 120;
+    // 元数据比较窗口中最多并排显示的图片数
+    private static final int MAX_METADATA_COMPARE_FILES = 16;
 
     // 添加搜索与排序控件引用
     @FXML
     private TextField searchTextField;
     @FXML
     private ComboBox<String> sortComboBox;
+    @FXML
+    private ComboBox<String> searchScopeComboBox;
+
+    private static final String SCOPE_CURRENT_DIRECTORY = "当前目录";
+    private static final String SCOPE_SUBTREE = "包含子目录";
+    private static final String SCOPE_LIBRARY = "整个图库";
+    // 排序选项的名称，每个名称对应升序和降序两项
+    private static final Map<String, SortField> SORT_FIELDS = new LinkedHashMap<>();
+    static {
+        SORT_FIELDS.put("名称", SortField.NAME);
+        SORT_FIELDS.put("大小", SortField.SIZE);
+        SORT_FIELDS.put("日期", SortField.MODIFIED);
+        SORT_FIELDS.put("拍摄时间", SortField.CAPTURED);
+        SORT_FIELDS.put("尺寸", SortField.DIMENSIONS);
+    }
 
     @FXML
     private void initialize() {
         initializeDirectoryTree();
-        // 设置预览面板缩略图和文件夹排列约束
-        imagePreviewPane.setHgap(10);
-        imagePreviewPane.setVgap(10);
+        imageMemoryCache.addEvictionListener(this::onImageEvicted);
+        // 自身的文件操作直接报告变化，外部程序的修改由目录监听报告
+        fileOperationService.setOnDirectoryChanged(this::onDirectoryChanged);
+        // 设置预览网格的单元格尺寸与间距，仅为可见行创建单元格
+        imagePreviewPane.setCellSize(THUMBNAIL_WIDTH + 20, THUMBNAIL_HEIGHT + 40);
+        imagePreviewPane.setGaps(10, 10);
         imagePreviewPane.setPadding(new Insets(10));
-        imagePreviewPane.setAlignment(Pos.TOP_LEFT);
-        // 根据 ScrollPane 宽度自动换行
-        imagePreviewPane.prefWrapLengthProperty().bind(imageScrollPane.widthProperty());
+        imagePreviewPane.setCellFactory(grid -> new ThumbnailGridCell());
+        // 缩略图按视口加载：可见项优先，其次是滚动方向上的预取窗口
+        imagePreviewPane.setOnViewportChanged(this::onViewportChanged);
+        thumbnailPrefetchService.setOnThumbnailLoaded((item, thumbnail) -> {
+            item.setThumbnail(thumbnail);
+            releaseThumbnailIfHidden(item);
+        });
 
         imageScrollPane.setOnMouseClicked(event -> {
             if (event.getTarget() == imageScrollPane || event.getTarget() == imagePreviewPane) {
                 clearSelection();
                 updateStatusLabel();
                 // 清除目录项高亮
-                for (Node child : imagePreviewPane.getChildren()) {
-                    child.getStyleClass().remove("thumbnail-selected");
-                }
+                setHighlightedDirectory(null);
             }
         });
 
         slideshowButton.setOnAction(event -> handleSlideshowButtonAction());
+        // 图库扫描：预先生成与网格相同尺寸的缩略图，上次未完成的扫描从检查点继续
+        libraryCrawlerService.setThumbnailSize(THUMBNAIL_WIDTH, THUMBNAIL_HEIGHT);
+        libraryCrawlerService.setOnProgress(this::updateLibraryStatus);
+        libraryMenuButton.setOnShowing(event -> updateLibraryMenu());
+        if (libraryCrawlerService.hasCheckpoint()) {
+            libraryCrawlerService.start();
+        }
         // 支持在目录树中多选，以显示路径上所有节点的高亮
         directoryTreeView.getSelectionModel().setSelectionMode(SelectionMode.MULTIPLE);
 
@@ -135,18 +264,27 @@ public class MainViewController {
         }
         // 空白处右键：先隐藏所有弹窗，再显示此菜单
         imagePreviewPane.setOnContextMenuRequested(event -> {
-            for (Window w : Window.getWindows()) {
-                if (w instanceof PopupWindow) {
-                    ((PopupWindow) w).hide();
-                }
-            }
-            blankContextMenu.show(imagePreviewPane, event.getScreenX(), event.getScreenY());
+            showContextMenu(blankContextMenu, imagePreviewPane, event.getScreenX(), event.getScreenY());
         });
 
         // 高级搜索
-        searchTextField.textProperty().addListener((obs, old, ne) -> filterAndSort());
+        searchDebounce.setOnFinished(event -> filterAndSort());
+        searchTextField.textProperty().addListener((obs, old, ne) -> onSearchTextChanged());
+        // 当前目录内即时过滤；递归搜索在按下回车或切换范围时开始
+        searchTextField.setOnAction(event -> startSearch());
+        searchTextField.setTooltip(new Tooltip("输入文件名，或使用条件，如 iso>=1600 camera:\"X-T4\" date:2024-05 size>10MB\n"
+                + "字段: name ext camera lens iso date modified size width height f focal\n"
+                + "运算符: : = > >= < <=，条件前加 - 表示排除"));
+        searchScopeComboBox.getItems().addAll(SCOPE_CURRENT_DIRECTORY, SCOPE_SUBTREE, SCOPE_LIBRARY);
+        searchScopeComboBox.getSelectionModel().selectFirst();
+        searchScopeComboBox.getSelectionModel().selectedItemProperty().addListener((obs, old, ne) -> {
+            searchTextField.setPromptText(SCOPE_CURRENT_DIRECTORY.equals(ne) ? "搜索..." : "输入文件名后按回车搜索...");
+            startSearch();
+        });
         // 排序选项
-        sortComboBox.getItems().addAll("名称升序", "名称降序", "大小升序", "大小降序", "日期升序", "日期降序");
+        for (String sortName : SORT_FIELDS.keySet()) {
+            sortComboBox.getItems().addAll(sortName + "升序", sortName + "降序");
+        }
         sortComboBox.getSelectionModel().selectFirst();
         sortComboBox.getSelectionModel().selectedItemProperty().addListener((obs, old, ne) -> filterAndSort());
         // 键盘快捷键
@@ -165,14 +303,6 @@ public class MainViewController {
         });
     }
 
-    private String formatFileSize(long size) {
-        if (size <= 0)
-            return "0 B";
-        final String[] units = new String[] { "B", "KB", "MB", "GB", "TB" };
-        int digitGroups = (int) (Math.log10(size) / Math.log10(1024));
-        return new DecimalFormat("#,##0.#").format(size / Math.pow(1024, digitGroups)) + " " + units[digitGroups];
-    }
-
     private void initializeDirectoryTree() {
         TreeItem<File> rootNode = new TreeItem<>(new File("计算机"));
         rootNode.setExpanded(true);
@@ -215,12 +345,15 @@ public class MainViewController {
                             onDirectorySelected(selectedDir);
                         }
                     } else {
-                        imagePreviewPane.getChildren().clear();
-                        imageFileItemObservableList.clear();
-                        selectedImageItems.clear();
+                        directoryWatchService.stop();
+                        // 让上一个目录仍在进行的扫描和目录库任务失效，它们的结果不再加入网格
+                        directoryGeneration = taskScheduler.advanceGeneration();
+                        currentDirectory = null;
+                        scanningDirectory = false;
+                        searchActive = false;
+                        clearGrid();
                         currentDirectoryLabel.setText("当前目录:");
                         imageCountInDirLabel.setText("0 张图片");
-                        currentDirectoryTotalSizeInBytes = 0L;
                         updateStatusLabel();
                     }
                 });
@@ -271,131 +404,570 @@ public class MainViewController {
             logger.error("Failed to load subdirectories for: " + parentDir.getAbsolutePath(),
                     subDirTask.getException());
         });
-        new Thread(subDirTask).start();
+        taskScheduler.submit(subDirTask, WorkClass.DIRECTORY_LISTING, Priority.VISIBLE_THUMBNAIL);
     }
 
     private void onDirectorySelected(File directory) {
         logger.info("Directory selected: {}", directory.getAbsolutePath());
+        logger.debug("Image cache: {}", imageMemoryCache.getStatistics());
+        // 丢弃旧目录中尚未完成的列举与缩略图任务
+        long generation = taskScheduler.advanceGeneration();
+        directoryGeneration = generation;
+        currentDirectory = directory;
+        searchActive = false;
         currentDirectoryLabel.setText("当前目录: " + directory.getAbsolutePath());
         // 先清空旧的选中与数据，并展示子目录
-        selectedImageItems.clear();
-        imageFileItemObservableList.clear();
-        imagePreviewPane.getChildren().clear();
-        File[] subDirs = directory.listFiles(File::isDirectory);
-        if (subDirs != null) {
-            for (File subDir : subDirs) {
-                createAndAddDirectoryNode(subDir);
+        clearGrid();
+        imageCountInDirLabel.setText("正在扫描...");
+        scanningDirectory = true;
+        // 在扫描之前开始监听，扫描期间发生的变化不会遗漏
+        directoryWatchService.watch(directory, this::onDirectoryChanged);
+
+        // 先用目录库中的记录立即显示，同时与子目录和图片文件的扫描并行进行，各自到达后刷新网格
+        Set<ImageFileItem> catalogItems = new HashSet<>();
+        Task<List<CatalogEntry>> catalogTask = catalogService.listDirectoryAsync(directory);
+        catalogTask.setOnSucceeded(e -> {
+            if (generation != directoryGeneration || !scanningDirectory) {
+                return; // 扫描已经完成，目录库中的记录可能已经过时
             }
-        }
-        Task<List<File>> imageFilesTask = fileDiscoveryService.getImageFilesAsync(directory);
+            for (CatalogEntry entry : catalogTask.getValue()) {
+                if (!itemsByFile.containsKey(entry.getFile())) {
+                    catalogItems.add(addImageItem(entry.getFile(), entry.getAttributes()));
+                }
+            }
+            if (!catalogItems.isEmpty()) {
+                logger.debug("Showing {} images of {} from the catalog.", catalogItems.size(),
+                        directory.getAbsolutePath());
+                filterAndSort();
+                updateImageCountLabel();
+                updateStatusLabel();
+            }
+        });
+        catalogTask.setOnFailed(e -> logger.error("Failed to read catalog for {}", directory.getAbsolutePath(),
+                catalogTask.getException()));
+        taskScheduler.submit(catalogTask, WorkClass.DIRECTORY_LISTING, Priority.VISIBLE_THUMBNAIL, generation);
+
+        Task<List<File>> subDirTask = fileDiscoveryService.getSubDirectoriesAsync(directory);
+        subDirTask.setOnSucceeded(e -> {
+            if (generation == directoryGeneration) {
+                currentSubDirectories = new ArrayList<>(subDirTask.getValue());
+                filterAndSort();
+            }
+        });
+        subDirTask.setOnFailed(e -> logger.error("Failed to list subdirectories of {}", directory.getAbsolutePath(),
+                subDirTask.getException()));
+        taskScheduler.submit(subDirTask, WorkClass.DIRECTORY_LISTING, Priority.VISIBLE_THUMBNAIL, generation);
+
+        Map<File, FileAttributes> scannedFiles = new HashMap<>();
+        Task<Integer> imageFilesTask = fileDiscoveryService.streamImageFilesAsync(directory, batch -> {
+            if (generation != directoryGeneration) {
+                return; // 批次属于已经离开的目录
+            }
+            for (DiscoveredFile found : batch) {
+                FileAttributes attributes = FileAttributes.of(found.getAttributes());
+                scannedFiles.put(found.getFile(), attributes);
+                // 已由目录库或目录变化先行加入的文件只在属性变化时更新；总大小直接由扫描得到的属性累加
+                ImageFileItem existing = itemsByFile.get(found.getFile());
+                if (existing == null) {
+                    addImageItem(found.getFile(), attributes);
+                } else if (!existing.getAttributes().isSameVersion(attributes)) {
+                    updateImageItem(existing, attributes);
+                }
+            }
+            // 每批到达后立即过滤并排序，首屏缩略图无需等待整个目录扫描完成
+            filterAndSort();
+            updateImageCountLabel();
+            updateStatusLabel();
+        });
 
         imageFilesTask.setOnSucceeded(e -> {
-            List<File> imageFiles = imageFilesTask.getValue();
-            Platform.runLater(() -> {
-                if (imageFiles != null) {
-                    imageFileItemObservableList.clear();
-                    for (File imageFile : imageFiles) {
-                        ImageFileItem item = new ImageFileItem(imageFile);
-                        imageFileItemObservableList.add(item);
-                    }
-                    // 过滤并排序后渲染缩略图
-                    filterAndSort();
-                    imageCountInDirLabel.setText(imageFiles.size() + " 张图片");
-                    calculateAndDisplayTotalSize(imageFiles);
-                } else {
-                    imageCountInDirLabel.setText("0 张图片");
+            if (generation != directoryGeneration) {
+                return; // 结果属于已经离开的目录
+            }
+            scanningDirectory = false;
+            // 目录库中有、扫描却没有发现的图片已在程序关闭期间被删除
+            List<File> vanished = new ArrayList<>();
+            for (ImageFileItem item : catalogItems) {
+                if (!scannedFiles.containsKey(item.getFile())) {
+                    vanished.add(item.getFile());
+                }
+            }
+            if (removeEntries(vanished)) {
+                filterAndSort();
+            }
+            updateImageCountLabel();
+            logger.info("Total size of images in directory: {}",
+                    FileUtils.formatFileSize(currentDirectoryTotalSizeInBytes));
+            updateStatusLabel();
+            // 将扫描结果写回目录库，之后在后台补齐缺少的元数据
+            Task<Void> reconcileTask = catalogService.reconcileDirectoryAsync(directory, scannedFiles);
+            reconcileTask.setOnSucceeded(event -> {
+                if (generation == directoryGeneration) {
+                    extractMissingMetadata(directory, generation);
                 }
-                updateStatusLabel();
             });
+            reconcileTask.setOnFailed(event -> logger.error("Failed to update catalog for {}",
+                    directory.getAbsolutePath(), reconcileTask.getException()));
+            taskScheduler.submit(reconcileTask, WorkClass.DIRECTORY_LISTING, Priority.BACKGROUND);
         });
 
         imageFilesTask.setOnFailed(e -> {
             Throwable ex = imageFilesTask.getException();
             logger.error("Failed to load image files for directory: {}", directory.getAbsolutePath(), ex);
-            Platform.runLater(() -> {
-                UiUtils.showErrorDialog("加载图片失败", "无法加载目录中的图片文件。", ex != null ? ex.getMessage() : "");
-                imageCountInDirLabel.setText("加载错误");
-                updateStatusLabel();
-            });
+            if (generation != directoryGeneration) {
+                return;
+            }
+            scanningDirectory = false;
+            UiUtils.showErrorDialog("加载图片失败", "无法加载目录中的图片文件。", ex != null ? ex.getMessage() : "");
+            imageCountInDirLabel.setText("加载错误");
+            updateStatusLabel();
         });
-        new Thread(imageFilesTask).start();
-    }
-
-    private void createAndAddThumbnailNode(ImageFileItem item) {
-        ImageView thumbnailView = new ImageView();
-        thumbnailView.setFitWidth(THUMBNAIL_WIDTH);
-        thumbnailView.setFitHeight(THUMBNAIL_HEIGHT);
-        thumbnailView.setPreserveRatio(true);
-
-        Label nameLabel = new Label(item.getName());
-        nameLabel.setWrapText(true);
-        // 当名称过长时在悬停时显示完整名称
-        nameLabel.setTooltip(new javafx.scene.control.Tooltip(item.getName()));
-        // 固定宽度并居中显示文字
-        nameLabel.setPrefWidth(THUMBNAIL_WIDTH);
-        nameLabel.setAlignment(Pos.CENTER);
-        nameLabel.setTextAlignment(TextAlignment.CENTER);
-
-        HBox imageContainer = new HBox(thumbnailView);
-        imageContainer.setAlignment(Pos.CENTER);
-        imageContainer.setMinHeight(THUMBNAIL_HEIGHT);
-
-        VBox container = new VBox(5, imageContainer, nameLabel);
-        container.setAlignment(Pos.CENTER);
-        container.setUserData(item);
-        container.setPadding(new Insets(5));
-        // 设置固定尺寸，保证网格对齐
-        container.setPrefWidth(THUMBNAIL_WIDTH + 20);
-        container.setPrefHeight(THUMBNAIL_HEIGHT + 40);
-
-        if (item.getThumbnail() != null) {
-            thumbnailView.setImage(item.getThumbnail());
+        taskScheduler.submit(imageFilesTask, WorkClass.DIRECTORY_LISTING, Priority.VISIBLE_THUMBNAIL, generation);
+    }
+
+    /**
+     * 清空网格中的数据项、选中状态和缩略图请求，在打开目录或显示新的搜索结果之前调用。
+     */
+    private void clearGrid() {
+        selectedImageItems.clear();
+        imageFileItemObservableList.clear();
+        itemsByThumbnailKey.clear();
+        itemsByFile.clear();
+        nameIndex.clear();
+        itemsVersion++;
+        thumbnailPrefetchService.cancelAll();
+        lastFirstVisibleIndex = 0;
+        highlightedDirectory = null;
+        currentSubDirectories = new ArrayList<>();
+        currentDirectoryTotalSizeInBytes = 0L;
+        imagePreviewPane.getItems().clear();
+        imageScrollPane.setVvalue(0);
+    }
+
+    private void onSearchTextChanged() {
+        String keyword = searchTextField.getText();
+        if (searchActive && (keyword == null || keyword.isBlank())) {
+            // 清空搜索框时回到搜索前打开的目录
+            leaveSearch();
+            return;
+        }
+        // 在当前目录中过滤；已有搜索结果时在结果中继续过滤
+        searchDebounce.playFromStart();
+    }
+
+    /**
+     * 按所选范围搜索。范围为当前目录时只过滤已显示的图片；范围为子目录或整个图库时递归搜索，
+     * 结果边找到边显示在网格中。
+     */
+    private void startSearch() {
+        String keyword = searchTextField.getText() == null ? "" : searchTextField.getText().trim();
+        String scope = searchScopeComboBox.getSelectionModel().getSelectedItem();
+        if (keyword.isEmpty() || SCOPE_CURRENT_DIRECTORY.equals(scope)) {
+            if (searchActive) {
+                leaveSearch();
+            } else {
+                filterAndSort();
+            }
+            return;
+        }
+        File baseDirectory = searchActive ? searchBaseDirectory : currentDirectory;
+        List<File> roots;
+        if (SCOPE_LIBRARY.equals(scope)) {
+            roots = libraryCrawlerService.getRoots();
+            if (roots.isEmpty()) {
+                statusLabel.setText("图库中还没有目录，请先通过\"图库\"菜单添加。");
+                return;
+            }
+        } else if (baseDirectory != null) {
+            roots = List.of(baseDirectory);
         } else {
-            Task<Image> loadThumbnailTask = imageLoadService.loadThumbnailAsync(item.getFile(), THUMBNAIL_WIDTH,
-                    THUMBNAIL_HEIGHT);
-            loadThumbnailTask.setOnSucceeded(event -> {
-                Image thumbnail = loadThumbnailTask.getValue();
-                item.setThumbnail(thumbnail);
-                if (thumbnail != null) {
-                    Platform.runLater(() -> thumbnailView.setImage(thumbnail));
+            statusLabel.setText("请先在目录树中选择要搜索的目录。");
+            return;
+        }
+
+        long generation = taskScheduler.advanceGeneration();
+        directoryGeneration = generation;
+        directoryWatchService.stop();
+        searchActive = true;
+        searchBaseDirectory = baseDirectory;
+        // 结果来自多个目录，不再对应某一个当前目录
+        currentDirectory = null;
+        clearGrid();
+        scanningDirectory = true;
+        currentDirectoryLabel.setText(String.format("搜索 \"%s\" (%s):", keyword, scope));
+        imageCountInDirLabel.setText("正在搜索...");
+
+        // 文件系统中只按文件名条件搜索，其余条件由网格的过滤完成
+        String nameTerm = ImageQuery.parse(keyword).getLongestNameTerm();
+        Task<Integer> searchTask = searchService.searchAsync(roots, nameTerm, batch -> {
+            if (generation != directoryGeneration) {
+                return;
+            }
+            for (SearchMatch match : batch) {
+                if (!itemsByFile.containsKey(match.getFile())) {
+                    addImageItem(match.getFile(), match.getAttributes());
                 }
-            });
-            loadThumbnailTask.setOnFailed(event -> {
-                Throwable ex = loadThumbnailTask.getException();
-                logger.error("Failed to load thumbnail for {}", item.getName(), ex);
-            });
-            new Thread(loadThumbnailTask).start();
+            }
+            filterAndSort();
+            updateImageCountLabel();
+            updateStatusLabel();
+        });
+        searchTask.setOnSucceeded(e -> {
+            if (generation != directoryGeneration) {
+                return;
+            }
+            scanningDirectory = false;
+            logger.info("Search for '{}' in {} found {} images.", keyword, roots, searchTask.getValue());
+            updateImageCountLabel();
+            updateStatusLabel();
+        });
+        searchTask.setOnFailed(e -> {
+            logger.error("Search for '{}' failed.", keyword, searchTask.getException());
+            if (generation == directoryGeneration) {
+                scanningDirectory = false;
+                imageCountInDirLabel.setText("搜索失败");
+            }
+        });
+        taskScheduler.submit(searchTask, WorkClass.DIRECTORY_LISTING, Priority.VISIBLE_THUMBNAIL, generation);
+    }
+
+    /**
+     * 结束递归搜索，重新打开搜索前的目录。
+     */
+    private void leaveSearch() {
+        searchActive = false;
+        File directory = searchBaseDirectory;
+        searchBaseDirectory = null;
+        if (directory != null) {
+            onDirectorySelected(directory);
+        } else {
+            directoryGeneration = taskScheduler.advanceGeneration();
+            scanningDirectory = false;
+            clearGrid();
+            currentDirectoryLabel.setText("当前目录:");
+            updateImageCountLabel();
+            updateStatusLabel();
         }
+    }
 
-        item.selectedProperty().addListener((obs, oldVal, newVal) -> {
-            if (newVal) {
-                container.getStyleClass().add("thumbnail-selected");
-            } else {
-                container.getStyleClass().remove("thumbnail-selected");
+    private ImageFileItem addImageItem(File file, FileAttributes attributes) {
+        ImageFileItem item = new ImageFileItem(file, attributes);
+        imageFileItemObservableList.add(item);
+        itemsByFile.put(file, item);
+        nameIndex.add(item, item.getName());
+        itemsVersion++;
+        itemsByThumbnailKey.put(ImageMemoryCache.thumbnailKey(file, THUMBNAIL_WIDTH, THUMBNAIL_HEIGHT), item);
+        currentDirectoryTotalSizeInBytes += attributes.getSize();
+        return item;
+    }
+
+    /**
+     * 为目录库中尚无元数据的图片并行提取尺寸与 EXIF 摘要，离开目录时尚未开始提取的图片被跳过。
+     */
+    private void extractMissingMetadata(File directory, long generation) {
+        Task<List<CatalogEntry>> listTask = catalogService.listDirectoryAsync(directory);
+        listTask.setOnSucceeded(e -> {
+            if (generation != directoryGeneration) {
+                return;
+            }
+            List<CatalogEntry> missing = listTask.getValue().stream().filter(entry -> entry.getMetadata() == null)
+                    .collect(Collectors.toList());
+            if (missing.isEmpty()) {
+                return;
+            }
+            List<Task<Integer>> extractTasks = metadataService.extractAsync(missing, completed -> {
+                metadataVersion++;
+                // 按拍摄时间或尺寸排序、或按元数据过滤时，新提取的元数据会改变结果
+                SortField field = selectedSortField();
+                if (generation == directoryGeneration && (field == SortField.CAPTURED
+                        || field == SortField.DIMENSIONS || ImageQuery.parse(searchTextField.getText()).usesMetadata())) {
+                    filterAndSort();
+                }
+            });
+            for (Task<Integer> extractTask : extractTasks) {
+                extractTask.setOnFailed(event -> logger.error("Failed to extract metadata in {}",
+                        directory.getAbsolutePath(), extractTask.getException()));
+                taskScheduler.submit(extractTask, WorkClass.METADATA, Priority.BACKGROUND, generation);
             }
         });
+        taskScheduler.submit(listTask, WorkClass.DIRECTORY_LISTING, Priority.BACKGROUND, generation);
+    }
 
-        container.setOnMouseClicked(event -> handleThumbnailClick(event, item, container));
+    private void updateImageCountLabel() {
+        imageCountInDirLabel.setText(
+                imageFileItemObservableList.size() + " 张图片" + (scanningDirectory ? " (扫描中...)" : ""));
+    }
 
-        ContextMenu contextMenu = createThumbnailContextMenu(item);
-        container.setOnContextMenuRequested(event -> {
-            // 隐藏所有现有弹窗，确保只显示一个菜单
-            for (Window w : Window.getWindows()) {
-                if (w instanceof PopupWindow) {
-                    ((PopupWindow) w).hide();
+    /**
+     * 接收当前目录的变化（来自目录监听或自身的文件操作）。先在后台读取新建和修改条目的属性，
+     * 再把变化应用到已有的数据项上；事件溢出时与文件系统重新对账。
+     */
+    private void onDirectoryChanged(DirectoryDelta delta) {
+        if (searchActive) {
+            // 搜索结果来自多个目录，只移除被自身操作删除或移走的图片
+            if (removeEntries(delta.getDeleted())) {
+                filterAndSort();
+                updateImageCountLabel();
+                updateStatusLabel();
+            }
+            return;
+        }
+        if (!delta.getDirectory().equals(currentDirectory)) {
+            return;
+        }
+        if (delta.isOverflow()) {
+            logger.info("Directory events overflowed, rescanning {}", currentDirectory.getAbsolutePath());
+            reconcileCurrentDirectory();
+            return;
+        }
+        long generation = directoryGeneration;
+        List<File> changed = new ArrayList<>(delta.getCreated());
+        changed.addAll(delta.getModified());
+        Task<List<DiscoveredFile>> attributesTask = fileDiscoveryService.readAttributesAsync(changed);
+        attributesTask.setOnSucceeded(e -> {
+            if (generation == directoryGeneration) {
+                applyDirectoryDelta(delta, attributesTask.getValue());
+            }
+        });
+        attributesTask.setOnFailed(e -> logger.error("Failed to read attributes of changed files in {}",
+                delta.getDirectory().getAbsolutePath(), attributesTask.getException()));
+        taskScheduler.submit(attributesTask, WorkClass.DIRECTORY_LISTING, Priority.VISIBLE_THUMBNAIL, generation);
+    }
+
+    /**
+     * 把目录变化应用到数据项与网格上。变化可能重复到达（自身操作报告一次，目录监听再报告一次），
+     * 因此按文件的当前状态幂等地处理：仍然存在的新建或修改条目按有无对应数据项添加或更新，
+     * 已不存在的条目和删除的条目被移除。
+     *
+     * @param delta    目录变化
+     * @param existing 新建与修改的条目中仍然存在的部分，及其属性
+     */
+    private void applyDirectoryDelta(DirectoryDelta delta, List<DiscoveredFile> existing) {
+        Set<File> gone = new HashSet<>(delta.getDeleted());
+        gone.addAll(delta.getCreated());
+        gone.addAll(delta.getModified());
+        boolean changed = false;
+        Map<File, FileAttributes> changedImages = new HashMap<>();
+        for (DiscoveredFile found : existing) {
+            File file = found.getFile();
+            gone.remove(file);
+            if (found.getAttributes().isDirectory()) {
+                if (!currentSubDirectories.contains(file)) {
+                    currentSubDirectories.add(file);
+                    changed = true;
+                }
+            } else if (found.getAttributes().isRegularFile() && FileUtils.hasImageExtension(file.getName())) {
+                ImageFileItem item = itemsByFile.get(file);
+                FileAttributes attributes = FileAttributes.of(found.getAttributes());
+                changedImages.put(file, attributes);
+                if (item == null) {
+                    addImageItem(file, attributes);
+                    changed = true;
+                } else if (!item.getAttributes().isSameVersion(attributes)) {
+                    updateImageItem(item, attributes);
+                    changed = true;
                 }
             }
-            if (selectedImageItems.contains(item)) {
-                contextMenu.show(container, event.getScreenX(), event.getScreenY());
-            } else {
-                clearSelection();
-                toggleItemSelection(item);
-                contextMenu.show(container, event.getScreenX(), event.getScreenY());
+        }
+
+        if (removeEntries(gone)) {
+            changed = true;
+        }
+        // 目录库与界面同步更新
+        if (!changedImages.isEmpty() || !gone.isEmpty()) {
+            taskScheduler.submit(catalogService.updateAsync(changedImages, gone), WorkClass.DIRECTORY_LISTING,
+                    Priority.BACKGROUND);
+        }
+
+        if (changed) {
+            logger.debug("Applied {} to {}", delta, delta.getDirectory().getAbsolutePath());
+            filterAndSort();
+            updateImageCountLabel();
+            updateStatusLabel();
+        }
+    }
+
+    /**
+     * 移除已经不存在的图片或子目录对应的数据项。
+     *
+     * @return 如果移除了任何数据项则返回 true
+     */
+    private boolean removeEntries(Collection<File> files) {
+        boolean removedDirectory = false;
+        Set<ImageFileItem> removed = new HashSet<>();
+        for (File file : files) {
+            ImageFileItem item = itemsByFile.remove(file);
+            if (item != null) {
+                removed.add(item);
+                nameIndex.remove(item);
+                itemsByThumbnailKey.remove(ImageMemoryCache.thumbnailKey(file, THUMBNAIL_WIDTH, THUMBNAIL_HEIGHT));
+                currentDirectoryTotalSizeInBytes -= item.getAttributes().getSize();
+                thumbnailPrefetchService.invalidate(item);
+                imageMemoryCache.invalidateFile(file);
+            } else if (currentSubDirectories.remove(file)) {
+                if (file.equals(highlightedDirectory)) {
+                    highlightedDirectory = null;
+                }
+                removedDirectory = true;
+            }
+        }
+        if (!removed.isEmpty()) {
+            itemsVersion++;
+            imageFileItemObservableList.removeIf(removed::contains);
+            selectedImageItems.removeIf(removed::contains);
+            if (removed.contains(lastSelectedItemForShift)) {
+                lastSelectedItemForShift = null;
+            }
+        }
+        return removedDirectory || !removed.isEmpty();
+    }
+
+    /**
+     * 文件内容被修改：更新属性快照，丢弃旧内容的缩略图与缓存，数据项回到视口时会重新加载。
+     */
+    private void updateImageItem(ImageFileItem item, FileAttributes attributes) {
+        currentDirectoryTotalSizeInBytes += attributes.getSize() - item.getAttributes().getSize();
+        item.setAttributes(attributes);
+        itemsVersion++;
+        thumbnailPrefetchService.invalidate(item);
+        imageMemoryCache.invalidateFile(item.getFile());
+        item.setThumbnail(null);
+    }
+
+    /**
+     * 重新扫描当前目录，与现有的数据项对比得到变化后再应用，用于目录事件丢失时。
+     * 与重新打开目录不同，未变化的数据项及其缩略图、选中状态和滚动位置都会保留。
+     */
+    private void reconcileCurrentDirectory() {
+        File directory = currentDirectory;
+        long generation = directoryGeneration;
+        Map<File, FileAttributes> found = new HashMap<>();
+        Task<Integer> imageFilesTask = fileDiscoveryService.streamImageFilesAsync(directory, batch -> {
+            for (DiscoveredFile file : batch) {
+                found.put(file.getFile(), FileAttributes.of(file.getAttributes()));
             }
-            event.consume();
         });
+        imageFilesTask.setOnSucceeded(e -> {
+            Task<List<File>> subDirTask = fileDiscoveryService.getSubDirectoriesAsync(directory);
+            subDirTask.setOnSucceeded(event -> {
+                if (generation != directoryGeneration) {
+                    return;
+                }
+                List<File> created = new ArrayList<>();
+                List<File> deleted = new ArrayList<>();
+                List<File> modified = new ArrayList<>();
+                for (Map.Entry<File, FileAttributes> entry : found.entrySet()) {
+                    ImageFileItem item = itemsByFile.get(entry.getKey());
+                    if (item == null) {
+                        created.add(entry.getKey());
+                    } else if (!item.getAttributes().isSameVersion(entry.getValue())) {
+                        modified.add(entry.getKey());
+                    }
+                }
+                for (File file : itemsByFile.keySet()) {
+                    if (!found.containsKey(file)) {
+                        deleted.add(file);
+                    }
+                }
+                Set<File> subDirs = new HashSet<>(subDirTask.getValue());
+                for (File dir : subDirs) {
+                    if (!currentSubDirectories.contains(dir)) {
+                        created.add(dir);
+                    }
+                }
+                for (File dir : currentSubDirectories) {
+                    if (!subDirs.contains(dir)) {
+                        deleted.add(dir);
+                    }
+                }
+                onDirectoryChanged(new DirectoryDelta(directory, created, deleted, modified));
+            });
+            subDirTask.setOnFailed(event -> logger.error("Failed to list subdirectories of {}",
+                    directory.getAbsolutePath(), subDirTask.getException()));
+            taskScheduler.submit(subDirTask, WorkClass.DIRECTORY_LISTING, Priority.BACKGROUND, generation);
+        });
+        imageFilesTask.setOnFailed(e -> logger.error("Failed to rescan directory {}", directory.getAbsolutePath(),
+                imageFilesTask.getException()));
+        taskScheduler.submit(imageFilesTask, WorkClass.DIRECTORY_LISTING, Priority.BACKGROUND, generation);
+    }
 
-        imagePreviewPane.getChildren().add(container);
+    /**
+     * 网格视口变化时重新计算需要加载缩略图的数据项。
+     * <p>
+     * 视口内的数据项按显示顺序加载；预取窗口沿滚动方向向前延伸若干行、向后保留一行，按与视口的距离排序。
+     * 离开窗口且尚未开始的请求由 {@link ThumbnailPrefetchService} 取消。
+     */
+    private void onViewportChanged() {
+        List<Object> gridItems = imagePreviewPane.getItems();
+        int first = imagePreviewPane.getFirstVisibleIndex();
+        int last = Math.max(first, imagePreviewPane.getLastVisibleIndex());
+        int columns = imagePreviewPane.getColumnCount();
+        boolean scrollingUp = first < lastFirstVisibleIndex;
+        lastFirstVisibleIndex = first;
+
+        List<ImageFileItem> visible = new ArrayList<>();
+        for (int i = first; i < last; i++) {
+            if (gridItems.get(i) instanceof ImageFileItem) {
+                visible.add((ImageFileItem) gridItems.get(i));
+            }
+        }
+        int ahead = thumbnailPrefetchService.getPrefetchRows() * columns;
+        int behind = columns;
+        List<ImageFileItem> prefetch = new ArrayList<>();
+        int maxDistance = Math.max(ahead, behind);
+        for (int distance = 0; distance < maxDistance; distance++) {
+            int forwardIndex = scrollingUp ? first - 1 - distance : last + distance;
+            int backwardIndex = scrollingUp ? last + distance : first - 1 - distance;
+            if (distance < ahead) {
+                addPrefetchItem(gridItems, forwardIndex, prefetch);
+            }
+            if (distance < behind) {
+                addPrefetchItem(gridItems, backwardIndex, prefetch);
+            }
+        }
+        thumbnailPrefetchService.updateWindow(visible, prefetch, directoryGeneration);
+    }
+
+    private void addPrefetchItem(List<Object> gridItems, int index, List<ImageFileItem> prefetch) {
+        if (index >= 0 && index < gridItems.size() && gridItems.get(index) instanceof ImageFileItem) {
+            prefetch.add((ImageFileItem) gridItems.get(index));
+        }
+    }
+
+    /**
+     * 不再显示、且未被内存缓存接纳的缩略图不应由数据项继续持有。
+     */
+    private void releaseThumbnailIfHidden(ImageFileItem item) {
+        if (!displayedItems.contains(item) && item.getThumbnail() != null && !imageMemoryCache
+                .contains(ImageMemoryCache.thumbnailKey(item.getFile(), THUMBNAIL_WIDTH, THUMBNAIL_HEIGHT))) {
+            item.setThumbnail(null);
+        }
+    }
+
+    private void setHighlightedDirectory(File directory) {
+        if (highlightedDirectory != directory) {
+            highlightedDirectory = directory;
+            imagePreviewPane.refresh();
+        }
+    }
+
+    private void showContextMenu(ContextMenu contextMenu, Node anchor, double screenX, double screenY) {
+        // 隐藏所有现有弹窗，确保只显示一个菜单
+        for (Window w : Window.getWindows()) {
+            if (w instanceof PopupWindow) {
+                ((PopupWindow) w).hide();
+            }
+        }
+        contextMenu.show(anchor, screenX, screenY);
+    }
+
+    private void onImageEvicted(String key) {
+        Platform.runLater(() -> {
+            ImageFileItem item = itemsByThumbnailKey.get(key);
+            if (item != null && !displayedItems.contains(item)) {
+                item.setThumbnail(null);
+            }
+        });
     }
 
     private void handleThumbnailClick(MouseEvent event, ImageFileItem item, VBox container) {
@@ -469,42 +1041,19 @@ public class MainViewController {
         selectedImageItems.clear();
     }
 
-    private void calculateAndDisplayTotalSize(List<File> imageFiles) {
-        if (imageFiles == null || imageFiles.isEmpty()) {
-            currentDirectoryTotalSizeInBytes = 0L;
-            return;
-        }
-        Task<Long> calculateSizeTask = fileDiscoveryService.calculateDirectorySizeAsync(imageFiles);
-        calculateSizeTask.setOnSucceeded(e -> {
-            Long totalSize = calculateSizeTask.getValue();
-            currentDirectoryTotalSizeInBytes = (totalSize != null) ? totalSize : 0L;
-            Platform.runLater(() -> {
-                logger.info("Total size of images in directory: {}", formatFileSize(currentDirectoryTotalSizeInBytes));
-                updateStatusLabel();
-            });
-        });
-        calculateSizeTask.setOnFailed(e -> {
-            Throwable ex = calculateSizeTask.getException();
-            logger.error("Failed to calculate directory size.", ex);
-            currentDirectoryTotalSizeInBytes = 0L;
-            Platform.runLater(this::updateStatusLabel);
-        });
-        new Thread(calculateSizeTask).start();
-    }
-
     private void updateStatusLabel() {
         long totalSizeOfSelected = 0;
         for (ImageFileItem item : selectedImageItems) {
-            totalSizeOfSelected += item.getFile().length();
+            totalSizeOfSelected += item.getAttributes().getSize();
         }
 
         String statusText;
         if (!selectedImageItems.isEmpty()) {
             statusText = String.format("选中 %d 张图片 (共 %s)", selectedImageItems.size(),
-                    formatFileSize(totalSizeOfSelected));
+                    FileUtils.formatFileSize(totalSizeOfSelected));
         } else {
             statusText = String.format("%d 张图片 (共 %s)", imageFileItemObservableList.size(),
-                    formatFileSize(currentDirectoryTotalSizeInBytes));
+                    FileUtils.formatFileSize(currentDirectoryTotalSizeInBytes));
         }
         statusLabel.setText(statusText);
     }
@@ -529,7 +1078,7 @@ public class MainViewController {
                 owner);
     }
 
-    private ContextMenu createThumbnailContextMenu(ImageFileItem item) {
+    private ContextMenu createThumbnailContextMenu(Supplier<ImageFileItem> itemSupplier) {
         ContextMenu contextMenu = new ContextMenu();
         MenuItem deleteItem = new MenuItem("删除");
         deleteItem.setOnAction(e -> handleDeleteSelected());
@@ -553,10 +1102,22 @@ public class MainViewController {
         });
 
         contextMenu.getItems().addAll(deleteItem, copyItem, renameItem);
-        if (item != null) {
+        if (itemSupplier != null) {
             MenuItem viewMetaItem = new MenuItem("查看元数据");
-            viewMetaItem.setOnAction(e -> handleViewMetadata(item));
-            contextMenu.getItems().add(viewMetaItem);
+            viewMetaItem.setOnAction(e -> {
+                ImageFileItem item = itemSupplier.get();
+                if (item != null) {
+                    handleViewMetadata(item);
+                }
+            });
+            MenuItem findSimilarItem = new MenuItem("查找相似图片");
+            findSimilarItem.setOnAction(e -> {
+                ImageFileItem item = itemSupplier.get();
+                if (item != null) {
+                    handleFindSimilar(item);
+                }
+            });
+            contextMenu.getItems().addAll(viewMetaItem, findSimilarItem);
         }
         contextMenu.getItems().addAll(pasteItem, refreshItem);
         // 每次显示时更新粘贴按钮的可用状态
@@ -586,18 +1147,11 @@ public class MainViewController {
             deleteTask.setOnSucceeded(e -> {
                 boolean success = deleteTask.getValue();
                 Platform.runLater(() -> {
+                    // 已删除的数据项由操作报告的目录变化移除，无需重新加载目录
                     if (success) {
                         logger.info("{} files deleted successfully.", filesToDelete.size());
-                        TreeItem<File> selectedDirItem = directoryTreeView.getSelectionModel().getSelectedItem();
-                        if (selectedDirItem != null) {
-                            onDirectorySelected(selectedDirItem.getValue());
-                        }
                     } else {
                         UiUtils.showErrorDialog("删除失败", "部分或全部图片删除失败。", "请检查文件权限或文件是否被占用。");
-                        TreeItem<File> selectedDirItem = directoryTreeView.getSelectionModel().getSelectedItem();
-                        if (selectedDirItem != null) {
-                            onDirectorySelected(selectedDirItem.getValue());
-                        }
                     }
                 });
             });
@@ -606,7 +1160,7 @@ public class MainViewController {
                 Platform.runLater(
                         () -> UiUtils.showErrorDialog("删除错误", "删除操作执行失败。", ex != null ? ex.getMessage() : ""));
             });
-            new Thread(deleteTask).start();
+            taskScheduler.submit(deleteTask, WorkClass.FILE_OPERATION, Priority.BACKGROUND);
         }
     }
 
@@ -642,7 +1196,6 @@ public class MainViewController {
             List<File> pastedFiles = pasteTask.getValue();
             Platform.runLater(() -> {
                 logger.info("Pasted {} files to {}", pastedFiles.size(), targetDirectory.getAbsolutePath());
-                onDirectorySelected(targetDirectory);
                 statusLabel.setText("已粘贴 " + pastedFiles.size() + " 张图片到 " + targetDirectory.getName());
             });
         });
@@ -651,7 +1204,7 @@ public class MainViewController {
             Platform.runLater(
                     () -> UiUtils.showErrorDialog("粘贴错误", "粘贴操作执行失败。", ex != null ? ex.getMessage() : ""));
         });
-        new Thread(pasteTask).start();
+        taskScheduler.submit(pasteTask, WorkClass.FILE_OPERATION, Priority.BACKGROUND);
     }
 
     @FXML
@@ -677,7 +1230,6 @@ public class MainViewController {
                         if (success) {
                             logger.info("File {} renamed successfully to {}.{}", itemToRename.getName(), newNameBase,
                                     FileUtils.getFileExtension(itemToRename.getName()));
-                            onDirectorySelected(itemToRename.getFile().getParentFile());
                         } else {
                             UiUtils.showErrorDialog("重命名失败", "无法重命名文件。", "可能是文件名已存在或无效。");
                         }
@@ -688,7 +1240,7 @@ public class MainViewController {
                     Platform.runLater(() -> UiUtils.showErrorDialog("重命名错误", "重命名操作执行失败。",
                             ex != null ? ex.getMessage() : ""));
                 });
-                new Thread(renameTask).start();
+                taskScheduler.submit(renameTask, WorkClass.FILE_OPERATION, Priority.BACKGROUND);
             }
         } else {
             Optional<BatchRenameParams> paramsOpt = FxmlUtils
@@ -702,9 +1254,6 @@ public class MainViewController {
                     boolean success = batchRenameTask.getValue();
                     Platform.runLater(() -> {
                         logger.info("Batch rename task completed. Success: {}", success);
-                        if (!filesToRename.isEmpty()) {
-                            onDirectorySelected(filesToRename.get(0).getParentFile());
-                        }
                         if (!success) {
                             UiUtils.showErrorDialog("批量重命名", "部分或全部文件重命名失败/跳过。", "请检查控制台日志获取详情。");
                         }
@@ -715,75 +1264,361 @@ public class MainViewController {
                     Platform.runLater(() -> UiUtils.showErrorDialog("批量重命名错误", "批量重命名操作执行失败。",
                             ex != null ? ex.getMessage() : ""));
                 });
-                new Thread(batchRenameTask).start();
+                taskScheduler.submit(batchRenameTask, WorkClass.FILE_OPERATION, Priority.BACKGROUND);
             }
         }
     }
 
+    @FXML
+    private void handleAddLibraryRoot() {
+        DirectoryChooser chooser = new DirectoryChooser();
+        chooser.setTitle("添加图库目录");
+        if (currentDirectory != null) {
+            chooser.setInitialDirectory(currentDirectory);
+        }
+        File root = chooser.showDialog(imagePreviewPane.getScene().getWindow());
+        if (root == null) {
+            return;
+        }
+        libraryCrawlerService.addRoot(root);
+        logger.info("Added library root {}", root.getAbsolutePath());
+        // 新的根目录只能随一次完整扫描加入，正在进行的扫描不受影响
+        if (!libraryCrawlerService.isRunning()) {
+            libraryCrawlerService.start();
+        }
+    }
+
+    @FXML
+    private void handleStartLibraryCrawl() {
+        if (!libraryCrawlerService.start() && !libraryCrawlerService.isRunning()) {
+            libraryStatusLabel.setText("请先添加图库目录");
+        }
+    }
+
+    @FXML
+    private void handleStopLibraryCrawl() {
+        libraryCrawlerService.stop();
+    }
+
+    /**
+     * 按搜索框旁所选的范围（当前目录、包含子目录或整个图库）查找内容重复的图片，完成后打开重复图片窗口。
+     * 查找进行中再次选择时取消查找。
+     */
+    @FXML
+    private void handleFindDuplicates() {
+        if (duplicateTask != null && !duplicateTask.isDone()) {
+            duplicateTask.cancel();
+            return;
+        }
+        String scope = searchScopeComboBox.getSelectionModel().getSelectedItem();
+        File baseDirectory = searchActive ? searchBaseDirectory : currentDirectory;
+        List<File> roots;
+        if (SCOPE_LIBRARY.equals(scope)) {
+            roots = libraryCrawlerService.getRoots();
+            if (roots.isEmpty()) {
+                statusLabel.setText("图库中还没有目录，请先通过\"图库\"菜单添加。");
+                return;
+            }
+        } else if (baseDirectory != null) {
+            roots = List.of(baseDirectory);
+        } else {
+            statusLabel.setText("请先在目录树中选择要查找的目录。");
+            return;
+        }
+        boolean recursive = !SCOPE_CURRENT_DIRECTORY.equals(scope);
+
+        Task<List<DuplicateGroup>> task = duplicateFinderService.findDuplicatesAsync(roots, recursive);
+        duplicateTask = task;
+        findDuplicatesItem.setText("停止查找重复图片");
+        task.messageProperty().addListener((obs, old, ne) -> statusLabel.setText(ne));
+        task.setOnSucceeded(e -> {
+            finishFindDuplicates();
+            List<DuplicateGroup> groups = task.getValue();
+            statusLabel.setText(String.format("在 %s 中找到 %d 组重复的图片。", scope, groups.size()));
+            FxmlUtils.openDuplicatesDialog(groups, fileOperationService, imagePreviewPane.getScene().getWindow());
+        });
+        task.setOnCancelled(e -> {
+            finishFindDuplicates();
+            statusLabel.setText("已取消查找重复图片。");
+        });
+        task.setOnFailed(e -> {
+            finishFindDuplicates();
+            logger.error("Failed to find duplicates in {}", roots, task.getException());
+            statusLabel.setText("查找重复图片失败。");
+        });
+        // 不随目录切换取消；查找大部分时间在专用线程上读取文件
+        taskScheduler.submit(task, WorkClass.DIRECTORY_LISTING, Priority.BACKGROUND);
+    }
+
+    private void finishFindDuplicates() {
+        duplicateTask = null;
+        findDuplicatesItem.setText("查找重复图片");
+    }
+
     /**
-     * 为子目录创建目录项，使用文件夹表情图标并支持双击进入。
+     * 按搜索框旁所选的范围把看起来相似的图片分组，完成后打开相似图片窗口。比较使用目录库中的感知哈希，
+     * 不读取图片文件。查找进行中再次选择时取消查找。
      */
-    private void createAndAddDirectoryNode(File dir) {
+    @FXML
+    private void handleFindSimilarGroups() {
+        if (similarGroupsTask != null && !similarGroupsTask.isDone()) {
+            similarGroupsTask.cancel();
+            return;
+        }
+        String scope = searchScopeComboBox.getSelectionModel().getSelectedItem();
+        File baseDirectory = searchActive ? searchBaseDirectory : currentDirectory;
+        List<File> roots;
+        if (SCOPE_LIBRARY.equals(scope)) {
+            roots = libraryCrawlerService.getRoots();
+            if (roots.isEmpty()) {
+                statusLabel.setText("图库中还没有目录，请先通过\"图库\"菜单添加。");
+                return;
+            }
+        } else if (baseDirectory != null) {
+            roots = List.of(baseDirectory);
+        } else {
+            statusLabel.setText("请先在目录树中选择要查找的目录。");
+            return;
+        }
+        boolean recursive = !SCOPE_CURRENT_DIRECTORY.equals(scope);
+
+        Task<List<SimilarImageGroup>> task = similarImageService.findSimilarGroupsAsync(roots, recursive,
+                SimilarImageService.DEFAULT_MAX_DISTANCE);
+        similarGroupsTask = task;
+        findSimilarGroupsItem.setText("停止查找相似图片");
+        task.messageProperty().addListener((obs, old, ne) -> statusLabel.setText(ne));
+        task.setOnSucceeded(e -> {
+            finishFindSimilarGroups();
+            statusLabel.setText(task.getMessage());
+            FxmlUtils.openSimilarImagesDialog("相似的图片 - " + scope, task.getValue(), fileOperationService,
+                    THUMBNAIL_WIDTH, THUMBNAIL_HEIGHT, imagePreviewPane.getScene().getWindow());
+        });
+        task.setOnCancelled(e -> {
+            finishFindSimilarGroups();
+            statusLabel.setText("已取消查找相似图片。");
+        });
+        task.setOnFailed(e -> {
+            finishFindSimilarGroups();
+            logger.error("Failed to find similar images in {}", roots, task.getException());
+            statusLabel.setText("查找相似图片失败。");
+        });
+        taskScheduler.submit(task, WorkClass.DIRECTORY_LISTING, Priority.BACKGROUND);
+    }
+
+    private void finishFindSimilarGroups() {
+        similarGroupsTask = null;
+        findSimilarGroupsItem.setText("查找相似图片");
+    }
+
+    /**
+     * 在目录库中查找与一张图片相似的图片，找到时打开相似图片窗口。
+     */
+    private void handleFindSimilar(ImageFileItem item) {
+        File file = item.getFile();
+        Task<SimilarImageGroup> task = similarImageService.findSimilarAsync(file, THUMBNAIL_WIDTH, THUMBNAIL_HEIGHT,
+                SimilarImageService.DEFAULT_MAX_DISTANCE);
+        statusLabel.setText("正在查找与 " + file.getName() + " 相似的图片...");
+        task.setOnSucceeded(e -> {
+            SimilarImageGroup group = task.getValue();
+            if (group == null) {
+                statusLabel.setText("无法读取 " + file.getName() + "，不能查找相似的图片。");
+            } else if (group.getFiles().size() < 2) {
+                statusLabel.setText("没有找到与 " + file.getName() + " 相似的图片。");
+            } else {
+                statusLabel.setText("找到 " + (group.getFiles().size() - 1) + " 张与 " + file.getName() + " 相似的图片。");
+                FxmlUtils.openSimilarImagesDialog("与 " + file.getName() + " 相似的图片", List.of(group),
+                        fileOperationService, THUMBNAIL_WIDTH, THUMBNAIL_HEIGHT,
+                        imagePreviewPane.getScene().getWindow());
+            }
+        });
+        task.setOnFailed(e -> {
+            logger.error("Failed to find images similar to {}", file, task.getException());
+            statusLabel.setText("查找相似图片失败。");
+        });
+        taskScheduler.submit(task, WorkClass.FULL_DECODE, Priority.VISIBLE_THUMBNAIL);
+    }
+
+    private void updateLibraryMenu() {
+        boolean running = libraryCrawlerService.isRunning();
+        startLibraryCrawlItem.setDisable(running);
+        startLibraryCrawlItem.setText(libraryCrawlerService.hasCheckpoint() ? "继续扫描" : "开始扫描");
+        stopLibraryCrawlItem.setDisable(!running);
+        removeLibraryRootMenu.getItems().clear();
+        for (File root : libraryCrawlerService.getRoots()) {
+            MenuItem item = new MenuItem(root.getAbsolutePath());
+            item.setOnAction(event -> libraryCrawlerService.removeRoot(root));
+            removeLibraryRootMenu.getItems().add(item);
+        }
+        removeLibraryRootMenu.setDisable(removeLibraryRootMenu.getItems().isEmpty());
+    }
+
+    private void updateLibraryStatus(CrawlProgress progress) {
+        if (progress.isRunning()) {
+            libraryStatusLabel.setText(String.format("图库扫描中: %,d 个目录, %,d 张图片 (%.0f 目录/秒, %.0f 张/秒, %s/秒)",
+                    progress.getDirectories(), progress.getFiles(), progress.getDirectoriesPerSecond(),
+                    progress.getFilesPerSecond(), FileUtils.formatFileSize((long) progress.getBytesPerSecond())));
+        } else if (progress.getPendingDirectories() > 0) {
+            libraryStatusLabel.setText(String.format("图库扫描已暂停: 剩余 %,d 个目录",
+                    progress.getPendingDirectories()));
+        } else {
+            libraryStatusLabel.setText(String.format("图库扫描完成: %,d 个目录, %,d 张图片, %s",
+                    progress.getDirectories(), progress.getFiles(), FileUtils.formatFileSize(progress.getBytes())));
+        }
+    }
+
+    /**
+     * 网格单元格，既可显示图片缩略图，也可显示子目录（文件夹表情图标，双击进入）。
+     * 单元格在滚动时被复用，切换数据项时会解除对旧数据项属性的监听。
+     */
+    private class ThumbnailGridCell extends GridCell<Object> {
+        private final ImageView thumbnailView = new ImageView();
         // 使用文件夹Emoji作为图标
-        Label iconLabel = new Label("\uD83D\uDCC1");
-        iconLabel.setStyle("-fx-font-size:48pt;");
-        HBox iconContainer = new HBox(iconLabel);
-        iconContainer.setAlignment(Pos.CENTER);
-        iconContainer.setMinHeight(THUMBNAIL_HEIGHT);
-
-        Label nameLabel = new Label(dir.getName());
-        nameLabel.setWrapText(true);
-        // 当名称过长时在悬停时显示完整名称
-        nameLabel.setTooltip(new javafx.scene.control.Tooltip(dir.getName()));
-        // 固定宽度并居中显示文字
-        nameLabel.setPrefWidth(THUMBNAIL_WIDTH);
-        nameLabel.setAlignment(Pos.CENTER);
-        nameLabel.setTextAlignment(TextAlignment.CENTER);
-
-        VBox container = new VBox(5, iconContainer, nameLabel);
-        container.setAlignment(Pos.CENTER);
-        container.setUserData(dir);
-        container.setPadding(new Insets(5));
-        // 设置固定尺寸，保证网格对齐
-        container.setPrefWidth(THUMBNAIL_WIDTH + 20);
-        container.setPrefHeight(THUMBNAIL_HEIGHT + 40);
-        container.getStyleClass().add("thumbnail-container");
-
-        // 单击选中高亮；双击在树中选中以驱动刷新
-        container.setOnMouseClicked(event -> {
-            if (event.getButton() == MouseButton.PRIMARY) {
-                if (event.getClickCount() == 1) {
-                    // 高亮当前容器
-                    clearSelection();
-                    for (Node child : imagePreviewPane.getChildren()) {
-                        child.getStyleClass().remove("thumbnail-selected");
+        private final Label folderIconLabel = new Label("\uD83D\uDCC1");
+        private final HBox imageContainer = new HBox();
+        private final Label nameLabel = new Label();
+        private final Tooltip nameTooltip = new Tooltip();
+        private final VBox container = new VBox(5, imageContainer, nameLabel);
+        private final ContextMenu imageContextMenu = createThumbnailContextMenu(this::getImageItem);
+        private final ContextMenu directoryContextMenu = createThumbnailContextMenu(null);
+        private final ChangeListener<Boolean> selectedListener = (obs, oldVal, newVal) -> updateSelectedStyle();
+        private final ChangeListener<Image> thumbnailListener = (obs, oldVal, newVal) -> thumbnailView
+                .setImage(newVal);
+        private ImageFileItem boundItem;
+
+        private ThumbnailGridCell() {
+            thumbnailView.setFitWidth(THUMBNAIL_WIDTH);
+            thumbnailView.setFitHeight(THUMBNAIL_HEIGHT);
+            thumbnailView.setPreserveRatio(true);
+            folderIconLabel.setStyle("-fx-font-size:48pt;");
+
+            nameLabel.setWrapText(true);
+            // 当名称过长时在悬停时显示完整名称
+            nameLabel.setTooltip(nameTooltip);
+            // 固定宽度并居中显示文字
+            nameLabel.setPrefWidth(THUMBNAIL_WIDTH);
+            nameLabel.setAlignment(Pos.CENTER);
+            nameLabel.setTextAlignment(TextAlignment.CENTER);
+
+            imageContainer.setAlignment(Pos.CENTER);
+            imageContainer.setMinHeight(THUMBNAIL_HEIGHT);
+
+            container.setAlignment(Pos.CENTER);
+            container.setPadding(new Insets(5));
+            getChildren().add(container);
+
+            // 目录项仅显示粘贴与刷新
+            for (MenuItem mi : directoryContextMenu.getItems()) {
+                String text = mi.getText();
+                if (!"粘贴".equals(text) && !"刷新".equals(text)) {
+                    mi.setDisable(true);
+                }
+            }
+
+            setOnMouseClicked(event -> {
+                Object item = getItem();
+                if (item instanceof ImageFileItem) {
+                    setHighlightedDirectory(null);
+                    handleThumbnailClick(event, (ImageFileItem) item, container);
+                } else if (item instanceof File) {
+                    handleDirectoryClick(event, (File) item);
+                }
+            });
+            setOnContextMenuRequested(event -> {
+                Object item = getItem();
+                if (item instanceof ImageFileItem) {
+                    ImageFileItem imageItem = (ImageFileItem) item;
+                    if (!selectedImageItems.contains(imageItem)) {
+                        clearSelection();
+                        toggleItemSelection(imageItem);
                     }
-                    container.getStyleClass().add("thumbnail-selected");
-                } else if (event.getClickCount() == 2) {
-                    // 只在树中选中，触发 onDirectorySelected
-                    selectDirectoryInTree(dir);
+                    showContextMenu(imageContextMenu, this, event.getScreenX(), event.getScreenY());
+                } else if (item instanceof File) {
+                    showContextMenu(directoryContextMenu, this, event.getScreenX(), event.getScreenY());
                 }
+                event.consume();
+            });
+        }
+
+        private ImageFileItem getImageItem() {
+            return boundItem;
+        }
+
+        @Override
+        protected void updateItem(Object item, boolean empty) {
+            super.updateItem(item, empty);
+            if (!empty && item != null && item == boundItem) {
+                updateSelectedStyle(); // 同一数据项只需刷新样式，保留已显示的缩略图
+                return;
             }
-            event.consume();
-        });
-        // 仅显示粘贴与刷新
-        ContextMenu contextMenu = createThumbnailContextMenu(null);
-        for (MenuItem mi : contextMenu.getItems()) {
-            String text = mi.getText();
-            if (!"粘贴".equals(text) && !"刷新".equals(text)) {
-                mi.setDisable(true);
+            unbindItem();
+            if (empty || item == null) {
+                thumbnailView.setImage(null);
+                nameLabel.setText(null);
+                container.getStyleClass().remove("thumbnail-selected");
+                return;
             }
-        }
-        container.setOnContextMenuRequested(event -> {
-            for (Window w : Window.getWindows()) {
-                if (w instanceof PopupWindow) {
-                    ((PopupWindow) w).hide();
+            if (item instanceof ImageFileItem) {
+                ImageFileItem imageItem = (ImageFileItem) item;
+                boundItem = imageItem;
+                displayedItems.add(imageItem);
+                imageItem.selectedProperty().addListener(selectedListener);
+                imageItem.thumbnailProperty().addListener(thumbnailListener);
+                imageContainer.getChildren().setAll(thumbnailView);
+                thumbnailView.setImage(imageItem.getThumbnail());
+                setName(imageItem.getName());
+                container.getStyleClass().remove("thumbnail-container");
+            } else if (item instanceof File) {
+                File dir = (File) item;
+                imageContainer.getChildren().setAll(folderIconLabel);
+                thumbnailView.setImage(null);
+                setName(dir.getName());
+                if (!container.getStyleClass().contains("thumbnail-container")) {
+                    container.getStyleClass().add("thumbnail-container");
                 }
             }
-            contextMenu.show(container, event.getScreenX(), event.getScreenY());
-            event.consume();
-        });
-        imagePreviewPane.getChildren().add(container);
+            updateSelectedStyle();
+        }
+
+        private void unbindItem() {
+            if (boundItem != null) {
+                boundItem.selectedProperty().removeListener(selectedListener);
+                boundItem.thumbnailProperty().removeListener(thumbnailListener);
+                displayedItems.remove(boundItem);
+                releaseThumbnailIfHidden(boundItem);
+                boundItem = null;
+            }
+        }
+
+        private void setName(String name) {
+            nameLabel.setText(name);
+            nameTooltip.setText(name);
+        }
+
+        private void updateSelectedStyle() {
+            Object item = getItem();
+            boolean selected = (item instanceof ImageFileItem && ((ImageFileItem) item).isSelected())
+                    || (item instanceof File && item.equals(highlightedDirectory));
+            if (selected && !container.getStyleClass().contains("thumbnail-selected")) {
+                container.getStyleClass().add("thumbnail-selected");
+            } else if (!selected) {
+                container.getStyleClass().remove("thumbnail-selected");
+            }
+        }
+    }
+
+    // 单击选中高亮；双击在树中选中以驱动刷新
+    private void handleDirectoryClick(MouseEvent event, File dir) {
+        if (event.getButton() == MouseButton.PRIMARY) {
+            if (event.getClickCount() == 1) {
+                // 高亮当前目录项
+                clearSelection();
+                setHighlightedDirectory(dir);
+            } else if (event.getClickCount() == 2) {
+                // 只在树中选中，触发 onDirectorySelected
+                selectDirectoryInTree(dir);
+            }
+        }
+        event.consume();
     }
 
     /**
@@ -819,57 +1654,90 @@ public class MainViewController {
         directoryTreeView.getSelectionModel().select(current);
     }
 
-    // 查看元数据
+    // 查看元数据；右键的图片在多选之中时并排比较所有选中的图片
     private void handleViewMetadata(ImageFileItem item) {
         Window owner = imagePreviewPane.getScene().getWindow();
-        FxmlUtils.openMetadataDialog(item.getFile(), owner);
+        if (selectedImageItems.size() > 1 && selectedImageItems.contains(item)) {
+            List<File> files = selectedImageItems.stream().limit(MAX_METADATA_COMPARE_FILES)
+                    .map(ImageFileItem::getFile).collect(Collectors.toList());
+            if (selectedImageItems.size() > MAX_METADATA_COMPARE_FILES) {
+                statusLabel.setText("最多同时比较 " + MAX_METADATA_COMPARE_FILES + " 张图片的元数据。");
+            }
+            FxmlUtils.openMetadataDialog(files, owner);
+        } else {
+            FxmlUtils.openMetadataDialog(item.getFile(), owner);
+        }
     }
 
-    // 过滤并排序渲染
+    /**
+     * 请求重新过滤并排序网格中的图片。计算在后台线程上进行，结果以最小差异应用到网格；
+     * 计算期间到达的请求合并为一次，在当前计算完成后执行。
+     */
     private void filterAndSort() {
-        String keyword = searchTextField.getText();
-        String lower = (keyword == null) ? "" : keyword.toLowerCase();
+        viewUpdatePending = true;
+        if (!viewUpdateRunning) {
+            runViewUpdate();
+        }
+    }
+
+    private void runViewUpdate() {
+        viewUpdatePending = false;
+        viewUpdateRunning = true;
+        ImageQuery query = ImageQuery.parse(searchTextField.getText());
+        SortField field = selectedSortField();
         String sortOpt = sortComboBox.getSelectionModel().getSelectedItem();
-        // 保留目录节点
-        java.util.List<Node> dirNodes = imagePreviewPane.getChildren().stream()
-                .filter(n -> n.getUserData() instanceof File)
-                .collect(Collectors.toList());
-        imagePreviewPane.getChildren().clear();
-        dirNodes.forEach(imagePreviewPane.getChildren()::add);
-        // 过滤
-        java.util.List<ImageFileItem> filtered = imageFileItemObservableList.stream()
-                .filter(item -> item.getName().toLowerCase().contains(lower))
-                .collect(Collectors.<ImageFileItem>toList());
-        // 排序
-        if (sortOpt != null) {
-            switch (sortOpt) {
-                case "名称升序":
-                    filtered.sort(Comparator.comparing(ImageFileItem::getName, String.CASE_INSENSITIVE_ORDER));
-                    break;
-                case "名称降序":
-                    filtered.sort(
-                            Comparator.comparing(ImageFileItem::getName, String.CASE_INSENSITIVE_ORDER).reversed());
-                    break;
-                case "大小升序":
-                    filtered.sort(Comparator.comparingLong((ImageFileItem item) -> item.getFile().length()));
-                    break;
-                case "大小降序":
-                    filtered.sort(Comparator.comparingLong((ImageFileItem item) -> item.getFile().length()).reversed());
-                    break;
-                case "日期升序":
-                    filtered.sort(Comparator.comparingLong((ImageFileItem item) -> item.getFile().lastModified()));
-                    break;
-                case "日期降序":
-                    filtered.sort(
-                            Comparator.comparingLong((ImageFileItem item) -> item.getFile().lastModified()).reversed());
-                    break;
-                default:
-                    break;
+        boolean ascending = sortOpt == null || sortOpt.endsWith("升序");
+        long generation = directoryGeneration;
+        // 图片集合没有变化时不复制快照，排序服务直接使用缓存的排列
+        List<ImageFileItem> snapshot = itemsVersion != sortedItemsVersion
+                ? new ArrayList<>(imageFileItemObservableList) : null;
+        sortedItemsVersion = itemsVersion;
+        long snapshotVersion = itemsVersion;
+        long snapshotMetadataVersion = metadataVersion;
+        Task<List<ImageFileItem>> viewTask = new Task<>() {
+            @Override
+            protected List<ImageFileItem> call() {
+                imageSortService.update(snapshot, snapshotVersion, snapshotMetadataVersion);
+                // 过滤：由编译后的查询选出数据项，再按缓存的排列挑出
+                BitSet selected = query.isEmpty() ? null : imageSortService.select(query, nameIndex);
+                return imageSortService.sort(field, ascending, selected);
+            }
+        };
+        viewTask.setOnSucceeded(e -> {
+            if (!query.getErrors().isEmpty()) {
+                statusLabel.setText("无法识别的搜索条件: " + String.join(" ", query.getErrors()));
+            }
+            finishViewUpdate(generation, viewTask.getValue());
+        });
+        viewTask.setOnFailed(e -> {
+            logger.error("Failed to filter and sort images.", viewTask.getException());
+            sortedItemsVersion = -1;
+            finishViewUpdate(generation, null);
+        });
+        taskScheduler.submit(viewTask, WorkClass.VIEW_UPDATE, Priority.VISIBLE_THUMBNAIL);
+    }
+
+    private void finishViewUpdate(long generation, List<ImageFileItem> sorted) {
+        viewUpdateRunning = false;
+        if (sorted != null && generation == directoryGeneration) {
+            // 目录项在前，图片在后；跳过计算期间已被移除的图片
+            List<Object> gridItems = new ArrayList<>(currentSubDirectories.size() + sorted.size());
+            gridItems.addAll(currentSubDirectories);
+            for (ImageFileItem item : sorted) {
+                if (itemsByFile.get(item.getFile()) == item) {
+                    gridItems.add(item);
+                }
             }
+            imagePreviewPane.updateItems(gridItems);
         }
-        // 添加缩略图
-        for (ImageFileItem item : filtered) {
-            createAndAddThumbnailNode(item);
+        if (viewUpdatePending) {
+            runViewUpdate();
         }
     }
+
+    private SortField selectedSortField() {
+        String sortOpt = sortComboBox.getSelectionModel().getSelectedItem();
+        SortField field = sortOpt == null ? null : SORT_FIELDS.get(sortOpt.substring(0, sortOpt.length() - 2));
+        return field != null ? field : SortField.NAME;
+    }
 }
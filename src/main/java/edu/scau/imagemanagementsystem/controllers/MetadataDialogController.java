@@ -1,48 +1,214 @@
 package edu.scau.imagemanagementsystem.controllers;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 
-import com.drew.imaging.ImageMetadataReader;
-import com.drew.metadata.Directory;
-import com.drew.metadata.Metadata;
-import com.drew.metadata.Tag;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-import edu.scau.imagemanagementsystem.utils.UiUtils;
+import edu.scau.imagemanagementsystem.model.MetadataTag;
+import edu.scau.imagemanagementsystem.services.MetadataService;
+import edu.scau.imagemanagementsystem.services.TaskSchedulerService;
+import edu.scau.imagemanagementsystem.services.TaskSchedulerService.Priority;
+import edu.scau.imagemanagementsystem.services.TaskSchedulerService.WorkClass;
+import javafx.beans.property.ReadOnlyStringWrapper;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import javafx.collections.transformation.FilteredList;
+import javafx.concurrent.Task;
 import javafx.fxml.FXML;
-import javafx.scene.control.TextArea;
+import javafx.scene.control.CheckBox;
+import javafx.scene.control.Label;
+import javafx.scene.control.ProgressIndicator;
+import javafx.scene.control.TableColumn;
+import javafx.scene.control.TableRow;
+import javafx.scene.control.TableView;
 import javafx.stage.Stage;
 
+/**
+ * 元数据查看窗口：显示一张图片的全部元数据标签，或并排比较多张图片的元数据。
+ * <p>
+ * 每张图片的元数据由一个后台任务读取，全部读完后一起显示，窗口关闭时取消读取。比较多张图片时，各图片取值不同的字段被高亮，并可以只显示这些字段。
+ */
 public class MetadataDialogController {
+    private static final Logger logger = LoggerFactory.getLogger(MetadataDialogController.class);
 
+    // 比较模式下每张图片一列的宽度
+    private static final double VALUE_COLUMN_WIDTH = 200;
+    private static final double MAX_TABLE_WIDTH = 1200;
+
+    @FXML
+    private Label statusLabel;
+    @FXML
+    private ProgressIndicator progressIndicator;
+    @FXML
+    private CheckBox differencesOnlyCheckBox;
+    @FXML
+    private TableView<FieldRow> metadataTable;
     @FXML
-    private TextArea allMetadataArea;
+    private TableColumn<FieldRow, String> directoryColumn;
+    @FXML
+    private TableColumn<FieldRow, String> nameColumn;
+
+    private final MetadataService metadataService = new MetadataService();
+    private final TaskSchedulerService taskScheduler = TaskSchedulerService.getInstance();
+    private final ObservableList<FieldRow> rows = FXCollections.observableArrayList();
+    private final FilteredList<FieldRow> visibleRows = new FilteredList<>(rows);
 
-    private File imageFile;
+    private List<File> imageFiles;
+    private final List<Task<List<MetadataTag>>> loadTasks = new ArrayList<>();
+    // 与 imageFiles 一一对应的读取结果，无法读取的图片为 null
+    private List<List<MetadataTag>> loadedTags;
+    private int loadedCount;
+
+    @FXML
+    private void initialize() {
+        directoryColumn.setCellValueFactory(data -> new ReadOnlyStringWrapper(data.getValue().directory));
+        nameColumn.setCellValueFactory(data -> new ReadOnlyStringWrapper(data.getValue().name));
+        metadataTable.setItems(visibleRows);
+        metadataTable.setRowFactory(table -> new TableRow<>() {
+            @Override
+            protected void updateItem(FieldRow row, boolean empty) {
+                super.updateItem(row, empty);
+                getStyleClass().remove("metadata-different");
+                if (!empty && row != null && row.different) {
+                    getStyleClass().add("metadata-different");
+                }
+            }
+        });
+        differencesOnlyCheckBox.selectedProperty().addListener((obs, old, ne) -> visibleRows
+                .setPredicate(ne ? row -> row.different : null));
+    }
 
-    public void initializeData(File file) {
-        this.imageFile = file;
+    /**
+     * @param files 要查看的图片；多于一张时并排比较
+     */
+    public void initializeData(List<File> files) {
+        this.imageFiles = List.copyOf(files);
+        boolean comparing = imageFiles.size() > 1;
+        for (int i = 0; i < imageFiles.size(); i++) {
+            int fileIndex = i;
+            TableColumn<FieldRow, String> column = new TableColumn<>(comparing ? imageFiles.get(i).getName() : "值");
+            column.setPrefWidth(comparing ? VALUE_COLUMN_WIDTH : 260);
+            column.setCellValueFactory(data -> new ReadOnlyStringWrapper(data.getValue().values[fileIndex]));
+            metadataTable.getColumns().add(column);
+        }
+        if (comparing) {
+            differencesOnlyCheckBox.setVisible(true);
+            differencesOnlyCheckBox.setManaged(true);
+            double width = directoryColumn.getPrefWidth() + nameColumn.getPrefWidth()
+                    + VALUE_COLUMN_WIDTH * imageFiles.size();
+            metadataTable.setPrefWidth(Math.min(MAX_TABLE_WIDTH, width));
+        }
         loadMetadata();
     }
 
     private void loadMetadata() {
-        try {
-            Metadata metadata = ImageMetadataReader.readMetadata(imageFile);
-            StringBuilder sb = new StringBuilder();
-            for (Directory dir : metadata.getDirectories()) {
-                sb.append("[").append(dir.getName()).append("]\n");
-                for (Tag tag : dir.getTags()) {
-                    sb.append(tag.getTagName()).append(" = ").append(tag.getDescription()).append("\n");
-                }
-                sb.append("\n");
+        loadedTags = new ArrayList<>(Collections.nCopies(imageFiles.size(), null));
+        for (int i = 0; i < imageFiles.size(); i++) {
+            int index = i;
+            File file = imageFiles.get(i);
+            Task<List<MetadataTag>> task = metadataService.readAllTagsAsync(file);
+            task.setOnSucceeded(event -> {
+                loadedTags.set(index, task.getValue());
+                fileLoaded();
+            });
+            task.setOnFailed(event -> {
+                logger.warn("Failed to read metadata of {}", file, task.getException());
+                fileLoaded();
+            });
+            loadTasks.add(task);
+            taskScheduler.submit(task, WorkClass.METADATA, Priority.VISIBLE_THUMBNAIL);
+        }
+    }
+
+    private void fileLoaded() {
+        loadedCount++;
+        progressIndicator.setProgress((double) loadedCount / imageFiles.size());
+        if (loadedCount == imageFiles.size()) {
+            showMetadata(loadedTags);
+        }
+    }
+
+    /**
+     * 把各图片的标签合并成表格的行：同一目录中的同名标签占一行，按第一次出现的顺序排列。
+     */
+    private void showMetadata(List<List<MetadataTag>> tagsPerFile) {
+        int fileCount = imageFiles.size();
+        Map<String, FieldRow> rowsByKey = new LinkedHashMap<>();
+        List<String> unreadable = new ArrayList<>();
+        for (int i = 0; i < fileCount; i++) {
+            List<MetadataTag> tags = tagsPerFile.get(i);
+            if (tags == null) {
+                unreadable.add(imageFiles.get(i).getName());
+                continue;
+            }
+            for (MetadataTag tag : tags) {
+                FieldRow row = rowsByKey.computeIfAbsent(tag.getDirectory() + '\0' + tag.getName(),
+                        key -> new FieldRow(tag.getDirectory(), tag.getName(), fileCount));
+                String value = tag.getDescription();
+                row.values[i] = row.values[i] == null ? value : row.values[i] + "; " + value;
+            }
+        }
+        int differentCount = 0;
+        for (FieldRow row : rowsByKey.values()) {
+            for (int i = 1; i < fileCount && !row.different; i++) {
+                row.different = !Objects.equals(row.values[0], row.values[i]);
+            }
+            if (row.different) {
+                differentCount++;
+            }
+        }
+        rows.setAll(rowsByKey.values());
+
+        progressIndicator.setVisible(false);
+        progressIndicator.setManaged(false);
+        StringBuilder status = new StringBuilder();
+        status.append(rows.size()).append(" 个字段");
+        if (fileCount > 1) {
+            status.append("，").append(differentCount).append(" 个字段不同");
+        }
+        if (!unreadable.isEmpty()) {
+            status.append("；无法读取: ").append(String.join(", ", unreadable));
+        }
+        statusLabel.setText(status.toString());
+    }
+
+    /**
+     * 取消尚未完成的读取，在窗口关闭时调用。
+     */
+    public void shutdown() {
+        for (Task<List<MetadataTag>> task : loadTasks) {
+            if (!task.isDone()) {
+                task.cancel();
             }
-            allMetadataArea.setText(sb.toString());
-        } catch (Exception e) {
-            UiUtils.showErrorDialog("错误", "无法读取元数据", e.getMessage());
         }
     }
 
     @FXML
     private void handleCancel() {
-        ((Stage) allMetadataArea.getScene().getWindow()).close();
+        shutdown();
+        ((Stage) metadataTable.getScene().getWindow()).close();
+    }
+
+    /**
+     * 表格中的一行：一个标签在各图片中的取值。
+     */
+    private static class FieldRow {
+        private final String directory;
+        private final String name;
+        private final String[] values;
+        private boolean different;
+
+        FieldRow(String directory, String name, int fileCount) {
+            this.directory = directory;
+            this.name = name;
+            this.values = new String[fileCount];
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,320 @@
+package edu.scau.imagemanagementsystem.controllers;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.scau.imagemanagementsystem.model.SimilarImageGroup;
+import edu.scau.imagemanagementsystem.services.FileOperationService;
+import edu.scau.imagemanagementsystem.services.ImageLoadService;
+import edu.scau.imagemanagementsystem.services.TaskSchedulerService;
+import edu.scau.imagemanagementsystem.services.TaskSchedulerService.Priority;
+import edu.scau.imagemanagementsystem.services.TaskSchedulerService.WorkClass;
+import edu.scau.imagemanagementsystem.utils.FileUtils;
+import edu.scau.imagemanagementsystem.utils.UiUtils;
+import javafx.beans.property.BooleanProperty;
+import javafx.beans.property.SimpleBooleanProperty;
+import javafx.concurrent.Task;
+import javafx.fxml.FXML;
+import javafx.geometry.Pos;
+import javafx.scene.control.Button;
+import javafx.scene.control.ButtonType;
+import javafx.scene.control.CheckBox;
+import javafx.scene.control.Label;
+import javafx.scene.control.Tooltip;
+import javafx.scene.control.TreeCell;
+import javafx.scene.control.TreeItem;
+import javafx.scene.control.TreeView;
+import javafx.scene.image.Image;
+import javafx.scene.image.ImageView;
+import javafx.scene.layout.HBox;
+import javafx.stage.Stage;
+
+/**
+ * 相似图片窗口：按组列出看起来相似的图片及其缩略图，勾选要删除的文件后通过 {@link FileOperationService} 删除。
+ * <p>
+ * 每组的第一张图片是比较的基准，其余图片显示与它的感知哈希距离。与重复图片窗口一样，每组至少保留一张图片。
+ */
+public class SimilarImagesDialogController {
+    private static final Logger logger = LoggerFactory.getLogger(SimilarImagesDialogController.class);
+
+    // 列表中缩略图的显示尺寸
+    private static final double PREVIEW_SIZE = 64;
+
+    @FXML
+    private Label summaryLabel;
+    @FXML
+    private TreeView<Object> similarTree;
+    @FXML
+    private Button deleteButton;
+
+    private final TaskSchedulerService taskScheduler = TaskSchedulerService.getInstance();
+    private final ImageLoadService imageLoadService = new ImageLoadService();
+    private FileOperationService fileOperationService;
+    private List<SimilarImageGroup> groups = new ArrayList<>();
+    private double thumbnailWidth;
+    private double thumbnailHeight;
+    // 每个文件是否被勾选删除
+    private final Map<File, BooleanProperty> marked = new HashMap<>();
+    // 批量修改勾选状态时暂停更新摘要，修改完成后只更新一次
+    private boolean bulkUpdating;
+    // 已加载或正在加载的缩略图；正在加载时值为 null
+    private final Map<File, Image> thumbnails = new HashMap<>();
+    private final List<Task<Image>> thumbnailTasks = new ArrayList<>();
+
+    @FXML
+    private void initialize() {
+        similarTree.setRoot(new TreeItem<>());
+        similarTree.setCellFactory(tree -> new SimilarImageCell());
+    }
+
+    /**
+     * @param groups               相似图片的分组
+     * @param fileOperationService 用于删除文件的服务，删除结果会通过它报告给主窗口
+     * @param thumbnailWidth       网格中的缩略图宽度，用同样的尺寸加载缩略图以命中缓存
+     * @param thumbnailHeight      网格中的缩略图高度
+     */
+    public void initializeData(List<SimilarImageGroup> groups, FileOperationService fileOperationService,
+            double thumbnailWidth, double thumbnailHeight) {
+        this.groups = new ArrayList<>(groups);
+        this.fileOperationService = fileOperationService;
+        this.thumbnailWidth = thumbnailWidth;
+        this.thumbnailHeight = thumbnailHeight;
+        rebuildTree();
+    }
+
+    private void rebuildTree() {
+        marked.clear();
+        TreeItem<Object> root = similarTree.getRoot();
+        root.getChildren().clear();
+        for (SimilarImageGroup group : groups) {
+            TreeItem<Object> groupItem = new TreeItem<>(group);
+            groupItem.setExpanded(true);
+            List<File> files = group.getFiles();
+            for (int i = 0; i < files.size(); i++) {
+                File file = files.get(i);
+                BooleanProperty property = new SimpleBooleanProperty(false);
+                property.addListener((obs, old, ne) -> {
+                    if (!bulkUpdating) {
+                        updateSummary();
+                    }
+                });
+                marked.put(file, property);
+                groupItem.getChildren().add(new TreeItem<>(new Member(group, i)));
+            }
+            root.getChildren().add(groupItem);
+        }
+        updateSummary();
+    }
+
+    private void updateSummary() {
+        long imageCount = 0;
+        long markedFiles = 0;
+        long markedBytes = 0;
+        for (SimilarImageGroup group : groups) {
+            List<File> files = group.getFiles();
+            imageCount += files.size();
+            for (int i = 0; i < files.size(); i++) {
+                if (marked.get(files.get(i)).get()) {
+                    markedFiles++;
+                    markedBytes += group.getSize(i);
+                }
+            }
+        }
+        if (groups.isEmpty()) {
+            summaryLabel.setText("没有找到相似的图片。");
+        } else {
+            summaryLabel.setText(String.format("找到 %,d 组相似的图片，共 %,d 张。已选中 %,d 个文件 (%s)。", groups.size(),
+                    imageCount, markedFiles, FileUtils.formatFileSize(markedBytes)));
+        }
+        deleteButton.setDisable(markedFiles == 0);
+    }
+
+    /**
+     * 返回已经加载的缩略图；还没有加载时在后台开始加载，完成后刷新列表。
+     */
+    private Image getThumbnail(File file) {
+        if (thumbnails.containsKey(file)) {
+            return thumbnails.get(file);
+        }
+        thumbnails.put(file, null);
+        Task<Image> task = imageLoadService.loadThumbnailAsync(file, thumbnailWidth, thumbnailHeight);
+        thumbnailTasks.add(task);
+        task.setOnSucceeded(e -> {
+            thumbnailTasks.remove(task);
+            thumbnails.put(file, task.getValue());
+            similarTree.refresh();
+        });
+        task.setOnFailed(e -> {
+            thumbnailTasks.remove(task);
+            logger.debug("Failed to load thumbnail of {}", file, task.getException());
+        });
+        taskScheduler.submit(task, WorkClass.THUMBNAIL_DECODE, Priority.VISIBLE_THUMBNAIL);
+        return null;
+    }
+
+    @FXML
+    private void handleSelectRedundant() {
+        bulkUpdating = true;
+        for (SimilarImageGroup group : groups) {
+            List<File> files = group.getFiles();
+            for (int i = 0; i < files.size(); i++) {
+                marked.get(files.get(i)).set(i > 0);
+            }
+        }
+        bulkUpdating = false;
+        updateSummary();
+    }
+
+    @FXML
+    private void handleClearSelection() {
+        bulkUpdating = true;
+        marked.values().forEach(property -> property.set(false));
+        bulkUpdating = false;
+        updateSummary();
+    }
+
+    @FXML
+    private void handleDeleteMarked() {
+        List<File> filesToDelete = new ArrayList<>();
+        for (SimilarImageGroup group : groups) {
+            int markedInGroup = 0;
+            for (File file : group.getFiles()) {
+                if (marked.get(file).get()) {
+                    filesToDelete.add(file);
+                    markedInGroup++;
+                }
+            }
+            if (markedInGroup == group.getFiles().size()) {
+                UiUtils.showErrorDialog("无法删除", "每组相似的图片至少要保留一张。",
+                        "以下图片全部被选中：" + group.getFiles().get(0).getName() + " 等 " + markedInGroup + " 张图片。");
+                return;
+            }
+        }
+        if (filesToDelete.isEmpty()) {
+            return;
+        }
+        Optional<ButtonType> result = UiUtils.showConfirmationDialog("确认删除",
+                "确定要删除选中的 " + filesToDelete.size() + " 张图片吗?", "此操作无法撤销。");
+        if (result.isEmpty() || result.get() != ButtonType.OK) {
+            return;
+        }
+        deleteButton.setDisable(true);
+        Task<Boolean> deleteTask = fileOperationService.deleteFilesAsync(filesToDelete);
+        deleteTask.setOnSucceeded(e -> {
+            if (!deleteTask.getValue()) {
+                UiUtils.showErrorDialog("删除失败", "部分文件删除失败。", "请检查文件权限或文件是否被占用。");
+            }
+            logger.info("Deleted similar images: {} files requested.", filesToDelete.size());
+            removeDeletedFiles();
+        });
+        deleteTask.setOnFailed(e -> {
+            Throwable ex = deleteTask.getException();
+            UiUtils.showErrorDialog("删除错误", "删除操作执行失败。", ex != null ? ex.getMessage() : "");
+            removeDeletedFiles();
+        });
+        taskScheduler.submit(deleteTask, WorkClass.FILE_OPERATION, Priority.BACKGROUND);
+    }
+
+    /**
+     * 从分组中去掉已经不存在的文件，只剩一张图片的组不再显示。
+     */
+    private void removeDeletedFiles() {
+        List<SimilarImageGroup> remaining = new ArrayList<>();
+        for (SimilarImageGroup group : groups) {
+            SimilarImageGroup existing = group.retain(File::exists);
+            if (existing.getFiles().size() > 1) {
+                remaining.add(existing);
+            }
+        }
+        groups = remaining;
+        rebuildTree();
+    }
+
+    /**
+     * 取消尚未完成的缩略图加载，在窗口关闭时调用。
+     */
+    public void shutdown() {
+        for (Task<Image> task : new ArrayList<>(thumbnailTasks)) {
+            task.cancel();
+        }
+        thumbnailTasks.clear();
+    }
+
+    @FXML
+    private void handleClose() {
+        ((Stage) similarTree.getScene().getWindow()).close();
+    }
+
+    /**
+     * 树中的一张图片：所在的组和在组内的位置。
+     */
+    private static class Member {
+        private final SimilarImageGroup group;
+        private final int index;
+
+        Member(SimilarImageGroup group, int index) {
+            this.group = group;
+            this.index = index;
+        }
+
+        File getFile() {
+            return group.getFiles().get(index);
+        }
+    }
+
+    /**
+     * 组显示为标题，图片显示为复选框、缩略图和说明。
+     */
+    private class SimilarImageCell extends TreeCell<Object> {
+        private final CheckBox checkBox = new CheckBox();
+        private final ImageView preview = new ImageView();
+        private final HBox graphic = new HBox(8, checkBox, preview);
+        private BooleanProperty boundProperty;
+
+        SimilarImageCell() {
+            preview.setFitWidth(PREVIEW_SIZE);
+            preview.setFitHeight(PREVIEW_SIZE);
+            preview.setPreserveRatio(true);
+            graphic.setMinHeight(PREVIEW_SIZE);
+            graphic.setAlignment(Pos.CENTER_LEFT);
+        }
+
+        @Override
+        protected void updateItem(Object item, boolean empty) {
+            super.updateItem(item, empty);
+            if (boundProperty != null) {
+                checkBox.selectedProperty().unbindBidirectional(boundProperty);
+                boundProperty = null;
+            }
+            setTooltip(null);
+            if (empty || item == null) {
+                setText(null);
+                setGraphic(null);
+            } else if (item instanceof SimilarImageGroup) {
+                setText(((SimilarImageGroup) item).getFiles().size() + " 张相似的图片");
+                setGraphic(null);
+            } else {
+                Member member = (Member) item;
+                File file = member.getFile();
+                boundProperty = marked.get(file);
+                if (boundProperty != null) {
+                    checkBox.selectedProperty().bindBidirectional(boundProperty);
+                }
+                preview.setImage(getThumbnail(file));
+                String similarity = member.index == 0 ? "基准"
+                        : "差异 " + member.group.getDistance(member.index) + " 位";
+                setText(file.getName() + "\n" + similarity + " · "
+                        + FileUtils.formatFileSize(member.group.getSize(member.index)) + " · " + file.getParent());
+                setTooltip(new Tooltip(file.getPath()));
+                setGraphic(graphic);
+            }
+        }
+    }
+}
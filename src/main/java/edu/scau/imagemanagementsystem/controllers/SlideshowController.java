@@ -1,16 +1,20 @@
 package edu.scau.imagemanagementsystem.controllers;
 
 import java.util.List;
+import java.util.stream.Collectors;
 
+import edu.scau.imagemanagementsystem.controls.DeepZoomView;
 import edu.scau.imagemanagementsystem.model.ImageFileItem;
 import edu.scau.imagemanagementsystem.services.ImageLoadService;
+import edu.scau.imagemanagementsystem.services.SlideshowPrefetchService;
 import edu.scau.imagemanagementsystem.utils.UiUtils;
 import javafx.animation.KeyFrame;
+import javafx.animation.PauseTransition;
 import javafx.animation.Timeline;
-import javafx.concurrent.Task;
 import javafx.fxml.FXML;
 import javafx.scene.control.Button;
 import javafx.scene.control.Label;
+import javafx.scene.control.ToggleButton;
 import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
 import javafx.scene.input.KeyCode;
@@ -41,13 +45,26 @@ public class SlideshowController {
     private Button zoomOutButton;
     @FXML
     private Label imageInfoLabel;
+    @FXML
+    private DeepZoomView deepZoomView;
+    @FXML
+    private ToggleButton deepZoomToggle;
 
     private List<ImageFileItem> imagesToShow;
     private int currentIndex;
     private ImageLoadService imageLoadService;
+    private SlideshowPrefetchService prefetchService;
     private Timeline slideshowTimeline;
     private boolean isPlaying = false;
+    // 自动播放时下一张图片尚未解码完成，时间轴暂停等待
+    private boolean waitingForNextImage = false;
     private static final double ZOOM_FACTOR = 1.1;
+    // 按需重新解码时的最大边长，避免放大时把超大图片完整解码到内存
+    private static final double MAX_DECODE_SIZE = 8192;
+    // 当前显示的图片索引，用于区分切换图片与同一张图片的重新解码
+    private int displayedIndex = -1;
+    // 窗口尺寸变化停止后再按新的显示尺寸检查分辨率
+    private final PauseTransition resizeDebounce = new PauseTransition(Duration.millis(250));
 
     public void initializeData(List<ImageFileItem> images, ImageFileItem startImage) {
         this.imagesToShow = images;
@@ -57,13 +74,25 @@ public class SlideshowController {
             this.currentIndex = 0;
         }
         this.imageLoadService = new ImageLoadService();
+        this.prefetchService = new SlideshowPrefetchService(imageLoadService,
+                images.stream().map(ImageFileItem::getFile).collect(Collectors.toList()));
+        prefetchService.setOnImageLoaded(this::onImageLoaded);
+        prefetchService.setOnImageFailed(this::onImageFailed);
         setupSlideshowTimeline();
-        loadImageAtIndex(currentIndex);
+        loadImageAtIndex(currentIndex, 1);
         updateButtonStates();
     }
 
     @FXML
     public void initialize() {
+        resizeDebounce.setOnFinished(event -> {
+            if (prefetchService != null) {
+                updateTargetSize();
+                ensureCurrentResolution();
+            }
+        });
+        slideshowImageView.fitWidthProperty().addListener(obs -> resizeDebounce.playFromStart());
+        slideshowImageView.fitHeightProperty().addListener(obs -> resizeDebounce.playFromStart());
         slideshowImageView.sceneProperty().addListener((obs, oldScene, newScene) -> {
             if (newScene != null) {
                 // 处理键盘按键事件
@@ -129,7 +158,7 @@ public class SlideshowController {
             return;
         if (currentIndex > 0) {
             currentIndex--;
-            loadImageAtIndex(currentIndex);
+            loadImageAtIndex(currentIndex, -1);
         }
         updateButtonStates();
     }
@@ -139,7 +168,7 @@ public class SlideshowController {
             return;
         if (currentIndex < imagesToShow.size() - 1) {
             currentIndex++;
-            loadImageAtIndex(currentIndex);
+            loadImageAtIndex(currentIndex, 1);
         } else {
             // 如果是最后一张，并且正在播放，则停止播放
             if (isPlaying) {
@@ -153,8 +182,14 @@ public class SlideshowController {
         if (imagesToShow == null || imagesToShow.isEmpty())
             return;
         if (currentIndex < imagesToShow.size() - 1) {
+            if (!prefetchService.isLoaded(currentIndex + 1)) {
+                // 不切换到尚未解码完成的图片，解码完成后再继续播放
+                waitingForNextImage = true;
+                slideshowTimeline.pause();
+                return;
+            }
             currentIndex++;
-            loadImageAtIndex(currentIndex);
+            loadImageAtIndex(currentIndex, 1);
         } else {
             // 自动播放到最后一张时，停止时间轴并更新按钮状态
             slideshowTimeline.stop();
@@ -170,47 +205,80 @@ public class SlideshowController {
             return;
         if (isPlaying) {
             slideshowTimeline.pause();
+            waitingForNextImage = false;
             playPauseButton.setText("播放");
         } else {
             slideshowTimeline.play();
             playPauseButton.setText("暂停");
             if (currentIndex == imagesToShow.size() - 1) {
                 // 如果当前是最后一张图片，并且用户点击播放，则从头开始播放
-                currentIndex = -1; // showNextImageAutomatic会将其增加到0
-                showNextImageAutomatic();
+                currentIndex = 0;
+                loadImageAtIndex(currentIndex, 1);
             }
         }
         isPlaying = !isPlaying;
     }
 
+    /**
+     * 切换深度缩放模式：以瓦片方式显示当前图片的原始分辨率，支持拖动平移。
+     */
+    @FXML
+    private void handleDeepZoomToggle() {
+        boolean enabled = deepZoomToggle.isSelected();
+        deepZoomView.setVisible(enabled);
+        slideshowImageView.setVisible(!enabled);
+        if (enabled) {
+            ImageFileItem item = currentIndex >= 0 && currentIndex < imagesToShow.size()
+                    ? imagesToShow.get(currentIndex)
+                    : null;
+            deepZoomView.setImageFile(item != null ? item.getFile() : null);
+        } else {
+            // 退出时释放瓦片缓存
+            deepZoomView.setImageFile(null);
+        }
+    }
+
     @FXML
     private void handleZoomIn() {
+        if (deepZoomToggle.isSelected()) {
+            deepZoomView.zoomBy(ZOOM_FACTOR);
+            return;
+        }
         slideshowImageView.setScaleX(slideshowImageView.getScaleX() * ZOOM_FACTOR);
         slideshowImageView.setScaleY(slideshowImageView.getScaleY() * ZOOM_FACTOR);
+        ensureCurrentResolution();
     }
 
     @FXML
     private void handleZoomOut() {
+        if (deepZoomToggle.isSelected()) {
+            deepZoomView.zoomBy(1 / ZOOM_FACTOR);
+            return;
+        }
         slideshowImageView.setScaleX(slideshowImageView.getScaleX() / ZOOM_FACTOR);
         slideshowImageView.setScaleY(slideshowImageView.getScaleY() / ZOOM_FACTOR);
     }
 
-    private void loadImageAtIndex(int index) {
+    /**
+     * 显示指定索引的图片，并将预取窗口移动到该索引。
+     *
+     * @param index     图片索引
+     * @param direction 浏览方向，1 为向后，-1 为向前
+     */
+    private void loadImageAtIndex(int index, int direction) {
         if (index >= 0 && index < imagesToShow.size()) {
             ImageFileItem item = imagesToShow.get(index);
+            updateTargetSize();
+            prefetchService.moveTo(index, direction);
+            if (deepZoomToggle.isSelected()) {
+                deepZoomView.setImageFile(item.getFile());
+            }
             if (item.getFile() != null && item.getFile().exists()) {
-                Task<Image> loadTask = imageLoadService.loadImageAsync(item.getFile());
-                loadTask.setOnSucceeded(event -> {
-                    slideshowImageView.setImage(loadTask.getValue());
-                    slideshowImageView.setScaleX(1.0);
-                    slideshowImageView.setScaleY(1.0);
-                });
-                loadTask.setOnFailed(event -> {
-                    UiUtils.showErrorDialog("错误", "无法加载图片", item.getName(), (Exception) loadTask.getException());
-                    slideshowImageView.setImage(null);
-                });
-                new Thread(loadTask).start();
                 updateImageInfoLabel(item, index);
+                if (prefetchService.isLoaded(index)) {
+                    showImage(index, prefetchService.getImage(index));
+                }
+                // 否则解码完成后由 onImageLoaded 显示
             } else {
                 UiUtils.showErrorDialog("错误", "图片文件不存在", item.getName());
                 slideshowImageView.setImage(null);
@@ -222,6 +290,77 @@ public class SlideshowController {
         }
     }
 
+    private void showImage(int index, Image image) {
+        slideshowImageView.setImage(image);
+        if (index != displayedIndex) {
+            // 切换到另一张图片时复位缩放；同一张图片换成更高分辨率的版本时保持缩放
+            displayedIndex = index;
+            slideshowImageView.setScaleX(1.0);
+            slideshowImageView.setScaleY(1.0);
+        } else {
+            ensureCurrentResolution();
+        }
+    }
+
+    /**
+     * 按图片视图的显示尺寸和屏幕输出缩放比例设置解码尺寸，而不是按原始分辨率解码。
+     */
+    private void updateTargetSize() {
+        double outputScale = getOutputScale();
+        prefetchService.setTargetSize(slideshowImageView.getFitWidth() * outputScale,
+                slideshowImageView.getFitHeight() * outputScale);
+    }
+
+    /**
+     * 放大或窗口变大后，当前位图不足以显示更多细节时重新解码更高分辨率的版本。
+     */
+    private void ensureCurrentResolution() {
+        if (displayedIndex != currentIndex) {
+            return;
+        }
+        double scale = getOutputScale() * Math.max(1.0, slideshowImageView.getScaleX());
+        double width = Math.min(MAX_DECODE_SIZE, slideshowImageView.getFitWidth() * scale);
+        double height = Math.min(MAX_DECODE_SIZE, slideshowImageView.getFitHeight() * scale);
+        prefetchService.ensureResolution(currentIndex, width, height);
+    }
+
+    private double getOutputScale() {
+        if (slideshowImageView.getScene() == null || slideshowImageView.getScene().getWindow() == null) {
+            return 1.0;
+        }
+        return Math.max(slideshowImageView.getScene().getWindow().getOutputScaleX(),
+                slideshowImageView.getScene().getWindow().getOutputScaleY());
+    }
+
+    private void onImageLoaded(int index, Image image) {
+        if (index == currentIndex) {
+            showImage(index, image);
+        } else if (index == currentIndex + 1) {
+            resumeIfWaiting();
+        }
+    }
+
+    private void onImageFailed(int index, Throwable exception) {
+        if (index == currentIndex) {
+            UiUtils.showErrorDialog("错误", "无法加载图片", imagesToShow.get(index).getName(),
+                    exception instanceof Exception ? (Exception) exception : new Exception(exception));
+            slideshowImageView.setImage(null);
+        } else if (index == currentIndex + 1) {
+            resumeIfWaiting();
+        }
+    }
+
+    /**
+     * 下一张图片解码完成后，立即切换并重新开始计时。
+     */
+    private void resumeIfWaiting() {
+        if (waitingForNextImage && isPlaying) {
+            waitingForNextImage = false;
+            showNextImageAutomatic();
+            slideshowTimeline.playFromStart();
+        }
+    }
+
     private void updateImageInfoLabel(ImageFileItem item, int idx) {
         if (item != null && imagesToShow != null && !imagesToShow.isEmpty()) {
             imageInfoLabel.setText(String.format("%s - %d/%d", item.getName(), idx + 1, imagesToShow.size()));
@@ -239,6 +378,7 @@ public class SlideshowController {
             playPauseButton.setDisable(true);
             zoomInButton.setDisable(true);
             zoomOutButton.setDisable(true);
+            deepZoomToggle.setDisable(true);
             return;
         }
         prevButton.setDisable(currentIndex <= 0);
@@ -246,11 +386,17 @@ public class SlideshowController {
         playPauseButton.setDisable(false);
         zoomInButton.setDisable(false);
         zoomOutButton.setDisable(false);
+        deepZoomToggle.setDisable(false);
     }
 
     public void shutdown() {
         if (slideshowTimeline != null) {
             slideshowTimeline.stop();
         }
+        resizeDebounce.stop();
+        deepZoomView.dispose();
+        if (prefetchService != null) {
+            prefetchService.cancelAll();
+        }
     }
 }
\ No newline at end of file
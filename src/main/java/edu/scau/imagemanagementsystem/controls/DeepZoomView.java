@@ -0,0 +1,282 @@
+package edu.scau.imagemanagementsystem.controls;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import edu.scau.imagemanagementsystem.services.ImageTileService;
+import edu.scau.imagemanagementsystem.services.ImageTileService.TileKey;
+import javafx.application.Platform;
+import javafx.concurrent.Task;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.Image;
+import javafx.scene.input.MouseButton;
+import javafx.scene.input.MouseEvent;
+import javafx.scene.input.ScrollEvent;
+import javafx.scene.layout.Region;
+import javafx.scene.paint.Color;
+
+/**
+ * 基于瓦片金字塔的深度缩放视图。
+ * <p>
+ * 只解码与视口相交、且分辨率与当前缩放比例匹配的瓦片；在精细瓦片就绪之前先用已缓存的较粗层级瓦片填充，
+ * 因此可以在很小的内存占用下以 100% 比例查看超大图片。支持鼠标拖动平移、滚轮以鼠标位置为中心缩放、
+ * 双击恢复适应窗口。
+ */
+public final class DeepZoomView extends Region {
+    private static final double MAX_SCALE = 4.0;
+    private static final double WHEEL_ZOOM_FACTOR = 1.2;
+
+    private final Canvas canvas = new Canvas();
+    private final ImageTileService tileService = new ImageTileService();
+
+    private File imageFile;
+    private int imageWidth;
+    private int imageHeight;
+    private int levelCount;
+    // 屏幕像素 / 原图像素
+    private double scale = 1;
+    // 视口中心对应的原图坐标
+    private double centerX;
+    private double centerY;
+    private boolean fitPending;
+    private boolean redrawPending;
+    private double dragStartX;
+    private double dragStartY;
+    private Task<int[]> dimensionsTask;
+
+    public DeepZoomView() {
+        getStyleClass().add("deep-zoom-view");
+        getChildren().add(canvas);
+        tileService.setOnTileLoaded(key -> {
+            if (key.getFile().equals(imageFile)) {
+                scheduleRedraw();
+            }
+        });
+        addEventHandler(MouseEvent.MOUSE_PRESSED, this::handleMousePressed);
+        addEventHandler(MouseEvent.MOUSE_DRAGGED, this::handleMouseDragged);
+        addEventHandler(MouseEvent.MOUSE_CLICKED, event -> {
+            if (event.getButton() == MouseButton.PRIMARY && event.getClickCount() == 2) {
+                fitToView();
+            }
+        });
+        addEventHandler(ScrollEvent.SCROLL, event -> {
+            if (event.getDeltaY() != 0) {
+                zoomBy(event.getDeltaY() > 0 ? WHEEL_ZOOM_FACTOR : 1 / WHEEL_ZOOM_FACTOR, event.getX(), event.getY());
+            }
+            event.consume();
+        });
+    }
+
+    /**
+     * 设置要显示的图片。会先异步读取图片尺寸，然后以适应窗口的比例显示。
+     *
+     * @param file 图片文件，null 表示清空
+     */
+    public void setImageFile(File file) {
+        if (file != null && file.equals(imageFile)) {
+            return;
+        }
+        if (dimensionsTask != null) {
+            dimensionsTask.cancel();
+        }
+        tileService.clear();
+        imageFile = file;
+        imageWidth = 0;
+        imageHeight = 0;
+        redraw();
+        if (file == null) {
+            return;
+        }
+        Task<int[]> task = tileService.readDimensionsAsync(file);
+        dimensionsTask = task;
+        task.setOnSucceeded(event -> {
+            int[] dimensions = task.getValue();
+            if (dimensionsTask != task || dimensions == null) {
+                return;
+            }
+            imageWidth = dimensions[0];
+            imageHeight = dimensions[1];
+            levelCount = ImageTileService.levelCount(imageWidth, imageHeight);
+            fitToView();
+        });
+    }
+
+    /**
+     * 以适应窗口的比例居中显示整幅图片。
+     */
+    public void fitToView() {
+        if (imageWidth <= 0 || imageHeight <= 0) {
+            return;
+        }
+        if (getWidth() <= 0 || getHeight() <= 0) {
+            fitPending = true; // 等待第一次布局
+            return;
+        }
+        scale = Math.min(MAX_SCALE, getFitScale());
+        centerX = imageWidth / 2.0;
+        centerY = imageHeight / 2.0;
+        redraw();
+    }
+
+    /**
+     * 以视口中心为基准缩放。
+     *
+     * @param factor 缩放因子，大于 1 为放大
+     */
+    public void zoomBy(double factor) {
+        zoomBy(factor, getWidth() / 2, getHeight() / 2);
+    }
+
+    /**
+     * 以给定的视口坐标为基准缩放，该点下方的图像位置保持不变。
+     */
+    private void zoomBy(double factor, double pivotX, double pivotY) {
+        if (imageWidth <= 0) {
+            return;
+        }
+        double minScale = Math.min(1, getFitScale()) / 2;
+        double newScale = Math.max(minScale, Math.min(MAX_SCALE, scale * factor));
+        double imageX = centerX + (pivotX - getWidth() / 2) / scale;
+        double imageY = centerY + (pivotY - getHeight() / 2) / scale;
+        centerX = imageX - (pivotX - getWidth() / 2) / newScale;
+        centerY = imageY - (pivotY - getHeight() / 2) / newScale;
+        scale = newScale;
+        clampCenter();
+        redraw();
+    }
+
+    /**
+     * 取消所有瓦片任务并释放瓦片缓存，例如关闭窗口时。
+     */
+    public void dispose() {
+        if (dimensionsTask != null) {
+            dimensionsTask.cancel();
+        }
+        tileService.clear();
+        imageFile = null;
+    }
+
+    private double getFitScale() {
+        return Math.min(getWidth() / imageWidth, getHeight() / imageHeight);
+    }
+
+    private void handleMousePressed(MouseEvent event) {
+        dragStartX = event.getX();
+        dragStartY = event.getY();
+    }
+
+    private void handleMouseDragged(MouseEvent event) {
+        centerX -= (event.getX() - dragStartX) / scale;
+        centerY -= (event.getY() - dragStartY) / scale;
+        dragStartX = event.getX();
+        dragStartY = event.getY();
+        clampCenter();
+        redraw();
+        event.consume();
+    }
+
+    /**
+     * 平移时不允许图片完全离开视口。
+     */
+    private void clampCenter() {
+        centerX = Math.max(0, Math.min(imageWidth, centerX));
+        centerY = Math.max(0, Math.min(imageHeight, centerY));
+    }
+
+    @Override
+    protected void layoutChildren() {
+        double width = getWidth();
+        double height = getHeight();
+        if (canvas.getWidth() != width || canvas.getHeight() != height) {
+            canvas.setWidth(width);
+            canvas.setHeight(height);
+            if (fitPending) {
+                fitPending = false;
+                fitToView();
+            } else {
+                redraw();
+            }
+        }
+    }
+
+    private void scheduleRedraw() {
+        if (!redrawPending) {
+            redrawPending = true;
+            Platform.runLater(() -> {
+                redrawPending = false;
+                redraw();
+            });
+        }
+    }
+
+    private void redraw() {
+        GraphicsContext gc = canvas.getGraphicsContext2D();
+        gc.setFill(Color.rgb(32, 32, 32));
+        gc.fillRect(0, 0, canvas.getWidth(), canvas.getHeight());
+        if (imageFile == null || imageWidth <= 0 || canvas.getWidth() <= 0) {
+            return;
+        }
+        gc.setImageSmoothing(true);
+
+        // 视口在原图坐标中的范围
+        double left = centerX - canvas.getWidth() / 2 / scale;
+        double top = centerY - canvas.getHeight() / 2 / scale;
+        double right = centerX + canvas.getWidth() / 2 / scale;
+        double bottom = centerY + canvas.getHeight() / 2 / scale;
+
+        // 层级的分辨率不低于屏幕所需：每个层级像素至多对应一个屏幕像素
+        int targetLevel = (int) Math.floor(Math.log(1 / scale) / Math.log(2));
+        targetLevel = Math.max(0, Math.min(levelCount - 1, targetLevel));
+        int topLevel = levelCount - 1;
+
+        // 从粗到细绘制已缓存的瓦片，精细瓦片就绪前由较粗的瓦片占位
+        for (int level = topLevel; level >= targetLevel; level--) {
+            for (TileKey key : visibleTiles(level, left, top, right, bottom)) {
+                Image tile = tileService.getTile(key);
+                if (tile != null) {
+                    drawTile(gc, key, tile, left, top);
+                }
+            }
+        }
+
+        // 先请求整幅的最顶层作为底图，再按与视口中心的距离请求当前层级的瓦片
+        List<TileKey> wanted = new ArrayList<>(visibleTiles(topLevel, left, top, right, bottom));
+        List<TileKey> targetTiles = visibleTiles(targetLevel, left, top, right, bottom);
+        double tileSpan = (double) ImageTileService.TILE_SIZE * (1 << targetLevel);
+        targetTiles.sort(Comparator.comparingDouble(key -> Math.hypot(
+                (key.getColumn() + 0.5) * tileSpan - centerX, (key.getRow() + 0.5) * tileSpan - centerY)));
+        for (TileKey key : targetTiles) {
+            if (!wanted.contains(key)) {
+                wanted.add(key);
+            }
+        }
+        tileService.requestTiles(wanted);
+    }
+
+    private List<TileKey> visibleTiles(int level, double left, double top, double right, double bottom) {
+        double tileSpan = (double) ImageTileService.TILE_SIZE * (1 << level);
+        int firstColumn = (int) Math.max(0, Math.floor(left / tileSpan));
+        int firstRow = (int) Math.max(0, Math.floor(top / tileSpan));
+        int lastColumn = (int) Math.min(Math.ceil(imageWidth / tileSpan) - 1, Math.floor(right / tileSpan));
+        int lastRow = (int) Math.min(Math.ceil(imageHeight / tileSpan) - 1, Math.floor(bottom / tileSpan));
+        List<TileKey> tiles = new ArrayList<>();
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                tiles.add(new TileKey(imageFile, imageWidth, imageHeight, level, column, row));
+            }
+        }
+        return tiles;
+    }
+
+    private void drawTile(GraphicsContext gc, TileKey key, Image tile, double left, double top) {
+        double tileSpan = (double) ImageTileService.TILE_SIZE * (1 << key.getLevel());
+        double imageX = key.getColumn() * tileSpan;
+        double imageY = key.getRow() * tileSpan;
+        double width = Math.min(tileSpan, imageWidth - imageX);
+        double height = Math.min(tileSpan, imageHeight - imageY);
+        gc.drawImage(tile, (imageX - left) * scale, (imageY - top) * scale, width * scale, height * scale);
+    }
+}
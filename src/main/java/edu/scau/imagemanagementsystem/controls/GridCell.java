@@ -0,0 +1,35 @@
+package edu.scau.imagemanagementsystem.controls;
+
+import javafx.scene.layout.StackPane;
+
+/**
+ * {@link VirtualGridPane} 中可复用的单元格。
+ * <p>
+ * 与 {@code ListCell} 类似，网格滚动时同一个单元格会被反复用来显示不同的数据项，
+ * 子类应重写 {@link #updateItem(Object, boolean)}，并在其中首先调用父类实现。
+ *
+ * @param <T> 数据项类型
+ */
+public class GridCell<T> extends StackPane {
+    private T item;
+    private boolean empty = true;
+
+    public T getItem() {
+        return item;
+    }
+
+    public boolean isEmpty() {
+        return empty;
+    }
+
+    /**
+     * 更新单元格显示的数据项。
+     *
+     * @param item  新的数据项，单元格被回收时为 null
+     * @param empty 单元格是否为空
+     */
+    protected void updateItem(T item, boolean empty) {
+        this.item = item;
+        this.empty = empty;
+    }
+}
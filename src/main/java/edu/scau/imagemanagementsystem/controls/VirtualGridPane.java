@@ -0,0 +1,336 @@
+package edu.scau.imagemanagementsystem.controls;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javafx.beans.InvalidationListener;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import javafx.geometry.Insets;
+import javafx.scene.Parent;
+import javafx.scene.control.ScrollPane;
+import javafx.scene.layout.Region;
+import javafx.util.Callback;
+
+/**
+ * 虚拟化的网格布局，放置在 {@link ScrollPane} 中使用。
+ * <p>
+ * 所有单元格尺寸相同，列数由可用宽度决定。只为视口中可见的行（加上少量预留行）创建单元格，
+ * 滚动时回收离开视口的单元格来显示新的数据项，因此场景图的大小与数据项总数无关。
+ *
+ * @param <T> 数据项类型
+ */
+public final class VirtualGridPane<T> extends Region {
+    private static final int MAX_POOLED_CELLS = 64;
+
+    private final ObservableList<T> items = FXCollections.observableArrayList();
+    // 正在显示的单元格，以数据项 (按引用) 为键
+    private final Map<T, GridCell<T>> activeCells = new IdentityHashMap<>();
+    private final Deque<GridCell<T>> pooledCells = new ArrayDeque<>();
+    private final InvalidationListener viewportListener = obs -> requestLayout();
+
+    private Callback<VirtualGridPane<T>, GridCell<T>> cellFactory = grid -> new GridCell<>();
+    private double cellWidth = 140;
+    private double cellHeight = 160;
+    private double horizontalGap = 10;
+    private double verticalGap = 10;
+    private int overscanRows = 2;
+    private ScrollPane scrollPane;
+    // 视口内（不含预留行）的数据项索引范围 [firstVisibleIndex, lastVisibleIndex)
+    private int firstVisibleIndex;
+    private int lastVisibleIndex;
+    private boolean itemsChangedSinceNotification = true;
+    private Runnable onViewportChanged;
+
+    public VirtualGridPane() {
+        getStyleClass().add("virtual-grid-pane");
+        setPadding(new Insets(10));
+        items.addListener((InvalidationListener) obs -> {
+            itemsChangedSinceNotification = true;
+            requestLayout();
+        });
+        parentProperty().addListener(obs -> attachToScrollPane());
+    }
+
+    public ObservableList<T> getItems() {
+        return items;
+    }
+
+    /**
+     * 把数据项替换为新的列表，只修改发生变化的部分：跳过首尾相同的数据项，中间不同的区间一次替换。
+     * 列表没有变化时不产生任何修改事件。仍然可见的数据项继续使用原来的单元格，因为单元格按数据项引用复用。
+     *
+     * @param newItems 新的数据项列表
+     */
+    public void updateItems(List<? extends T> newItems) {
+        int oldSize = items.size();
+        int newSize = newItems.size();
+        int prefix = 0;
+        int limit = Math.min(oldSize, newSize);
+        while (prefix < limit && items.get(prefix) == newItems.get(prefix)) {
+            prefix++;
+        }
+        int suffix = 0;
+        while (suffix < limit - prefix
+                && items.get(oldSize - 1 - suffix) == newItems.get(newSize - 1 - suffix)) {
+            suffix++;
+        }
+        if (prefix == oldSize && prefix == newSize) {
+            return;
+        }
+        List<? extends T> inserted = newItems.subList(prefix, newSize - suffix);
+        if (prefix == 0 && suffix == 0) {
+            items.setAll(inserted);
+            return;
+        }
+        if (oldSize - suffix > prefix) {
+            items.remove(prefix, oldSize - suffix);
+        }
+        if (!inserted.isEmpty()) {
+            items.addAll(prefix, inserted);
+        }
+    }
+
+    public void setCellFactory(Callback<VirtualGridPane<T>, GridCell<T>> cellFactory) {
+        this.cellFactory = cellFactory;
+        for (GridCell<T> cell : activeCells.values()) {
+            getChildren().remove(cell);
+        }
+        activeCells.clear();
+        getChildren().removeAll(pooledCells);
+        pooledCells.clear();
+        requestLayout();
+    }
+
+    /**
+     * 设置单元格的固定尺寸。
+     *
+     * @param width  单元格宽度
+     * @param height 单元格高度
+     */
+    public void setCellSize(double width, double height) {
+        this.cellWidth = width;
+        this.cellHeight = height;
+        requestLayout();
+    }
+
+    /**
+     * 设置单元格之间的水平与垂直间距。
+     *
+     * @param horizontalGap 水平间距
+     * @param verticalGap   垂直间距
+     */
+    public void setGaps(double horizontalGap, double verticalGap) {
+        this.horizontalGap = horizontalGap;
+        this.verticalGap = verticalGap;
+        requestLayout();
+    }
+
+    /**
+     * 设置视口上下额外保留的行数，用于减少快速滚动时的空白。
+     *
+     * @param overscanRows 预留行数
+     */
+    public void setOverscanRows(int overscanRows) {
+        this.overscanRows = Math.max(0, overscanRows);
+        requestLayout();
+    }
+
+    /**
+     * 设置视口变化回调。每次布局后，如果视口内的索引范围或数据项发生变化，回调会在 FX 线程上被调用。
+     *
+     * @param onViewportChanged 回调，可以为 null
+     */
+    public void setOnViewportChanged(Runnable onViewportChanged) {
+        this.onViewportChanged = onViewportChanged;
+    }
+
+    /**
+     * 获取视口内第一个数据项的索引（不含预留行）。
+     *
+     * @return 第一个可见数据项的索引
+     */
+    public int getFirstVisibleIndex() {
+        return firstVisibleIndex;
+    }
+
+    /**
+     * 获取视口内最后一个数据项之后的索引（不含预留行）。
+     *
+     * @return 可见范围的结束索引（不包含）
+     */
+    public int getLastVisibleIndex() {
+        return lastVisibleIndex;
+    }
+
+    /**
+     * 使用当前数据项重新更新所有可见单元格，例如在外部状态（高亮等）变化后调用。
+     */
+    public void refresh() {
+        for (Map.Entry<T, GridCell<T>> entry : activeCells.entrySet()) {
+            entry.getValue().updateItem(entry.getKey(), false);
+        }
+    }
+
+    /**
+     * 根据当前宽度计算列数。
+     *
+     * @return 列数，至少为 1
+     */
+    public int getColumnCount() {
+        return columnCountFor(getWidth());
+    }
+
+    private int columnCountFor(double width) {
+        Insets insets = getInsets();
+        double usable = width - insets.getLeft() - insets.getRight();
+        return Math.max(1, (int) Math.floor((usable + horizontalGap) / (cellWidth + horizontalGap)));
+    }
+
+    private int rowCountFor(int columns) {
+        return (items.size() + columns - 1) / columns;
+    }
+
+    @Override
+    protected double computePrefWidth(double height) {
+        Insets insets = getInsets();
+        return insets.getLeft() + insets.getRight() + cellWidth;
+    }
+
+    @Override
+    protected double computePrefHeight(double width) {
+        Insets insets = getInsets();
+        int rows = rowCountFor(columnCountFor(width > 0 ? width : getWidth()));
+        return insets.getTop() + insets.getBottom() + rows * cellHeight + Math.max(0, rows - 1) * verticalGap;
+    }
+
+    @Override
+    protected double computeMinHeight(double width) {
+        // ScrollPane 启用 fitToHeight 时会把内容压缩到最小高度，因此最小高度必须覆盖全部行
+        return computePrefHeight(width);
+    }
+
+    @Override
+    protected void layoutChildren() {
+        if (scrollPane == null) {
+            // ScrollPane 的皮肤可能在本节点加入父节点之后才组装完毕
+            attachToScrollPane();
+        }
+        Insets insets = getInsets();
+        int columns = getColumnCount();
+        int rows = rowCountFor(columns);
+        double rowHeight = cellHeight + verticalGap;
+
+        double viewportTop = 0;
+        double viewportHeight = getHeight();
+        if (scrollPane != null) {
+            viewportHeight = scrollPane.getViewportBounds().getHeight();
+            double scrollable = Math.max(0, getHeight() - viewportHeight);
+            double range = scrollPane.getVmax() - scrollPane.getVmin();
+            if (range > 0) {
+                viewportTop = scrollable * (scrollPane.getVvalue() - scrollPane.getVmin()) / range;
+            }
+        }
+
+        int firstViewportRow = Math.max(0, (int) Math.floor((viewportTop - insets.getTop()) / rowHeight));
+        int lastViewportRow = Math.min(rows - 1,
+                (int) Math.floor((viewportTop + viewportHeight - insets.getTop()) / rowHeight));
+        int firstRow = Math.max(0, firstViewportRow - overscanRows);
+        int lastRow = Math.min(rows - 1, lastViewportRow + overscanRows);
+        int fromIndex = Math.min(items.size(), firstRow * columns);
+        int toIndex = Math.min(items.size(), (lastRow + 1) * columns);
+
+        // 1. 仍在可见范围内的数据项继续使用原来的单元格
+        Map<T, GridCell<T>> previous = new IdentityHashMap<>(activeCells);
+        activeCells.clear();
+        List<Integer> unassigned = new ArrayList<>();
+        for (int index = fromIndex; index < toIndex; index++) {
+            T item = items.get(index);
+            GridCell<T> cell = previous.remove(item);
+            if (cell != null) {
+                activeCells.put(item, cell);
+                positionCell(cell, index, columns, insets, rowHeight);
+            } else {
+                unassigned.add(index);
+            }
+        }
+
+        // 2. 回收离开视口的单元格，用于显示新进入视口的数据项
+        Deque<GridCell<T>> recycled = new ArrayDeque<>(previous.values());
+        for (int index : unassigned) {
+            T item = items.get(index);
+            GridCell<T> cell = !recycled.isEmpty() ? recycled.poll() : obtainCell();
+            cell.updateItem(item, false);
+            cell.setVisible(true);
+            activeCells.put(item, cell);
+            positionCell(cell, index, columns, insets, rowHeight);
+        }
+
+        // 3. 多余的单元格清空后放回池中
+        for (GridCell<T> cell : recycled) {
+            cell.updateItem(null, true);
+            if (pooledCells.size() < MAX_POOLED_CELLS) {
+                cell.setVisible(false);
+                pooledCells.push(cell);
+            } else {
+                getChildren().remove(cell);
+            }
+        }
+
+        int newFirstVisible = Math.min(items.size(), firstViewportRow * columns);
+        int newLastVisible = Math.min(items.size(), (lastViewportRow + 1) * columns);
+        if (itemsChangedSinceNotification || newFirstVisible != firstVisibleIndex
+                || newLastVisible != lastVisibleIndex) {
+            firstVisibleIndex = newFirstVisible;
+            lastVisibleIndex = newLastVisible;
+            itemsChangedSinceNotification = false;
+            if (onViewportChanged != null) {
+                onViewportChanged.run();
+            }
+        }
+    }
+
+    private GridCell<T> obtainCell() {
+        GridCell<T> cell = pooledCells.poll();
+        if (cell == null) {
+            cell = cellFactory.call(this);
+            getChildren().add(cell);
+        }
+        return cell;
+    }
+
+    private void positionCell(GridCell<T> cell, int index, int columns, Insets insets, double rowHeight) {
+        int row = index / columns;
+        int column = index % columns;
+        cell.resizeRelocate(insets.getLeft() + column * (cellWidth + horizontalGap),
+                insets.getTop() + row * rowHeight, cellWidth, cellHeight);
+    }
+
+    private void attachToScrollPane() {
+        ScrollPane found = null;
+        for (Parent parent = getParent(); parent != null; parent = parent.getParent()) {
+            if (parent instanceof ScrollPane) {
+                found = (ScrollPane) parent;
+                break;
+            }
+        }
+        if (found == scrollPane) {
+            return;
+        }
+        if (found == null) {
+            return; // 保留原有绑定，等待下一次布局时再查找
+        }
+        if (scrollPane != null) {
+            scrollPane.vvalueProperty().removeListener(viewportListener);
+            scrollPane.viewportBoundsProperty().removeListener(viewportListener);
+        }
+        scrollPane = found;
+        scrollPane.vvalueProperty().addListener(viewportListener);
+        scrollPane.viewportBoundsProperty().addListener(viewportListener);
+        requestLayout();
+    }
+}
@@ -0,0 +1,110 @@
+package edu.scau.imagemanagementsystem.model;
+
+import java.io.File;
+
+/**
+ * 图片目录库中的一条记录：文件路径、文件属性，以及已经提取过的元数据摘要、磁盘缩略图缓存键和感知哈希。
+ * <p>
+ * 元数据、缩略图缓存键和感知哈希只对记录中的文件版本有效，文件被修改后会被清除。
+ */
+public class CatalogEntry {
+    private final File file; // 图片文件
+    private final long size; // 文件大小（字节）
+    private final long lastModifiedMillis; // 最后修改时间
+    private final long creationTimeMillis; // 创建时间
+    private final ImageMetadataSummary metadata; // 元数据摘要，尚未提取时为 null
+    private final String thumbnailKey; // 磁盘缩略图缓存键，尚未生成时为 null
+    private final Long perceptualHash; // 从缩略图计算的感知哈希，尚未计算时为 null
+
+    /**
+     * 构造一个 CatalogEntry 对象。
+     *
+     * @param file               图片文件
+     * @param size               文件大小（字节）
+     * @param lastModifiedMillis 最后修改时间
+     * @param creationTimeMillis 创建时间
+     * @param metadata           元数据摘要，可以为 null
+     * @param thumbnailKey       磁盘缩略图缓存键，可以为 null
+     * @param perceptualHash     感知哈希，可以为 null
+     */
+    public CatalogEntry(File file, long size, long lastModifiedMillis, long creationTimeMillis,
+            ImageMetadataSummary metadata, String thumbnailKey, Long perceptualHash) {
+        this.file = file;
+        this.size = size;
+        this.lastModifiedMillis = lastModifiedMillis;
+        this.creationTimeMillis = creationTimeMillis;
+        this.metadata = metadata;
+        this.thumbnailKey = thumbnailKey;
+        this.perceptualHash = perceptualHash;
+    }
+
+    /**
+     * 以文件属性快照构造一条尚无元数据的记录。
+     *
+     * @param file       图片文件
+     * @param attributes 文件属性快照
+     */
+    public CatalogEntry(File file, FileAttributes attributes) {
+        this(file, attributes.getSize(), attributes.getLastModifiedMillis(), attributes.getCreationTimeMillis(),
+                null, null, null);
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public long getLastModifiedMillis() {
+        return lastModifiedMillis;
+    }
+
+    public long getCreationTimeMillis() {
+        return creationTimeMillis;
+    }
+
+    public ImageMetadataSummary getMetadata() {
+        return metadata;
+    }
+
+    public String getThumbnailKey() {
+        return thumbnailKey;
+    }
+
+    public Long getPerceptualHash() {
+        return perceptualHash;
+    }
+
+    /**
+     * @return 记录中的文件属性快照
+     */
+    public FileAttributes getAttributes() {
+        return FileAttributes.of(size, lastModifiedMillis, creationTimeMillis);
+    }
+
+    /**
+     * @return 替换了元数据摘要的新记录
+     */
+    public CatalogEntry withMetadata(ImageMetadataSummary metadata) {
+        return new CatalogEntry(file, size, lastModifiedMillis, creationTimeMillis, metadata, thumbnailKey,
+                perceptualHash);
+    }
+
+    /**
+     * @return 替换了磁盘缩略图缓存键的新记录
+     */
+    public CatalogEntry withThumbnailKey(String thumbnailKey) {
+        return new CatalogEntry(file, size, lastModifiedMillis, creationTimeMillis, metadata, thumbnailKey,
+                perceptualHash);
+    }
+
+    /**
+     * @return 替换了感知哈希的新记录
+     */
+    public CatalogEntry withPerceptualHash(Long perceptualHash) {
+        return new CatalogEntry(file, size, lastModifiedMillis, creationTimeMillis, metadata, thumbnailKey,
+                perceptualHash);
+    }
+}
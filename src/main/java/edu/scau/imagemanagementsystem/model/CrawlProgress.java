@@ -0,0 +1,71 @@
+package edu.scau.imagemanagementsystem.model;
+
+/**
+ * 图库扫描的进度快照：累计处理量以及最近一段时间内的速率。
+ */
+public class CrawlProgress {
+    private final boolean running; // 是否仍在扫描
+    private final long directories; // 已处理的目录数
+    private final long files; // 已发现的图片数
+    private final long bytes; // 已发现图片的总字节数
+    private final int pendingDirectories; // 已发现但尚未处理完的目录数
+    private final double directoriesPerSecond; // 最近的目录处理速率
+    private final double filesPerSecond; // 最近的图片发现速率
+    private final double bytesPerSecond; // 最近的字节速率
+
+    /**
+     * 构造一个 CrawlProgress 对象。
+     *
+     * @param running              是否仍在扫描
+     * @param directories          已处理的目录数
+     * @param files                已发现的图片数
+     * @param bytes                已发现图片的总字节数
+     * @param pendingDirectories   尚未处理完的目录数
+     * @param directoriesPerSecond 最近的目录处理速率
+     * @param filesPerSecond       最近的图片发现速率
+     * @param bytesPerSecond       最近的字节速率
+     */
+    public CrawlProgress(boolean running, long directories, long files, long bytes, int pendingDirectories,
+            double directoriesPerSecond, double filesPerSecond, double bytesPerSecond) {
+        this.running = running;
+        this.directories = directories;
+        this.files = files;
+        this.bytes = bytes;
+        this.pendingDirectories = pendingDirectories;
+        this.directoriesPerSecond = directoriesPerSecond;
+        this.filesPerSecond = filesPerSecond;
+        this.bytesPerSecond = bytesPerSecond;
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public long getDirectories() {
+        return directories;
+    }
+
+    public long getFiles() {
+        return files;
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+
+    public int getPendingDirectories() {
+        return pendingDirectories;
+    }
+
+    public double getDirectoriesPerSecond() {
+        return directoriesPerSecond;
+    }
+
+    public double getFilesPerSecond() {
+        return filesPerSecond;
+    }
+
+    public double getBytesPerSecond() {
+        return bytesPerSecond;
+    }
+}
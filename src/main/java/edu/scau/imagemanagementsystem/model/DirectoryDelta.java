@@ -0,0 +1,83 @@
+package edu.scau.imagemanagementsystem.model;
+
+import java.io.File;
+import java.util.List;
+
+/**
+ * 一个目录在一段时间内发生的变化：新建、删除和修改的条目（文件或子目录）。
+ * <p>
+ * 同一路径在合并后只会出现在其中一个列表中。应用变化的一方应当是幂等的：
+ * 新建一个已存在的条目按修改处理，删除一个不存在的条目被忽略。
+ * 如果事件发生了溢出，变化列表不完整，调用方需要重新扫描整个目录。
+ */
+public class DirectoryDelta {
+    private final File directory; // 发生变化的目录
+    private final List<File> created; // 新建的条目
+    private final List<File> deleted; // 删除的条目
+    private final List<File> modified; // 内容或属性被修改的条目
+    private final boolean overflow; // 是否有事件丢失
+
+    /**
+     * 构造一个 DirectoryDelta 对象。
+     *
+     * @param directory 发生变化的目录
+     * @param created   新建的条目
+     * @param deleted   删除的条目
+     * @param modified  内容或属性被修改的条目
+     */
+    public DirectoryDelta(File directory, List<File> created, List<File> deleted, List<File> modified) {
+        this(directory, created, deleted, modified, false);
+    }
+
+    private DirectoryDelta(File directory, List<File> created, List<File> deleted, List<File> modified,
+            boolean overflow) {
+        this.directory = directory;
+        this.created = List.copyOf(created);
+        this.deleted = List.copyOf(deleted);
+        this.modified = List.copyOf(modified);
+        this.overflow = overflow;
+    }
+
+    /**
+     * 构造一个表示事件溢出的变化，接收方需要重新扫描目录。
+     *
+     * @param directory 发生溢出的目录
+     * @return 溢出变化
+     */
+    public static DirectoryDelta overflow(File directory) {
+        return new DirectoryDelta(directory, List.of(), List.of(), List.of(), true);
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    public List<File> getCreated() {
+        return created;
+    }
+
+    public List<File> getDeleted() {
+        return deleted;
+    }
+
+    public List<File> getModified() {
+        return modified;
+    }
+
+    public boolean isOverflow() {
+        return overflow;
+    }
+
+    /**
+     * @return 如果没有任何变化且没有溢出则返回 true
+     */
+    public boolean isEmpty() {
+        return !overflow && created.isEmpty() && deleted.isEmpty() && modified.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return overflow ? "DirectoryDelta[overflow]"
+                : "DirectoryDelta[+" + created.size() + " -" + deleted.size() + " ~" + modified.size() + "]";
+    }
+}
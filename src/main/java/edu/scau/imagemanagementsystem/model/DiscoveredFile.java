@@ -0,0 +1,31 @@
+package edu.scau.imagemanagementsystem.model;
+
+import java.io.File;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * 目录扫描时发现的文件，以及扫描时一并读取的文件属性。
+ */
+public class DiscoveredFile {
+    private final File file; // 发现的文件
+    private final BasicFileAttributes attributes; // 扫描时读取的文件属性
+
+    /**
+     * 构造一个 DiscoveredFile 对象。
+     *
+     * @param file       发现的文件
+     * @param attributes 扫描时读取的文件属性
+     */
+    public DiscoveredFile(File file, BasicFileAttributes attributes) {
+        this.file = file;
+        this.attributes = attributes;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public BasicFileAttributes getAttributes() {
+        return attributes;
+    }
+}
@@ -0,0 +1,38 @@
+package edu.scau.imagemanagementsystem.model;
+
+import java.io.File;
+import java.util.List;
+
+/**
+ * 一组内容完全相同的文件。
+ */
+public class DuplicateGroup {
+    private final long size; // 每个文件的大小（字节）
+    private final List<File> files; // 组内的文件，按路径排列
+
+    /**
+     * 构造一个 DuplicateGroup 对象。
+     *
+     * @param size  每个文件的大小（字节）
+     * @param files 组内的文件，至少两个
+     */
+    public DuplicateGroup(long size, List<File> files) {
+        this.size = size;
+        this.files = List.copyOf(files);
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public List<File> getFiles() {
+        return files;
+    }
+
+    /**
+     * @return 每组只保留一个文件时可以释放的字节数
+     */
+    public long getRedundantBytes() {
+        return size * (files.size() - 1);
+    }
+}
@@ -0,0 +1,96 @@
+package edu.scau.imagemanagementsystem.model;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * 文件属性的不可变快照。
+ * <p>
+ * 在目录扫描时读取一次，之后的排序、过滤和统计都只读取快照，不再访问文件系统；
+ * 文件在外部被修改后需要显式地重新读取。
+ */
+public final class FileAttributes {
+    /**
+     * 文件不存在或无法读取时使用的空快照。
+     */
+    public static final FileAttributes MISSING = new FileAttributes(0L, 0L, 0L, null);
+
+    private final long size; // 文件大小（字节）
+    private final long lastModifiedMillis; // 最后修改时间
+    private final long creationTimeMillis; // 创建时间，文件系统不支持时与最后修改时间相同
+    private final Object fileKey; // 文件系统中的唯一标识，可能为 null
+
+    private FileAttributes(long size, long lastModifiedMillis, long creationTimeMillis, Object fileKey) {
+        this.size = size;
+        this.lastModifiedMillis = lastModifiedMillis;
+        this.creationTimeMillis = creationTimeMillis;
+        this.fileKey = fileKey;
+    }
+
+    /**
+     * 根据已经读取的属性构造快照。
+     *
+     * @param attributes 文件属性
+     * @return 属性快照
+     */
+    public static FileAttributes of(BasicFileAttributes attributes) {
+        return new FileAttributes(attributes.size(), attributes.lastModifiedTime().toMillis(),
+                attributes.creationTime().toMillis(), attributes.fileKey());
+    }
+
+    /**
+     * 根据保存下来的数值构造快照，例如从图片目录库中读取时。文件标识不会被保存，因此为 null。
+     *
+     * @param size               文件大小（字节）
+     * @param lastModifiedMillis 最后修改时间
+     * @param creationTimeMillis 创建时间
+     * @return 属性快照
+     */
+    public static FileAttributes of(long size, long lastModifiedMillis, long creationTimeMillis) {
+        return new FileAttributes(size, lastModifiedMillis, creationTimeMillis, null);
+    }
+
+    /**
+     * 从文件系统读取文件的属性快照。
+     *
+     * @param file 文件
+     * @return 属性快照；文件不存在或无法读取时返回 {@link #MISSING}
+     */
+    public static FileAttributes read(File file) {
+        try {
+            return of(Files.readAttributes(file.toPath(), BasicFileAttributes.class));
+        } catch (IOException e) {
+            return MISSING;
+        }
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public long getLastModifiedMillis() {
+        return lastModifiedMillis;
+    }
+
+    public long getCreationTimeMillis() {
+        return creationTimeMillis;
+    }
+
+    public Object getFileKey() {
+        return fileKey;
+    }
+
+    /**
+     * 判断两个快照是否描述同一版本的文件内容：大小、最后修改时间都相同，且文件标识相同。
+     * 任一方没有文件标识时（例如从目录库读取的快照）只比较大小和最后修改时间。
+     *
+     * @param other 另一个快照
+     * @return 如果文件未被修改或替换则返回 true
+     */
+    public boolean isSameVersion(FileAttributes other) {
+        return other != null && size == other.size && lastModifiedMillis == other.lastModifiedMillis
+                && (fileKey == null || other.fileKey == null || fileKey.equals(other.fileKey));
+    }
+}
@@ -11,24 +11,36 @@ import javafx.beans.property.StringProperty;
 import javafx.scene.image.Image;
 
 /**
- * 代表一个图片文件项，包含文件对象、名称、缩略图和选中状态的 JavaFX 属性。
+ * 代表一个图片文件项，包含文件对象、名称、缩略图和选中状态的 JavaFX 属性，以及文件属性的快照。
  */
 public class ImageFileItem {
     private final File file; // 原始文件对象
     private final StringProperty name; // 文件名属性
     private final ObjectProperty<Image> thumbnail; // 缩略图属性 (异步加载)
     private final BooleanProperty selected; // 选中状态属性
+    private volatile FileAttributes attributes; // 文件属性快照
 
     /**
-     * 构造一个 ImageFileItem 对象。
+     * 构造一个 ImageFileItem 对象，并立即从文件系统读取文件属性。
      *
      * @param file 关联的图片文件
      */
     public ImageFileItem(File file) {
+        this(file, FileAttributes.read(file));
+    }
+
+    /**
+     * 使用已经读取的文件属性构造一个 ImageFileItem 对象，例如目录扫描的结果。
+     *
+     * @param file       关联的图片文件
+     * @param attributes 文件属性快照
+     */
+    public ImageFileItem(File file, FileAttributes attributes) {
         this.file = file;
         this.name = new SimpleStringProperty(file.getName());
         this.thumbnail = new SimpleObjectProperty<>(null); // Thumbnail loaded asynchronously
         this.selected = new SimpleBooleanProperty(false);
+        this.attributes = attributes;
     }
 
     public File getFile() {
@@ -43,6 +55,29 @@ public class ImageFileItem {
         return name;
     }
 
+    public FileAttributes getAttributes() {
+        return attributes;
+    }
+
+    /**
+     * 用已经读取的属性替换快照，例如在后台线程读取了被修改文件的属性之后。
+     *
+     * @param attributes 新的属性快照
+     */
+    public void setAttributes(FileAttributes attributes) {
+        this.attributes = attributes;
+    }
+
+    /**
+     * 重新从文件系统读取文件属性，用于文件被修改之后。
+     *
+     * @return 新的属性快照
+     */
+    public FileAttributes refreshAttributes() {
+        attributes = FileAttributes.read(file);
+        return attributes;
+    }
+
     public Image getThumbnail() {
         return thumbnail.get();
     }
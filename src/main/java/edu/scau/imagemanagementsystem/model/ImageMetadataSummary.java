@@ -0,0 +1,95 @@
+package edu.scau.imagemanagementsystem.model;
+
+/**
+ * 图片的尺寸与关键 EXIF 字段的摘要，用于排序、过滤和查询，不包含完整的元数据。
+ * <p>
+ * 数值字段为 0、字符串字段为 null 表示文件中没有该字段。
+ */
+public class ImageMetadataSummary {
+    private final int width; // 像素宽度
+    private final int height; // 像素高度
+    private final long captureTimeMillis; // 拍摄时间 (DateTimeOriginal)
+    private final String cameraMake; // 相机厂商
+    private final String cameraModel; // 相机型号
+    private final String lensModel; // 镜头型号
+    private final int iso; // ISO 感光度
+    private final double exposureTimeSeconds; // 曝光时间（秒）
+    private final double fNumber; // 光圈值
+    private final double focalLengthMillimeters; // 焦距（毫米）
+    private final int orientation; // EXIF 方向，1 为正常
+
+    /**
+     * 构造一个 ImageMetadataSummary 对象。
+     *
+     * @param width                  像素宽度
+     * @param height                 像素高度
+     * @param captureTimeMillis      拍摄时间
+     * @param cameraMake             相机厂商
+     * @param cameraModel            相机型号
+     * @param lensModel              镜头型号
+     * @param iso                    ISO 感光度
+     * @param exposureTimeSeconds    曝光时间（秒）
+     * @param fNumber                光圈值
+     * @param focalLengthMillimeters 焦距（毫米）
+     * @param orientation            EXIF 方向
+     */
+    public ImageMetadataSummary(int width, int height, long captureTimeMillis, String cameraMake,
+            String cameraModel, String lensModel, int iso, double exposureTimeSeconds, double fNumber, double focalLengthMillimeters,
+            int orientation) {
+        this.width = width;
+        this.height = height;
+        this.captureTimeMillis = captureTimeMillis;
+        this.cameraMake = cameraMake;
+        this.cameraModel = cameraModel;
+        this.lensModel = lensModel;
+        this.iso = iso;
+        this.exposureTimeSeconds = exposureTimeSeconds;
+        this.fNumber = fNumber;
+        this.focalLengthMillimeters = focalLengthMillimeters;
+        this.orientation = orientation;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public long getCaptureTimeMillis() {
+        return captureTimeMillis;
+    }
+
+    public String getCameraMake() {
+        return cameraMake;
+    }
+
+    public String getCameraModel() {
+        return cameraModel;
+    }
+
+    public String getLensModel() {
+        return lensModel;
+    }
+
+    public int getIso() {
+        return iso;
+    }
+
+    public double getExposureTimeSeconds() {
+        return exposureTimeSeconds;
+    }
+
+    public double getFNumber() {
+        return fNumber;
+    }
+
+    public double getFocalLengthMillimeters() {
+        return focalLengthMillimeters;
+    }
+
+    public int getOrientation() {
+        return orientation;
+    }
+}
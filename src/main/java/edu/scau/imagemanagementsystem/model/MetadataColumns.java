@@ -0,0 +1,174 @@
+package edu.scau.imagemanagementsystem.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 一组图片的元数据摘要，按列存放：每个字段一个基本类型数组，以数据项下标访问。
+ * <p>
+ * 字符串字段（相机厂商、相机型号、镜头型号）存放字典编号，相同的字符串只保存一份，
+ * 按字符串过滤时只需在字典中匹配一次，再比较编号。没有元数据的数据项数值字段为 0，字符串编号为 -1。
+ * <p>
+ * 写入方法在实例上同步；读取方法不加锁，应在全部写入完成后再读取。
+ */
+public class MetadataColumns {
+    /**
+     * 表示字符串字段没有值的字典编号。
+     */
+    public static final int NO_STRING = -1;
+
+    private final int size;
+    private final BitSet present;
+    private final long[] captureTimeMillis;
+    private final int[] width;
+    private final int[] height;
+    private final int[] iso;
+    private final float[] exposureTimeSeconds;
+    private final float[] fNumber;
+    private final float[] focalLengthMillimeters;
+    private final byte[] orientation;
+    private final int[] cameraMake;
+    private final int[] cameraModel;
+    private final int[] lensModel;
+    // 字符串字典：编号到字符串，以及字符串到编号
+    private final List<String> strings = new ArrayList<>();
+    private final Map<String, Integer> stringIds = new HashMap<>();
+
+    /**
+     * 构造一个 MetadataColumns 对象，所有数据项初始时都没有元数据。
+     *
+     * @param size 数据项数量
+     */
+    public MetadataColumns(int size) {
+        this.size = size;
+        present = new BitSet(size);
+        captureTimeMillis = new long[size];
+        width = new int[size];
+        height = new int[size];
+        iso = new int[size];
+        exposureTimeSeconds = new float[size];
+        fNumber = new float[size];
+        focalLengthMillimeters = new float[size];
+        orientation = new byte[size];
+        cameraMake = new int[size];
+        cameraModel = new int[size];
+        lensModel = new int[size];
+        Arrays.fill(cameraMake, NO_STRING);
+        Arrays.fill(cameraModel, NO_STRING);
+        Arrays.fill(lensModel, NO_STRING);
+    }
+
+    /**
+     * 写入一个数据项的元数据摘要。
+     *
+     * @param index   数据项下标
+     * @param summary 元数据摘要，为 null 时不做修改
+     */
+    public synchronized void set(int index, ImageMetadataSummary summary) {
+        if (summary == null) {
+            return;
+        }
+        present.set(index);
+        captureTimeMillis[index] = summary.getCaptureTimeMillis();
+        width[index] = summary.getWidth();
+        height[index] = summary.getHeight();
+        iso[index] = summary.getIso();
+        exposureTimeSeconds[index] = (float) summary.getExposureTimeSeconds();
+        fNumber[index] = (float) summary.getFNumber();
+        focalLengthMillimeters[index] = (float) summary.getFocalLengthMillimeters();
+        orientation[index] = (byte) summary.getOrientation();
+        cameraMake[index] = intern(summary.getCameraMake());
+        cameraModel[index] = intern(summary.getCameraModel());
+        lensModel[index] = intern(summary.getLensModel());
+    }
+
+    private int intern(String value) {
+        if (value == null) {
+            return NO_STRING;
+        }
+        Integer id = stringIds.get(value);
+        if (id == null) {
+            id = strings.size();
+            strings.add(value);
+            stringIds.put(value, id);
+        }
+        return id;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean hasMetadata(int index) {
+        return present.get(index);
+    }
+
+    public long getCaptureTimeMillis(int index) {
+        return captureTimeMillis[index];
+    }
+
+    public int getWidth(int index) {
+        return width[index];
+    }
+
+    public int getHeight(int index) {
+        return height[index];
+    }
+
+    /**
+     * @return 像素数，尺寸未知时为 0
+     */
+    public long getPixelCount(int index) {
+        return (long) width[index] * height[index];
+    }
+
+    public int getIso(int index) {
+        return iso[index];
+    }
+
+    public double getExposureTimeSeconds(int index) {
+        return exposureTimeSeconds[index];
+    }
+
+    public double getFNumber(int index) {
+        return fNumber[index];
+    }
+
+    public double getFocalLengthMillimeters(int index) {
+        return focalLengthMillimeters[index];
+    }
+
+    public int getOrientation(int index) {
+        return orientation[index];
+    }
+
+    public int getCameraMakeId(int index) {
+        return cameraMake[index];
+    }
+
+    public int getCameraModelId(int index) {
+        return cameraModel[index];
+    }
+
+    public int getLensModelId(int index) {
+        return lensModel[index];
+    }
+
+    /**
+     * @return 字典中编号对应的字符串；编号为 {@link #NO_STRING} 时返回 null
+     */
+    public String getString(int id) {
+        return id == NO_STRING ? null : strings.get(id);
+    }
+
+    /**
+     * @return 字典中的字符串数量，编号从 0 到此数量减一
+     */
+    public int getDictionarySize() {
+        return strings.size();
+    }
+}
@@ -0,0 +1,35 @@
+package edu.scau.imagemanagementsystem.model;
+
+/**
+ * 图片元数据中的一个标签：所属目录（如 "Exif IFD0"）、标签名与可读的取值。
+ */
+public class MetadataTag {
+    private final String directory; // 所属目录名
+    private final String name; // 标签名
+    private final String description; // 可读的取值
+
+    /**
+     * 构造一个 MetadataTag 对象。
+     *
+     * @param directory   所属目录名
+     * @param name        标签名
+     * @param description 可读的取值，可以为 null
+     */
+    public MetadataTag(String directory, String name, String description) {
+        this.directory = directory;
+        this.name = name;
+        this.description = description;
+    }
+
+    public String getDirectory() {
+        return directory;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+}
@@ -0,0 +1,30 @@
+package edu.scau.imagemanagementsystem.model;
+
+import java.io.File;
+
+/**
+ * 递归搜索找到的一张图片，以及找到时的文件属性快照。
+ */
+public class SearchMatch {
+    private final File file; // 图片文件
+    private final FileAttributes attributes; // 文件属性快照
+
+    /**
+     * 构造一个 SearchMatch 对象。
+     *
+     * @param file       图片文件
+     * @param attributes 文件属性快照
+     */
+    public SearchMatch(File file, FileAttributes attributes) {
+        this.file = file;
+        this.attributes = attributes;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public FileAttributes getAttributes() {
+        return attributes;
+    }
+}
@@ -0,0 +1,73 @@
+package edu.scau.imagemanagementsystem.model;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * 一组看起来相似的图片，例如同一张照片缩放或重新压缩后的版本。
+ */
+public class SimilarImageGroup {
+    private final List<File> files; // 组内的图片，第一张是比较的基准
+    private final long[] hashes; // 各图片的感知哈希 (dHash)
+    private final long[] sizes; // 各图片的文件大小（字节）
+
+    /**
+     * 构造一个 SimilarImageGroup 对象。
+     *
+     * @param files  组内的图片，第一张是比较的基准
+     * @param hashes 与 {@code files} 一一对应的感知哈希
+     * @param sizes  与 {@code files} 一一对应的文件大小（字节）
+     */
+    public SimilarImageGroup(List<File> files, long[] hashes, long[] sizes) {
+        if (files.size() != hashes.length || files.size() != sizes.length) {
+            throw new IllegalArgumentException("files, hashes and sizes differ in length");
+        }
+        this.files = List.copyOf(files);
+        this.hashes = hashes.clone();
+        this.sizes = sizes.clone();
+    }
+
+    public List<File> getFiles() {
+        return files;
+    }
+
+    /**
+     * @param index 图片在组内的位置
+     * @return 该图片与第一张图片的感知哈希距离，0 表示看起来完全相同
+     */
+    public int getDistance(int index) {
+        return Long.bitCount(hashes[0] ^ hashes[index]); // 汉明距离
+    }
+
+    /**
+     * @param index 图片在组内的位置
+     * @return 该图片的文件大小（字节）
+     */
+    public long getSize(int index) {
+        return sizes[index];
+    }
+
+    /**
+     * 只保留满足条件的图片，例如去掉已经删除的文件。保留下来的第一张图片成为新的基准。
+     *
+     * @param keep 要保留的图片
+     * @return 新的组
+     */
+    public SimilarImageGroup retain(Predicate<File> keep) {
+        List<File> kept = new ArrayList<>();
+        long[] keptHashes = new long[files.size()];
+        long[] keptSizes = new long[files.size()];
+        for (int i = 0; i < files.size(); i++) {
+            if (keep.test(files.get(i))) {
+                keptHashes[kept.size()] = hashes[i];
+                keptSizes[kept.size()] = sizes[i];
+                kept.add(files.get(i));
+            }
+        }
+        return new SimilarImageGroup(kept, Arrays.copyOf(keptHashes, kept.size()),
+                Arrays.copyOf(keptSizes, kept.size()));
+    }
+}
@@ -0,0 +1,615 @@
+package edu.scau.imagemanagementsystem.services;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.scau.imagemanagementsystem.model.CatalogEntry;
+import edu.scau.imagemanagementsystem.model.FileAttributes;
+import edu.scau.imagemanagementsystem.model.ImageMetadataSummary;
+import edu.scau.imagemanagementsystem.utils.FileUtils;
+import javafx.concurrent.Task;
+
+/**
+ * 持久化的图片目录库，记录见过的每张图片的路径、文件属性、元数据摘要、磁盘缩略图缓存键和感知哈希。
+ * <p>
+ * 所有记录常驻内存并按所在目录分组，打开目录时无需访问文件系统即可立即显示，之后再与文件系统对账。
+ * 持久化采用追加写的日志 ({@code catalog.log})：每条记录带有长度和 CRC 校验，启动时顺序重放，
+ * 程序崩溃留下的半条记录会被截断。当日志中的失效记录过多时，先写出只含存活记录的临时日志，
+ * 再原子替换旧日志。
+ * <p>
+ * 第一次访问时会在调用线程上加载整个日志，因此不应在 JavaFX 应用线程上直接调用此类的方法，
+ * 而应使用返回 Task 的异步方法。
+ */
+public class CatalogService {
+    private static final Logger logger = LoggerFactory.getLogger(CatalogService.class);
+
+    private static final String LOG_FILE_NAME = "catalog.log";
+    // 没有布局版本号的旧记录，只会出现在旧日志中，压缩时改写为 OP_PUT
+    private static final byte OP_LEGACY_PUT = 1;
+    private static final byte OP_REMOVE = 2;
+    private static final byte OP_PUT = 3;
+    // OP_PUT 记录的字段布局版本，紧跟在路径之后；追加字段时递增，读取时按版本决定有哪些字段
+    private static final int RECORD_VERSION = 1;
+    private static final int MAX_RECORD_LENGTH = 256 * 1024;
+    private static final long MIN_COMPACTION_RECORDS = 10_000;
+
+    private static final CatalogService INSTANCE = new CatalogService(
+            FileUtils.getApplicationDataDirectory().resolve("catalog"));
+
+    private final Path directory;
+    // 所在目录 -> (文件 -> 记录)
+    private final Map<File, Map<File, CatalogEntry>> entriesByDirectory = new HashMap<>();
+    private int entryCount;
+    // 日志中的记录总数，包括已被覆盖或删除的记录
+    private long logRecordCount;
+    // 本次运行中记录被修改的次数，用于判断依据目录库建立的缓存是否过期
+    private long modificationCount;
+    private DataOutputStream logOut;
+    private boolean opened;
+    private boolean disabled;
+
+    CatalogService(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * 获取全局唯一的图片目录库实例，目录库位于用户的应用数据目录下。
+     *
+     * @return 图片目录库实例
+     */
+    public static CatalogService getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * 异步读取目录库中记录的某个目录下的图片，不访问文件系统。
+     *
+     * @param directory 目录
+     * @return 一个 Task，其结果为该目录下的记录；目录库中没有该目录时为空列表
+     */
+    public Task<List<CatalogEntry>> listDirectoryAsync(File directory) {
+        return new Task<>() {
+            @Override
+            protected List<CatalogEntry> call() {
+                return getDirectoryEntries(directory);
+            }
+        };
+    }
+
+    /**
+     * 读取目录库中记录的某个目录下的图片。
+     *
+     * @param directory 目录
+     * @return 该目录下的记录；目录库中没有该目录时为空列表
+     */
+    public synchronized List<CatalogEntry> getDirectoryEntries(File directory) {
+        if (!ensureOpen()) {
+            return List.of();
+        }
+        Map<File, CatalogEntry> entries = entriesByDirectory.get(directory);
+        return entries == null ? List.of() : new ArrayList<>(entries.values());
+    }
+
+    /**
+     * 读取一张图片的记录。
+     *
+     * @param file 图片文件
+     * @return 记录；没有记录时返回 null
+     */
+    public synchronized CatalogEntry get(File file) {
+        if (!ensureOpen()) {
+            return null;
+        }
+        Map<File, CatalogEntry> entries = entriesByDirectory.get(file.getParentFile());
+        return entries == null ? null : entries.get(file);
+    }
+
+    /**
+     * 一次读取多张图片的记录，只获取一次锁；相邻的图片在同一目录中时只查找一次目录。
+     *
+     * @param files 图片文件
+     * @return 与文件一一对应的记录，没有记录的位置为 null
+     */
+    public synchronized List<CatalogEntry> get(List<File> files) {
+        List<CatalogEntry> result = new ArrayList<>(files.size());
+        if (!ensureOpen()) {
+            files.forEach(file -> result.add(null));
+            return result;
+        }
+        String directoryPath = null;
+        Map<File, CatalogEntry> entries = null;
+        for (File file : files) {
+            String parent = file.getParent();
+            if (parent == null || !parent.equals(directoryPath)) {
+                directoryPath = parent;
+                entries = parent == null ? null : entriesByDirectory.get(new File(parent));
+            }
+            result.add(entries == null ? null : entries.get(file));
+        }
+        return result;
+    }
+
+    /**
+     * @return 目录库中所有记录的快照，用于整个图库范围的查询
+     */
+    public synchronized List<CatalogEntry> getAllEntries() {
+        if (!ensureOpen()) {
+            return List.of();
+        }
+        List<CatalogEntry> all = new ArrayList<>(entryCount);
+        for (Map<File, CatalogEntry> entries : entriesByDirectory.values()) {
+            all.addAll(entries.values());
+        }
+        return all;
+    }
+
+    /**
+     * 读取目录库中记录的某个目录及其所有子目录下的图片，不访问文件系统。
+     *
+     * @param directory 子树的根目录
+     * @return 子树中的记录
+     */
+    public synchronized List<CatalogEntry> getEntriesUnder(File directory) {
+        if (!ensureOpen()) {
+            return List.of();
+        }
+        Path root = directory.toPath();
+        List<CatalogEntry> found = new ArrayList<>();
+        for (Map.Entry<File, Map<File, CatalogEntry>> entries : entriesByDirectory.entrySet()) {
+            if (entries.getKey().toPath().startsWith(root)) {
+                found.addAll(entries.getValue().values());
+            }
+        }
+        return found;
+    }
+
+    /**
+     * @return 本次运行中记录被添加、替换或删除的次数；两次调用之间数值不变说明目录库没有变化
+     */
+    public synchronized long getModificationCount() {
+        return modificationCount;
+    }
+
+    /**
+     * @return 目录库中的图片数量
+     */
+    public synchronized int size() {
+        return ensureOpen() ? entryCount : 0;
+    }
+
+    /**
+     * 异步地用一次完整的目录扫描结果更新目录库。
+     *
+     * @param directory 被扫描的目录
+     * @param found     扫描得到的全部图片及其属性
+     * @return 一个 Task，完成时目录库已经更新并写入磁盘
+     * @see #reconcileDirectory(File, Map)
+     */
+    public Task<Void> reconcileDirectoryAsync(File directory, Map<File, FileAttributes> found) {
+        return new Task<>() {
+            @Override
+            protected Void call() {
+                reconcileDirectory(directory, found);
+                return null;
+            }
+        };
+    }
+
+    /**
+     * 用一次完整的目录扫描结果更新目录库：新出现的图片被加入，消失的图片被删除，
+     * 属性变化的图片清除已提取的元数据，未变化的记录保持不变。
+     *
+     * @param directory 被扫描的目录
+     * @param found     扫描得到的全部图片及其属性
+     */
+    public synchronized void reconcileDirectory(File directory, Map<File, FileAttributes> found) {
+        if (!ensureOpen()) {
+            return;
+        }
+        List<File> removed = new ArrayList<>();
+        Map<File, CatalogEntry> entries = entriesByDirectory.get(directory);
+        if (entries != null) {
+            for (File file : entries.keySet()) {
+                if (!found.containsKey(file)) {
+                    removed.add(file);
+                }
+            }
+        }
+        apply(found, removed);
+    }
+
+    /**
+     * 异步地记录一组文件的变化，例如目录监听报告的新建、修改和删除。
+     *
+     * @param changed 新建或修改的图片及其当前属性
+     * @param removed 已经删除的文件
+     * @return 一个 Task，完成时目录库已经更新并写入磁盘
+     */
+    public Task<Void> updateAsync(Map<File, FileAttributes> changed, Collection<File> removed) {
+        return new Task<>() {
+            @Override
+            protected Void call() {
+                synchronized (CatalogService.this) {
+                    if (ensureOpen()) {
+                        apply(changed, removed);
+                    }
+                }
+                return null;
+            }
+        };
+    }
+
+    /**
+     * 保存提取到的元数据摘要。如果记录中的文件在提取期间被修改，摘要被丢弃。
+     *
+     * @param extractedFrom 提取元数据时的记录
+     * @param metadata      元数据摘要
+     */
+    public synchronized void putMetadata(CatalogEntry extractedFrom, ImageMetadataSummary metadata) {
+        CatalogEntry current = get(extractedFrom.getFile());
+        if (current == null || metadata == null
+                || !current.getAttributes().isSameVersion(extractedFrom.getAttributes())) {
+            return;
+        }
+        put(current.withMetadata(metadata));
+        flush();
+    }
+
+    /**
+     * 记录一张图片在磁盘缩略图缓存中的键。
+     *
+     * @param file         图片文件
+     * @param thumbnailKey 磁盘缩略图缓存键
+     */
+    public synchronized void putThumbnailKey(File file, String thumbnailKey) {
+        CatalogEntry current = get(file);
+        if (current == null || thumbnailKey.equals(current.getThumbnailKey())) {
+            return;
+        }
+        put(current.withThumbnailKey(thumbnailKey));
+        flush();
+    }
+
+    /**
+     * 保存从缩略图计算的感知哈希，同时可以记录缩略图的磁盘缓存键。如果记录中的文件在生成缩略图期间被修改，
+     * 两者都被丢弃。
+     *
+     * @param generatedFrom  生成缩略图时的记录
+     * @param perceptualHash 感知哈希
+     * @param thumbnailKey   磁盘缩略图缓存键；缩略图没有写入磁盘缓存时为 null
+     */
+    public synchronized void putPerceptualHash(CatalogEntry generatedFrom, long perceptualHash,
+            String thumbnailKey) {
+        CatalogEntry current = get(generatedFrom.getFile());
+        if (current == null || !current.getAttributes().isSameVersion(generatedFrom.getAttributes())) {
+            return;
+        }
+        CatalogEntry updated = current.withPerceptualHash(perceptualHash);
+        if (thumbnailKey != null) {
+            updated = updated.withThumbnailKey(thumbnailKey);
+        }
+        put(updated);
+        flush();
+    }
+
+    /**
+     * 关闭日志文件，通常在应用退出时调用。
+     */
+    public synchronized void close() {
+        if (opened && logOut != null) {
+            try {
+                logOut.close();
+            } catch (IOException e) {
+                logger.warn("Failed to close catalog cleanly.", e);
+            }
+        }
+        opened = false;
+        disabled = true; // 退出过程中仍在运行的任务不应重新打开目录库
+    }
+
+    private void apply(Map<File, FileAttributes> changed, Collection<File> removed) {
+        int written = 0;
+        for (Map.Entry<File, FileAttributes> entry : changed.entrySet()) {
+            Map<File, CatalogEntry> entries = entriesByDirectory.get(entry.getKey().getParentFile());
+            CatalogEntry existing = entries == null ? null : entries.get(entry.getKey());
+            if (existing == null || !existing.getAttributes().isSameVersion(entry.getValue())) {
+                put(new CatalogEntry(entry.getKey(), entry.getValue()));
+                written++;
+            }
+        }
+        for (File file : removed) {
+            if (remove(file)) {
+                written++;
+            }
+        }
+        if (written > 0) {
+            flush();
+            compactIfNeeded();
+        }
+    }
+
+    private void put(CatalogEntry entry) {
+        Map<File, CatalogEntry> entries = entriesByDirectory.computeIfAbsent(entry.getFile().getParentFile(),
+                dir -> new HashMap<>());
+        if (entries.put(entry.getFile(), entry) == null) {
+            entryCount++;
+        }
+        modificationCount++;
+        writeRecord(OP_PUT, entry.getFile(), entry);
+    }
+
+    private boolean remove(File file) {
+        Map<File, CatalogEntry> entries = entriesByDirectory.get(file.getParentFile());
+        if (entries == null || entries.remove(file) == null) {
+            return false;
+        }
+        entryCount--;
+        modificationCount++;
+        if (entries.isEmpty()) {
+            entriesByDirectory.remove(file.getParentFile());
+        }
+        writeRecord(OP_REMOVE, file, null);
+        return true;
+    }
+
+    private void writeRecord(byte op, File file, CatalogEntry entry) {
+        if (logOut == null) {
+            return;
+        }
+        try {
+            writeRecord(logOut, op, file, entry);
+            logRecordCount++;
+        } catch (IOException e) {
+            logger.warn("Failed to write catalog, it will not be persisted for this session.", e);
+            logOut = null;
+        }
+    }
+
+    private void flush() {
+        if (logOut == null) {
+            return;
+        }
+        try {
+            logOut.flush();
+        } catch (IOException e) {
+            logger.warn("Failed to flush catalog, it will not be persisted for this session.", e);
+            logOut = null;
+        }
+    }
+
+    private boolean ensureOpen() {
+        if (disabled) {
+            return false;
+        }
+        if (opened) {
+            return true;
+        }
+        long start = System.nanoTime();
+        try {
+            Files.createDirectories(directory);
+            Path logPath = directory.resolve(LOG_FILE_NAME);
+            Files.deleteIfExists(directory.resolve(LOG_FILE_NAME + ".tmp"));
+            if (Files.exists(logPath)) {
+                replayLog(logPath);
+            }
+            logOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(logPath.toFile(), true)));
+            opened = true;
+            compactIfNeeded();
+            logger.info("Catalog opened at {} with {} images in {} directories ({} ms).", directory, entryCount,
+                    entriesByDirectory.size(), (System.nanoTime() - start) / 1_000_000);
+        } catch (IOException e) {
+            logger.warn("Failed to open catalog at {}, running without it.", directory, e);
+            disabled = true;
+        }
+        return opened;
+    }
+
+    private void replayLog(Path logPath) throws IOException {
+        long validLength = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(logPath)))) {
+            while (true) {
+                int recordLength;
+                try {
+                    recordLength = in.readInt();
+                } catch (EOFException eof) {
+                    break;
+                }
+                if (recordLength <= 0 || recordLength > MAX_RECORD_LENGTH) {
+                    break;
+                }
+                byte[] payload = new byte[recordLength];
+                int storedCrc;
+                try {
+                    in.readFully(payload);
+                    storedCrc = in.readInt();
+                } catch (EOFException eof) {
+                    break; // 末尾的半条记录
+                }
+                if (crc(payload) != storedCrc) {
+                    break;
+                }
+                applyRecord(payload);
+                logRecordCount++;
+                validLength += 4 + recordLength + 4;
+            }
+        }
+        if (validLength < Files.size(logPath)) {
+            logger.warn("Catalog log has a damaged tail, truncating to {} bytes.", validLength);
+            try (FileChannel channel = FileChannel.open(logPath, StandardOpenOption.WRITE)) {
+                channel.truncate(validLength);
+            }
+        }
+    }
+
+    private void applyRecord(byte[] payload) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        byte op = in.readByte();
+        File file = new File(in.readUTF());
+        int version = op == OP_PUT ? in.readUnsignedByte() : 0;
+        if (version > RECORD_VERSION) {
+            logger.debug("Skipping catalog record of {} with unknown layout version {}.", file, version);
+            return;
+        }
+        Map<File, CatalogEntry> entries = entriesByDirectory.computeIfAbsent(file.getParentFile(),
+                dir -> new HashMap<>());
+        if (op == OP_PUT || op == OP_LEGACY_PUT) {
+            long size = in.readLong();
+            long lastModified = in.readLong();
+            long creationTime = in.readLong();
+            ImageMetadataSummary metadata = null;
+            boolean hasMetadata = in.readBoolean();
+            int width = 0;
+            int height = 0;
+            long captureTime = 0;
+            String make = null;
+            String model = null;
+            int iso = 0;
+            double exposureTime = 0;
+            double fNumber = 0;
+            double focalLength = 0;
+            int orientation = 0;
+            if (hasMetadata) {
+                width = in.readInt();
+                height = in.readInt();
+                captureTime = in.readLong();
+                make = readNullableUTF(in);
+                model = readNullableUTF(in);
+                iso = in.readInt();
+                exposureTime = in.readDouble();
+                fNumber = in.readDouble();
+                focalLength = in.readDouble();
+                orientation = in.readInt();
+            }
+            String thumbnailKey = readNullableUTF(in);
+            // 版本 1 起记录末尾总有镜头型号和感知哈希；没有版本号的旧记录可能在其中任一字段之前结束
+            boolean legacy = version == 0;
+            if (hasMetadata) {
+                String lens = !legacy || in.available() > 0 ? readNullableUTF(in) : null;
+                metadata = new ImageMetadataSummary(width, height, captureTime, make, model, lens, iso, exposureTime,
+                        fNumber, focalLength, orientation);
+            }
+            Long perceptualHash = (!legacy || in.available() > 0) && in.readBoolean() ? in.readLong() : null;
+            CatalogEntry entry = new CatalogEntry(file, size, lastModified, creationTime, metadata, thumbnailKey,
+                    perceptualHash);
+            if (entries.put(file, entry) == null) {
+                entryCount++;
+            }
+        } else if (entries.remove(file) != null) {
+            entryCount--;
+        }
+        if (entries.isEmpty()) {
+            entriesByDirectory.remove(file.getParentFile());
+        }
+    }
+
+    /**
+     * 失效记录超过存活记录时重写日志。先写出临时日志，再原子替换，中断不会破坏已有数据。
+     */
+    private void compactIfNeeded() {
+        if (logOut == null || logRecordCount < MIN_COMPACTION_RECORDS || logRecordCount < 2L * entryCount) {
+            return;
+        }
+        logger.info("Compacting catalog: {} live entries in {} log records.", entryCount, logRecordCount);
+        Path logPath = directory.resolve(LOG_FILE_NAME);
+        Path tmp = directory.resolve(LOG_FILE_NAME + ".tmp");
+        try {
+            logOut.close();
+            try (FileOutputStream fos = new FileOutputStream(tmp.toFile());
+                    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos))) {
+                for (Map<File, CatalogEntry> entries : entriesByDirectory.values()) {
+                    for (CatalogEntry entry : entries.values()) {
+                        writeRecord(out, OP_PUT, entry.getFile(), entry);
+                    }
+                }
+                out.flush();
+                fos.getFD().sync();
+            }
+            Files.move(tmp, logPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            logRecordCount = entryCount;
+            logOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(logPath.toFile(), true)));
+        } catch (IOException e) {
+            logger.warn("Failed to compact catalog, it will not be persisted for this session.", e);
+            logOut = null;
+        }
+    }
+
+    private static void writeRecord(DataOutputStream out, byte op, File file, CatalogEntry entry)
+            throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        DataOutputStream payload = new DataOutputStream(bytes);
+        payload.writeByte(op);
+        payload.writeUTF(file.getPath());
+        if (op == OP_PUT) {
+            payload.writeByte(RECORD_VERSION);
+            payload.writeLong(entry.getSize());
+            payload.writeLong(entry.getLastModifiedMillis());
+            payload.writeLong(entry.getCreationTimeMillis());
+            ImageMetadataSummary metadata = entry.getMetadata();
+            payload.writeBoolean(metadata != null);
+            if (metadata != null) {
+                payload.writeInt(metadata.getWidth());
+                payload.writeInt(metadata.getHeight());
+                payload.writeLong(metadata.getCaptureTimeMillis());
+                writeNullableUTF(payload, metadata.getCameraMake());
+                writeNullableUTF(payload, metadata.getCameraModel());
+                payload.writeInt(metadata.getIso());
+                payload.writeDouble(metadata.getExposureTimeSeconds());
+                payload.writeDouble(metadata.getFNumber());
+                payload.writeDouble(metadata.getFocalLengthMillimeters());
+                payload.writeInt(metadata.getOrientation());
+            }
+            writeNullableUTF(payload, entry.getThumbnailKey());
+            if (metadata != null) {
+                writeNullableUTF(payload, metadata.getLensModel());
+            }
+            Long perceptualHash = entry.getPerceptualHash();
+            payload.writeBoolean(perceptualHash != null);
+            if (perceptualHash != null) {
+                payload.writeLong(perceptualHash);
+            }
+        }
+        byte[] record = bytes.toByteArray();
+        out.writeInt(record.length);
+        out.write(record);
+        out.writeInt(crc(record));
+    }
+
+    private static void writeNullableUTF(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readNullableUTF(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static int crc(byte[] data) {
+        CRC32 crc32 = new CRC32();
+        crc32.update(data, 0, data.length);
+        return (int) crc32.getValue();
+    }
+}
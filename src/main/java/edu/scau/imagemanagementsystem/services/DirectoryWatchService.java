@@ -0,0 +1,236 @@
+package edu.scau.imagemanagementsystem.services;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.scau.imagemanagementsystem.model.DirectoryDelta;
+import javafx.application.Platform;
+
+/**
+ * 监听当前打开的目录，把文件系统事件合并为 {@link DirectoryDelta} 交给界面。
+ * <p>
+ * 同一时间只监听一个目录。事件由一个守护线程接收：收到第一个事件后继续收集，直到连续
+ * {@link #COALESCE_MILLIS} 毫秒没有新事件（最多等待 {@link #MAX_COALESCE_MILLIS} 毫秒），
+ * 然后把同一路径上的多个事件合并为一次新建、删除或修改，在 FX 线程上交付。
+ * 事件队列溢出或目录本身不再可访问时交付一个溢出变化，由接收方重新扫描目录。
+ */
+public class DirectoryWatchService {
+    private static final Logger logger = LoggerFactory.getLogger(DirectoryWatchService.class);
+
+    private static final long COALESCE_MILLIS = 150;
+    private static final long MAX_COALESCE_MILLIS = 1000;
+
+    private static final DirectoryWatchService INSTANCE = new DirectoryWatchService();
+
+    private WatchService watchService;
+    private Thread watchThread;
+    private volatile Registration current;
+
+    private DirectoryWatchService() {
+    }
+
+    /**
+     * 获取全局唯一的目录监听服务实例。
+     *
+     * @return 目录监听服务实例
+     */
+    public static DirectoryWatchService getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * 开始监听一个目录，并停止监听之前的目录。必须在 FX 线程上调用。
+     *
+     * @param directory 要监听的目录
+     * @param listener  在 FX 线程上接收目录变化
+     * @return 如果成功开始监听则返回 true；文件系统不支持监听时返回 false
+     */
+    public synchronized boolean watch(File directory, Consumer<DirectoryDelta> listener) {
+        stop();
+        try {
+            if (watchService == null) {
+                watchService = FileSystems.getDefault().newWatchService();
+                watchThread = new Thread(this::run, "directory-watcher");
+                watchThread.setDaemon(true);
+                watchThread.start();
+            }
+            WatchKey key = directory.toPath().register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+            current = new Registration(key, directory, listener);
+            logger.debug("Watching directory {}", directory.getAbsolutePath());
+            return true;
+        } catch (IOException | UnsupportedOperationException e) {
+            logger.warn("Cannot watch directory {}, external changes will not be shown.",
+                    directory.getAbsolutePath(), e);
+            return false;
+        }
+    }
+
+    /**
+     * 停止监听当前目录。尚未交付的变化会被丢弃。
+     */
+    public synchronized void stop() {
+        Registration registration = current;
+        current = null;
+        if (registration != null) {
+            registration.key.cancel();
+        }
+    }
+
+    /**
+     * 关闭监听服务并结束监听线程，应在程序退出时调用。
+     */
+    public synchronized void close() {
+        stop();
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                logger.warn("Failed to close watch service.", e);
+            }
+            watchService = null;
+        }
+    }
+
+    private void run() {
+        WatchService service;
+        synchronized (this) {
+            service = watchService;
+        }
+        try {
+            while (true) {
+                WatchKey key = service.take();
+                PendingChanges changes = new PendingChanges();
+                collect(key, changes);
+                // 合并一段时间内的连续事件，例如复制大文件时的多次修改
+                long deadline = System.currentTimeMillis() + MAX_COALESCE_MILLIS;
+                long remaining;
+                while ((remaining = deadline - System.currentTimeMillis()) > 0
+                        && (key = service.poll(Math.min(COALESCE_MILLIS, remaining), TimeUnit.MILLISECONDS)) != null) {
+                    collect(key, changes);
+                }
+                if (changes.registration != null && !changes.isEmpty()) {
+                    deliver(changes.registration, changes.toDelta(changes.registration.directory));
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ClosedWatchServiceException e) {
+            // 程序退出
+        }
+    }
+
+    private void collect(WatchKey key, PendingChanges changes) {
+        Registration registration = current;
+        if (changes.registration != registration) {
+            // 合并期间切换了目录，之前收集的事件已经没有意义
+            changes.clear(registration);
+        }
+        boolean relevant = registration != null && registration.key == key;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (!relevant) {
+                continue; // 已经不再监听的目录中残留的事件
+            }
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                changes.overflow = true;
+            } else {
+                Path path = registration.directory.toPath().resolve((Path) event.context());
+                changes.record(path.toFile(), event.kind());
+            }
+        }
+        if (!key.reset() && relevant) {
+            // 目录被删除或无法访问，无法再得到后续事件
+            changes.overflow = true;
+        }
+    }
+
+    private void deliver(Registration registration, DirectoryDelta delta) {
+        logger.debug("Directory {} changed: {}", registration.directory.getAbsolutePath(), delta);
+        Platform.runLater(() -> {
+            if (current == registration) {
+                registration.listener.accept(delta);
+            }
+        });
+    }
+
+    private static final class Registration {
+        private final WatchKey key;
+        private final File directory;
+        private final Consumer<DirectoryDelta> listener;
+
+        private Registration(WatchKey key, File directory, Consumer<DirectoryDelta> listener) {
+            this.key = key;
+            this.directory = directory;
+            this.listener = listener;
+        }
+    }
+
+    /**
+     * 一次合并窗口内收集到的事件。只记录每个路径的第一个和最后一个事件类型，足以判断最终结果。
+     */
+    private static final class PendingChanges {
+        private final Map<File, WatchEvent.Kind<?>[]> events = new LinkedHashMap<>();
+        private Registration registration;
+        private boolean overflow;
+
+        private void clear(Registration newRegistration) {
+            events.clear();
+            overflow = false;
+            registration = newRegistration;
+        }
+
+        private void record(File file, WatchEvent.Kind<?> kind) {
+            WatchEvent.Kind<?>[] firstAndLast = events.get(file);
+            if (firstAndLast == null) {
+                events.put(file, new WatchEvent.Kind<?>[] { kind, kind });
+            } else {
+                firstAndLast[1] = kind;
+            }
+        }
+
+        private boolean isEmpty() {
+            return !overflow && events.isEmpty();
+        }
+
+        private DirectoryDelta toDelta(File directory) {
+            if (overflow) {
+                return DirectoryDelta.overflow(directory);
+            }
+            List<File> created = new ArrayList<>();
+            List<File> deleted = new ArrayList<>();
+            List<File> modified = new ArrayList<>();
+            for (Map.Entry<File, WatchEvent.Kind<?>[]> entry : events.entrySet()) {
+                WatchEvent.Kind<?> first = entry.getValue()[0];
+                WatchEvent.Kind<?> last = entry.getValue()[1];
+                if (last == StandardWatchEventKinds.ENTRY_DELETE) {
+                    // 先新建后删除的临时文件对界面没有影响
+                    if (first != StandardWatchEventKinds.ENTRY_CREATE) {
+                        deleted.add(entry.getKey());
+                    }
+                } else if (first == StandardWatchEventKinds.ENTRY_CREATE) {
+                    created.add(entry.getKey());
+                } else {
+                    // 修改，或者删除后又以同名新建（例如编辑器的原子保存）
+                    modified.add(entry.getKey());
+                }
+            }
+            return new DirectoryDelta(directory, created, deleted, modified);
+        }
+    }
+}
@@ -0,0 +1,427 @@
+package edu.scau.imagemanagementsystem.services;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+import java.util.function.IntConsumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.scau.imagemanagementsystem.model.CatalogEntry;
+import edu.scau.imagemanagementsystem.model.DuplicateGroup;
+import edu.scau.imagemanagementsystem.utils.FileUtils;
+import javafx.concurrent.Task;
+
+/**
+ * 查找内容完全相同的图片。
+ * <p>
+ * 查找分三步，每一步只处理上一步留下的候选文件：先按文件大小分组，大小唯一的文件不会被读取；
+ * 再计算每个候选文件开头 {@value #HEAD_BYTES} 字节的摘要，开头不同的文件被排除；最后计算剩余文件完整内容的
+ * SHA-256 摘要，摘要相同的文件视为重复。读取在有限数量的线程上并行进行，每个线程复用一块大的直接缓冲区。
+ * <p>
+ * 已由 {@link LibraryCrawlerService} 完整扫描过的子树从图片目录库中列举文件，不遍历目录。目录库中的大小可能已经过时，
+ * 分组前会重新读取这些文件的大小；计算摘要时大小与分组时不符的文件同样被排除。
+ */
+public class DuplicateFinderService {
+    private static final Logger logger = LoggerFactory.getLogger(DuplicateFinderService.class);
+
+    /**
+     * 并行读取文件的线程数。
+     */
+    public static final int HASH_PARALLELISM = Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors()));
+
+    // 第二步读取的文件开头长度；不超过此长度的文件在第二步就得到完整内容的摘要
+    private static final int HEAD_BYTES = 64 * 1024;
+    // 每个线程读取文件时使用的直接缓冲区大小
+    private static final int BUFFER_BYTES = 1 << 20;
+    private static final ThreadLocal<ByteBuffer> readBuffers = ThreadLocal
+            .withInitial(() -> ByteBuffer.allocateDirect(BUFFER_BYTES));
+
+    private final CatalogService catalog = CatalogService.getInstance();
+    private final LibraryCrawlerService libraryCrawler = LibraryCrawlerService.getInstance();
+
+    /**
+     * 异步查找一个或多个目录中重复的图片。
+     * <p>
+     * Task 的消息与进度反映当前所处的步骤；任务被取消后尽快停止读取。
+     *
+     * @param roots     要查找的目录
+     * @param recursive 是否包含所有子目录
+     * @return 一个 Task，其结果为重复文件的分组，可释放空间最多的组在前
+     */
+    public Task<List<DuplicateGroup>> findDuplicatesAsync(List<File> roots, boolean recursive) {
+        return new Task<>() {
+            @Override
+            protected List<DuplicateGroup> call() throws Exception {
+                long start = System.nanoTime();
+                updateMessage("正在列举文件...");
+                FileList candidates = new FileList();
+                Set<File> seen = roots.size() > 1 ? new HashSet<>() : null;
+                for (File root : roots) {
+                    collectFiles(root, recursive, candidates, seen, this::isCancelled);
+                }
+                if (isCancelled()) {
+                    return List.of();
+                }
+                int fileCount = candidates.size();
+
+                // 随本次查找创建和结束的读取线程，是调度服务允许的例外，见 TaskSchedulerService
+                ExecutorService pool = Executors.newFixedThreadPool(HASH_PARALLELISM, runnable -> {
+                    Thread thread = new Thread(runnable, "duplicate-hasher");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+                try {
+                    // 目录库中的大小可能已经过时，重新读取；已不存在的文件大小记为 0，不参与比较
+                    int[] fromCatalog = candidates.catalogIndices();
+                    if (fromCatalog.length > 0) {
+                        updateMessage("正在检查文件大小...");
+                        forEachParallel(pool, fromCatalog.length, this::isCancelled, i -> {
+                            int index = fromCatalog[i];
+                            BasicFileAttributes attributes = readAttributes(candidates.files.get(index).toPath());
+                            candidates.sizes[index] = attributes != null && attributes.isRegularFile()
+                                    ? attributes.size()
+                                    : 0;
+                        });
+                        if (isCancelled()) {
+                            return List.of();
+                        }
+                    }
+
+                    // 1. 按大小分组，只保留大小相同的文件
+                    List<int[]> sizeGroups = groupBySize(candidates);
+                    int[] sameSize = flatten(sizeGroups);
+                    logger.debug("{} of {} files share their size with another file.", sameSize.length, fileCount);
+
+                    // 2. 比较文件开头
+                    String[] headHashes = hashAll(pool, candidates, sameSize, true, "正在比较文件开头");
+                    List<int[]> headGroups = new ArrayList<>();
+                    int offset = 0;
+                    for (int[] group : sizeGroups) {
+                        headGroups.addAll(groupByHash(group, headHashes, offset));
+                        offset += group.length;
+                    }
+                    if (isCancelled()) {
+                        return List.of();
+                    }
+
+                    // 3. 比较完整内容；开头已经是完整内容的小文件不必再读
+                    List<DuplicateGroup> result = new ArrayList<>();
+                    List<int[]> largeGroups = new ArrayList<>();
+                    for (int[] group : headGroups) {
+                        if (candidates.sizes[group[0]] <= HEAD_BYTES) {
+                            result.add(toDuplicateGroup(candidates, group));
+                        } else {
+                            largeGroups.add(group);
+                        }
+                    }
+                    int[] large = flatten(largeGroups);
+                    String[] fullHashes = hashAll(pool, candidates, large, false, "正在比较完整内容");
+                    offset = 0;
+                    for (int[] group : largeGroups) {
+                        for (int[] duplicates : groupByHash(group, fullHashes, offset)) {
+                            result.add(toDuplicateGroup(candidates, duplicates));
+                        }
+                        offset += group.length;
+                    }
+                    if (isCancelled()) {
+                        return List.of();
+                    }
+                    result.sort(Comparator.comparingLong(DuplicateGroup::getRedundantBytes).reversed());
+                    logger.info("Found {} duplicate groups among {} files ({} head hashes, {} full hashes) "
+                            + "in {} ms.", result.size(), fileCount, sameSize.length, large.length,
+                            (System.nanoTime() - start) / 1_000_000);
+                    return result;
+                } finally {
+                    pool.shutdownNow();
+                }
+            }
+
+            /**
+             * 并行计算一组候选文件的摘要，结果与 {@code indices} 一一对应；无法读取的文件为 null。
+             */
+            private String[] hashAll(ExecutorService pool, FileList files, int[] indices, boolean headOnly,
+                    String stage) throws Exception {
+                String[] hashes = new String[indices.length];
+                long totalBytes = 0;
+                for (int index : indices) {
+                    totalBytes += headOnly ? Math.min(HEAD_BYTES, files.sizes[index]) : files.sizes[index];
+                }
+                long total = Math.max(1, totalBytes);
+                AtomicLong bytesDone = new AtomicLong();
+                AtomicInteger filesDone = new AtomicInteger();
+                updateMessage(String.format("%s (0/%d)...", stage, indices.length));
+                forEachParallel(pool, indices.length, this::isCancelled, i -> {
+                    File file = files.files.get(indices[i]);
+                    long size = files.sizes[indices[i]];
+                    long length = headOnly ? Math.min(HEAD_BYTES, size) : size;
+                    try {
+                        hashes[i] = hash(file, length, size, this::isCancelled);
+                    } catch (IOException e) {
+                        logger.debug("Cannot read {} while looking for duplicates.", file, e);
+                    }
+                    updateProgress(bytesDone.addAndGet(length), total);
+                    updateMessage(String.format("%s (%d/%d)...", stage, filesDone.incrementAndGet(), indices.length));
+                });
+                return hashes;
+            }
+        };
+    }
+
+    /**
+     * 列举目录中的图片，已完整扫描的子树使用目录库中的记录。
+     */
+    private void collectFiles(File root, boolean recursive, FileList result, Set<File> seen,
+            BooleanSupplier cancelled) throws IOException {
+        if (recursive && libraryCrawler.isIndexed(root)) {
+            for (CatalogEntry entry : catalog.getEntriesUnder(root)) {
+                if (seen == null || seen.add(entry.getFile())) {
+                    result.add(entry.getFile(), entry.getAttributes().getSize(), true);
+                }
+            }
+            return;
+        }
+        if (!recursive) {
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(root.toPath())) {
+                for (Path path : stream) {
+                    addIfImage(path, readAttributes(path), result, seen);
+                }
+            }
+            return;
+        }
+        Path rootPath = root.toPath();
+        Files.walkFileTree(rootPath, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path directory, BasicFileAttributes attributes) {
+                if (cancelled.getAsBoolean()) {
+                    return FileVisitResult.TERMINATE;
+                }
+                boolean hidden = !directory.equals(rootPath) && directory.getFileName().toString().startsWith(".");
+                return hidden ? FileVisitResult.SKIP_SUBTREE : FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path path, BasicFileAttributes attributes) {
+                addIfImage(path, attributes, result, seen);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path path, IOException e) {
+                return FileVisitResult.CONTINUE; // 无法访问的文件或目录被跳过
+            }
+        });
+    }
+
+    private static BasicFileAttributes readAttributes(Path path) {
+        try {
+            return Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static void addIfImage(Path path, BasicFileAttributes attributes, FileList result, Set<File> seen) {
+        if (attributes != null && attributes.isRegularFile()
+                && FileUtils.hasImageExtension(path.getFileName().toString())) {
+            File file = path.toFile();
+            if (seen == null || seen.add(file)) {
+                result.add(file, attributes.size(), false);
+            }
+        }
+    }
+
+    /**
+     * 把文件按大小分组，返回每组（至少两个文件）的下标。空文件不参与比较。
+     */
+    private static List<int[]> groupBySize(FileList files) {
+        long[] sizes = files.sizes;
+        int[] order = new int[files.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        ImageSortService.sortIndices(order, (a, b) -> Long.compare(sizes[a], sizes[b]));
+        List<int[]> groups = new ArrayList<>();
+        int runStart = 0;
+        for (int i = 1; i <= order.length; i++) {
+            if (i == order.length || sizes[order[i]] != sizes[order[runStart]]) {
+                if (i - runStart > 1 && sizes[order[runStart]] > 0) {
+                    groups.add(Arrays.copyOfRange(order, runStart, i));
+                }
+                runStart = i;
+            }
+        }
+        return groups;
+    }
+
+    /**
+     * 在一组文件中按摘要再分组，返回每组（至少两个文件）的下标。
+     *
+     * @param group  文件下标
+     * @param hashes 由 {@link #flatten(List)} 拼接的各组文件的摘要
+     * @param offset 这组文件的摘要在 {@code hashes} 中的起点
+     */
+    private static List<int[]> groupByHash(int[] group, String[] hashes, int offset) {
+        Map<String, List<Integer>> byHash = new HashMap<>();
+        for (int i = 0; i < group.length; i++) {
+            String hash = hashes[offset + i];
+            if (hash != null) {
+                byHash.computeIfAbsent(hash, key -> new ArrayList<>()).add(group[i]);
+            }
+        }
+        List<int[]> result = new ArrayList<>();
+        for (List<Integer> members : byHash.values()) {
+            if (members.size() > 1) {
+                result.add(members.stream().mapToInt(Integer::intValue).toArray());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 依次拼接各组的下标。
+     */
+    private static int[] flatten(List<int[]> groups) {
+        int total = 0;
+        for (int[] group : groups) {
+            total += group.length;
+        }
+        int[] flat = new int[total];
+        int next = 0;
+        for (int[] group : groups) {
+            System.arraycopy(group, 0, flat, next, group.length);
+            next += group.length;
+        }
+        return flat;
+    }
+
+    private static DuplicateGroup toDuplicateGroup(FileList files, int[] group) {
+        List<File> members = new ArrayList<>(group.length);
+        for (int index : group) {
+            members.add(files.files.get(index));
+        }
+        members.sort(Comparator.comparing(File::getPath));
+        return new DuplicateGroup(files.sizes[group[0]], members);
+    }
+
+    /**
+     * 计算文件开头 {@code length} 字节的 SHA-256 摘要，通过线程的直接缓冲区读取；{@code length} 不小于文件大小时
+     * 读取到文件末尾。文件大小与分组时的 {@code expectedSize} 不符（在列举之后被修改）时返回 null。
+     */
+    static String hash(File file, long length, long expectedSize, BooleanSupplier cancelled) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        ByteBuffer buffer = readBuffers.get();
+        boolean whole = length >= expectedSize;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() != expectedSize) {
+                return null;
+            }
+            long position = 0;
+            while (whole || position < length) {
+                if (cancelled.getAsBoolean()) {
+                    return null;
+                }
+                buffer.clear();
+                if (!whole) {
+                    buffer.limit((int) Math.min(buffer.capacity(), length - position));
+                }
+                int read = channel.read(buffer, position);
+                if (read < 0) {
+                    break;
+                }
+                position += read;
+                buffer.flip();
+                digest.update(buffer);
+            }
+            if (position != (whole ? expectedSize : length)) {
+                return null; // 文件在读取期间变短或变长
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * 在线程池上并行处理下标 0 到 count - 1：每个工作线程不断领取下一个下标，直到处理完或任务被取消。
+     */
+    private static void forEachParallel(ExecutorService pool, int count, BooleanSupplier cancelled,
+            IntConsumer action) throws Exception {
+        AtomicInteger next = new AtomicInteger();
+        List<Future<?>> workers = new ArrayList<>(HASH_PARALLELISM);
+        for (int w = 0; w < Math.min(HASH_PARALLELISM, count); w++) {
+            workers.add(pool.submit(() -> {
+                int index;
+                while (!cancelled.getAsBoolean() && (index = next.getAndIncrement()) < count) {
+                    action.accept(index);
+                }
+            }));
+        }
+        try {
+            for (Future<?> worker : workers) {
+                worker.get();
+            }
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        }
+    }
+
+    /**
+     * 列举到的文件及其大小，大小存放在基本类型数组中。
+     */
+    private static class FileList {
+        private final List<File> files = new ArrayList<>();
+        private long[] sizes = new long[1024];
+        // 大小取自目录库、需要重新读取的文件
+        private final BitSet fromCatalog = new BitSet();
+
+        void add(File file, long size, boolean catalogSize) {
+            if (files.size() == sizes.length) {
+                sizes = Arrays.copyOf(sizes, sizes.length * 2);
+            }
+            sizes[files.size()] = size;
+            fromCatalog.set(files.size(), catalogSize);
+            files.add(file);
+        }
+
+        int[] catalogIndices() {
+            return fromCatalog.stream().toArray();
+        }
+
+        int size() {
+            return files.size();
+        }
+    }
+}
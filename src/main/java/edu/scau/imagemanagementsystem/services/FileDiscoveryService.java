@@ -1,13 +1,32 @@
 package edu.scau.imagemanagementsystem.services;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.scau.imagemanagementsystem.model.DiscoveredFile;
 import edu.scau.imagemanagementsystem.utils.FileUtils;
+import javafx.application.Platform;
 import javafx.concurrent.Task;
 
 public class FileDiscoveryService {
+    private static final Logger logger = LoggerFactory.getLogger(FileDiscoveryService.class);
+
+    // 第一批尽快交付，使首屏缩略图立即出现；之后的批次按数量或时间间隔交付
+    private static final int FIRST_BATCH_SIZE = 64;
+    private static final int BATCH_SIZE = 1024;
+    private static final long BATCH_INTERVAL_NANOS = 100_000_000L;
 
     /**
      * 异步获取指定父目录下的子目录列表。
@@ -29,39 +48,108 @@ public class FileDiscoveryService {
     }
 
     /**
-     * 异步获取指定目录下的图片文件列表。
+     * 以流的方式异步扫描指定目录下的图片文件，边扫描边分批交付结果。
+     * <p>
+     * 基于 {@link Files#newDirectoryStream(Path)}，先按文件名过滤扩展名，只为可能是图片的条目读取一次文件属性。
+     * 每一批结果通过 {@link Platform#runLater(Runnable)} 在 FX 线程上交给 {@code onBatch}，
+     * 所有批次都会在 Task 的成功回调之前交付。任务被取消后不再交付新的批次。
      *
      * @param directory 目标目录
-     * @return 一个 Task，其结果为图片文件列表。如果目录无效或没有图片文件，则列表为空。
+     * @param onBatch   在 FX 线程上接收每一批发现的图片文件
+     * @return 一个 Task，其结果为发现的图片文件总数
      */
-    public Task<List<File>> getImageFilesAsync(File directory) {
+    public Task<Integer> streamImageFilesAsync(File directory, Consumer<List<DiscoveredFile>> onBatch) {
         return new Task<>() {
             @Override
-            protected List<File> call() throws Exception {
-                if (directory == null || !directory.isDirectory()) {
-                    return List.of();
-                }
-                File[] files = directory.listFiles(f -> f.isFile() && FileUtils.isImageFile(f));
-                return files == null ? List.of() : Arrays.asList(files);
+            protected Integer call() throws Exception {
+                int[] total = new int[1];
+                scanImageFiles(directory, batch -> {
+                    total[0] += batch.size();
+                    Platform.runLater(() -> {
+                        if (!isCancelled()) {
+                            onBatch.accept(batch);
+                        }
+                    });
+                }, this::isCancelled);
+                return total[0];
             }
         };
     }
 
     /**
-     * 异步计算指定图片文件列表的总大小。
+     * 异步读取一组文件或目录的属性，例如目录变化中新建或修改的条目。
      *
-     * @param imageFiles 图片文件列表
-     * @return 一个 Task，其结果为文件总大小（字节）。如果列表为 null，则返回 0。
+     * @param files 要读取的文件或目录
+     * @return 一个 Task，其结果为仍然存在的条目及其属性；已不存在或无法访问的条目被忽略
      */
-    public Task<Long> calculateDirectorySizeAsync(List<File> imageFiles) {
+    public Task<List<DiscoveredFile>> readAttributesAsync(List<File> files) {
         return new Task<>() {
             @Override
-            protected Long call() throws Exception {
-                if (imageFiles == null) {
-                    return 0L;
+            protected List<DiscoveredFile> call() {
+                List<DiscoveredFile> existing = new ArrayList<>(files.size());
+                for (File file : files) {
+                    if (isCancelled()) {
+                        break;
+                    }
+                    try {
+                        existing.add(new DiscoveredFile(file,
+                                Files.readAttributes(file.toPath(), BasicFileAttributes.class)));
+                    } catch (IOException e) {
+                        // 已被删除，或无法访问
+                    }
                 }
-                return imageFiles.stream().mapToLong(File::length).sum();
+                return existing;
             }
         };
     }
-}
\ No newline at end of file
+
+    /**
+     * 扫描目录并分批交付图片文件，在调用线程上执行。
+     */
+    private void scanImageFiles(File directory, Consumer<List<DiscoveredFile>> batchConsumer,
+            BooleanSupplier cancelled) throws IOException {
+        if (directory == null || !directory.isDirectory()) {
+            return;
+        }
+        long start = System.nanoTime();
+        long lastFlush = start;
+        int batchLimit = FIRST_BATCH_SIZE;
+        int total = 0;
+        List<DiscoveredFile> batch = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory.toPath())) {
+            for (Path path : stream) {
+                if (cancelled.getAsBoolean()) {
+                    return;
+                }
+                // 先检查扩展名，不是图片的条目不访问文件属性
+                if (!FileUtils.hasImageExtension(path.getFileName().toString())) {
+                    continue;
+                }
+                BasicFileAttributes attributes;
+                try {
+                    attributes = Files.readAttributes(path, BasicFileAttributes.class);
+                } catch (IOException e) {
+                    continue; // 扫描期间被删除，或无法访问
+                }
+                if (!attributes.isRegularFile()) {
+                    continue;
+                }
+                batch.add(new DiscoveredFile(path.toFile(), attributes));
+                long now = System.nanoTime();
+                if (batch.size() >= batchLimit || now - lastFlush >= BATCH_INTERVAL_NANOS) {
+                    total += batch.size();
+                    batchConsumer.accept(batch);
+                    batch = new ArrayList<>();
+                    batchLimit = BATCH_SIZE;
+                    lastFlush = now;
+                }
+            }
+        }
+        if (!batch.isEmpty() && !cancelled.getAsBoolean()) {
+            total += batch.size();
+            batchConsumer.accept(batch);
+        }
+        logger.debug("Scanned {} image files in {} in {} ms", total, directory,
+                (System.nanoTime() - start) / 1_000_000);
+    }
+}
@@ -5,13 +5,29 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
 
 import edu.scau.imagemanagementsystem.model.BatchRenameParams;
+import edu.scau.imagemanagementsystem.model.DirectoryDelta;
 import edu.scau.imagemanagementsystem.utils.FileUtils;
+import javafx.application.Platform;
 import javafx.concurrent.Task;
 
 public class FileOperationService {
+    private Consumer<DirectoryDelta> onDirectoryChanged;
+
+    /**
+     * 设置文件操作改变目录内容后的回调。每个受影响的目录交付一次变化，
+     * 回调在 FX 线程上、在对应 Task 的成功回调之前执行。
+     *
+     * @param onDirectoryChanged 回调，可以为 null
+     */
+    public void setOnDirectoryChanged(Consumer<DirectoryDelta> onDirectoryChanged) {
+        this.onDirectoryChanged = onDirectoryChanged;
+    }
 
     /**
      * 异步删除文件列表。
@@ -26,13 +42,19 @@ public class FileOperationService {
                 if (files == null)
                     return false;
                 boolean allDeleted = true;
+                List<File> deletedFiles = new ArrayList<>();
                 for (File file : files) {
-                    if (file.exists() && !file.delete()) {
-                        allDeleted = false;
-                        // Log or handle individual file deletion failure if necessary
-                        System.err.println("Failed to delete: " + file.getAbsolutePath());
+                    if (file.exists()) {
+                        if (file.delete()) {
+                            deletedFiles.add(file);
+                        } else {
+                            allDeleted = false;
+                            // Log or handle individual file deletion failure if necessary
+                            System.err.println("Failed to delete: " + file.getAbsolutePath());
+                        }
                     }
                 }
+                reportChanges(List.of(), deletedFiles);
                 return allDeleted;
             }
         };
@@ -71,6 +93,7 @@ public class FileOperationService {
                         }
                     }
                 }
+                reportChanges(pastedFiles, List.of());
                 return pastedFiles;
             }
         };
@@ -99,7 +122,11 @@ public class FileOperationService {
                             .println("Rename failed: File with new name already exists: " + newFile.getAbsolutePath());
                     return false; // Or implement conflict resolution
                 }
-                return oldFile.renameTo(newFile);
+                if (!oldFile.renameTo(newFile)) {
+                    return false;
+                }
+                reportChanges(List.of(newFile), List.of(oldFile));
+                return true;
             }
         };
     }
@@ -118,6 +145,8 @@ public class FileOperationService {
                 if (files == null || params == null)
                     return false;
                 boolean allRenamed = true;
+                List<File> renamedFrom = new ArrayList<>();
+                List<File> renamedTo = new ArrayList<>();
                 int currentNumber = params.getStartNumber();
                 for (File file : files) {
                     if (file.exists()) {
@@ -134,15 +163,47 @@ public class FileOperationService {
                             continue; // Skip this file or implement more sophisticated conflict resolution
                         }
 
-                        if (!file.renameTo(newFile)) {
+                        if (file.renameTo(newFile)) {
+                            renamedFrom.add(file);
+                            renamedTo.add(newFile);
+                        } else {
                             allRenamed = false;
                             System.err.println(
                                     "Failed to rename: " + file.getAbsolutePath() + " to " + newFile.getAbsolutePath());
                         }
                     }
                 }
+                // 链式重命名时，某个旧名称同时也是新名称，它仍然存在
+                renamedFrom.removeAll(renamedTo);
+                reportChanges(renamedTo, renamedFrom);
                 return allRenamed;
             }
         };
     }
-}
\ No newline at end of file
+
+    /**
+     * 按所在目录分组，把本服务造成的变化直接交给监听者，无需等待文件系统事件。
+     */
+    private void reportChanges(List<File> created, List<File> deleted) {
+        Consumer<DirectoryDelta> listener = onDirectoryChanged;
+        if (listener == null || (created.isEmpty() && deleted.isEmpty())) {
+            return;
+        }
+        Map<File, List<File>> createdByDirectory = new LinkedHashMap<>();
+        Map<File, List<File>> deletedByDirectory = new LinkedHashMap<>();
+        for (File file : created) {
+            createdByDirectory.computeIfAbsent(file.getParentFile(), dir -> new ArrayList<>()).add(file);
+        }
+        for (File file : deleted) {
+            deletedByDirectory.computeIfAbsent(file.getParentFile(), dir -> new ArrayList<>()).add(file);
+            createdByDirectory.putIfAbsent(file.getParentFile(), new ArrayList<>());
+        }
+        List<DirectoryDelta> deltas = new ArrayList<>();
+        for (Map.Entry<File, List<File>> entry : createdByDirectory.entrySet()) {
+            deltas.add(new DirectoryDelta(entry.getKey(), entry.getValue(),
+                    deletedByDirectory.getOrDefault(entry.getKey(), List.of()), List.of()));
+        }
+        // Task 的成功回调同样经由 runLater 在之后执行，因此变化总是先于成功回调交付
+        Platform.runLater(() -> deltas.forEach(listener));
+    }
+}
@@ -0,0 +1,336 @@
+package edu.scau.imagemanagementsystem.services;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.drew.imaging.jpeg.JpegProcessingException;
+import com.drew.imaging.jpeg.JpegSegmentData;
+import com.drew.imaging.jpeg.JpegSegmentReader;
+import com.drew.imaging.jpeg.JpegSegmentType;
+import com.drew.lang.ByteArrayReader;
+import com.drew.metadata.Metadata;
+import com.drew.metadata.MetadataException;
+import com.drew.metadata.exif.ExifDirectoryBase;
+import com.drew.metadata.exif.ExifReader;
+import com.drew.metadata.exif.ExifThumbnailDirectory;
+import com.drew.metadata.jpeg.JpegDirectory;
+import com.drew.metadata.jpeg.JpegReader;
+
+import edu.scau.imagemanagementsystem.utils.FileUtils;
+import javafx.embed.swing.SwingFXUtils;
+import javafx.scene.image.Image;
+
+/**
+ * 图片解码的底层实现，供 {@link ImageLoadService} 使用。
+ */
+final class ImageDecoder {
+    private static final Logger logger = LoggerFactory.getLogger(ImageDecoder.class);
+
+    // APP1 段中 "Exif\0\0" 前导之后才是 TIFF 头，EXIF 中的偏移量都相对 TIFF 头计算
+    private static final int EXIF_PREAMBLE_LENGTH = ExifReader.JPEG_SEGMENT_PREAMBLE.length();
+    private static final int JPEG_COMPRESSION = 6;
+    // 内嵌缩略图与原图宽高比的最大允许偏差，超过时通常意味着缩略图带有黑边
+    private static final double MAX_ASPECT_RATIO_DEVIATION = 0.03;
+    // 子采样解码的目标是最终尺寸的两倍，再平滑缩小，以保证缩略图质量
+    private static final double SUBSAMPLING_OVERSAMPLE = 2.0;
+
+    // JavaFX 的 JPEG 解码器已经在 DCT 域按目标尺寸缩放，更快且不会分配完整位图；
+    // 其余格式由 JavaFX 先完整解码再缩放，改用 ImageIO 子采样解码
+    private static final Set<String> SUBSAMPLED_FORMATS = Set.of("png", "bmp", "gif");
+
+    // 每个解码线程按格式缓存 ImageReader，避免每次解码都查询 ImageIO 注册表
+    private static final ThreadLocal<Map<String, ImageReader>> READERS = ThreadLocal.withInitial(HashMap::new);
+
+    private ImageDecoder() {
+    }
+
+    /**
+     * 使用 ImageIO 按子采样方式解码缩略图。
+     * <p>
+     * 先从文件头读取原图尺寸，再通过 {@link ImageReadParam#setSourceSubsampling} 直接解码到约为目标尺寸两倍的位图，
+     * 最后平滑缩放到请求尺寸内。与先解码完整位图再缩放相比，峰值内存和 CPU 开销都与子采样因子的平方成反比。
+     * JPEG 不使用此路径，JavaFX 自身的解码器已在 DCT 域完成缩放。
+     *
+     * @param imageFile 图片文件
+     * @param reqWidth  请求的缩略图宽度
+     * @param reqHeight 请求的缩略图高度
+     * @return 缩略图；当前格式不适用子采样或没有可用的 ImageIO 解码器时返回 null
+     * @throws IOException 读取或解码失败时抛出
+     */
+    static Image decodeSubsampled(File imageFile, double reqWidth, double reqHeight) throws IOException {
+        String format = FileUtils.getFileExtension(imageFile.getName()).toLowerCase();
+        if (!SUBSAMPLED_FORMATS.contains(format)) {
+            return null;
+        }
+        ImageReader reader = acquireReader(format);
+        if (reader == null) {
+            return null;
+        }
+        try (ImageInputStream input = ImageIO.createImageInputStream(imageFile)) {
+            if (input == null) {
+                return null;
+            }
+            reader.setInput(input, true, true);
+            int width = reader.getWidth(0);
+            int height = reader.getHeight(0);
+            double scale = Math.min(1.0, Math.min(reqWidth / width, reqHeight / height));
+            int targetWidth = Math.max(1, (int) Math.round(width * scale));
+            int targetHeight = Math.max(1, (int) Math.round(height * scale));
+            int subsampling = Math.max(1, (int) Math.floor(1.0 / (scale * SUBSAMPLING_OVERSAMPLE)));
+
+            ImageReadParam param = reader.getDefaultReadParam();
+            param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+            BufferedImage decoded = reader.read(0, param);
+            BufferedImage thumbnail = decoded.getWidth() == targetWidth && decoded.getHeight() == targetHeight
+                    ? decoded
+                    : resize(decoded, targetWidth, targetHeight);
+            return SwingFXUtils.toFXImage(thumbnail, null);
+        } finally {
+            reader.setInput(null);
+        }
+    }
+
+    /**
+     * 解码原图中的一个矩形区域，并按给定因子子采样，用于深度缩放的瓦片。
+     *
+     * @param imageFile   图片文件
+     * @param x           区域左上角横坐标（原图像素）
+     * @param y           区域左上角纵坐标（原图像素）
+     * @param width       区域宽度（原图像素）
+     * @param height      区域高度（原图像素）
+     * @param subsampling 子采样因子，1 表示原始分辨率
+     * @return 解码得到的图像；当前格式没有可用的 ImageIO 解码器时返回 null
+     * @throws IOException 读取或解码失败时抛出
+     */
+    static Image decodeRegion(File imageFile, int x, int y, int width, int height, int subsampling)
+            throws IOException {
+        ImageReader reader = acquireReader(FileUtils.getFileExtension(imageFile.getName()).toLowerCase());
+        if (reader == null) {
+            return null;
+        }
+        try (ImageInputStream input = ImageIO.createImageInputStream(imageFile)) {
+            if (input == null) {
+                return null;
+            }
+            reader.setInput(input, true, true);
+            ImageReadParam param = reader.getDefaultReadParam();
+            param.setSourceRegion(new Rectangle(x, y, width, height));
+            param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+            return SwingFXUtils.toFXImage(reader.read(0, param), null);
+        } finally {
+            reader.setInput(null);
+        }
+    }
+
+    /**
+     * 只读取文件头，获取图片的原始尺寸。
+     *
+     * @param imageFile 图片文件
+     * @return {宽, 高}；没有可用的 ImageIO 解码器或读取失败时返回 null
+     */
+    static int[] readDimensions(File imageFile) {
+        ImageReader reader = acquireReader(FileUtils.getFileExtension(imageFile.getName()).toLowerCase());
+        if (reader == null) {
+            return null;
+        }
+        try (ImageInputStream input = ImageIO.createImageInputStream(imageFile)) {
+            if (input == null) {
+                return null;
+            }
+            reader.setInput(input, true, true);
+            return new int[] { reader.getWidth(0), reader.getHeight(0) };
+        } catch (IOException | RuntimeException e) {
+            logger.debug("Failed to read dimensions of {}", imageFile, e);
+            return null;
+        } finally {
+            reader.setInput(null);
+        }
+    }
+
+    private static ImageReader acquireReader(String format) {
+        Map<String, ImageReader> readers = READERS.get();
+        ImageReader reader = readers.get(format);
+        if (reader == null && !readers.containsKey(format)) {
+            Iterator<ImageReader> candidates = ImageIO.getImageReadersBySuffix(format);
+            reader = candidates.hasNext() ? candidates.next() : null;
+            readers.put(format, reader);
+        }
+        return reader;
+    }
+
+    private static BufferedImage resize(BufferedImage source, int width, int height) {
+        int type = source.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+        BufferedImage target = new BufferedImage(width, height, type);
+        Graphics2D graphics = target.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            graphics.drawImage(source, 0, 0, width, height, null);
+        } finally {
+            graphics.dispose();
+        }
+        return target;
+    }
+
+    /**
+     * 尝试使用 JPEG 文件 EXIF 中内嵌的缩略图生成指定尺寸的缩略图。
+     * <p>
+     * 只读取文件开头的 APP1 和 SOF 段，不解码原图。没有内嵌缩略图、内嵌缩略图比请求的尺寸小，
+     * 或者宽高比与原图不一致时返回 null，由调用方回退到完整解码。
+     *
+     * @param imageFile 图片文件
+     * @param reqWidth  请求的缩略图宽度
+     * @param reqHeight 请求的缩略图高度
+     * @return 缩放到请求尺寸内的缩略图；无法使用内嵌缩略图时返回 null
+     */
+    static Image readEmbeddedThumbnail(File imageFile, double reqWidth, double reqHeight) {
+        return readEmbedded(imageFile, reqWidth, reqHeight, false);
+    }
+
+    /**
+     * 读取 JPEG 内嵌的 EXIF 缩略图作为粗略预览。与 {@link #readEmbeddedThumbnail} 不同，
+     * 尺寸小于请求区域或宽高比不一致的内嵌缩略图也会被接受。
+     *
+     * @param imageFile 图片文件
+     * @param reqWidth  请求的缩略图宽度
+     * @param reqHeight 请求的缩略图高度
+     * @return 预览图；文件没有内嵌缩略图时返回 null
+     */
+    static Image readEmbeddedPreview(File imageFile, double reqWidth, double reqHeight) {
+        return readEmbedded(imageFile, reqWidth, reqHeight, true);
+    }
+
+    private static Image readEmbedded(File imageFile, double reqWidth, double reqHeight, boolean acceptCoarse) {
+        String extension = FileUtils.getFileExtension(imageFile.getName()).toLowerCase();
+        if (!extension.equals("jpg") && !extension.equals("jpeg")) {
+            return null;
+        }
+        try {
+            JpegSegmentData segments = JpegSegmentReader.readSegments(imageFile, Arrays.asList(
+                    JpegSegmentType.APP1, JpegSegmentType.SOF0, JpegSegmentType.SOF1, JpegSegmentType.SOF2));
+            byte[] thumbnailBytes = null;
+            for (byte[] segment : segments.getSegments(JpegSegmentType.APP1)) {
+                thumbnailBytes = extractExifThumbnail(segment);
+                if (thumbnailBytes != null) {
+                    break;
+                }
+            }
+            if (thumbnailBytes == null) {
+                return null;
+            }
+            Image embedded = new Image(new ByteArrayInputStream(thumbnailBytes));
+            if (embedded.isError() || embedded.getWidth() <= 0 || embedded.getHeight() <= 0) {
+                return null;
+            }
+
+            double aspectRatio = embedded.getWidth() / embedded.getHeight();
+            int[] dimensions = acceptCoarse ? null : readJpegDimensions(segments);
+            if (dimensions != null) {
+                double imageAspectRatio = (double) dimensions[0] / dimensions[1];
+                if (Math.abs(aspectRatio - imageAspectRatio) / imageAspectRatio > MAX_ASPECT_RATIO_DEVIATION) {
+                    return null;
+                }
+                aspectRatio = imageAspectRatio;
+            }
+            // 按原图宽高比计算缩略图在请求区域内的实际尺寸，内嵌缩略图必须至少这么大
+            double scale = Math.min(reqWidth / aspectRatio, reqHeight);
+            double fittedWidth = scale * aspectRatio;
+            double fittedHeight = scale;
+            if (!acceptCoarse
+                    && (embedded.getWidth() + 0.5 < fittedWidth || embedded.getHeight() + 0.5 < fittedHeight)) {
+                return null;
+            }
+            if (embedded.getWidth() <= reqWidth && embedded.getHeight() <= reqHeight) {
+                return embedded;
+            }
+            Image scaled = new Image(new ByteArrayInputStream(thumbnailBytes), reqWidth, reqHeight, true, true);
+            return scaled.isError() ? null : scaled;
+        } catch (JpegProcessingException | IOException e) {
+            logger.debug("Failed to read embedded thumbnail from {}", imageFile, e);
+            return null;
+        }
+    }
+
+    /**
+     * 从 APP1 段中取出 EXIF IFD1 指向的 JPEG 缩略图字节。
+     */
+    private static byte[] extractExifThumbnail(byte[] segment) {
+        if (!ExifReader.startsWithJpegExifPreamble(segment)) {
+            return null;
+        }
+        Metadata metadata = new Metadata();
+        new ExifReader().extract(new ByteArrayReader(segment), metadata, EXIF_PREAMBLE_LENGTH);
+        ExifThumbnailDirectory directory = metadata.getFirstDirectoryOfType(ExifThumbnailDirectory.class);
+        if (directory == null || !directory.containsTag(ExifThumbnailDirectory.TAG_THUMBNAIL_OFFSET)
+                || !directory.containsTag(ExifThumbnailDirectory.TAG_THUMBNAIL_LENGTH)) {
+            return null;
+        }
+        try {
+            if (directory.containsTag(ExifDirectoryBase.TAG_COMPRESSION)
+                    && directory.getInt(ExifDirectoryBase.TAG_COMPRESSION) != JPEG_COMPRESSION) {
+                return null; // 未压缩的 TIFF 缩略图很少见，交给完整解码处理
+            }
+            long offset = EXIF_PREAMBLE_LENGTH + directory.getLong(ExifThumbnailDirectory.TAG_THUMBNAIL_OFFSET);
+            long length = directory.getLong(ExifThumbnailDirectory.TAG_THUMBNAIL_LENGTH);
+            if (length <= 0 || offset < EXIF_PREAMBLE_LENGTH || offset + length > segment.length) {
+                return null;
+            }
+            byte[] thumbnail = Arrays.copyOfRange(segment, (int) offset, (int) (offset + length));
+            // 必须以 JPEG SOI 标记开头，否则偏移量无效
+            if (thumbnail.length < 2 || (thumbnail[0] & 0xFF) != 0xFF || (thumbnail[1] & 0xFF) != 0xD8) {
+                return null;
+            }
+            return thumbnail;
+        } catch (MetadataException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 从 SOF 段中读取原图尺寸。
+     *
+     * @return {宽, 高}；无法读取时返回 null
+     */
+    private static int[] readJpegDimensions(JpegSegmentData segments) {
+        for (JpegSegmentType type : Arrays.asList(JpegSegmentType.SOF0, JpegSegmentType.SOF1,
+                JpegSegmentType.SOF2)) {
+            byte[] segment = segments.getSegment(type);
+            if (segment == null) {
+                continue;
+            }
+            Metadata metadata = new Metadata();
+            new JpegReader().extract(segment, metadata, type);
+            JpegDirectory directory = metadata.getFirstDirectoryOfType(JpegDirectory.class);
+            try {
+                if (directory != null) {
+                    int width = directory.getImageWidth();
+                    int height = directory.getImageHeight();
+                    if (width > 0 && height > 0) {
+                        return new int[] { width, height };
+                    }
+                }
+            } catch (MetadataException e) {
+                return null;
+            }
+        }
+        return null;
+    }
+}
@@ -1,15 +1,36 @@
 package edu.scau.imagemanagementsystem.services;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.IOException;
 
+import javax.imageio.ImageIO;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.scau.imagemanagementsystem.model.CatalogEntry;
+import edu.scau.imagemanagementsystem.utils.FileUtils;
+import edu.scau.imagemanagementsystem.utils.PerceptualHash;
 import javafx.concurrent.Task;
+import javafx.embed.swing.SwingFXUtils;
 import javafx.scene.image.Image;
 
 public class ImageLoadService {
+    private static final Logger logger = LoggerFactory.getLogger(ImageLoadService.class);
+    private static final int SCALED_SIZE_STEP = 128;
+
+    private final ThumbnailCacheService thumbnailCache = ThumbnailCacheService.getInstance();
+    private final ImageMemoryCache memoryCache = ImageMemoryCache.getInstance();
+    private final CatalogService catalog = CatalogService.getInstance();
 
     /**
      * 异步加载指定图片文件的缩略图。
+     * 依次查找内存缓存和磁盘缩略图缓存；都未命中时优先使用 JPEG 内嵌的 EXIF 缩略图，
+     * 没有可用的内嵌缩略图时才解码原图并将结果写回两级缓存。
+     * 内存缓存之外的各种来源得到缩略图时，顺便计算图片的感知哈希并记入目录库。
      *
      * @param imageFile 要加载缩略图的图片文件
      * @param reqWidth  请求的缩略图宽度
@@ -20,20 +41,232 @@ public class ImageLoadService {
         return new Task<>() {
             @Override
             protected Image call() throws Exception {
-                if (imageFile == null || !imageFile.exists() || !imageFile.isFile()) {
+                if (imageFile == null) {
                     return null;
                 }
-                // Load image with requested width and height, preserving aspect ratio
-                // The Image constructor with width/height and preserveRatio=true handles this.
-                try (FileInputStream fis = new FileInputStream(imageFile)) {
-                    return new Image(fis, reqWidth, reqHeight, true, true);
-                } // smooth = true for better quality
+                Image cached = loadCachedThumbnail(imageFile, reqWidth, reqHeight);
+                if (cached != null || !imageFile.isFile()) {
+                    return cached;
+                }
+                CatalogEntry entry = entryNeedingHash(imageFile);
+                Image thumbnail = decodeThumbnail(imageFile, reqWidth, reqHeight);
+                if (!thumbnail.isError() && !isCancelled()) {
+                    storeThumbnail(imageFile, entry, thumbnail, reqWidth, reqHeight);
+                    memoryCache.put(ImageMemoryCache.thumbnailKey(imageFile, reqWidth, reqHeight), thumbnail);
+                }
+                return thumbnail;
+            }
+        };
+    }
+
+    /**
+     * 异步加载缩略图的快速预览，只做不需要解码原图的工作。
+     * <p>
+     * 缓存命中或内嵌缩略图足够大时，结果就是最终缩略图，并已放入内存缓存；
+     * 否则结果可能是尺寸偏小的内嵌缩略图（不放入缓存），或者为 null，调用方应再通过
+     * {@link #loadThumbnailAsync} 获取完整质量的缩略图。
+     *
+     * @param imageFile 要加载预览的图片文件
+     * @param reqWidth  请求的缩略图宽度
+     * @param reqHeight 请求的缩略图高度
+     * @return 一个 Task，其结果为预览图或最终缩略图；没有可快速获得的图像时为 null。
+     */
+    public Task<Image> loadThumbnailPreviewAsync(File imageFile, double reqWidth, double reqHeight) {
+        return new Task<>() {
+            @Override
+            protected Image call() throws Exception {
+                if (imageFile == null) {
+                    return null;
+                }
+                Image cached = loadCachedThumbnail(imageFile, reqWidth, reqHeight);
+                if (cached != null || !imageFile.isFile()) {
+                    return cached;
+                }
+                return ImageDecoder.readEmbeddedPreview(imageFile, reqWidth, reqHeight);
             }
         };
     }
 
     /**
-     * 异步加载指定图片文件的完整图像。
+     * 在调用线程上预先生成缩略图并写入磁盘缓存，用于后台扫描图库。结果不放入内存缓存，
+     * 以免挤占当前浏览的图片。已有磁盘缓存或足够大的内嵌缩略图时不再解码原图，
+     * 只在目录库中还没有感知哈希时从这些缩略图计算。
+     *
+     * @param imageFile 图片文件
+     * @param reqWidth  缩略图宽度
+     * @param reqHeight 缩略图高度
+     * @return 如果之后可以直接从磁盘缓存或内嵌缩略图得到缩略图则返回 true
+     * @throws IOException 如果读取文件失败
+     */
+    public boolean pregenerateThumbnail(File imageFile, double reqWidth, double reqHeight) throws IOException {
+        if (!imageFile.isFile()) {
+            return false;
+        }
+        CatalogEntry entry = entryNeedingHash(imageFile);
+        boolean needsHash = entry != null;
+        String cacheKey = ThumbnailCacheService.buildKey(imageFile, reqWidth, reqHeight);
+        if (thumbnailCache.contains(cacheKey)) {
+            byte[] cached = needsHash ? thumbnailCache.get(cacheKey) : null;
+            recordThumbnail(imageFile, entry, cached == null ? null : new Image(new ByteArrayInputStream(cached)),
+                    cacheKey);
+            return true;
+        }
+        Image embedded = ImageDecoder.readEmbeddedThumbnail(imageFile, reqWidth, reqHeight);
+        if (embedded != null) {
+            recordThumbnail(imageFile, entry, embedded, null);
+            return true;
+        }
+        Image thumbnail = decodeThumbnail(imageFile, reqWidth, reqHeight);
+        return !thumbnail.isError() && storeThumbnail(imageFile, entry, thumbnail, reqWidth, reqHeight);
+    }
+
+    /**
+     * 在调用线程上获取图片的感知哈希。目录库中已有时直接返回；否则从缩略图计算，
+     * 依次使用各级缓存和内嵌缩略图，都没有时才解码原图（生成的缩略图同时写入磁盘缓存）。
+     *
+     * @param imageFile 图片文件
+     * @param reqWidth  缩略图宽度，应与浏览时使用的尺寸相同，以便命中缓存
+     * @param reqHeight 缩略图高度
+     * @return 感知哈希；无法解码图片时返回 null
+     * @throws IOException 如果读取文件失败
+     */
+    public Long getPerceptualHash(File imageFile, double reqWidth, double reqHeight) throws IOException {
+        CatalogEntry entry = currentEntry(imageFile);
+        if (entry != null && entry.getPerceptualHash() != null) {
+            return entry.getPerceptualHash();
+        }
+        Image thumbnail = loadCachedThumbnail(imageFile, reqWidth, reqHeight);
+        if (thumbnail == null && imageFile.isFile()) {
+            thumbnail = decodeThumbnail(imageFile, reqWidth, reqHeight);
+            if (!thumbnail.isError()) {
+                storeThumbnail(imageFile, entry, thumbnail, reqWidth, reqHeight);
+            }
+        }
+        Long hash = PerceptualHash.of(thumbnail);
+        if (hash != null && entry != null) {
+            catalog.putPerceptualHash(entry, hash, null);
+        }
+        return hash;
+    }
+
+    /**
+     * 把新解码的缩略图写入磁盘缓存，并把缓存键和感知哈希记入目录库。
+     *
+     * @param entry 解码前读取的目录库记录，可以为 null
+     * @return 如果缩略图成功写入磁盘缓存则返回 true
+     */
+    private boolean storeThumbnail(File imageFile, CatalogEntry entry, Image thumbnail, double reqWidth,
+            double reqHeight) throws IOException {
+        byte[] encoded = encodeThumbnail(thumbnail);
+        String cacheKey = null;
+        if (encoded != null) {
+            cacheKey = ThumbnailCacheService.buildKey(imageFile, reqWidth, reqHeight);
+            thumbnailCache.put(cacheKey, encoded);
+        }
+        recordThumbnail(imageFile, entry, thumbnail, cacheKey);
+        return encoded != null;
+    }
+
+    /**
+     * 记录缩略图的磁盘缓存键（可以为 null），{@code entry} 不为 null 时从缩略图计算感知哈希并一起保存。
+     * 哈希只需要缩略图的像素，因此不会为此再解码原图。
+     *
+     * @param entry 由 {@link #entryNeedingHash(File)} 得到的记录
+     */
+    private void recordThumbnail(File imageFile, CatalogEntry entry, Image thumbnail, String cacheKey) {
+        Long hash = entry != null ? PerceptualHash.of(thumbnail) : null;
+        if (hash != null) {
+            catalog.putPerceptualHash(entry, hash, cacheKey);
+        } else if (cacheKey != null) {
+            catalog.putThumbnailKey(imageFile, cacheKey);
+        }
+    }
+
+    /**
+     * 返回还需要计算感知哈希的记录。绝大多数记录已经有哈希，这时不再读取文件属性，
+     * 内存缓存未命中的缩略图加载因此只多一次目录库查询。
+     *
+     * @return 目录库中还没有感知哈希、且与磁盘上的文件版本一致的记录；否则返回 null
+     */
+    private CatalogEntry entryNeedingHash(File imageFile) {
+        CatalogEntry entry = catalog.get(imageFile);
+        return entry != null && entry.getPerceptualHash() == null && isCurrent(entry, imageFile) ? entry : null;
+    }
+
+    /**
+     * @return 目录库中与磁盘上的文件版本一致的记录；没有记录或记录已经过期时返回 null
+     */
+    private CatalogEntry currentEntry(File imageFile) {
+        CatalogEntry entry = catalog.get(imageFile);
+        return entry != null && isCurrent(entry, imageFile) ? entry : null;
+    }
+
+    private static boolean isCurrent(CatalogEntry entry, File imageFile) {
+        return entry.getSize() == imageFile.length() && entry.getLastModifiedMillis() == imageFile.lastModified();
+    }
+
+    /**
+     * 从内存缓存、磁盘缓存或足够大的内嵌缩略图中获取最终缩略图。
+     *
+     * @return 缩略图；都不可用时返回 null
+     */
+    private Image loadCachedThumbnail(File imageFile, double reqWidth, double reqHeight) throws IOException {
+        String memoryKey = ImageMemoryCache.thumbnailKey(imageFile, reqWidth, reqHeight);
+        Image inMemory = memoryCache.get(memoryKey);
+        if (inMemory != null) {
+            return inMemory;
+        }
+        if (!imageFile.exists() || !imageFile.isFile()) {
+            return null;
+        }
+        String cacheKey = ThumbnailCacheService.buildKey(imageFile, reqWidth, reqHeight);
+        byte[] cached = thumbnailCache.get(cacheKey);
+        if (cached != null) {
+            Image image = new Image(new ByteArrayInputStream(cached));
+            if (!image.isError()) {
+                memoryCache.put(memoryKey, image);
+                recordThumbnail(imageFile, entryNeedingHash(imageFile), image, null);
+                return image;
+            }
+            thumbnailCache.remove(cacheKey);
+        }
+        // 内嵌缩略图只需读取文件头部，重新提取的代价很低，因此只放入内存缓存
+        Image embedded = ImageDecoder.readEmbeddedThumbnail(imageFile, reqWidth, reqHeight);
+        if (embedded != null) {
+            memoryCache.put(memoryKey, embedded);
+            recordThumbnail(imageFile, entryNeedingHash(imageFile), embedded, null);
+        }
+        return embedded;
+    }
+
+    /**
+     * 解码原图生成缩略图。PNG、BMP、GIF 优先使用 ImageIO 子采样解码；JPEG 以及子采样失败时使用 JavaFX 按尺寸解码。
+     */
+    private Image decodeThumbnail(File imageFile, double reqWidth, double reqHeight) throws IOException {
+        long start = System.nanoTime();
+        try {
+            Image thumbnail = ImageDecoder.decodeSubsampled(imageFile, reqWidth, reqHeight);
+            if (thumbnail != null) {
+                logger.debug("Decoded subsampled thumbnail for {} in {} ms", imageFile.getName(),
+                        (System.nanoTime() - start) / 1_000_000);
+                return thumbnail;
+            }
+        } catch (IOException | RuntimeException e) {
+            // 例如 CMYK JPEG 等 ImageIO 不支持的变体
+            logger.debug("Subsampled decode failed for {}, falling back to full decode.", imageFile, e);
+        }
+        // Load image with requested width and height, preserving aspect ratio
+        // The Image constructor with width/height and preserveRatio=true handles this.
+        try (FileInputStream fis = new FileInputStream(imageFile)) {
+            Image thumbnail = new Image(fis, reqWidth, reqHeight, true, true); // smooth = true for better quality
+            logger.debug("Decoded thumbnail for {} in {} ms", imageFile.getName(),
+                    (System.nanoTime() - start) / 1_000_000);
+            return thumbnail;
+        }
+    }
+
+    /**
+     * 异步加载指定图片文件的完整图像，结果会放入共享的内存缓存。
      *
      * @param imageFile 要加载的图片文件
      * @return 一个 Task，其结果为加载的完整 Image 对象；如果文件无效或加载失败，则为 null。
@@ -42,13 +275,107 @@ public class ImageLoadService {
         return new Task<>() {
             @Override
             protected Image call() throws Exception {
-                if (imageFile == null || !imageFile.exists() || !imageFile.isFile()) {
+                if (imageFile == null) {
                     return null;
                 }
+                String memoryKey = ImageMemoryCache.fullImageKey(imageFile);
+                Image inMemory = memoryCache.get(memoryKey);
+                if (inMemory != null) {
+                    return inMemory;
+                }
+                if (!imageFile.exists() || !imageFile.isFile()) {
+                    return null;
+                }
+                Image image;
                 try (FileInputStream fis = new FileInputStream(imageFile)) {
-                    return new Image(fis); // Load full image
+                    image = new Image(fis); // Load full image
+                }
+                memoryCache.put(memoryKey, image);
+                return image;
+            }
+        };
+    }
+
+    /**
+     * 异步加载按显示尺寸缩小的图片，结果会放入共享的内存缓存。
+     * <p>
+     * 先从文件头读取原图尺寸：原图不超过给定区域时完整解码；否则 JPEG 和 GIF 由 JavaFX 按尺寸解码
+     * （JPEG 在 DCT 域缩放，GIF 保留动画），其余格式使用 ImageIO 子采样解码。图片不会被放大。
+     * 请求尺寸会向上取整到 {@value #SCALED_SIZE_STEP} 像素的倍数，使窗口尺寸的细微变化能复用缓存。
+     *
+     * @param imageFile 要加载的图片文件
+     * @param maxWidth  解码的最大宽度（像素）
+     * @param maxHeight 解码的最大高度（像素）
+     * @return 一个 Task，其结果为加载的 Image 对象；如果文件无效或加载失败，则为 null。
+     */
+    public Task<Image> loadImageAsync(File imageFile, double maxWidth, double maxHeight) {
+        double width = roundUpToStep(maxWidth);
+        double height = roundUpToStep(maxHeight);
+        return new Task<>() {
+            @Override
+            protected Image call() throws Exception {
+                if (imageFile == null) {
+                    return null;
+                }
+                String memoryKey = ImageMemoryCache.scaledImageKey(imageFile, width, height);
+                Image inMemory = memoryCache.get(memoryKey);
+                if (inMemory != null) {
+                    return inMemory;
                 }
+                if (!imageFile.exists() || !imageFile.isFile()) {
+                    return null;
+                }
+                long start = System.nanoTime();
+                int[] dimensions = ImageDecoder.readDimensions(imageFile);
+                Image image = null;
+                if (dimensions != null && (dimensions[0] > width || dimensions[1] > height)) {
+                    String extension = FileUtils.getFileExtension(imageFile.getName()).toLowerCase();
+                    if (!extension.equals("gif")) {
+                        try {
+                            image = ImageDecoder.decodeSubsampled(imageFile, width, height);
+                        } catch (IOException | RuntimeException e) {
+                            logger.debug("Subsampled decode failed for {}, falling back.", imageFile, e);
+                        }
+                    }
+                    if (image == null) {
+                        try (FileInputStream fis = new FileInputStream(imageFile)) {
+                            image = new Image(fis, width, height, true, true);
+                        }
+                    }
+                } else {
+                    try (FileInputStream fis = new FileInputStream(imageFile)) {
+                        image = new Image(fis);
+                    }
+                }
+                logger.debug("Decoded {} at {}x{} for display in {} ms", imageFile.getName(), (int) image.getWidth(),
+                        (int) image.getHeight(), (System.nanoTime() - start) / 1_000_000);
+                if (!image.isError()) {
+                    memoryCache.put(memoryKey, image);
+                }
+                return image;
             }
         };
     }
-}
\ No newline at end of file
+
+    private static double roundUpToStep(double size) {
+        return Math.max(SCALED_SIZE_STEP, Math.ceil(size / SCALED_SIZE_STEP) * SCALED_SIZE_STEP);
+    }
+
+    /**
+     * 将缩略图编码为 PNG 字节，用于写入磁盘缓存。
+     *
+     * @param thumbnail 已解码的缩略图
+     * @return PNG 数据；编码失败时返回 null
+     */
+    private byte[] encodeThumbnail(Image thumbnail) {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(16 * 1024);
+            if (ImageIO.write(SwingFXUtils.fromFXImage(thumbnail, null), "png", out)) {
+                return out.toByteArray();
+            }
+        } catch (IOException e) {
+            logger.debug("Failed to encode thumbnail for cache.", e);
+        }
+        return null;
+    }
+}
@@ -0,0 +1,500 @@
+package edu.scau.imagemanagementsystem.services;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javafx.scene.image.Image;
+
+/**
+ * 全局的已解码图片内存缓存，缩略图、幻灯片图片和预览图共享同一个字节预算。
+ * <p>
+ * 每张图片按 {@code 宽 × 高 × 4} 计算占用。淘汰策略为 W-TinyLFU：新图片先进入一个很小的 LRU 窗口区，
+ * 被挤出窗口时与主区 (分段 LRU：试用区 + 保护区) 中最该淘汰的图片比较访问频率，只有更"热"的图片
+ * 才能进入主区。因此一次性扫描一个巨大的目录不会冲掉经常访问的工作集。
+ */
+public class ImageMemoryCache {
+    private static final Logger logger = LoggerFactory.getLogger(ImageMemoryCache.class);
+
+    private static final double WINDOW_RATIO = 0.01;
+    private static final double PROTECTED_RATIO = 0.80;
+    private static final long AVERAGE_IMAGE_BYTES = 64L * 1024;
+
+    private static final ImageMemoryCache INSTANCE = new ImageMemoryCache(
+            Math.min(Runtime.getRuntime().maxMemory() / 4, 1024L * 1024 * 1024));
+
+    private enum Region {
+        WINDOW, PROBATION, PROTECTED
+    }
+
+    private final long maxBytes;
+    private final long windowMaxBytes;
+    private final long protectedMaxBytes;
+
+    private final Map<String, Node> nodes = new HashMap<>();
+    // 以下三个有序表的迭代顺序为 LRU -> MRU
+    private final LinkedHashMap<String, Node> window = new LinkedHashMap<>();
+    private final LinkedHashMap<String, Node> probation = new LinkedHashMap<>();
+    private final LinkedHashMap<String, Node> protectedRegion = new LinkedHashMap<>();
+    private final FrequencySketch sketch;
+    private final List<Consumer<String>> evictionListeners = new CopyOnWriteArrayList<>();
+
+    private long windowBytes;
+    private long probationBytes;
+    private long protectedBytes;
+
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+    private long rejectedCount;
+
+    ImageMemoryCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+        this.windowMaxBytes = Math.max(1, (long) (maxBytes * WINDOW_RATIO));
+        this.protectedMaxBytes = (long) ((maxBytes - windowMaxBytes) * PROTECTED_RATIO);
+        this.sketch = new FrequencySketch((int) Math.min(1 << 20, Math.max(1024, maxBytes / AVERAGE_IMAGE_BYTES)));
+    }
+
+    /**
+     * 获取全局唯一的图片内存缓存实例。
+     *
+     * @return 图片内存缓存实例
+     */
+    public static ImageMemoryCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * 构造缩略图的缓存键。
+     *
+     * @param file      图片文件
+     * @param reqWidth  请求的缩略图宽度
+     * @param reqHeight 请求的缩略图高度
+     * @return 缓存键
+     */
+    public static String thumbnailKey(File file, double reqWidth, double reqHeight) {
+        return "thumb|" + file.getAbsolutePath() + '|' + (int) reqWidth + 'x' + (int) reqHeight;
+    }
+
+    /**
+     * 构造完整图片（幻灯片、预览）的缓存键。
+     *
+     * @param file 图片文件
+     * @return 缓存键
+     */
+    public static String fullImageKey(File file) {
+        return "full|" + file.getAbsolutePath();
+    }
+
+    /**
+     * 构造按显示尺寸解码的图片的缓存键。
+     *
+     * @param file      图片文件
+     * @param maxWidth  解码的最大宽度
+     * @param maxHeight 解码的最大高度
+     * @return 缓存键
+     */
+    public static String scaledImageKey(File file, double maxWidth, double maxHeight) {
+        return "scaled|" + file.getAbsolutePath() + '|' + (int) maxWidth + 'x' + (int) maxHeight;
+    }
+
+    /**
+     * 计算一张图片在内存中的大致占用（字节）。
+     *
+     * @param image 图片
+     * @return 占用字节数
+     */
+    public static long weigh(Image image) {
+        return Math.max(1L, (long) image.getWidth() * (long) image.getHeight() * 4L);
+    }
+
+    /**
+     * 读取缓存中的图片，同时记录一次访问。
+     *
+     * @param key 缓存键
+     * @return 缓存的图片；未命中时返回 null
+     */
+    public synchronized Image get(String key) {
+        sketch.increment(key);
+        Node node = nodes.get(key);
+        if (node == null) {
+            missCount++;
+            return null;
+        }
+        hitCount++;
+        onAccess(node);
+        return node.image;
+    }
+
+    /**
+     * 检查缓存中是否存在指定的键，不记录访问。
+     *
+     * @param key 缓存键
+     * @return 如果存在则返回 true
+     */
+    public synchronized boolean contains(String key) {
+        return nodes.containsKey(key);
+    }
+
+    /**
+     * 将图片放入缓存。超过整个预算的图片不会被缓存。
+     *
+     * @param key   缓存键
+     * @param image 已解码的图片
+     */
+    public void put(String key, Image image) {
+        if (image == null || image.isError()) {
+            return;
+        }
+        List<String> evicted = new ArrayList<>();
+        synchronized (this) {
+            long weight = weigh(image);
+            Node existing = nodes.get(key);
+            if (existing != null) {
+                detach(existing);
+                nodes.remove(key);
+            }
+            if (weight > maxBytes) {
+                rejectedCount++;
+                return;
+            }
+            Node node = new Node(key, image, weight);
+            nodes.put(key, node);
+            attach(node, Region.WINDOW);
+            evictFromWindow(evicted);
+        }
+        notifyEvicted(evicted);
+    }
+
+    /**
+     * 从缓存中移除一张图片，例如文件被修改或删除后。
+     *
+     * @param key 缓存键
+     */
+    public synchronized void invalidate(String key) {
+        Node node = nodes.remove(key);
+        if (node != null) {
+            detach(node);
+        }
+    }
+
+    /**
+     * 移除一个文件的所有缓存图片（缩略图、完整图片和各种显示尺寸），例如文件被修改或删除后。
+     *
+     * @param file 图片文件
+     */
+    public synchronized void invalidateFile(File file) {
+        String path = file.getAbsolutePath();
+        Iterator<Map.Entry<String, Node>> iterator = nodes.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, Node> entry = iterator.next();
+            // 缓存键的格式为 "类型|路径" 或 "类型|路径|尺寸"
+            String key = entry.getKey();
+            int start = key.indexOf('|') + 1;
+            if (key.startsWith(path, start)
+                    && (key.length() == start + path.length() || key.charAt(start + path.length()) == '|')) {
+                iterator.remove();
+                detach(entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * 注册淘汰监听器。监听器在后台线程或调用线程上被调用，参数为被淘汰的缓存键。
+     *
+     * @param listener 淘汰监听器
+     */
+    public void addEvictionListener(Consumer<String> listener) {
+        evictionListeners.add(listener);
+    }
+
+    /**
+     * 获取当前的命中、未命中、淘汰等统计信息，用于调优。
+     *
+     * @return 统计信息快照
+     */
+    public synchronized Statistics getStatistics() {
+        return new Statistics(hitCount, missCount, evictionCount, rejectedCount, nodes.size(),
+                windowBytes + probationBytes + protectedBytes, maxBytes);
+    }
+
+    private void onAccess(Node node) {
+        switch (node.region) {
+            case WINDOW:
+                window.remove(node.key);
+                window.put(node.key, node);
+                break;
+            case PROBATION:
+                // 试用区被再次访问则晋升到保护区
+                detach(node);
+                attach(node, Region.PROTECTED);
+                demoteProtectedOverflow();
+                break;
+            case PROTECTED:
+                protectedRegion.remove(node.key);
+                protectedRegion.put(node.key, node);
+                break;
+        }
+    }
+
+    private void demoteProtectedOverflow() {
+        Iterator<Node> iterator = protectedRegion.values().iterator();
+        while (protectedBytes > protectedMaxBytes && iterator.hasNext()) {
+            Node demoted = iterator.next();
+            iterator.remove();
+            protectedBytes -= demoted.weight;
+            demoted.region = Region.PROBATION;
+            probation.put(demoted.key, demoted);
+            probationBytes += demoted.weight;
+        }
+    }
+
+    private void evictFromWindow(List<String> evicted) {
+        while (windowBytes > windowMaxBytes && !window.isEmpty()) {
+            Node candidate = window.values().iterator().next();
+            detach(candidate);
+            if (admit(candidate, evicted)) {
+                attach(candidate, Region.PROBATION);
+            } else {
+                nodes.remove(candidate.key);
+                rejectedCount++;
+                evictionCount++;
+                evicted.add(candidate.key);
+            }
+        }
+    }
+
+    /**
+     * TinyLFU 准入：为候选者腾出主区空间时，只有当候选者的访问频率高于每一个被挤出的受害者时才接纳。
+     */
+    private boolean admit(Node candidate, List<String> evicted) {
+        long required = probationBytes + protectedBytes + candidate.weight - (maxBytes - windowMaxBytes);
+        if (required <= 0) {
+            return true;
+        }
+        // 先挑出需要挤出的受害者 (试用区优先)，全部比较通过后才真正淘汰
+        int candidateFrequency = sketch.frequency(candidate.key);
+        List<Node> victims = new ArrayList<>();
+        long freed = 0;
+        Iterator<Node> probationIterator = probation.values().iterator();
+        Iterator<Node> protectedIterator = protectedRegion.values().iterator();
+        while (freed < required) {
+            Node victim = probationIterator.hasNext() ? probationIterator.next()
+                    : protectedIterator.hasNext() ? protectedIterator.next() : null;
+            if (victim == null || candidateFrequency <= sketch.frequency(victim.key)) {
+                return false;
+            }
+            victims.add(victim);
+            freed += victim.weight;
+        }
+        for (Node victim : victims) {
+            detach(victim);
+            nodes.remove(victim.key);
+            evictionCount++;
+            evicted.add(victim.key);
+        }
+        return true;
+    }
+
+    private void attach(Node node, Region region) {
+        node.region = region;
+        switch (region) {
+            case WINDOW:
+                window.put(node.key, node);
+                windowBytes += node.weight;
+                break;
+            case PROBATION:
+                probation.put(node.key, node);
+                probationBytes += node.weight;
+                break;
+            case PROTECTED:
+                protectedRegion.put(node.key, node);
+                protectedBytes += node.weight;
+                break;
+        }
+    }
+
+    private void detach(Node node) {
+        switch (node.region) {
+            case WINDOW:
+                window.remove(node.key);
+                windowBytes -= node.weight;
+                break;
+            case PROBATION:
+                probation.remove(node.key);
+                probationBytes -= node.weight;
+                break;
+            case PROTECTED:
+                protectedRegion.remove(node.key);
+                protectedBytes -= node.weight;
+                break;
+        }
+    }
+
+    private void notifyEvicted(List<String> evicted) {
+        if (evicted.isEmpty()) {
+            return;
+        }
+        for (String key : evicted) {
+            for (Consumer<String> listener : evictionListeners) {
+                try {
+                    listener.accept(key);
+                } catch (RuntimeException e) {
+                    logger.warn("Image cache eviction listener failed for {}", key, e);
+                }
+            }
+        }
+    }
+
+    private static final class Node {
+        private final String key;
+        private final Image image;
+        private final long weight;
+        private Region region;
+
+        private Node(String key, Image image, long weight) {
+            this.key = key;
+            this.image = image;
+            this.weight = weight;
+        }
+    }
+
+    /**
+     * 4 行 Count-Min Sketch，用于估计键的近期访问频率。计数上限为 15，
+     * 累计增加次数达到阈值后所有计数减半，使频率随时间衰减。
+     */
+    private static final class FrequencySketch {
+        private static final int[] SEEDS = { 0x9E3779B9, 0x85EBCA6B, 0xC2B2AE35, 0x27D4EB2F };
+        private static final int MAX_COUNT = 15;
+
+        private final byte[][] table;
+        private final int mask;
+        private final int resetThreshold;
+        private int additions;
+
+        private FrequencySketch(int expectedEntries) {
+            int width = Integer.highestOneBit(Math.max(16, expectedEntries - 1)) << 1;
+            this.table = new byte[SEEDS.length][width];
+            this.mask = width - 1;
+            this.resetThreshold = width * 10;
+        }
+
+        private void increment(String key) {
+            int hash = spread(key.hashCode());
+            boolean added = false;
+            for (int row = 0; row < SEEDS.length; row++) {
+                int index = indexOf(hash, row);
+                if (table[row][index] < MAX_COUNT) {
+                    table[row][index]++;
+                    added = true;
+                }
+            }
+            if (added && ++additions >= resetThreshold) {
+                reset();
+            }
+        }
+
+        private int frequency(String key) {
+            int hash = spread(key.hashCode());
+            int frequency = MAX_COUNT;
+            for (int row = 0; row < SEEDS.length; row++) {
+                frequency = Math.min(frequency, table[row][indexOf(hash, row)]);
+            }
+            return frequency;
+        }
+
+        private void reset() {
+            for (byte[] row : table) {
+                for (int i = 0; i < row.length; i++) {
+                    row[i] = (byte) (row[i] >>> 1);
+                }
+            }
+            additions /= 2;
+        }
+
+        private int indexOf(int hash, int row) {
+            int h = (hash ^ SEEDS[row]) * 0x9E3779B1;
+            return (h ^ (h >>> 16)) & mask;
+        }
+
+        private static int spread(int hash) {
+            hash ^= hash >>> 17;
+            hash *= 0xED5AD4BB;
+            hash ^= hash >>> 11;
+            return hash;
+        }
+    }
+
+    /**
+     * 缓存统计信息快照。
+     */
+    public static final class Statistics {
+        private final long hitCount;
+        private final long missCount;
+        private final long evictionCount;
+        private final long rejectedCount;
+        private final int entryCount;
+        private final long usedBytes;
+        private final long maxBytes;
+
+        private Statistics(long hitCount, long missCount, long evictionCount, long rejectedCount, int entryCount,
+                long usedBytes, long maxBytes) {
+            this.hitCount = hitCount;
+            this.missCount = missCount;
+            this.evictionCount = evictionCount;
+            this.rejectedCount = rejectedCount;
+            this.entryCount = entryCount;
+            this.usedBytes = usedBytes;
+            this.maxBytes = maxBytes;
+        }
+
+        public long getHitCount() {
+            return hitCount;
+        }
+
+        public long getMissCount() {
+            return missCount;
+        }
+
+        public long getEvictionCount() {
+            return evictionCount;
+        }
+
+        public long getRejectedCount() {
+            return rejectedCount;
+        }
+
+        public int getEntryCount() {
+            return entryCount;
+        }
+
+        public long getUsedBytes() {
+            return usedBytes;
+        }
+
+        public long getMaxBytes() {
+            return maxBytes;
+        }
+
+        public double getHitRate() {
+            long requests = hitCount + missCount;
+            return requests == 0 ? 0.0 : (double) hitCount / requests;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("hits=%d, misses=%d (hit rate %.1f%%), evictions=%d, rejected=%d, entries=%d, "
+                    + "used=%d/%d bytes", hitCount, missCount, getHitRate() * 100, evictionCount, rejectedCount,
+                    entryCount, usedBytes, maxBytes);
+        }
+    }
+}
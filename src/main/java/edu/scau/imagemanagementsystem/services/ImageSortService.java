@@ -0,0 +1,614 @@
+package edu.scau.imagemanagementsystem.services;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.stream.IntStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.scau.imagemanagementsystem.model.CatalogEntry;
+import edu.scau.imagemanagementsystem.model.FileAttributes;
+import edu.scau.imagemanagementsystem.model.ImageFileItem;
+import edu.scau.imagemanagementsystem.model.MetadataColumns;
+import edu.scau.imagemanagementsystem.utils.FileUtils;
+import edu.scau.imagemanagementsystem.utils.ImageQuery;
+import edu.scau.imagemanagementsystem.utils.ImageQuery.Clause;
+import edu.scau.imagemanagementsystem.utils.NameIndex;
+import edu.scau.imagemanagementsystem.utils.NaturalSortKey;
+
+/**
+ * 对一组图片过滤与排序，并缓存每种排序方式的结果。
+ * <p>
+ * 图片集合变化时一次性为所有数据项计算排序键：文件名的 {@link NaturalSortKey}，以及存放在基本类型数组中的
+ * 文件大小和修改时间；拍摄时间和像素数来自按列存放的 {@link MetadataColumns}。每种排序方式的升序排列（一个下标数组）
+ * 计算一次后被缓存，降序只需反向遍历；过滤也只是按缓存的排列挑出匹配的数据项，因此输入关键字或切换升降序都是 O(n)。
+ * 数据项较多时排列用并行归并排序计算。
+ * <p>
+ * 过滤条件来自 {@link ImageQuery}：每个条件被编译成直接读取上述数组的谓词，字符串条件预先在字典中匹配，
+ * 按估计的通过率从低到高排列，求值时逐项短路；数据项较多时分段并行求值。
+ * <p>
+ * 没有拍摄时间或尺寸的图片在两个方向上都排在最后，按文件名排列。
+ * 所有方法都在实例上同步，通常在后台线程上调用。
+ */
+public class ImageSortService {
+    private static final Logger logger = LoggerFactory.getLogger(ImageSortService.class);
+
+    /**
+     * 数据项不少于此数量时并行排序。
+     */
+    public static final int PARALLEL_THRESHOLD = 8192;
+
+    // 并行过滤时每段的数据项数，必须是 64 的倍数
+    private static final int SELECT_SEGMENT_SIZE = 4096;
+    // 估计条件通过率时的样本数
+    private static final int SELECTIVITY_SAMPLES = 512;
+
+    public enum SortField {
+        NAME, SIZE, MODIFIED, CAPTURED, DIMENSIONS
+    }
+
+    private final CatalogService catalog = CatalogService.getInstance();
+
+    private List<ImageFileItem> items = List.of();
+    private long itemsVersion = -1;
+    private long metadataVersion = -1;
+    private NaturalSortKey[] nameKeys = new NaturalSortKey[0];
+    private long[] sizes = new long[0];
+    private long[] modifiedTimes = new long[0];
+    // 以下数据在第一次需要时计算：扩展名的字典编号，数据项到下标的映射
+    private int[] extensionIds;
+    private List<String> extensions;
+    private Map<ImageFileItem, Integer> indexByItem;
+    // 元数据按数据项下标存放，第一次需要时从目录库读取；元数据更新后只补读此前缺少元数据的数据项
+    private MetadataColumns columns;
+    private boolean columnsStale;
+    private final Map<SortField, Ordering> orderings = new EnumMap<>(SortField.class);
+
+    /**
+     * 设置要排序的图片集合。
+     * <p>
+     * 版本号由调用方维护：图片被添加、删除或属性变化时递增 {@code itemsVersion}，
+     * 元数据（拍摄时间、尺寸）更新时递增 {@code metadataVersion}。版本号未变时不重新计算。
+     *
+     * @param snapshot        当前图片集合的快照；{@code itemsVersion} 未变时可以为 null
+     * @param itemsVersion    图片集合的版本
+     * @param metadataVersion 元数据的版本
+     */
+    public synchronized void update(List<ImageFileItem> snapshot, long itemsVersion, long metadataVersion) {
+        if (itemsVersion != this.itemsVersion && snapshot != null) {
+            long start = System.nanoTime();
+            List<String> names = new ArrayList<>(snapshot.size());
+            for (ImageFileItem item : snapshot) {
+                names.add(item.getName());
+            }
+            nameKeys = NaturalSortKey.forNames(names);
+            sizes = new long[snapshot.size()];
+            modifiedTimes = new long[snapshot.size()];
+            for (int i = 0; i < sizes.length; i++) {
+                FileAttributes attributes = snapshot.get(i).getAttributes();
+                sizes[i] = attributes.getSize();
+                modifiedTimes[i] = attributes.getLastModifiedMillis();
+            }
+            extensionIds = null;
+            extensions = null;
+            indexByItem = null;
+            items = snapshot;
+            this.itemsVersion = itemsVersion;
+            this.metadataVersion = metadataVersion;
+            orderings.clear();
+            columns = null;
+            logger.debug("Computed name keys for {} items in {} ms.", snapshot.size(),
+                    (System.nanoTime() - start) / 1_000_000);
+        } else if (metadataVersion != this.metadataVersion) {
+            this.metadataVersion = metadataVersion;
+            orderings.remove(SortField.CAPTURED);
+            orderings.remove(SortField.DIMENSIONS);
+            columnsStale = true;
+        }
+    }
+
+    /**
+     * @return 当前图片集合的元数据列，下标与 {@link #getItems()} 一致
+     */
+    public synchronized MetadataColumns getColumns() {
+        if (columns == null || columnsStale) {
+            MetadataColumns loaded = columns != null ? columns : new MetadataColumns(items.size());
+            List<Integer> indices = new ArrayList<>();
+            List<File> files = new ArrayList<>();
+            for (int i = 0; i < items.size(); i++) {
+                if (!loaded.hasMetadata(i)) {
+                    indices.add(i);
+                    files.add(items.get(i).getFile());
+                }
+            }
+            List<CatalogEntry> entries = catalog.get(files);
+            for (int i = 0; i < entries.size(); i++) {
+                CatalogEntry entry = entries.get(i);
+                if (entry != null) {
+                    loaded.set(indices.get(i), entry.getMetadata());
+                }
+            }
+            columns = loaded;
+            columnsStale = false;
+        }
+        return columns;
+    }
+
+    /**
+     * @return 当前的图片集合
+     */
+    public synchronized List<ImageFileItem> getItems() {
+        return items;
+    }
+
+    /**
+     * 按指定方式排列图片集合中的全部或部分数据项。
+     *
+     * @param field     排序字段
+     * @param ascending 是否升序
+     * @param selected  只保留这些下标（与 {@link #getItems()} 一致）的数据项；为 null 时保留全部
+     * @return 排列后的数据项
+     */
+    public synchronized List<ImageFileItem> sort(SortField field, boolean ascending, BitSet selected) {
+        Ordering ordering = orderings.get(field);
+        if (ordering == null) {
+            long start = System.nanoTime();
+            ordering = computeOrdering(field);
+            orderings.put(field, ordering);
+            logger.debug("Sorted {} items by {} in {} ms.", items.size(), field,
+                    (System.nanoTime() - start) / 1_000_000);
+        }
+        int[] order = ordering.order;
+        int known = order.length - ordering.unknownCount;
+        List<ImageFileItem> result = new ArrayList<>(selected != null ? selected.cardinality() : order.length);
+        for (int i = 0; i < known; i++) {
+            int index = order[ascending ? i : known - 1 - i];
+            if (selected == null || selected.get(index)) {
+                result.add(items.get(index));
+            }
+        }
+        for (int i = known; i < order.length; i++) {
+            int index = order[i];
+            if (selected == null || selected.get(index)) {
+                result.add(items.get(index));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 找出图片集合中满足查询的数据项。
+     *
+     * @param query     查询，不应为空
+     * @param nameIndex 包含这些数据项的文件名索引，用于文件名条件
+     * @return 满足查询的数据项的下标（与 {@link #getItems()} 一致）
+     */
+    public synchronized BitSet select(ImageQuery query, NameIndex<ImageFileItem> nameIndex) {
+        long start = System.nanoTime();
+        int count = items.size();
+        List<Condition> conditions = new ArrayList<>();
+        for (Clause clause : query.getClauses()) {
+            conditions.add(compile(clause, nameIndex));
+        }
+        // 通过率最低（最有选择性）的条件最先求值，多数数据项在第一个条件处就被排除
+        conditions.sort((a, b) -> Double.compare(a.passRate, b.passRate));
+        IndexPredicate[] predicates = new IndexPredicate[conditions.size()];
+        for (int i = 0; i < predicates.length; i++) {
+            predicates[i] = conditions.get(i).predicate;
+        }
+
+        BitSet result;
+        BitSet seed = conditions.isEmpty() ? null : conditions.get(0).matches;
+        if (seed != null && seed.cardinality() < count / 8) {
+            // 第一个条件已经给出了很小的候选集合，只检查这些候选项
+            result = new BitSet(count);
+            for (int i = seed.nextSetBit(0); i >= 0; i = seed.nextSetBit(i + 1)) {
+                if (testAll(predicates, 1, i)) {
+                    result.set(i);
+                }
+            }
+        } else {
+            // 每段的长度是 64 的倍数，各段写入互不重叠的 long，可以并行求值
+            long[] words = new long[(count + 63) >>> 6];
+            int segmentCount = (count + SELECT_SEGMENT_SIZE - 1) / SELECT_SEGMENT_SIZE;
+            IntStream segments = IntStream.range(0, segmentCount);
+            if (count >= PARALLEL_THRESHOLD) {
+                segments = segments.parallel();
+            }
+            segments.forEach(segment -> {
+                int end = Math.min(count, (segment + 1) * SELECT_SEGMENT_SIZE);
+                for (int i = segment * SELECT_SEGMENT_SIZE; i < end; i++) {
+                    if (testAll(predicates, 0, i)) {
+                        words[i >>> 6] |= 1L << i;
+                    }
+                }
+            });
+            result = BitSet.valueOf(words);
+        }
+        logger.debug("Selected {} of {} items with {} conditions in {} ms.", result.cardinality(), count,
+                predicates.length, (System.nanoTime() - start) / 1_000_000);
+        return result;
+    }
+
+    private static boolean testAll(IndexPredicate[] predicates, int from, int index) {
+        for (int p = from; p < predicates.length; p++) {
+            if (!predicates[p].test(index)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 把一个查询条件编译成读取列数组的谓词，并估计其通过率。
+     */
+    private Condition compile(Clause clause, NameIndex<ImageFileItem> nameIndex) {
+        long min = clause.getMin();
+        long max = clause.getMax();
+        IndexPredicate predicate;
+        BitSet matches = null;
+        switch (clause.getField()) {
+            case NAME: {
+                // 文件名条件由三字符组索引直接给出匹配的数据项
+                Map<ImageFileItem, Integer> indices = getIndexByItem();
+                BitSet found = new BitSet(items.size());
+                for (ImageFileItem item : nameIndex.search(clause.getText())) {
+                    Integer index = indices.get(item);
+                    if (index != null) {
+                        found.set(index);
+                    }
+                }
+                matches = found;
+                predicate = found::get;
+                break;
+            }
+            case EXTENSION: {
+                int[] ids = getExtensionIds();
+                int id = extensions.indexOf(clause.getText());
+                predicate = i -> ids[i] == id;
+                break;
+            }
+            case SIZE: {
+                long[] values = sizes;
+                predicate = i -> values[i] >= min && values[i] <= max;
+                break;
+            }
+            case MODIFIED: {
+                long[] values = modifiedTimes;
+                predicate = i -> values[i] >= min && values[i] <= max;
+                break;
+            }
+            default:
+                predicate = compileMetadata(clause, getColumns());
+                break;
+        }
+        if (clause.isNegated()) {
+            IndexPredicate positive = predicate;
+            predicate = i -> !positive.test(i);
+            matches = null;
+        }
+        double passRate;
+        int count = items.size();
+        if (matches != null) {
+            passRate = count == 0 ? 0 : (double) matches.cardinality() / count;
+        } else {
+            // 在均匀分布的样本上估计通过率
+            int samples = Math.min(count, SELECTIVITY_SAMPLES);
+            int passed = 0;
+            for (int s = 0; s < samples; s++) {
+                if (predicate.test((int) ((long) s * count / samples))) {
+                    passed++;
+                }
+            }
+            passRate = samples == 0 ? 0 : (double) passed / samples;
+        }
+        return new Condition(predicate, passRate, matches);
+    }
+
+    private static IndexPredicate compileMetadata(Clause clause, MetadataColumns metadata) {
+        long min = clause.getMin();
+        long max = clause.getMax();
+        float floatMin = clause.getFloatMin();
+        float floatMax = clause.getFloatMax();
+        // 缺少该字段的数据项（值为 0）不满足数值条件
+        switch (clause.getField()) {
+            case ISO:
+                return i -> {
+                    int value = metadata.getIso(i);
+                    return value > 0 && value >= min && value <= max;
+                };
+            case WIDTH:
+                return i -> {
+                    int value = metadata.getWidth(i);
+                    return value > 0 && value >= min && value <= max;
+                };
+            case HEIGHT:
+                return i -> {
+                    int value = metadata.getHeight(i);
+                    return value > 0 && value >= min && value <= max;
+                };
+            case DATE:
+                return i -> {
+                    long value = metadata.getCaptureTimeMillis(i);
+                    return value > 0 && value >= min && value <= max;
+                };
+            case APERTURE:
+                return i -> {
+                    float value = (float) metadata.getFNumber(i);
+                    return value > 0 && value >= floatMin && value <= floatMax;
+                };
+            case FOCAL_LENGTH:
+                return i -> {
+                    float value = (float) metadata.getFocalLengthMillimeters(i);
+                    return value > 0 && value >= floatMin && value <= floatMax;
+                };
+            case CAMERA: {
+                boolean[] accepted = matchDictionary(clause, metadata);
+                return i -> {
+                    int make = metadata.getCameraMakeId(i);
+                    int model = metadata.getCameraModelId(i);
+                    return (make != MetadataColumns.NO_STRING && accepted[make])
+                            || (model != MetadataColumns.NO_STRING && accepted[model]);
+                };
+            }
+            default: {
+                boolean[] accepted = matchDictionary(clause, metadata);
+                return i -> {
+                    int lens = metadata.getLensModelId(i);
+                    return lens != MetadataColumns.NO_STRING && accepted[lens];
+                };
+            }
+        }
+    }
+
+    /**
+     * 在字符串字典中匹配一次条件，返回每个字典编号是否满足条件。
+     */
+    private static boolean[] matchDictionary(Clause clause, MetadataColumns metadata) {
+        boolean[] accepted = new boolean[metadata.getDictionarySize()];
+        for (int id = 0; id < accepted.length; id++) {
+            String value = NameIndex.normalize(metadata.getString(id));
+            accepted[id] = clause.isExact() ? value.equals(clause.getText()) : value.contains(clause.getText());
+        }
+        return accepted;
+    }
+
+    private int[] getExtensionIds() {
+        if (extensionIds == null) {
+            Map<String, Integer> ids = new HashMap<>();
+            List<String> names = new ArrayList<>();
+            int[] result = new int[items.size()];
+            for (int i = 0; i < result.length; i++) {
+                String extension = FileUtils.getFileExtension(items.get(i).getName()).toLowerCase(Locale.ROOT);
+                Integer id = ids.get(extension);
+                if (id == null) {
+                    id = names.size();
+                    names.add(extension);
+                    ids.put(extension, id);
+                }
+                result[i] = id;
+            }
+            extensionIds = result;
+            extensions = names;
+        }
+        return extensionIds;
+    }
+
+    private Map<ImageFileItem, Integer> getIndexByItem() {
+        if (indexByItem == null) {
+            Map<ImageFileItem, Integer> indices = new IdentityHashMap<>(items.size() * 2);
+            for (int i = 0; i < items.size(); i++) {
+                indices.put(items.get(i), i);
+            }
+            indexByItem = indices;
+        }
+        return indexByItem;
+    }
+
+    private Ordering computeOrdering(SortField field) {
+        int count = items.size();
+        if (field == SortField.NAME) {
+            NaturalSortKey[] keys = nameKeys;
+            return new Ordering(sortIndices(identity(count), (a, b) -> keys[a].compareTo(keys[b])), 0);
+        }
+
+        // 其余字段相同时按文件名排列
+        int[] nameOrder = orderings.computeIfAbsent(SortField.NAME, this::computeOrdering).order;
+        int[] nameRank = new int[count];
+        for (int i = 0; i < count; i++) {
+            nameRank[nameOrder[i]] = i;
+        }
+        long[] keys = new long[count];
+        boolean[] known = new boolean[count];
+        int knownCount = 0;
+        MetadataColumns metadata = field == SortField.CAPTURED || field == SortField.DIMENSIONS ? getColumns() : null;
+        for (int i = 0; i < count; i++) {
+            switch (field) {
+                case SIZE:
+                    keys[i] = sizes[i];
+                    known[i] = true;
+                    break;
+                case MODIFIED:
+                    keys[i] = modifiedTimes[i];
+                    known[i] = true;
+                    break;
+                case CAPTURED:
+                    keys[i] = metadata.getCaptureTimeMillis(i);
+                    known[i] = keys[i] > 0;
+                    break;
+                default:
+                    keys[i] = metadata.getPixelCount(i);
+                    known[i] = keys[i] > 0;
+                    break;
+            }
+            if (known[i]) {
+                knownCount++;
+            }
+        }
+        int[] knownIndices = new int[knownCount];
+        int[] order = new int[count];
+        int next = 0;
+        for (int i = 0; i < count; i++) {
+            if (known[i]) {
+                knownIndices[next++] = i;
+            }
+        }
+        int[] sorted = sortIndices(knownIndices, (a, b) -> {
+            int result = Long.compare(keys[a], keys[b]);
+            return result != 0 ? result : Integer.compare(nameRank[a], nameRank[b]);
+        });
+        System.arraycopy(sorted, 0, order, 0, knownCount);
+        // 缺少该字段的数据项接在后面，保持文件名顺序
+        next = knownCount;
+        for (int index : nameOrder) {
+            if (!known[index]) {
+                order[next++] = index;
+            }
+        }
+        return new Ordering(order, count - knownCount);
+    }
+
+    private static int[] identity(int count) {
+        int[] indices = new int[count];
+        for (int i = 0; i < count; i++) {
+            indices[i] = i;
+        }
+        return indices;
+    }
+
+    /**
+     * 对下标数组做稳定的归并排序，数量较多时两半并行排序。
+     */
+    static int[] sortIndices(int[] indices, IndexComparator comparator) {
+        int[] buffer = new int[indices.length];
+        MergeSort sort = new MergeSort(indices, buffer, 0, indices.length, comparator);
+        if (indices.length >= PARALLEL_THRESHOLD) {
+            ForkJoinPool.commonPool().invoke(sort);
+        } else {
+            sort.compute();
+        }
+        return indices;
+    }
+
+    /**
+     * 比较两个数据项的下标。
+     */
+    interface IndexComparator {
+        int compare(int a, int b);
+    }
+
+    /**
+     * 判断一个下标的数据项是否满足条件。
+     */
+    interface IndexPredicate {
+        boolean test(int index);
+    }
+
+    /**
+     * 编译后的查询条件：谓词、估计的通过率，以及文件名条件已知的匹配集合。
+     */
+    private static class Condition {
+        private final IndexPredicate predicate;
+        private final double passRate;
+        private final BitSet matches;
+
+        Condition(IndexPredicate predicate, double passRate, BitSet matches) {
+            this.predicate = predicate;
+            this.passRate = passRate;
+            this.matches = matches;
+        }
+    }
+
+    /**
+     * 一种排序方式的缓存结果：升序排列的下标，末尾 {@code unknownCount} 个是缺少该字段的数据项。
+     */
+    private static class Ordering {
+        private final int[] order;
+        private final int unknownCount;
+
+        Ordering(int[] order, int unknownCount) {
+            this.order = order;
+            this.unknownCount = unknownCount;
+        }
+    }
+
+    @SuppressWarnings("serial")
+    private static class MergeSort extends RecursiveAction {
+        private static final int INSERTION_SORT_THRESHOLD = 32;
+        private static final int SEQUENTIAL_THRESHOLD = PARALLEL_THRESHOLD / 2;
+
+        private final int[] data;
+        private final int[] buffer;
+        private final int from;
+        private final int to;
+        private final IndexComparator comparator;
+
+        MergeSort(int[] data, int[] buffer, int from, int to, IndexComparator comparator) {
+            this.data = data;
+            this.buffer = buffer;
+            this.from = from;
+            this.to = to;
+            this.comparator = comparator;
+        }
+
+        @Override
+        protected void compute() {
+            int length = to - from;
+            if (length <= INSERTION_SORT_THRESHOLD) {
+                insertionSort();
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            MergeSort left = new MergeSort(data, buffer, from, middle, comparator);
+            MergeSort right = new MergeSort(data, buffer, middle, to, comparator);
+            if (length > SEQUENTIAL_THRESHOLD && getPool() != null) {
+                invokeAll(left, right);
+            } else {
+                left.compute();
+                right.compute();
+            }
+            merge(middle);
+        }
+
+        private void insertionSort() {
+            for (int i = from + 1; i < to; i++) {
+                int value = data[i];
+                int j = i - 1;
+                while (j >= from && comparator.compare(data[j], value) > 0) {
+                    data[j + 1] = data[j];
+                    j--;
+                }
+                data[j + 1] = value;
+            }
+        }
+
+        private void merge(int middle) {
+            if (comparator.compare(data[middle - 1], data[middle]) <= 0) {
+                return; // 两半已经有序
+            }
+            System.arraycopy(data, from, buffer, from, to - from);
+            int i = from;
+            int j = middle;
+            int k = from;
+            while (i < middle && j < to) {
+                data[k++] = comparator.compare(buffer[j], buffer[i]) < 0 ? buffer[j++] : buffer[i++];
+            }
+            while (i < middle) {
+                data[k++] = buffer[i++];
+            }
+            while (j < to) {
+                data[k++] = buffer[j++];
+            }
+        }
+    }
+}
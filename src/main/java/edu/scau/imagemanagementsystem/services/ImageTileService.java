@@ -0,0 +1,275 @@
+package edu.scau.imagemanagementsystem.services;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.scau.imagemanagementsystem.services.TaskSchedulerService.Priority;
+import edu.scau.imagemanagementsystem.services.TaskSchedulerService.WorkClass;
+import javafx.concurrent.Task;
+import javafx.scene.image.Image;
+
+/**
+ * 深度缩放使用的瓦片金字塔。
+ * <p>
+ * 第 k 层是原图按 2^k 子采样后的图像，被切分为 {@link #TILE_SIZE} 像素见方的瓦片。瓦片按需通过
+ * {@code ImageReadParam.setSourceRegion} 加子采样直接从原图解码，因此无论原图多大，内存中只有视口涉及的瓦片。
+ * 已解码的瓦片保存在按字节计算容量的 LRU 缓存中。
+ * <p>
+ * 除 {@link #readDimensionsAsync(File)} 返回的任务外，此类的所有方法都必须在 JavaFX 应用线程上调用。
+ */
+public class ImageTileService {
+    private static final Logger logger = LoggerFactory.getLogger(ImageTileService.class);
+
+    /**
+     * 瓦片边长（该层像素）。
+     */
+    public static final int TILE_SIZE = 512;
+    /**
+     * 默认的瓦片缓存容量，可通过系统属性 {@code ims.deepzoom.tileCacheMB} 调整。
+     */
+    public static final long DEFAULT_CACHE_BYTES = Long.getLong("ims.deepzoom.tileCacheMB", 128) << 20;
+
+    private final TaskSchedulerService taskScheduler = TaskSchedulerService.getInstance();
+    private final long maxBytes;
+    // 访问顺序的 LRU 表
+    private final LinkedHashMap<TileKey, Image> cache = new LinkedHashMap<>(64, 0.75f, true);
+    private final Map<TileKey, Task<Image>> pendingTiles = new HashMap<>();
+    // 解码失败或没有内容的瓦片，在 clear 之前不再重新提交，避免每次重绘都重试同一个损坏的区域
+    private final Set<TileKey> failedTiles = new HashSet<>();
+    private long usedBytes;
+    private Consumer<TileKey> onTileLoaded;
+
+    public ImageTileService() {
+        this(DEFAULT_CACHE_BYTES);
+    }
+
+    public ImageTileService(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * 设置瓦片解码完成的回调。
+     */
+    public void setOnTileLoaded(Consumer<TileKey> onTileLoaded) {
+        this.onTileLoaded = onTileLoaded;
+    }
+
+    /**
+     * 异步读取图片的原始尺寸，只读取文件头。
+     *
+     * @param imageFile 图片文件
+     * @return 一个 Task，其结果为 {宽, 高}；无法读取时为 null
+     */
+    public Task<int[]> readDimensionsAsync(File imageFile) {
+        Task<int[]> task = new Task<>() {
+            @Override
+            protected int[] call() {
+                return ImageDecoder.readDimensions(imageFile);
+            }
+        };
+        taskScheduler.submit(task, WorkClass.FULL_DECODE, Priority.SLIDESHOW);
+        return task;
+    }
+
+    /**
+     * 计算金字塔的层数：最顶层的整幅图像不超过一个瓦片。
+     *
+     * @param width  原图宽度
+     * @param height 原图高度
+     * @return 层数，至少为 1
+     */
+    public static int levelCount(int width, int height) {
+        int levels = 1;
+        long size = Math.max(width, height);
+        while (size > TILE_SIZE) {
+            size = (size + 1) / 2;
+            levels++;
+        }
+        return levels;
+    }
+
+    /**
+     * 获取已缓存的瓦片。
+     *
+     * @return 瓦片图像；尚未解码时返回 null
+     */
+    public Image getTile(TileKey key) {
+        return cache.get(key);
+    }
+
+    /**
+     * 请求一组瓦片。不在这组中的、仍在排队的瓦片任务会被取消；缺失的瓦片按列表顺序提交解码，
+     * 已经解码失败的瓦片不会再次提交。
+     *
+     * @param wanted 当前需要的瓦片，越靠前越先解码
+     */
+    public void requestTiles(List<TileKey> wanted) {
+        Set<TileKey> wantedSet = new HashSet<>(wanted);
+        // 先收集不再需要的瓦片再取消：取消会同步触发 onCancelled，从 pendingTiles 中移除任务
+        List<Map.Entry<TileKey, Task<Image>>> unwanted = new ArrayList<>();
+        for (Map.Entry<TileKey, Task<Image>> entry : pendingTiles.entrySet()) {
+            if (!wantedSet.contains(entry.getKey())) {
+                unwanted.add(Map.entry(entry.getKey(), entry.getValue()));
+            }
+        }
+        for (Map.Entry<TileKey, Task<Image>> entry : unwanted) {
+            if (taskScheduler.cancelIfQueued(entry.getValue())) {
+                pendingTiles.remove(entry.getKey(), entry.getValue());
+            }
+        }
+        for (TileKey key : wanted) {
+            if (!cache.containsKey(key) && !pendingTiles.containsKey(key) && !failedTiles.contains(key)) {
+                submit(key);
+            }
+        }
+    }
+
+    /**
+     * 取消所有瓦片任务并清空缓存和失败记录。
+     */
+    public void clear() {
+        List<Task<Image>> tasks = new ArrayList<>(pendingTiles.values());
+        pendingTiles.clear();
+        failedTiles.clear();
+        cache.clear();
+        usedBytes = 0;
+        for (Task<Image> task : tasks) {
+            task.cancel();
+        }
+    }
+
+    private void submit(TileKey key) {
+        Task<Image> task = new Task<>() {
+            @Override
+            protected Image call() throws Exception {
+                int scale = 1 << key.level;
+                int x = key.column * TILE_SIZE * scale;
+                int y = key.row * TILE_SIZE * scale;
+                int width = Math.min(TILE_SIZE * scale, key.imageWidth - x);
+                int height = Math.min(TILE_SIZE * scale, key.imageHeight - y);
+                if (width <= 0 || height <= 0) {
+                    return null;
+                }
+                return ImageDecoder.decodeRegion(key.file, x, y, width, height, scale);
+            }
+        };
+        pendingTiles.put(key, task);
+        task.setOnSucceeded(event -> {
+            pendingTiles.remove(key, task);
+            Image tile = task.getValue();
+            if (tile != null) {
+                put(key, tile);
+                if (onTileLoaded != null) {
+                    onTileLoaded.accept(key);
+                }
+            } else {
+                failedTiles.add(key);
+            }
+        });
+        task.setOnFailed(event -> {
+            pendingTiles.remove(key, task);
+            failedTiles.add(key);
+            logger.error("Failed to decode tile {} of {}", key, key.file, task.getException());
+        });
+        task.setOnCancelled(event -> pendingTiles.remove(key, task));
+        taskScheduler.submit(task, WorkClass.FULL_DECODE, Priority.SLIDESHOW);
+    }
+
+    private void put(TileKey key, Image tile) {
+        Image previous = cache.put(key, tile);
+        if (previous != null) {
+            usedBytes -= ImageMemoryCache.weigh(previous);
+        }
+        usedBytes += ImageMemoryCache.weigh(tile);
+        Iterator<Map.Entry<TileKey, Image>> iterator = cache.entrySet().iterator();
+        while (usedBytes > maxBytes && iterator.hasNext()) {
+            Map.Entry<TileKey, Image> eldest = iterator.next();
+            if (eldest.getKey().equals(key)) {
+                continue;
+            }
+            usedBytes -= ImageMemoryCache.weigh(eldest.getValue());
+            iterator.remove();
+        }
+    }
+
+    /**
+     * 瓦片的标识：图片文件、层级和该层中的行列。
+     */
+    public static final class TileKey {
+        private final File file;
+        private final int imageWidth;
+        private final int imageHeight;
+        private final int level;
+        private final int column;
+        private final int row;
+
+        /**
+         * 构造一个瓦片标识。
+         *
+         * @param file        图片文件
+         * @param imageWidth  原图宽度
+         * @param imageHeight 原图高度
+         * @param level       金字塔层级，0 为原始分辨率
+         * @param column      该层中的列号
+         * @param row         该层中的行号
+         */
+        public TileKey(File file, int imageWidth, int imageHeight, int level, int column, int row) {
+            this.file = file;
+            this.imageWidth = imageWidth;
+            this.imageHeight = imageHeight;
+            this.level = level;
+            this.column = column;
+            this.row = row;
+        }
+
+        public File getFile() {
+            return file;
+        }
+
+        public int getLevel() {
+            return level;
+        }
+
+        public int getColumn() {
+            return column;
+        }
+
+        public int getRow() {
+            return row;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof TileKey)) {
+                return false;
+            }
+            TileKey other = (TileKey) o;
+            return level == other.level && column == other.column && row == other.row && file.equals(other.file);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(file, level, column, row);
+        }
+
+        @Override
+        public String toString() {
+            return "L" + level + "(" + column + "," + row + ")";
+        }
+    }
+}
@@ -0,0 +1,620 @@
+package edu.scau.imagemanagementsystem.services;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.scau.imagemanagementsystem.model.CatalogEntry;
+import edu.scau.imagemanagementsystem.model.CrawlProgress;
+import edu.scau.imagemanagementsystem.model.FileAttributes;
+import edu.scau.imagemanagementsystem.utils.FileUtils;
+import javafx.application.Platform;
+
+/**
+ * 在后台扫描配置的图库根目录：发现图片、写入图片目录库、提取元数据、预先生成缩略图并计算感知哈希。
+ * <p>
+ * 每个目录和每一小批图片都是一个步骤，在虚拟线程上处理，因此多个子树并行推进。同时进行的步骤数有上限，
+ * 其余步骤按后进先出的顺序排队，优先深入已经开始的子树；真正的并发度由两类许可限制：
+ * 每个存储设备同时进行的 I/O 数（设备在每个根目录上解析一次，子目录沿用），以及解码缩略图占用的 CPU 数。
+ * 每一步开始 I/O 前，只要 {@link TaskSchedulerService} 中还有用户正在等待的任务，扫描就暂停让路，
+ * 直到调度服务通知这些任务都已结束。
+ * <p>
+ * 已发现但尚未处理完的目录会定期写入检查点文件；停止或程序退出后再次开始时，从检查点继续，
+ * 而不是从根目录重新扫描。扫描全部完成后检查点被删除，参与这次扫描的根目录被记为已建立索引，
+ * 之后可以直接用目录库回答这些根目录范围内的查询。以 "." 开头的隐藏目录和符号链接不会被进入。
+ */
+public class LibraryCrawlerService {
+    private static final Logger logger = LoggerFactory.getLogger(LibraryCrawlerService.class);
+
+    /**
+     * 每个存储设备上同时进行的 I/O 数，可通过系统属性 {@code ims.crawler.ioPerDevice} 调整。
+     */
+    public static final int DEFAULT_IO_PER_DEVICE = Integer.getInteger("ims.crawler.ioPerDevice", 4);
+
+    private static final String ROOTS_FILE_NAME = "library-roots.txt";
+    private static final String CHECKPOINT_FILE_NAME = "crawler-checkpoint.txt";
+    private static final String INDEXED_ROOTS_FILE_NAME = "library-indexed.txt";
+    private static final int DECODE_PERMITS = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+    private static final int IMAGE_BATCH_SIZE = 32;
+    private static final long PROGRESS_INTERVAL_MILLIS = 1000;
+    private static final int CHECKPOINT_INTERVAL_TICKS = 10;
+    // 同时进行的步骤数上限：足以用满几个设备的 I/O 许可，又不会为每个已发现的目录创建一个线程
+    private static final int MAX_ACTIVE_STEPS = 32;
+
+    private static final LibraryCrawlerService INSTANCE = new LibraryCrawlerService(
+            FileUtils.getApplicationDataDirectory());
+
+    private final Path dataDirectory;
+    private final CatalogService catalog = CatalogService.getInstance();
+    private final MetadataService metadataService = new MetadataService();
+    private final ImageLoadService imageLoadService = new ImageLoadService();
+    private final TaskSchedulerService taskScheduler = TaskSchedulerService.getInstance();
+    private final Map<Object, Semaphore> deviceSemaphores = new ConcurrentHashMap<>();
+    private final Semaphore decodePermits = new Semaphore(DECODE_PERMITS);
+    // 已发现但尚未处理完的目录，即检查点的内容
+    private final Set<File> pendingDirectories = ConcurrentHashMap.newKeySet();
+    // 已提交但尚未结束的步骤数（包括排队的步骤），降为 0 时扫描完成
+    private final AtomicInteger outstandingSteps = new AtomicInteger();
+    // 等待开始的步骤，以及已经开始、尚未结束的步骤数
+    private final ConcurrentLinkedDeque<Step> queuedSteps = new ConcurrentLinkedDeque<>();
+    private final AtomicInteger activeSteps = new AtomicInteger();
+    private final LongAdder directoryCount = new LongAdder();
+    private final LongAdder fileCount = new LongAdder();
+    private final LongAdder byteCount = new LongAdder();
+
+    private List<File> roots;
+    private List<File> indexedRoots;
+    // 当前这次扫描覆盖的根目录，完成后记为已建立索引
+    private List<File> crawlRoots = List.of();
+    private volatile boolean running;
+    private ExecutorService executor;
+    private Thread monitorThread;
+    // 停止后等待步骤退出并写入检查点的线程，以及在此期间是否又要求开始扫描
+    private Thread stopThread;
+    private boolean restartAfterStop;
+    private volatile Consumer<CrawlProgress> onProgress;
+    private volatile double thumbnailWidth = 120;
+    private volatile double thumbnailHeight = 120;
+    private volatile boolean generateThumbnails = true;
+
+    LibraryCrawlerService(Path dataDirectory) {
+        this.dataDirectory = dataDirectory;
+    }
+
+    /**
+     * 获取全局唯一的图库扫描服务实例。
+     *
+     * @return 图库扫描服务实例
+     */
+    public static LibraryCrawlerService getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * 设置进度回调，扫描期间大约每秒一次、结束或停止时再一次，在 FX 线程上执行。
+     */
+    public void setOnProgress(Consumer<CrawlProgress> onProgress) {
+        this.onProgress = onProgress;
+    }
+
+    /**
+     * 设置预先生成的缩略图尺寸，应与网格中显示的缩略图尺寸一致，否则生成的缓存不会被命中。
+     */
+    public void setThumbnailSize(double width, double height) {
+        this.thumbnailWidth = width;
+        this.thumbnailHeight = height;
+    }
+
+    public void setGenerateThumbnails(boolean generateThumbnails) {
+        this.generateThumbnails = generateThumbnails;
+    }
+
+    /**
+     * @return 配置的图库根目录
+     */
+    public synchronized List<File> getRoots() {
+        if (roots == null) {
+            roots = new ArrayList<>();
+            for (String line : readLines(dataDirectory.resolve(ROOTS_FILE_NAME))) {
+                roots.add(new File(line));
+            }
+        }
+        return new ArrayList<>(roots);
+    }
+
+    /**
+     * 添加一个图库根目录并保存配置。
+     *
+     * @param root 根目录
+     */
+    public synchronized void addRoot(File root) {
+        List<File> current = getRoots();
+        if (!current.contains(root)) {
+            roots.add(root);
+            writeLines(dataDirectory.resolve(ROOTS_FILE_NAME), roots);
+        }
+    }
+
+    /**
+     * 移除一个图库根目录并保存配置。已经写入目录库的记录不受影响。
+     *
+     * @param root 根目录
+     */
+    public synchronized void removeRoot(File root) {
+        getRoots();
+        if (roots.remove(root)) {
+            writeLines(dataDirectory.resolve(ROOTS_FILE_NAME), roots);
+        }
+        if (getIndexedRoots().remove(root)) {
+            writeLines(dataDirectory.resolve(INDEXED_ROOTS_FILE_NAME), indexedRoots);
+        }
+    }
+
+    /**
+     * 判断目录是否位于一个已经完整扫描过的根目录之下，即目录库中是否记录了它的整个子树。
+     * 之后在程序之外发生的变化只有在打开目录或再次扫描时才会反映到目录库中。
+     *
+     * @param directory 目录
+     * @return 如果目录的整个子树都已建立索引则返回 true
+     */
+    public synchronized boolean isIndexed(File directory) {
+        Path path = directory.toPath();
+        for (File root : getIndexedRoots()) {
+            if (path.startsWith(root.toPath())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private List<File> getIndexedRoots() {
+        if (indexedRoots == null) {
+            indexedRoots = new ArrayList<>();
+            for (String line : readLines(dataDirectory.resolve(INDEXED_ROOTS_FILE_NAME))) {
+                indexedRoots.add(new File(line));
+            }
+        }
+        return indexedRoots;
+    }
+
+    /**
+     * @return 如果有上次未完成的扫描可以继续则返回 true
+     */
+    public boolean hasCheckpoint() {
+        return Files.exists(dataDirectory.resolve(CHECKPOINT_FILE_NAME));
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * 开始扫描。存在检查点时从检查点继续，否则从所有根目录开始。
+     *
+     * @return 如果开始了扫描则返回 true；已经在扫描或没有可扫描的目录时返回 false
+     */
+    public synchronized boolean start() {
+        if (running) {
+            return false;
+        }
+        if (stopThread != null) {
+            // 上次停止还在写入检查点，写完后再从检查点继续
+            restartAfterStop = true;
+            return true;
+        }
+        List<File> startDirectories = new ArrayList<>();
+        for (String line : readLines(dataDirectory.resolve(CHECKPOINT_FILE_NAME))) {
+            startDirectories.add(new File(line));
+        }
+        boolean resumed = !startDirectories.isEmpty();
+        if (!resumed) {
+            startDirectories = getRoots();
+        }
+        if (startDirectories.isEmpty()) {
+            return false;
+        }
+        crawlRoots = getRoots();
+        pendingDirectories.clear();
+        directoryCount.reset();
+        fileCount.reset();
+        byteCount.reset();
+        queuedSteps.clear();
+        activeSteps.set(0);
+        running = true;
+        executor = Executors.newVirtualThreadPerTaskExecutor();
+        // 占位计数，防止第一个目录在其余目录提交之前就完成而被误判为扫描结束
+        outstandingSteps.set(1);
+        // 从检查点继续时起始目录可能很多，按所在的根目录解析设备
+        Map<File, Semaphore> rootDevices = new HashMap<>();
+        for (File directory : startDirectories) {
+            File root = directory;
+            for (File crawlRoot : crawlRoots) {
+                if (directory.toPath().startsWith(crawlRoot.toPath())) {
+                    root = crawlRoot;
+                    break;
+                }
+            }
+            schedule(directory, rootDevices.computeIfAbsent(root, key -> deviceSemaphore(key.toPath())));
+        }
+        monitorThread = Thread.ofVirtual().name("library-crawler-monitor").start(this::monitor);
+        logger.info("Library crawl {} with {} directories.", resumed ? "resumed" : "started",
+                startDirectories.size());
+        stepFinished();
+        return true;
+    }
+
+    /**
+     * 停止扫描，之后调用 {@link #start()} 会从停止的位置继续。此方法立即返回，
+     * 检查点在正在进行的步骤退出后于后台写入。
+     */
+    public synchronized void stop() {
+        restartAfterStop = false;
+        if (!running) {
+            return;
+        }
+        running = false;
+        monitorThread.interrupt();
+        ExecutorService stopping = executor;
+        stopping.shutdownNow();
+        stopThread = Thread.ofVirtual().name("library-crawler-stop").start(() -> finishStop(stopping));
+    }
+
+    /**
+     * 停止扫描并等待检查点写入完成，在应用退出时调用。
+     */
+    public void shutdown() {
+        stop();
+        Thread stopping;
+        synchronized (this) {
+            restartAfterStop = false;
+            stopping = stopThread;
+        }
+        if (stopping != null) {
+            try {
+                stopping.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void finishStop(ExecutorService stopping) {
+        try {
+            // 等待被中断的步骤退出，使检查点包含它们提交的子目录
+            stopping.awaitTermination(2, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        writeLines(dataDirectory.resolve(CHECKPOINT_FILE_NAME), new ArrayList<>(pendingDirectories));
+        logger.info("Library crawl stopped, {} directories left for the next run.", pendingDirectories.size());
+        deliverProgress(0, 0, 0);
+        boolean restart;
+        synchronized (this) {
+            restart = restartAfterStop;
+            restartAfterStop = false;
+            stopThread = null;
+        }
+        if (restart) {
+            start();
+        }
+    }
+
+    private void schedule(File directory, Semaphore io) {
+        // 先记录，停止之后提交失败的目录同样会进入检查点
+        if (!pendingDirectories.add(directory) || !running) {
+            return;
+        }
+        submit(() -> listDirectory(directory, io));
+    }
+
+    private void submit(Step step) {
+        outstandingSteps.incrementAndGet();
+        queuedSteps.addFirst(step);
+        startQueuedSteps();
+    }
+
+    /**
+     * 在不超过 {@link #MAX_ACTIVE_STEPS} 的前提下开始排队的步骤。
+     */
+    private void startQueuedSteps() {
+        while (running) {
+            int active = activeSteps.get();
+            if (active >= MAX_ACTIVE_STEPS) {
+                return;
+            }
+            if (!activeSteps.compareAndSet(active, active + 1)) {
+                continue;
+            }
+            Step step = queuedSteps.pollFirst();
+            if (step == null) {
+                activeSteps.decrementAndGet();
+                // 归还名额之前，其他线程可能刚放入了步骤却因名额已满而返回
+                if (queuedSteps.isEmpty()) {
+                    return;
+                }
+                continue;
+            }
+            try {
+                executor.execute(() -> {
+                    try {
+                        step.run();
+                    } catch (InterruptedException e) {
+                        // 扫描被停止，未完成的目录保留在检查点中
+                    } catch (RuntimeException e) {
+                        logger.warn("Library crawl step failed.", e);
+                    } finally {
+                        activeSteps.decrementAndGet();
+                        startQueuedSteps();
+                        stepFinished();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                activeSteps.decrementAndGet();
+                outstandingSteps.decrementAndGet();
+            }
+        }
+    }
+
+    private void stepFinished() {
+        if (outstandingSteps.decrementAndGet() == 0) {
+            finished();
+        }
+    }
+
+    private void finished() {
+        synchronized (this) {
+            if (!running) {
+                return; // 已被停止
+            }
+            running = false;
+            executor.shutdown();
+            monitorThread.interrupt();
+            List<File> indexed = getIndexedRoots();
+            for (File root : crawlRoots) {
+                if (!indexed.contains(root) && getRoots().contains(root)) {
+                    indexed.add(root);
+                }
+            }
+            writeLines(dataDirectory.resolve(INDEXED_ROOTS_FILE_NAME), indexed);
+        }
+        try {
+            Files.deleteIfExists(dataDirectory.resolve(CHECKPOINT_FILE_NAME));
+        } catch (IOException e) {
+            logger.warn("Failed to delete crawler checkpoint.", e);
+        }
+        logger.info("Library crawl finished: {} directories, {} images, {} bytes.", directoryCount.sum(),
+                fileCount.sum(), byteCount.sum());
+        deliverProgress(0, 0, 0);
+    }
+
+    /**
+     * 列举一个目录：子目录提交给新的步骤，图片写入目录库，需要元数据或缩略图的图片分批提交处理。
+     */
+    private void listDirectory(File directory, Semaphore io) throws InterruptedException {
+        List<File> subDirectories = new ArrayList<>();
+        Map<File, FileAttributes> images = new HashMap<>();
+        long bytes = 0;
+        yieldToInteractiveWork();
+        io.acquire();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory.toPath())) {
+            for (Path path : stream) {
+                String name = path.getFileName().toString();
+                BasicFileAttributes attributes;
+                try {
+                    attributes = Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                } catch (IOException e) {
+                    continue; // 扫描期间被删除，或无法访问
+                }
+                if (attributes.isDirectory()) {
+                    if (!name.startsWith(".")) {
+                        subDirectories.add(path.toFile());
+                    }
+                } else if (attributes.isRegularFile() && FileUtils.hasImageExtension(name)) {
+                    images.put(path.toFile(), FileAttributes.of(attributes));
+                    bytes += attributes.size();
+                }
+            }
+        } catch (IOException e) {
+            logger.debug("Cannot list {} during library crawl.", directory, e);
+            completeDirectory(directory);
+            return;
+        } finally {
+            io.release();
+        }
+        for (File subDirectory : subDirectories) {
+            schedule(subDirectory, io);
+        }
+        catalog.reconcileDirectory(directory, images);
+        fileCount.add(images.size());
+        byteCount.add(bytes);
+
+        List<CatalogEntry> work = new ArrayList<>();
+        for (CatalogEntry entry : catalog.getDirectoryEntries(directory)) {
+            if (entry.getMetadata() == null || (generateThumbnails && entry.getPerceptualHash() == null)) {
+                work.add(entry);
+            }
+        }
+        if (work.isEmpty()) {
+            completeDirectory(directory);
+            return;
+        }
+        int batches = (work.size() + IMAGE_BATCH_SIZE - 1) / IMAGE_BATCH_SIZE;
+        AtomicInteger remainingBatches = new AtomicInteger(batches);
+        for (int start = 0; start < work.size(); start += IMAGE_BATCH_SIZE) {
+            List<CatalogEntry> batch = work.subList(start, Math.min(work.size(), start + IMAGE_BATCH_SIZE));
+            submit(() -> {
+                for (CatalogEntry entry : batch) {
+                    processImage(entry, io);
+                }
+                // 目录在所有图片处理完之后才从检查点中移除
+                if (remainingBatches.decrementAndGet() == 0) {
+                    completeDirectory(directory);
+                }
+            });
+        }
+    }
+
+    private void processImage(CatalogEntry entry, Semaphore io) throws InterruptedException {
+        yieldToInteractiveWork();
+        if (entry.getMetadata() == null) {
+            io.acquire();
+            try {
+                catalog.putMetadata(entry, metadataService.readSummary(entry.getFile()));
+            } finally {
+                io.release();
+            }
+        }
+        // 感知哈希与缩略图一起生成；已有缩略图缓存或内嵌缩略图的图片只计算哈希，不再解码原图
+        if (generateThumbnails && entry.getPerceptualHash() == null) {
+            decodePermits.acquire();
+            io.acquire();
+            try {
+                imageLoadService.pregenerateThumbnail(entry.getFile(), thumbnailWidth, thumbnailHeight);
+            } catch (IOException | RuntimeException e) {
+                logger.debug("Failed to pregenerate thumbnail for {}", entry.getFile(), e);
+            } finally {
+                io.release();
+                decodePermits.release();
+            }
+        }
+    }
+
+    private void completeDirectory(File directory) {
+        pendingDirectories.remove(directory);
+        directoryCount.increment();
+    }
+
+    /**
+     * 用户正在等待的任务优先：只要调度器中还有这样的任务，就不开始新的 I/O。
+     */
+    private void yieldToInteractiveWork() throws InterruptedException {
+        taskScheduler.awaitNoInteractiveWork();
+        if (!running) {
+            throw new InterruptedException("Library crawl stopped");
+        }
+    }
+
+    /**
+     * 返回目录所在存储设备的 I/O 许可。查询设备需要访问文件系统，每个根目录只调用一次，子目录沿用。
+     */
+    private Semaphore deviceSemaphore(Path path) {
+        Object device;
+        try {
+            FileStore store = Files.getFileStore(path);
+            device = store;
+        } catch (IOException e) {
+            device = path.getRoot() != null ? path.getRoot() : "";
+        }
+        return deviceSemaphores.computeIfAbsent(device, key -> new Semaphore(DEFAULT_IO_PER_DEVICE));
+    }
+
+    /**
+     * 定期计算速率并交付进度，同时写入检查点。
+     */
+    private void monitor() {
+        long lastDirectories = 0;
+        long lastFiles = 0;
+        long lastBytes = 0;
+        long lastTime = System.nanoTime();
+        int ticks = 0;
+        try {
+            while (running) {
+                Thread.sleep(PROGRESS_INTERVAL_MILLIS);
+                long now = System.nanoTime();
+                double seconds = (now - lastTime) / 1e9;
+                long directories = directoryCount.sum();
+                long files = fileCount.sum();
+                long bytes = byteCount.sum();
+                deliverProgress((directories - lastDirectories) / seconds, (files - lastFiles) / seconds,
+                        (bytes - lastBytes) / seconds);
+                lastDirectories = directories;
+                lastFiles = files;
+                lastBytes = bytes;
+                lastTime = now;
+                if (++ticks % CHECKPOINT_INTERVAL_TICKS == 0) {
+                    writeLines(dataDirectory.resolve(CHECKPOINT_FILE_NAME), new ArrayList<>(pendingDirectories));
+                }
+            }
+        } catch (InterruptedException e) {
+            // 扫描结束或被停止
+        }
+    }
+
+    private void deliverProgress(double directoriesPerSecond, double filesPerSecond, double bytesPerSecond) {
+        Consumer<CrawlProgress> listener = onProgress;
+        if (listener == null) {
+            return;
+        }
+        CrawlProgress progress = new CrawlProgress(running, directoryCount.sum(), fileCount.sum(), byteCount.sum(),
+                pendingDirectories.size(), directoriesPerSecond, filesPerSecond, bytesPerSecond);
+        Platform.runLater(() -> listener.accept(progress));
+    }
+
+    private List<String> readLines(Path path) {
+        if (!Files.exists(path)) {
+            return List.of();
+        }
+        try {
+            List<String> lines = new ArrayList<>();
+            for (String line : Files.readAllLines(path, StandardCharsets.UTF_8)) {
+                if (!line.isBlank()) {
+                    lines.add(line);
+                }
+            }
+            return lines;
+        } catch (IOException e) {
+            logger.warn("Failed to read {}", path, e);
+            return List.of();
+        }
+    }
+
+    /**
+     * 先写临时文件再原子替换，写入中断不会留下半个文件。
+     */
+    private void writeLines(Path path, List<File> files) {
+        List<String> lines = new ArrayList<>(files.size());
+        for (File file : files) {
+            lines.add(file.getPath());
+        }
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        try {
+            Files.createDirectories(path.getParent());
+            Files.write(tmp, lines, StandardCharsets.UTF_8);
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            logger.warn("Failed to write {}", path, e);
+        }
+    }
+
+    /**
+     * 扫描中的一个步骤：列举一个目录，或处理一批图片。
+     */
+    private interface Step {
+        void run() throws InterruptedException;
+    }
+}
@@ -0,0 +1,271 @@
+package edu.scau.imagemanagementsystem.services;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.drew.imaging.ImageMetadataReader;
+import com.drew.imaging.jpeg.JpegMetadataReader;
+import com.drew.imaging.jpeg.JpegSegmentMetadataReader;
+import com.drew.metadata.Directory;
+import com.drew.metadata.Metadata;
+import com.drew.metadata.Tag;
+import com.drew.metadata.exif.ExifIFD0Directory;
+import com.drew.metadata.exif.ExifReader;
+import com.drew.metadata.exif.ExifSubIFDDirectory;
+import com.drew.metadata.jpeg.JpegDirectory;
+import com.drew.metadata.jpeg.JpegReader;
+
+import edu.scau.imagemanagementsystem.model.CatalogEntry;
+import edu.scau.imagemanagementsystem.model.FileAttributes;
+import edu.scau.imagemanagementsystem.model.ImageMetadataSummary;
+import edu.scau.imagemanagementsystem.model.MetadataTag;
+import edu.scau.imagemanagementsystem.services.TaskSchedulerService.WorkClass;
+import edu.scau.imagemanagementsystem.utils.FileUtils;
+import javafx.application.Platform;
+import javafx.concurrent.Task;
+
+/**
+ * 提取图片的尺寸与关键 EXIF 字段。只读取文件头部，不解码像素数据。
+ * <p>
+ * JPEG 文件只读取图像数据之前的 APP1 (EXIF) 与 SOF 段，尺寸直接取自 SOF 段，文件只打开一次；
+ * 其余格式由 ImageIO 读取尺寸、再由 {@link ImageMetadataReader} 读取元数据。
+ * 批量提取被分成小批，在调度服务的 {@link WorkClass#METADATA} 线程池上并行进行。
+ */
+public class MetadataService {
+    private static final Logger logger = LoggerFactory.getLogger(MetadataService.class);
+
+    // JPEG 只需要 EXIF 与 SOF 段
+    private static final List<JpegSegmentMetadataReader> JPEG_READERS = List.of(new ExifReader(), new JpegReader());
+    // 批量提取时每个 Task 处理的图片数，也是交付进度的间隔
+    private static final int EXTRACTION_BATCH_SIZE = 64;
+
+    // 元数据查看窗口最近读取的图片的全部标签
+    private static final int TAG_CACHE_CAPACITY = 64;
+    private static final Map<File, CachedTags> tagCache = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<File, CachedTags> eldest) {
+            return size() > TAG_CACHE_CAPACITY;
+        }
+    };
+
+    /**
+     * 异步提取图片的元数据摘要。
+     *
+     * @param imageFile 图片文件
+     * @return 一个 Task，其结果为元数据摘要；文件无法读取时为 null
+     */
+    public Task<ImageMetadataSummary> readSummaryAsync(File imageFile) {
+        return new Task<>() {
+            @Override
+            protected ImageMetadataSummary call() {
+                return readSummary(imageFile);
+            }
+        };
+    }
+
+    /**
+     * 为一批图片提取元数据摘要，结果写入图片目录库。
+     * <p>
+     * 图片被分成每批 {@value #EXTRACTION_BATCH_SIZE} 张，每批是一个独立的 Task，应提交到
+     * {@link WorkClass#METADATA}：各批在该线程池上并行执行，没有线程只是等待其他线程的结果，
+     * 优先级更高的任务也可以排在尚未开始的批次之前。每完成一批，所有批次已完成的总数通过
+     * {@link Platform#runLater(Runnable)} 在 FX 线程上交给 {@code onProgress}。某一批被取消后，
+     * 其中尚未提取的图片被跳过。
+     *
+     * @param entries    要提取的图片在目录库中的记录
+     * @param onProgress 在 FX 线程上接收已完成的数量，可以为 null
+     * @return 每批一个 Task，其结果为该批中成功提取的图片数量
+     */
+    public List<Task<Integer>> extractAsync(List<CatalogEntry> entries, Consumer<Integer> onProgress) {
+        CatalogService catalog = CatalogService.getInstance();
+        long start = System.nanoTime();
+        AtomicInteger completed = new AtomicInteger();
+        AtomicInteger extracted = new AtomicInteger();
+        List<Task<Integer>> tasks = new ArrayList<>();
+        for (int from = 0; from < entries.size(); from += EXTRACTION_BATCH_SIZE) {
+            List<CatalogEntry> batch = entries.subList(from, Math.min(entries.size(), from + EXTRACTION_BATCH_SIZE));
+            tasks.add(new Task<>() {
+                @Override
+                protected Integer call() {
+                    int batchExtracted = 0;
+                    for (CatalogEntry entry : batch) {
+                        if (isCancelled()) {
+                            break;
+                        }
+                        ImageMetadataSummary summary = readSummary(entry.getFile());
+                        if (summary != null) {
+                            catalog.putMetadata(entry, summary);
+                            batchExtracted++;
+                        }
+                    }
+                    extracted.addAndGet(batchExtracted);
+                    int done = completed.addAndGet(batch.size());
+                    if (done == entries.size()) {
+                        logger.debug("Extracted metadata of {} images in {} ms.", extracted.get(),
+                                (System.nanoTime() - start) / 1_000_000);
+                    }
+                    if (onProgress != null) {
+                        Platform.runLater(() -> {
+                            if (!isCancelled()) {
+                                onProgress.accept(done);
+                            }
+                        });
+                    }
+                    return batchExtracted;
+                }
+            });
+        }
+        return tasks;
+    }
+
+    /**
+     * 异步读取一张图片的全部元数据标签，用于元数据查看窗口。结果按文件与修改时间缓存，
+     * 再次查看未修改的文件时不再读取。比较多张图片时，每张图片一个 Task，在线程池上并行读取。
+     *
+     * @param imageFile 图片文件
+     * @return 一个 Task，其结果为按目录顺序排列的标签；文件无法读取时 Task 失败
+     */
+    public Task<List<MetadataTag>> readAllTagsAsync(File imageFile) {
+        return new Task<>() {
+            @Override
+            protected List<MetadataTag> call() throws Exception {
+                return readAllTags(imageFile);
+            }
+        };
+    }
+
+    /**
+     * 在调用线程上读取图片的全部元数据标签，优先使用缓存。
+     *
+     * @param imageFile 图片文件
+     * @return 按目录顺序排列的标签
+     * @throws Exception 文件无法读取或格式不受支持时抛出
+     */
+    public List<MetadataTag> readAllTags(File imageFile) throws Exception {
+        FileAttributes attributes = FileAttributes.read(imageFile);
+        synchronized (tagCache) {
+            CachedTags cached = tagCache.get(imageFile);
+            if (cached != null && cached.attributes.isSameVersion(attributes)) {
+                return cached.tags;
+            }
+        }
+        Metadata metadata = ImageMetadataReader.readMetadata(imageFile);
+        List<MetadataTag> tags = new ArrayList<>();
+        for (Directory directory : metadata.getDirectories()) {
+            for (Tag tag : directory.getTags()) {
+                tags.add(new MetadataTag(directory.getName(), tag.getTagName(), tag.getDescription()));
+            }
+            for (String error : directory.getErrors()) {
+                tags.add(new MetadataTag(directory.getName(), "错误", error));
+            }
+        }
+        List<MetadataTag> result = Collections.unmodifiableList(tags);
+        synchronized (tagCache) {
+            tagCache.put(imageFile, new CachedTags(attributes, result));
+        }
+        return result;
+    }
+
+    /**
+     * 在调用线程上提取图片的元数据摘要。没有 EXIF 的图片只包含尺寸。
+     *
+     * @param imageFile 图片文件
+     * @return 元数据摘要；文件无法读取时返回 null
+     */
+    public ImageMetadataSummary readSummary(File imageFile) {
+        String extension = FileUtils.getFileExtension(imageFile.getName()).toLowerCase(Locale.ROOT);
+        boolean jpeg = extension.equals("jpg") || extension.equals("jpeg");
+        Metadata metadata = null;
+        try {
+            metadata = jpeg ? JpegMetadataReader.readMetadata(imageFile, JPEG_READERS)
+                    : ImageMetadataReader.readMetadata(imageFile);
+        } catch (Exception e) {
+            // 元数据损坏或格式不受支持时仍尝试读取尺寸
+            logger.debug("Failed to read metadata of {}", imageFile, e);
+        }
+        int[] dimensions = null;
+        JpegDirectory sof = metadata != null ? metadata.getFirstDirectoryOfType(JpegDirectory.class) : null;
+        if (sof != null) {
+            try {
+                dimensions = new int[] { sof.getImageWidth(), sof.getImageHeight() };
+            } catch (Exception e) {
+                logger.debug("Missing SOF dimensions in {}", imageFile, e);
+            }
+        }
+        if (dimensions == null) {
+            dimensions = ImageDecoder.readDimensions(imageFile);
+        }
+        if (dimensions == null) {
+            return null;
+        }
+        long captureTime = 0;
+        String make = null;
+        String model = null;
+        String lens = null;
+        int iso = 0;
+        double exposureTime = 0;
+        double fNumber = 0;
+        double focalLength = 0;
+        int orientation = 0;
+        if (metadata != null) {
+            ExifIFD0Directory ifd0 = metadata.getFirstDirectoryOfType(ExifIFD0Directory.class);
+            if (ifd0 != null) {
+                make = trimToNull(ifd0.getString(ExifIFD0Directory.TAG_MAKE));
+                model = trimToNull(ifd0.getString(ExifIFD0Directory.TAG_MODEL));
+                Integer value = ifd0.getInteger(ExifIFD0Directory.TAG_ORIENTATION);
+                orientation = value != null ? value : 0;
+            }
+            ExifSubIFDDirectory subIfd = metadata.getFirstDirectoryOfType(ExifSubIFDDirectory.class);
+            if (subIfd != null) {
+                // EXIF 时间不带时区，按本地时间解释
+                Date original = subIfd.getDateOriginal(TimeZone.getDefault());
+                captureTime = original != null ? original.getTime() : 0;
+                Integer isoValue = subIfd.getInteger(ExifSubIFDDirectory.TAG_ISO_EQUIVALENT);
+                iso = isoValue != null ? isoValue : 0;
+                exposureTime = doubleOrZero(subIfd.getDoubleObject(ExifSubIFDDirectory.TAG_EXPOSURE_TIME));
+                fNumber = doubleOrZero(subIfd.getDoubleObject(ExifSubIFDDirectory.TAG_FNUMBER));
+                focalLength = doubleOrZero(subIfd.getDoubleObject(ExifSubIFDDirectory.TAG_FOCAL_LENGTH));
+                lens = trimToNull(subIfd.getString(ExifSubIFDDirectory.TAG_LENS_MODEL));
+            }
+        }
+        return new ImageMetadataSummary(dimensions[0], dimensions[1], captureTime, make, model, lens, iso,
+                exposureTime, fNumber, focalLength, orientation);
+    }
+
+    /**
+     * 缓存的元数据标签，以及读取时文件的属性，用于判断文件是否已被修改。
+     */
+    private static class CachedTags {
+        private final FileAttributes attributes;
+        private final List<MetadataTag> tags;
+
+        CachedTags(FileAttributes attributes, List<MetadataTag> tags) {
+            this.attributes = attributes;
+            this.tags = tags;
+        }
+    }
+
+    private static double doubleOrZero(Double value) {
+        return value != null ? value : 0;
+    }
+
+    private static String trimToNull(String value) {
+        if (value == null) {
+            return null;
+        }
+        String trimmed = value.trim();
+        return trimmed.isEmpty() ? null : trimmed;
+    }
+}
@@ -0,0 +1,204 @@
+package edu.scau.imagemanagementsystem.services;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.scau.imagemanagementsystem.model.CatalogEntry;
+import edu.scau.imagemanagementsystem.model.FileAttributes;
+import edu.scau.imagemanagementsystem.model.SearchMatch;
+import edu.scau.imagemanagementsystem.utils.FileUtils;
+import javafx.application.Platform;
+import javafx.concurrent.Task;
+
+/**
+ * 在一个或多个目录树中按文件名递归搜索图片。
+ * <p>
+ * 先在图片目录库中查找，结果立即交付；已由 {@link LibraryCrawlerService} 完整扫描过的子树只查目录库，
+ * 其余子树再用 fork/join 并行遍历文件系统，补上目录库中没有的图片。以 "." 开头的隐藏目录和符号链接不会被进入。
+ */
+public class SearchService {
+    private static final Logger logger = LoggerFactory.getLogger(SearchService.class);
+
+    private static final int WALK_PARALLELISM = Math.max(2, Math.min(8, Runtime.getRuntime().availableProcessors()));
+    private static final long BATCH_INTERVAL_MILLIS = 100;
+
+    private final CatalogService catalog = CatalogService.getInstance();
+    private final LibraryCrawlerService libraryCrawler = LibraryCrawlerService.getInstance();
+
+    /**
+     * 异步搜索文件名包含关键字（不区分大小写）的图片，边搜索边分批交付结果。
+     * <p>
+     * 每一批结果通过 {@link Platform#runLater(Runnable)} 在 FX 线程上交给 {@code onBatch}，
+     * 所有批次都会在 Task 的成功回调之前交付，同一个文件只交付一次。任务被取消后不再交付新的批次。
+     *
+     * @param roots   要搜索的目录树的根目录
+     * @param keyword 关键字
+     * @param onBatch 在 FX 线程上接收每一批找到的图片
+     * @return 一个 Task，其结果为找到的图片总数
+     */
+    public Task<Integer> searchAsync(List<File> roots, String keyword, Consumer<List<SearchMatch>> onBatch) {
+        String needle = keyword.toLowerCase(Locale.ROOT);
+        return new Task<>() {
+            @Override
+            protected Integer call() throws Exception {
+                long start = System.nanoTime();
+                Set<File> reported = new HashSet<>();
+                List<SearchMatch> fromCatalog = new ArrayList<>();
+                List<File> walkRoots = new ArrayList<>();
+                for (File root : roots) {
+                    for (CatalogEntry entry : catalog.getEntriesUnder(root)) {
+                        if (matches(entry.getFile().getName(), needle) && reported.add(entry.getFile())) {
+                            fromCatalog.add(new SearchMatch(entry.getFile(), entry.getAttributes()));
+                        }
+                    }
+                    if (!libraryCrawler.isIndexed(root)) {
+                        walkRoots.add(root);
+                    }
+                }
+                deliver(fromCatalog);
+                logger.debug("Found {} matches for '{}' in the catalog in {} ms, walking {} roots.", reported.size(),
+                        keyword, (System.nanoTime() - start) / 1_000_000, walkRoots.size());
+                if (walkRoots.isEmpty() || isCancelled()) {
+                    return reported.size();
+                }
+
+                Queue<SearchMatch> found = new ConcurrentLinkedQueue<>();
+                // 随本次搜索创建和结束的遍历线程，是调度服务允许的例外，见 TaskSchedulerService
+                ForkJoinPool pool = new ForkJoinPool(WALK_PARALLELISM);
+                try {
+                    ForkJoinTask<Void> walk = pool.submit(new DirectoryWalk(walkRoots, needle, found, this::isCancelled));
+                    while (!walk.isDone()) {
+                        try {
+                            walk.get(BATCH_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+                        } catch (TimeoutException e) {
+                            // 定期交付已经找到的结果
+                        } catch (ExecutionException e) {
+                            throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+                        }
+                        if (isCancelled()) {
+                            return reported.size();
+                        }
+                        deliver(drain(found, reported));
+                    }
+                    deliver(drain(found, reported));
+                } finally {
+                    pool.shutdownNow();
+                }
+                logger.debug("Found {} matches for '{}' in {} ms.", reported.size(), keyword,
+                        (System.nanoTime() - start) / 1_000_000);
+                return reported.size();
+            }
+
+            private void deliver(List<SearchMatch> batch) {
+                if (batch.isEmpty()) {
+                    return;
+                }
+                Platform.runLater(() -> {
+                    if (!isCancelled()) {
+                        onBatch.accept(batch);
+                    }
+                });
+            }
+        };
+    }
+
+    private static boolean matches(String fileName, String needle) {
+        return fileName.toLowerCase(Locale.ROOT).contains(needle);
+    }
+
+    /**
+     * 取出遍历线程找到的结果，去掉已经从目录库中交付过的文件。
+     */
+    private static List<SearchMatch> drain(Queue<SearchMatch> found, Set<File> reported) {
+        List<SearchMatch> batch = new ArrayList<>();
+        SearchMatch match;
+        while ((match = found.poll()) != null) {
+            if (reported.add(match.getFile())) {
+                batch.add(match);
+            }
+        }
+        return batch;
+    }
+
+    /**
+     * 遍历一组目录：列举每个目录，子目录作为新的子任务并行遍历。
+     */
+    @SuppressWarnings("serial")
+    private static class DirectoryWalk extends RecursiveAction {
+        private final List<File> directories;
+        private final String needle;
+        private final Queue<SearchMatch> found;
+        private final BooleanSupplier cancelled;
+
+        DirectoryWalk(List<File> directories, String needle, Queue<SearchMatch> found, BooleanSupplier cancelled) {
+            this.directories = directories;
+            this.needle = needle;
+            this.found = found;
+            this.cancelled = cancelled;
+        }
+
+        @Override
+        protected void compute() {
+            if (cancelled.getAsBoolean()) {
+                return;
+            }
+            if (directories.size() > 1) {
+                List<DirectoryWalk> walks = new ArrayList<>(directories.size());
+                for (File directory : directories) {
+                    walks.add(new DirectoryWalk(List.of(directory), needle, found, cancelled));
+                }
+                invokeAll(walks);
+                return;
+            }
+            List<File> subDirectories = new ArrayList<>();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(directories.get(0).toPath())) {
+                for (Path path : stream) {
+                    String name = path.getFileName().toString();
+                    BasicFileAttributes attributes;
+                    try {
+                        attributes = Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                    } catch (IOException e) {
+                        continue; // 遍历期间被删除，或无法访问
+                    }
+                    if (attributes.isDirectory()) {
+                        if (!name.startsWith(".")) {
+                            subDirectories.add(path.toFile());
+                        }
+                    } else if (attributes.isRegularFile() && FileUtils.hasImageExtension(name)
+                            && matches(name, needle)) {
+                        found.add(new SearchMatch(path.toFile(), FileAttributes.of(attributes)));
+                    }
+                }
+            } catch (IOException e) {
+                logger.debug("Cannot list {} during search.", directories.get(0), e);
+                return;
+            }
+            if (!subDirectories.isEmpty()) {
+                new DirectoryWalk(subDirectories, needle, found, cancelled).compute();
+            }
+        }
+    }
+}
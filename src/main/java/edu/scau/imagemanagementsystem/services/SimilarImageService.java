@@ -0,0 +1,321 @@
+package edu.scau.imagemanagementsystem.services;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.stream.IntStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.scau.imagemanagementsystem.model.CatalogEntry;
+import edu.scau.imagemanagementsystem.model.ImageMetadataSummary;
+import edu.scau.imagemanagementsystem.model.SimilarImageGroup;
+import edu.scau.imagemanagementsystem.utils.HammingIndex;
+import edu.scau.imagemanagementsystem.utils.PerceptualHash;
+import javafx.concurrent.Task;
+
+/**
+ * 查找看起来相似的图片：缩放、重新压缩或轻微调整过的同一张照片。
+ * <p>
+ * 相似度由目录库中保存的感知哈希 ({@link PerceptualHash}) 的汉明距离衡量。哈希在生成缩略图时顺便计算，
+ * 查找本身不读取任何图片文件，只在 {@link HammingIndex} 中做半径查询。还没有计算哈希的图片不参与比较，
+ * 图库扫描 ({@link LibraryCrawlerService}) 会为它们补上。几乎没有亮度变化的图片（纯色、全黑等）也不参与比较。
+ */
+public class SimilarImageService {
+    private static final Logger logger = LoggerFactory.getLogger(SimilarImageService.class);
+
+    /**
+     * 默认的最大哈希距离。缩放和重新压缩后的同一张照片通常在 4 以内，明显不同的照片通常在 20 以上。
+     */
+    public static final int DEFAULT_MAX_DISTANCE = 8;
+
+    // 单张图片查询使用的整个目录库的索引，目录库变化后在下次查询时重建
+    private static HashSnapshot catalogSnapshot;
+
+    private final CatalogService catalog = CatalogService.getInstance();
+    private final ImageLoadService imageLoadService = new ImageLoadService();
+
+    /**
+     * 异步地在整个目录库中查找与一张图片相似的图片。图片还没有感知哈希时先从它的缩略图计算。
+     *
+     * @param imageFile       要比较的图片
+     * @param thumbnailWidth  缩略图宽度，应与网格中的缩略图尺寸相同，以便命中缓存
+     * @param thumbnailHeight 缩略图高度
+     * @param maxDistance     最大哈希距离
+     * @return 一个 Task，其结果以这张图片为第一张，其余图片按距离从近到远排列；无法解码图片时为 null
+     */
+    public Task<SimilarImageGroup> findSimilarAsync(File imageFile, double thumbnailWidth, double thumbnailHeight,
+            int maxDistance) {
+        return new Task<>() {
+            @Override
+            protected SimilarImageGroup call() throws Exception {
+                Long hash = imageLoadService.getPerceptualHash(imageFile, thumbnailWidth, thumbnailHeight);
+                if (hash == null) {
+                    return null;
+                }
+                List<File> files = new ArrayList<>();
+                List<Long> hashes = new ArrayList<>();
+                List<Long> sizes = new ArrayList<>();
+                files.add(imageFile);
+                hashes.add(hash);
+                sizes.add(imageFile.length());
+                if (PerceptualHash.hasDetail(hash)) {
+                    HashSnapshot snapshot = getCatalogSnapshot();
+                    List<Integer> matches = new ArrayList<>();
+                    snapshot.index.search(hash, maxDistance, id -> {
+                        if (!snapshot.files[id].equals(imageFile)) {
+                            matches.add(id);
+                        }
+                    });
+                    matches.sort(Comparator
+                            .comparingInt((Integer id) -> PerceptualHash.distance(hash, snapshot.index.get(id)))
+                            .thenComparing(id -> snapshot.files[id].getPath()));
+                    for (int id : matches) {
+                        // 目录库中的记录可能比文件系统旧，只对少量结果检查文件是否还在
+                        File match = snapshot.files[id];
+                        if (match.isFile()) {
+                            files.add(match);
+                            hashes.add(snapshot.index.get(id));
+                            sizes.add(match.length());
+                        }
+                    }
+                }
+                return new SimilarImageGroup(files, hashes.stream().mapToLong(Long::longValue).toArray(),
+                        sizes.stream().mapToLong(Long::longValue).toArray());
+            }
+        };
+    }
+
+    /**
+     * 异步地把一个或多个目录中的图片按相似度分组。
+     * <p>
+     * 哈希完全相同的图片先合并，再对每个不同的哈希在索引中查询邻居；距离不超过 {@code maxDistance} 的图片
+     * 被连接到同一组（单链接聚类），因此同一组中相隔较远的两张图片可能通过中间的图片相连。
+     * 查询在多个线程上并行进行，用无锁的并查集合并结果。
+     *
+     * @param roots       要查找的目录
+     * @param recursive   是否包含所有子目录
+     * @param maxDistance 最大哈希距离
+     * @return 一个 Task，其结果为相似图片的分组，图片多的组在前；每组中像素最多的图片排在第一张
+     */
+    public Task<List<SimilarImageGroup>> findSimilarGroupsAsync(List<File> roots, boolean recursive,
+            int maxDistance) {
+        return new Task<>() {
+            @Override
+            protected List<SimilarImageGroup> call() {
+                long start = System.nanoTime();
+                updateMessage("正在读取感知哈希...");
+                List<CatalogEntry> entries = new ArrayList<>();
+                Set<File> seen = roots.size() > 1 ? new HashSet<>() : null;
+                for (File root : roots) {
+                    for (CatalogEntry entry : recursive ? catalog.getEntriesUnder(root)
+                            : catalog.getDirectoryEntries(root)) {
+                        if (seen == null || seen.add(entry.getFile())) {
+                            entries.add(entry);
+                        }
+                    }
+                }
+                int missing = 0;
+                List<CatalogEntry> hashed = new ArrayList<>(entries.size());
+                for (CatalogEntry entry : entries) {
+                    Long hash = entry.getPerceptualHash();
+                    if (hash == null) {
+                        missing++;
+                    } else if (PerceptualHash.hasDetail(hash)) {
+                        hashed.add(entry);
+                    }
+                }
+                if (missing > 0) {
+                    logger.info("{} of {} images have no perceptual hash yet and are not compared.", missing,
+                            entries.size());
+                }
+
+                // 哈希完全相同的图片只需查询一次
+                int count = hashed.size();
+                long[] hashes = new long[count];
+                for (int i = 0; i < count; i++) {
+                    hashes[i] = hashed.get(i).getPerceptualHash();
+                }
+                int[] order = new int[count];
+                for (int i = 0; i < count; i++) {
+                    order[i] = i;
+                }
+                ImageSortService.sortIndices(order, (a, b) -> Long.compare(hashes[a], hashes[b]));
+                int[] distinctOf = new int[count];
+                long[] distinct = new long[count];
+                int distinctCount = 0;
+                for (int i = 0; i < count; i++) {
+                    if (i == 0 || hashes[order[i]] != hashes[order[i - 1]]) {
+                        distinct[distinctCount++] = hashes[order[i]];
+                    }
+                    distinctOf[order[i]] = distinctCount - 1;
+                }
+                long[] distinctHashes = Arrays.copyOf(distinct, distinctCount);
+
+                updateMessage(String.format("正在比较 %,d 张图片...", count));
+                HammingIndex index = new HammingIndex(distinctHashes);
+                AtomicIntegerArray parent = new AtomicIntegerArray(distinctCount);
+                for (int i = 0; i < distinctCount; i++) {
+                    parent.set(i, i);
+                }
+                AtomicInteger done = new AtomicInteger();
+                int total = distinctCount;
+                // 只做内存中的查询，在公共 ForkJoinPool 上并行，是调度服务允许的例外，见 TaskSchedulerService
+                IntStream.range(0, distinctCount).parallel().forEach(id -> {
+                    if (isCancelled()) {
+                        return;
+                    }
+                    index.search(distinctHashes[id], maxDistance, neighbor -> {
+                        if (neighbor > id) {
+                            union(parent, id, neighbor);
+                        }
+                    });
+                    int finished = done.incrementAndGet();
+                    if (finished % 4096 == 0) {
+                        updateProgress(finished, total);
+                    }
+                });
+                if (isCancelled()) {
+                    return List.of();
+                }
+
+                Map<Integer, List<Integer>> members = new HashMap<>();
+                for (int i = 0; i < count; i++) {
+                    members.computeIfAbsent(find(parent, distinctOf[i]), root -> new ArrayList<>()).add(i);
+                }
+                List<SimilarImageGroup> groups = new ArrayList<>();
+                for (List<Integer> group : members.values()) {
+                    if (group.size() > 1) {
+                        groups.add(toGroup(hashed, group));
+                    }
+                }
+                groups.sort(Comparator.comparingInt((SimilarImageGroup group) -> group.getFiles().size()).reversed()
+                        .thenComparing(group -> group.getFiles().get(0).getPath()));
+                logger.info("Found {} groups of similar images among {} images ({} distinct hashes) in {} ms.",
+                        groups.size(), count, distinctCount, (System.nanoTime() - start) / 1_000_000);
+                updateMessage(missing > 0
+                        ? String.format("找到 %,d 组相似的图片；%,d 张图片还没有生成缩略图，未参与比较。", groups.size(),
+                                missing)
+                        : String.format("找到 %,d 组相似的图片。", groups.size()));
+                return groups;
+            }
+        };
+    }
+
+    /**
+     * 把一组记录转换为结果：像素最多（其次文件最大）的图片作为基准排在第一张，其余按与它的距离排列。
+     */
+    private static SimilarImageGroup toGroup(List<CatalogEntry> entries, List<Integer> group) {
+        List<CatalogEntry> members = new ArrayList<>(group.size());
+        for (int i : group) {
+            members.add(entries.get(i));
+        }
+        members.sort(Comparator.comparingLong(SimilarImageService::pixelCount).reversed()
+                .thenComparing(Comparator.comparingLong(CatalogEntry::getSize).reversed())
+                .thenComparing(entry -> entry.getFile().getPath()));
+        long reference = members.get(0).getPerceptualHash();
+        members.subList(1, members.size()).sort(Comparator
+                .comparingInt((CatalogEntry entry) -> PerceptualHash.distance(reference, entry.getPerceptualHash()))
+                .thenComparing(entry -> entry.getFile().getPath()));
+        List<File> files = new ArrayList<>(members.size());
+        long[] hashes = new long[members.size()];
+        long[] sizes = new long[members.size()];
+        for (int i = 0; i < members.size(); i++) {
+            files.add(members.get(i).getFile());
+            hashes[i] = members.get(i).getPerceptualHash();
+            sizes[i] = members.get(i).getSize();
+        }
+        return new SimilarImageGroup(files, hashes, sizes);
+    }
+
+    private static long pixelCount(CatalogEntry entry) {
+        ImageMetadataSummary metadata = entry.getMetadata();
+        return metadata == null ? 0 : (long) metadata.getWidth() * metadata.getHeight();
+    }
+
+    /**
+     * 返回整个目录库的哈希索引，目录库自上次建立索引后有变化时重建。
+     */
+    private HashSnapshot getCatalogSnapshot() {
+        synchronized (SimilarImageService.class) {
+            long version = catalog.getModificationCount();
+            if (catalogSnapshot == null || catalogSnapshot.catalogVersion != version) {
+                long start = System.nanoTime();
+                List<File> files = new ArrayList<>();
+                List<CatalogEntry> entries = catalog.getAllEntries();
+                long[] hashes = new long[entries.size()];
+                for (CatalogEntry entry : entries) {
+                    Long hash = entry.getPerceptualHash();
+                    if (hash != null && PerceptualHash.hasDetail(hash)) {
+                        hashes[files.size()] = hash;
+                        files.add(entry.getFile());
+                    }
+                }
+                catalogSnapshot = new HashSnapshot(version, files.toArray(new File[0]),
+                        new HammingIndex(Arrays.copyOf(hashes, files.size())));
+                logger.debug("Indexed {} perceptual hashes in {} ms.", files.size(),
+                        (System.nanoTime() - start) / 1_000_000);
+            }
+            return catalogSnapshot;
+        }
+    }
+
+    /**
+     * 并查集的查找，沿途把节点指向祖父节点以缩短路径；可以与其他线程的合并同时进行。
+     */
+    private static int find(AtomicIntegerArray parent, int node) {
+        while (true) {
+            int p = parent.get(node);
+            if (p == node) {
+                return node;
+            }
+            int grandparent = parent.get(p);
+            if (grandparent != p) {
+                parent.compareAndSet(node, p, grandparent);
+            }
+            node = grandparent;
+        }
+    }
+
+    /**
+     * 并查集的合并：总是把编号大的根挂到编号小的根下，因此并发合并不会形成环。
+     */
+    private static void union(AtomicIntegerArray parent, int a, int b) {
+        while (true) {
+            int rootA = find(parent, a);
+            int rootB = find(parent, b);
+            if (rootA == rootB) {
+                return;
+            }
+            int high = Math.max(rootA, rootB);
+            int low = Math.min(rootA, rootB);
+            if (parent.compareAndSet(high, high, low)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * 某一时刻的目录库中所有可比较的图片及其哈希索引，编号相同。
+     */
+    private static final class HashSnapshot {
+        private final long catalogVersion;
+        private final File[] files;
+        private final HammingIndex index;
+
+        private HashSnapshot(long catalogVersion, File[] files, HammingIndex index) {
+            this.catalogVersion = catalogVersion;
+            this.files = files;
+            this.index = index;
+        }
+    }
+}
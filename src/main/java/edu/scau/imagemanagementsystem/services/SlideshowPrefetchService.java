@@ -0,0 +1,357 @@
+package edu.scau.imagemanagementsystem.services;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.scau.imagemanagementsystem.services.TaskSchedulerService.Priority;
+import edu.scau.imagemanagementsystem.services.TaskSchedulerService.WorkClass;
+import javafx.concurrent.Task;
+import javafx.concurrent.Worker;
+import javafx.scene.image.Image;
+
+/**
+ * 幻灯片的预取环。
+ * <p>
+ * 以当前索引为中心，在播放方向上保留 N 张、反方向保留 M 张已解码的图片。窗口移动时，
+ * 离开窗口的解码任务被取消、已解码的图片被释放；窗口内已解码图片的总大小受内存预算限制，
+ * 超出预算时从离当前索引最远的位置开始放弃预取。
+ * <p>
+ * 设置了目标尺寸时，图片按目标尺寸解码而不是原始分辨率；放大查看时可通过
+ * {@link #ensureResolution(int, double, double)} 按需重新解码更高分辨率的版本。
+ * <p>
+ * 此类的所有方法都必须在 JavaFX 应用线程上调用。
+ */
+public class SlideshowPrefetchService {
+    private static final Logger logger = LoggerFactory.getLogger(SlideshowPrefetchService.class);
+
+    /**
+     * 默认在播放方向上预取的图片数，可通过系统属性 {@code ims.slideshow.prefetchAhead} 调整。
+     */
+    public static final int DEFAULT_AHEAD = Integer.getInteger("ims.slideshow.prefetchAhead", 3);
+    /**
+     * 默认在反方向上保留的图片数，可通过系统属性 {@code ims.slideshow.prefetchBehind} 调整。
+     */
+    public static final int DEFAULT_BEHIND = Integer.getInteger("ims.slideshow.prefetchBehind", 1);
+    /**
+     * 默认的内存预算（MB），可通过系统属性 {@code ims.slideshow.prefetchBudgetMB} 调整。
+     */
+    public static final long DEFAULT_BUDGET_BYTES = Long.getLong("ims.slideshow.prefetchBudgetMB",
+            Math.min(Runtime.getRuntime().maxMemory() / 8, 512L * 1024 * 1024) >> 20) << 20;
+
+    // 位图尺寸达到所需尺寸的这一比例即认为足够清晰
+    private static final double SUFFICIENT_RESOLUTION = 0.9;
+
+    private final ImageLoadService imageLoadService;
+    private final TaskSchedulerService taskScheduler = TaskSchedulerService.getInstance();
+    private final List<File> files;
+    private final Map<Integer, Slot> slots = new HashMap<>();
+    private BiConsumer<Integer, Image> onImageLoaded;
+    private BiConsumer<Integer, Throwable> onImageFailed;
+    private int ahead = DEFAULT_AHEAD;
+    private int behind = DEFAULT_BEHIND;
+    private long budgetBytes = DEFAULT_BUDGET_BYTES;
+    private double targetWidth;
+    private double targetHeight;
+    private int currentIndex = -1;
+    private int direction = 1;
+    // 用于估算尚未解码图片的大小
+    private long totalDecodedBytes;
+    private long totalDecodedCount;
+
+    /**
+     * 构造一个预取环。
+     *
+     * @param imageLoadService 用于创建解码任务的服务
+     * @param files            幻灯片中的全部图片文件，按播放顺序
+     */
+    public SlideshowPrefetchService(ImageLoadService imageLoadService, List<File> files) {
+        this.imageLoadService = imageLoadService;
+        this.files = new ArrayList<>(files);
+    }
+
+    /**
+     * 设置图片解码完成的回调，参数为索引和图片。
+     */
+    public void setOnImageLoaded(BiConsumer<Integer, Image> onImageLoaded) {
+        this.onImageLoaded = onImageLoaded;
+    }
+
+    /**
+     * 设置图片解码失败的回调，参数为索引和异常。
+     */
+    public void setOnImageFailed(BiConsumer<Integer, Throwable> onImageFailed) {
+        this.onImageFailed = onImageFailed;
+    }
+
+    /**
+     * 设置窗口大小。
+     *
+     * @param ahead  播放方向上预取的图片数
+     * @param behind 反方向上保留的图片数
+     */
+    public void setWindow(int ahead, int behind) {
+        this.ahead = Math.max(0, ahead);
+        this.behind = Math.max(0, behind);
+        refill();
+    }
+
+    /**
+     * 设置窗口内已解码图片的内存预算。当前图片总会被加载，不受预算限制。
+     *
+     * @param budgetBytes 预算字节数
+     */
+    public void setBudgetBytes(long budgetBytes) {
+        this.budgetBytes = Math.max(0, budgetBytes);
+        refill();
+    }
+
+    /**
+     * 设置之后解码使用的目标尺寸（物理像素），通常为图片视图的显示尺寸乘以屏幕输出缩放比例。
+     * 已解码的图片不受影响，需要时通过 {@link #ensureResolution(int, double, double)} 重新解码。
+     *
+     * @param width  目标宽度，不大于 0 表示按原始分辨率解码
+     * @param height 目标高度
+     */
+    public void setTargetSize(double width, double height) {
+        this.targetWidth = width;
+        this.targetHeight = height;
+    }
+
+    /**
+     * 确保指定索引的图片至少具有给定的分辨率。当前位图不足且还能从原图获得更多细节时，
+     * 以幻灯片优先级重新解码，完成后再次通过加载回调通知新的图片。
+     *
+     * @param index  图片索引
+     * @param width  需要的宽度（物理像素）
+     * @param height 需要的高度（物理像素）
+     */
+    public void ensureResolution(int index, double width, double height) {
+        Slot slot = slots.get(index);
+        if (slot == null || !slot.done || slot.image == null || slot.requestedWidth <= 0) {
+            return; // 尚未解码完成，或已经是原始分辨率
+        }
+        if (slot.upgradeTask != null && slot.upgradeWidth >= width && slot.upgradeHeight >= height) {
+            return;
+        }
+        Image image = slot.image;
+        if (Math.max(image.getWidth() / width, image.getHeight() / height) >= SUFFICIENT_RESOLUTION) {
+            return;
+        }
+        // 位图在两个方向上都小于上次请求的区域，说明已是原图尺寸
+        if (image.getWidth() + 1 < slot.requestedWidth && image.getHeight() + 1 < slot.requestedHeight) {
+            return;
+        }
+        if (slot.upgradeTask != null) {
+            slot.upgradeTask.cancel();
+        }
+        Task<Image> task = imageLoadService.loadImageAsync(files.get(index), width, height);
+        slot.upgradeTask = task;
+        slot.upgradeWidth = width;
+        slot.upgradeHeight = height;
+        task.setOnSucceeded(event -> {
+            if (slots.get(index) != slot || slot.upgradeTask != task) {
+                return;
+            }
+            slot.upgradeTask = null;
+            if (task.getValue() != null) {
+                slot.image = task.getValue();
+                slot.requestedWidth = width;
+                slot.requestedHeight = height;
+                if (onImageLoaded != null) {
+                    onImageLoaded.accept(index, slot.image);
+                }
+            }
+        });
+        task.setOnFailed(event -> {
+            if (slot.upgradeTask == task) {
+                slot.upgradeTask = null;
+            }
+            logger.error("Failed to re-decode slideshow image {}", files.get(index), task.getException());
+        });
+        logger.debug("Re-decoding {} at {}x{} for zoom.", files.get(index).getName(), (int) width, (int) height);
+        taskScheduler.submit(task, WorkClass.FULL_DECODE, Priority.SLIDESHOW);
+    }
+
+    /**
+     * 将窗口移动到新的当前索引。
+     *
+     * @param index     新的当前索引
+     * @param direction 播放方向，正数表示向后播放，负数表示向前播放
+     */
+    public void moveTo(int index, int direction) {
+        this.currentIndex = index;
+        if (direction != 0) {
+            this.direction = direction > 0 ? 1 : -1;
+        }
+        refill();
+    }
+
+    /**
+     * 指定索引的图片是否已完成解码（成功或失败）。
+     */
+    public boolean isLoaded(int index) {
+        Slot slot = slots.get(index);
+        return slot != null && slot.done;
+    }
+
+    /**
+     * 获取已解码的图片。
+     *
+     * @return 图片；尚未解码完成或解码失败时返回 null
+     */
+    public Image getImage(int index) {
+        Slot slot = slots.get(index);
+        return slot != null ? slot.image : null;
+    }
+
+    /**
+     * 取消所有解码任务并释放已解码的图片，例如关闭幻灯片时。
+     */
+    public void cancelAll() {
+        for (Slot slot : slots.values()) {
+            release(slot);
+        }
+        slots.clear();
+    }
+
+    /**
+     * 按与当前索引的距离计算窗口中的索引：当前索引在前，同一距离上播放方向优先。
+     */
+    private List<Integer> windowIndices() {
+        List<Integer> indices = new ArrayList<>();
+        if (currentIndex < 0 || currentIndex >= files.size()) {
+            return indices;
+        }
+        indices.add(currentIndex);
+        for (int distance = 1; distance <= Math.max(ahead, behind); distance++) {
+            int forward = currentIndex + distance * direction;
+            int backward = currentIndex - distance * direction;
+            if (distance <= ahead && forward >= 0 && forward < files.size()) {
+                indices.add(forward);
+            }
+            if (distance <= behind && backward >= 0 && backward < files.size()) {
+                indices.add(backward);
+            }
+        }
+        return indices;
+    }
+
+    private void refill() {
+        List<Integer> window = windowIndices();
+        Set<Integer> inWindow = new HashSet<>(window);
+        Iterator<Map.Entry<Integer, Slot>> iterator = slots.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Integer, Slot> entry = iterator.next();
+            if (!inWindow.contains(entry.getKey())) {
+                iterator.remove();
+                release(entry.getValue());
+            }
+        }
+
+        // 未知大小的图片按已解码图片的平均大小估算
+        long estimate = totalDecodedCount > 0 ? totalDecodedBytes / totalDecodedCount : 0;
+        long committed = 0;
+        for (int position = 0; position < window.size(); position++) {
+            int index = window.get(position);
+            Slot slot = slots.get(index);
+            long weight = slot != null && slot.image != null ? ImageMemoryCache.weigh(slot.image) : estimate;
+            if (position > 0 && committed + weight > budgetBytes) {
+                // 超出预算：放弃这一位置及更远位置的预取
+                for (int farther = position; farther < window.size(); farther++) {
+                    Slot dropped = slots.remove(window.get(farther));
+                    if (dropped != null) {
+                        release(dropped);
+                    }
+                }
+                logger.debug("Slideshow prefetch limited to {} images by the memory budget.", position);
+                break;
+            }
+            committed += weight;
+            Priority priority = position == 0 ? Priority.SLIDESHOW : Priority.PREFETCH;
+            if (slot == null) {
+                submit(index, priority);
+            } else if (position == 0 && slot.priority != Priority.SLIDESHOW
+                    && slot.task.getState() == Worker.State.READY) {
+                // 仍在排队的预取任务变成了当前图片，提高优先级重新提交
+                slot.task.cancel();
+                submit(index, Priority.SLIDESHOW);
+            }
+        }
+    }
+
+    private void submit(int index, Priority priority) {
+        Task<Image> task = targetWidth > 0 && targetHeight > 0
+                ? imageLoadService.loadImageAsync(files.get(index), targetWidth, targetHeight)
+                : imageLoadService.loadImageAsync(files.get(index));
+        Slot slot = new Slot(task, priority);
+        slot.requestedWidth = targetWidth;
+        slot.requestedHeight = targetHeight;
+        slots.put(index, slot);
+        task.setOnSucceeded(event -> {
+            if (slots.get(index) != slot) {
+                return;
+            }
+            slot.done = true;
+            slot.image = task.getValue();
+            if (slot.image != null) {
+                totalDecodedBytes += ImageMemoryCache.weigh(slot.image);
+                totalDecodedCount++;
+                if (index != currentIndex) {
+                    // 实际大小已知，重新检查预算
+                    refill();
+                }
+            }
+            if (onImageLoaded != null && slots.get(index) == slot) {
+                onImageLoaded.accept(index, slot.image);
+            }
+        });
+        task.setOnFailed(event -> {
+            if (slots.get(index) != slot) {
+                return;
+            }
+            slot.done = true;
+            logger.error("Failed to decode slideshow image {}", files.get(index), task.getException());
+            if (onImageFailed != null) {
+                onImageFailed.accept(index, task.getException());
+            }
+        });
+        taskScheduler.submit(task, WorkClass.FULL_DECODE, priority);
+    }
+
+    private void release(Slot slot) {
+        slot.task.cancel();
+        if (slot.upgradeTask != null) {
+            slot.upgradeTask.cancel();
+            slot.upgradeTask = null;
+        }
+        slot.image = null;
+    }
+
+    private static final class Slot {
+        private final Task<Image> task;
+        private final Priority priority;
+        private Image image;
+        private boolean done;
+        // 解码请求的区域，不大于 0 表示原始分辨率
+        private double requestedWidth;
+        private double requestedHeight;
+        private Task<Image> upgradeTask;
+        private double upgradeWidth;
+        private double upgradeHeight;
+
+        private Slot(Task<Image> task, Priority priority) {
+            this.task = task;
+            this.priority = priority;
+        }
+    }
+}
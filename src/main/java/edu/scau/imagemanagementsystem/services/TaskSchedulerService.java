@@ -0,0 +1,333 @@
+package edu.scau.imagemanagementsystem.services;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javafx.concurrent.Task;
+
+/**
+ * 全局共享的后台任务调度服务。
+ * <p>
+ * 所有服务产生的 {@link Task} 都应提交到这里执行，而不是各自 {@code new Thread(task).start()}。
+ * 每种工作类型 ({@link WorkClass}) 拥有独立的有界线程池，池内队列按 {@link Priority} 排序，
+ * 同一优先级内按提交顺序执行。
+ * <p>
+ * 任务可以绑定一个"代"编号 (generation)。调用 {@link #advanceGeneration()} 时，所有属于旧代的
+ * 排队任务和正在执行的任务都会被取消，例如切换目录时丢弃旧目录的缩略图加载。
+ * <p>
+ * 以下线程不经过这里，是有意的例外：
+ * <ul>
+ * <li>已提交的 Task 内部为一次计算分叉出的并行工作：查找重复图片时读取文件的线程
+ * ({@link DuplicateFinderService})、搜索时遍历目录的 ForkJoinPool ({@link SearchService})，以及比较感知哈希、
+ * 排序与过滤时使用的公共 ForkJoinPool ({@link SimilarImageService}、{@link ImageSortService})。
+ * 它们随发起的 Task 创建和结束，发起的 Task 本身仍占用所属线程池的一个线程，
+ * 因此同一时刻只有有限几次这样的计算；公共 ForkJoinPool 中的工作只做内存中的计算，不等待 I/O。</li>
+ * <li>长期运行、自行限制并发度的后台线程：目录监听 ({@link DirectoryWatchService})、图库扫描的虚拟线程
+ * ({@link LibraryCrawlerService}，通过 {@link #awaitNoInteractiveWork()} 为交互任务让路)，
+ * 以及缩略图缓存的压缩线程 ({@link ThumbnailCacheService})。把它们放进有界线程池会长时间占满其中的线程。</li>
+ * </ul>
+ */
+public class TaskSchedulerService {
+    private static final Logger logger = LoggerFactory.getLogger(TaskSchedulerService.class);
+
+    /**
+     * 不绑定任何代的任务使用此值，它们不会因切换目录而被取消。
+     */
+    public static final long NO_GENERATION = -1L;
+
+    private static final TaskSchedulerService INSTANCE = new TaskSchedulerService();
+
+    /**
+     * 工作类型，每种类型对应一个独立的有界线程池。
+     */
+    public enum WorkClass {
+        DIRECTORY_LISTING("listing", 2),
+        THUMBNAIL_DECODE("thumbnail", Math.max(2, Math.min(Runtime.getRuntime().availableProcessors() - 1, 6))),
+        FULL_DECODE("decode", 2),
+        // 读取文件头提取元数据；过多的并发只会让机械硬盘来回寻道
+        METADATA("metadata", Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors()))),
+        FILE_OPERATION("file-op", 1), // 单线程，保证文件操作按提交顺序执行
+        VIEW_UPDATE("view", 1); // 过滤与排序等界面数据的计算，不会排在目录扫描之后
+
+        private final String threadName;
+        private final int poolSize;
+
+        WorkClass(String threadName, int poolSize) {
+            this.threadName = threadName;
+            this.poolSize = poolSize;
+        }
+
+        public int getPoolSize() {
+            return poolSize;
+        }
+    }
+
+    /**
+     * 任务优先级，声明顺序即调度顺序（越靠前越先执行）。
+     */
+    public enum Priority {
+        VISIBLE_THUMBNAIL,
+        THUMBNAIL_REFINE, // 可见缩略图的第二遍细化，在所有可见预览之后、预取之前执行
+        SLIDESHOW,
+        PREFETCH,
+        BACKGROUND
+    }
+
+    private final Map<WorkClass, ThreadPoolExecutor> executors = new EnumMap<>(WorkClass.class);
+    private final Map<Task<?>, ScheduledTask> activeTasks = new ConcurrentHashMap<>();
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicLong generation = new AtomicLong();
+    // 排队或正在执行的交互任务（优先级高于 PREFETCH）的数量，降为 0 时唤醒等待让路的后台工作
+    private final ReentrantLock interactiveLock = new ReentrantLock();
+    private final Condition interactiveIdle = interactiveLock.newCondition();
+    private int interactiveCount;
+
+    private TaskSchedulerService() {
+        for (WorkClass workClass : WorkClass.values()) {
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(workClass.poolSize, workClass.poolSize,
+                    30L, TimeUnit.SECONDS, new PriorityBlockingQueue<>(), new NamedThreadFactory(workClass.threadName));
+            executor.allowCoreThreadTimeOut(true);
+            executors.put(workClass, executor);
+        }
+    }
+
+    /**
+     * 获取全局唯一的调度服务实例。
+     *
+     * @return 调度服务实例
+     */
+    public static TaskSchedulerService getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * 提交一个不绑定代编号的任务。
+     *
+     * @param task      要执行的任务
+     * @param workClass 任务所属的工作类型
+     * @param priority  任务优先级
+     * @param <T>       任务结果类型
+     * @return 传入的任务本身，便于链式调用
+     */
+    public <T> Task<T> submit(Task<T> task, WorkClass workClass, Priority priority) {
+        return submit(task, workClass, priority, NO_GENERATION);
+    }
+
+    /**
+     * 提交一个绑定到指定代编号的任务。当代编号过期时，任务会被自动取消。
+     *
+     * @param task       要执行的任务
+     * @param workClass  任务所属的工作类型
+     * @param priority   任务优先级
+     * @param generation 任务所属的代，使用 {@link #NO_GENERATION} 表示不绑定
+     * @param <T>        任务结果类型
+     * @return 传入的任务本身，便于链式调用
+     */
+    public <T> Task<T> submit(Task<T> task, WorkClass workClass, Priority priority, long generation) {
+        if (generation != NO_GENERATION && generation != this.generation.get()) {
+            task.cancel();
+            return task;
+        }
+        ScheduledTask scheduled = new ScheduledTask(task, priority, generation, sequence.getAndIncrement());
+        activeTasks.put(task, scheduled);
+        if (scheduled.isInteractive()) {
+            interactiveLock.lock();
+            try {
+                interactiveCount++;
+            } finally {
+                interactiveLock.unlock();
+            }
+        }
+        executors.get(workClass).execute(scheduled);
+        return task;
+    }
+
+    /**
+     * 检查是否有用户正在等待的任务（可见缩略图、幻灯片等）排队或正在执行。
+     * 后台工作在此期间应当让出 I/O 和 CPU。已被取消但仍在队列中的任务在被工作线程取出之前仍然计算在内。
+     *
+     * @return 如果有优先级高于 {@link Priority#PREFETCH} 的任务则返回 true
+     */
+    public boolean hasInteractiveWork() {
+        interactiveLock.lock();
+        try {
+            return interactiveCount > 0;
+        } finally {
+            interactiveLock.unlock();
+        }
+    }
+
+    /**
+     * 阻塞直到没有用户正在等待的任务，供后台工作在开始新的 I/O 之前让路。
+     * 等待不占用 CPU，最后一个这样的任务结束时被唤醒。
+     *
+     * @throws InterruptedException 等待期间线程被中断
+     */
+    public void awaitNoInteractiveWork() throws InterruptedException {
+        interactiveLock.lockInterruptibly();
+        try {
+            while (interactiveCount > 0) {
+                interactiveIdle.await();
+            }
+        } finally {
+            interactiveLock.unlock();
+        }
+    }
+
+    /**
+     * 仅当任务还在排队、尚未被工作线程取出时取消它，正在执行的任务不受影响。
+     * <p>
+     * {@link Task#getState()} 要等 FX 线程处理完状态更新后才会改变，不能用来判断任务是否已经开始执行。
+     *
+     * @param task 通过 {@link #submit} 提交的任务
+     * @return 如果任务被取消则返回 true；任务已经开始执行、已经结束或不是由此服务调度时返回 false
+     */
+    public boolean cancelIfQueued(Task<?> task) {
+        ScheduledTask scheduled = activeTasks.get(task);
+        if (scheduled == null || !scheduled.started.compareAndSet(false, true)) {
+            return false;
+        }
+        task.cancel();
+        retire(scheduled);
+        return true;
+    }
+
+    /**
+     * 获取当前代编号。
+     *
+     * @return 当前代编号
+     */
+    public long currentGeneration() {
+        return generation.get();
+    }
+
+    /**
+     * 进入新的一代，并取消所有属于旧代的排队或正在执行的任务。
+     *
+     * @return 新的代编号
+     */
+    public long advanceGeneration() {
+        long next = generation.incrementAndGet();
+        int cancelled = 0;
+        for (ScheduledTask scheduled : activeTasks.values()) {
+            if (scheduled.generation != NO_GENERATION && scheduled.generation < next) {
+                scheduled.task.cancel();
+                retire(scheduled);
+                cancelled++;
+            }
+        }
+        if (cancelled > 0) {
+            logger.debug("Generation advanced to {}, cancelled {} stale tasks.", next, cancelled);
+        }
+        return next;
+    }
+
+    /**
+     * 立即停止所有线程池，通常在应用退出时调用。
+     */
+    public void shutdown() {
+        for (ThreadPoolExecutor executor : executors.values()) {
+            executor.shutdownNow();
+        }
+        activeTasks.clear();
+        interactiveLock.lock();
+        try {
+            interactiveCount = 0;
+            interactiveIdle.signalAll();
+        } finally {
+            interactiveLock.unlock();
+        }
+    }
+
+    /**
+     * 任务结束或被取消后移出活动任务；每个任务只会被移出一次。
+     */
+    private void retire(ScheduledTask scheduled) {
+        if (activeTasks.remove(scheduled.task, scheduled) && scheduled.isInteractive()) {
+            interactiveLock.lock();
+            try {
+                if (--interactiveCount == 0) {
+                    interactiveIdle.signalAll();
+                }
+            } finally {
+                interactiveLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * 包装 Task，使其可以在优先级队列中排序。
+     */
+    private final class ScheduledTask implements Runnable, Comparable<ScheduledTask> {
+        private final Task<?> task;
+        private final Priority priority;
+        private final long generation;
+        private final long sequence;
+        // 由工作线程取出任务或 cancelIfQueued 取消任务时置位，两者只有一方成功
+        private final AtomicBoolean started = new AtomicBoolean();
+
+        private ScheduledTask(Task<?> task, Priority priority, long generation, long sequence) {
+            this.task = task;
+            this.priority = priority;
+            this.generation = generation;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public void run() {
+            try {
+                if (!started.compareAndSet(false, true)) {
+                    return;
+                }
+                if (generation != NO_GENERATION && generation != TaskSchedulerService.this.generation.get()) {
+                    task.cancel();
+                    return;
+                }
+                if (!task.isCancelled()) {
+                    task.run();
+                }
+            } finally {
+                retire(this);
+            }
+        }
+
+        private boolean isInteractive() {
+            return priority.compareTo(Priority.PREFETCH) < 0;
+        }
+
+        @Override
+        public int compareTo(ScheduledTask other) {
+            int byPriority = priority.compareTo(other.priority);
+            return byPriority != 0 ? byPriority : Long.compare(sequence, other.sequence);
+        }
+    }
+
+    private static final class NamedThreadFactory implements ThreadFactory {
+        private final String prefix;
+        private final AtomicInteger counter = new AtomicInteger(1);
+
+        private NamedThreadFactory(String name) {
+            this.prefix = "ims-" + name + "-";
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, prefix + counter.getAndIncrement());
+            thread.setDaemon(true); // 不阻止应用退出
+            return thread;
+        }
+    }
+}
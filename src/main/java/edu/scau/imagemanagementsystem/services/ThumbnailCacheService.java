@@ -0,0 +1,675 @@
+package edu.scau.imagemanagementsystem.services;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.scau.imagemanagementsystem.utils.FileUtils;
+
+/**
+ * 持久化的磁盘缩略图缓存。
+ * <p>
+ * 缩略图的编码数据以追加方式写入若干 pack 文件，索引同样以追加日志 ({@code index.log}) 的形式记录。
+ * 每条索引记录和数据记录都带有 CRC 校验，程序崩溃导致的半条记录会在下次启动时被丢弃。
+ * 缓存总大小超过上限时按 LRU 顺序淘汰；当 pack 文件中的失效数据过多时进行压缩：
+ * 先写出新的 pack 与临时索引，再原子替换索引，最后删除旧 pack，任何一步中断都不会破坏已有数据。
+ * 压缩在单独的后台线程上复制数据，期间读写照常进行。
+ * <p>
+ * 缓存在可被取消的缩略图任务中读写，而取消会中断线程。可中断的 {@code FileChannel} 被中断时会关闭通道，
+ * 因此所有文件都通过不可中断的 {@link RandomAccessFile} 和文件流访问。
+ */
+public class ThumbnailCacheService {
+    private static final Logger logger = LoggerFactory.getLogger(ThumbnailCacheService.class);
+
+    private static final int PACK_RECORD_MAGIC = 0x494D5354; // "IMST"
+    private static final byte OP_PUT = 1;
+    private static final byte OP_REMOVE = 2;
+    private static final String INDEX_FILE_NAME = "index.log";
+    private static final String PACK_FILE_PREFIX = "pack-";
+    private static final String PACK_FILE_SUFFIX = ".dat";
+    private static final long MAX_PACK_SIZE = 64L * 1024 * 1024;
+    private static final long DEFAULT_MAX_BYTES = 512L * 1024 * 1024;
+    private static final long MIN_COMPACTION_SIZE = 32L * 1024 * 1024;
+
+    private static final ThumbnailCacheService INSTANCE = new ThumbnailCacheService(
+            FileUtils.getApplicationCacheDirectory().resolve("thumbnails"), DEFAULT_MAX_BYTES);
+
+    private final Path directory;
+    private final long maxBytes;
+    // accessOrder = true，迭代顺序即 LRU 顺序（最久未使用的在前）
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(1024, 0.75f, true);
+    private final Map<Integer, RandomAccessFile> packFiles = new HashMap<>();
+
+    private DataOutputStream indexOut;
+    private RandomAccessFile currentPack;
+    private int currentPackId;
+    private int nextPackId;
+    private long liveBytes;
+    private long packBytes;
+    private boolean opened;
+    private boolean disabled;
+    private boolean compacting;
+
+    ThumbnailCacheService(Path directory, long maxBytes) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * 获取全局唯一的缩略图缓存实例，缓存位于用户缓存目录下。
+     *
+     * @return 缩略图缓存实例
+     */
+    public static ThumbnailCacheService getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * 根据文件的规范路径、大小、最后修改时间以及请求的缩略图尺寸构造缓存键。
+     * 文件内容变化后其大小或修改时间随之改变，旧的缓存项自然失效并最终被淘汰。
+     *
+     * @param file      图片文件
+     * @param reqWidth  请求的缩略图宽度
+     * @param reqHeight 请求的缩略图高度
+     * @return 缓存键
+     * @throws IOException 如果无法解析规范路径
+     */
+    public static String buildKey(File file, double reqWidth, double reqHeight) throws IOException {
+        return file.getCanonicalPath() + '|' + file.length() + '|' + file.lastModified() + '|'
+                + (int) reqWidth + 'x' + (int) reqHeight;
+    }
+
+    /**
+     * 读取缓存中的缩略图数据。
+     *
+     * @param key 缓存键
+     * @return 编码后的缩略图数据；如果未命中或数据损坏，则返回 null
+     */
+    public byte[] get(String key) {
+        Entry entry;
+        RandomAccessFile pack;
+        try {
+            synchronized (this) {
+                if (!ensureOpen()) {
+                    return null;
+                }
+                entry = entries.get(key);
+                if (entry == null) {
+                    return null;
+                }
+                pack = openPackFile(entry.packId);
+            }
+            byte[] data = readEntry(entry, pack);
+            if (data == null) {
+                logger.warn("Corrupted thumbnail cache entry dropped: {}", key);
+                remove(key);
+            }
+            return data;
+        } catch (IOException e) {
+            // 旧 pack 可能在压缩完成后被关闭和删除，视为未命中
+            logger.debug("Failed to read thumbnail cache entry {}", key, e);
+            return null;
+        }
+    }
+
+    private static byte[] readEntry(Entry entry, RandomAccessFile pack) throws IOException {
+        byte[] data = new byte[entry.length];
+        synchronized (pack) { // 文件指针由所有读写共享
+            pack.seek(entry.offset);
+            pack.readFully(data);
+        }
+        return crc(data, 0, data.length) == entry.crc ? data : null;
+    }
+
+    /**
+     * 检查缓存中是否存在指定的键，不读取数据，也不影响 LRU 顺序。
+     *
+     * @param key 缓存键
+     * @return 如果存在则返回 true
+     */
+    public synchronized boolean contains(String key) {
+        return ensureOpen() && entries.containsKey(key);
+    }
+
+    /**
+     * 写入一条缩略图缓存。如果键已存在，旧数据会被替换。
+     *
+     * @param key  缓存键
+     * @param data 编码后的缩略图数据
+     */
+    public synchronized void put(String key, byte[] data) {
+        if (!ensureOpen() || data == null) {
+            return;
+        }
+        try {
+            Entry previous = entries.remove(key);
+            if (previous != null) {
+                liveBytes -= previous.length;
+            }
+            long packSize = currentPack.length();
+            if (packSize >= MAX_PACK_SIZE) {
+                rollPack();
+                packSize = 0;
+            }
+            Entry entry = appendToPack(currentPack, currentPackId, key, data);
+            packBytes += entry.offset + entry.length + 4 - packSize; // 记录以 4 字节的 CRC 结尾
+            writeIndexRecord(indexOut, OP_PUT, key, entry);
+            indexOut.flush();
+            entries.put(key, entry);
+            liveBytes += entry.length;
+            evictIfNeeded();
+            compactIfNeeded();
+        } catch (IOException e) {
+            logger.warn("Failed to write thumbnail cache, disabling it for this session.", e);
+            disabled = true;
+        }
+    }
+
+    /**
+     * 删除一条缓存记录。
+     *
+     * @param key 缓存键
+     */
+    public synchronized void remove(String key) {
+        if (!ensureOpen()) {
+            return;
+        }
+        Entry removed = entries.remove(key);
+        if (removed == null) {
+            return;
+        }
+        liveBytes -= removed.length;
+        try {
+            writeIndexRecord(indexOut, OP_REMOVE, key, null);
+            indexOut.flush();
+        } catch (IOException e) {
+            logger.warn("Failed to record thumbnail cache removal for {}", key, e);
+        }
+    }
+
+    /**
+     * 关闭所有打开的文件，通常在应用退出时调用。
+     */
+    public synchronized void close() {
+        if (!opened) {
+            return;
+        }
+        try {
+            if (indexOut != null) {
+                indexOut.close();
+            }
+            for (RandomAccessFile pack : packFiles.values()) {
+                pack.close();
+            }
+            Path currentPackPath = packPath(currentPackId);
+            if (Files.exists(currentPackPath) && Files.size(currentPackPath) == 0) {
+                Files.delete(currentPackPath);
+            }
+        } catch (IOException e) {
+            logger.warn("Failed to close thumbnail cache cleanly.", e);
+        }
+        packFiles.clear();
+        opened = false;
+        disabled = true; // 退出过程中仍在运行的任务不应重新打开缓存
+    }
+
+    private boolean ensureOpen() {
+        if (disabled) {
+            return false;
+        }
+        if (opened) {
+            return true;
+        }
+        try {
+            Files.createDirectories(directory);
+            deleteTemporaryFiles();
+            TreeMap<Integer, Path> packs = listPackFiles();
+            Path indexPath = directory.resolve(INDEX_FILE_NAME);
+            if (Files.exists(indexPath)) {
+                replayIndex(indexPath);
+            } else if (!packs.isEmpty()) {
+                rebuildIndexFromPacks(packs);
+            }
+            deleteUnreferencedPacks(packs);
+            packBytes = 0;
+            for (Path pack : listPackFiles().values()) {
+                packBytes += Files.size(pack);
+            }
+            indexOut = openIndexOutput();
+            // 每次启动都写入新的 pack，避免在上次可能被截断的文件末尾追加
+            nextPackId = packs.isEmpty() ? 1 : packs.lastKey() + 1;
+            rollPack();
+            evictIfNeeded(); // 重建索引时删除记录已丢失，可能超出上限
+            opened = true;
+            logger.info("Thumbnail cache opened at {} with {} entries ({} bytes).", directory, entries.size(),
+                    liveBytes);
+        } catch (IOException e) {
+            logger.warn("Failed to open thumbnail cache at {}, running without it.", directory, e);
+            disabled = true;
+        }
+        return opened;
+    }
+
+    private void replayIndex(Path indexPath) throws IOException {
+        long validLength = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexPath.toFile())))) {
+            while (true) {
+                int recordLength;
+                try {
+                    recordLength = in.readInt();
+                } catch (EOFException eof) {
+                    break;
+                }
+                if (recordLength <= 0 || recordLength > 64 * 1024) {
+                    break;
+                }
+                byte[] payload = new byte[recordLength];
+                int storedCrc;
+                try {
+                    in.readFully(payload);
+                    storedCrc = in.readInt();
+                } catch (EOFException eof) {
+                    break; // 末尾的半条记录
+                }
+                if (crc(payload, 0, payload.length) != storedCrc) {
+                    break;
+                }
+                applyIndexRecord(payload);
+                validLength += 4 + recordLength + 4;
+            }
+        }
+        if (validLength < Files.size(indexPath)) {
+            logger.warn("Thumbnail cache index has a damaged tail, truncating to {} bytes.", validLength);
+            try (RandomAccessFile index = new RandomAccessFile(indexPath.toFile(), "rw")) {
+                index.setLength(validLength);
+            }
+        }
+    }
+
+    private void applyIndexRecord(byte[] payload) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        byte op = in.readByte();
+        String key = in.readUTF();
+        Entry previous = entries.remove(key);
+        if (previous != null) {
+            liveBytes -= previous.length;
+        }
+        if (op == OP_PUT) {
+            Entry entry = new Entry(in.readInt(), in.readLong(), in.readInt(), in.readInt());
+            entries.put(key, entry);
+            liveBytes += entry.length;
+        }
+    }
+
+    /**
+     * 索引丢失时，通过顺序扫描所有 pack 文件重建索引。
+     */
+    private void rebuildIndexFromPacks(TreeMap<Integer, Path> packs) throws IOException {
+        logger.info("Thumbnail cache index missing, rebuilding from {} pack files.", packs.size());
+        for (Map.Entry<Integer, Path> pack : packs.entrySet()) {
+            try (InputStream raw = new FileInputStream(pack.getValue().toFile());
+                    DataInputStream in = new DataInputStream(new BufferedInputStream(raw))) {
+                long position = 0;
+                while (true) {
+                    try {
+                        if (in.readInt() != PACK_RECORD_MAGIC) {
+                            break;
+                        }
+                        byte[] keyBytes = new byte[in.readInt()];
+                        in.readFully(keyBytes);
+                        int length = in.readInt();
+                        long dataOffset = position + 12 + keyBytes.length;
+                        byte[] data = new byte[length];
+                        in.readFully(data);
+                        int storedCrc = in.readInt();
+                        if (crc(data, 0, length) != storedCrc) {
+                            break;
+                        }
+                        String key = new String(keyBytes, StandardCharsets.UTF_8);
+                        Entry previous = entries.put(key, new Entry(pack.getKey(), dataOffset, length, storedCrc));
+                        if (previous != null) {
+                            liveBytes -= previous.length;
+                        }
+                        liveBytes += length;
+                        position = dataOffset + length + 4;
+                    } catch (EOFException | NegativeArraySizeException eof) {
+                        break;
+                    }
+                }
+            }
+        }
+        writeIndexAtomically(entries);
+    }
+
+    private void evictIfNeeded() throws IOException {
+        if (liveBytes <= maxBytes) {
+            return;
+        }
+        long target = maxBytes * 9 / 10;
+        int evicted = 0;
+        Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+        while (liveBytes > target && iterator.hasNext()) {
+            Map.Entry<String, Entry> eldest = iterator.next();
+            iterator.remove();
+            liveBytes -= eldest.getValue().length;
+            writeIndexRecord(indexOut, OP_REMOVE, eldest.getKey(), null);
+            evicted++;
+        }
+        indexOut.flush();
+        logger.debug("Evicted {} thumbnail cache entries, {} bytes remain.", evicted, liveBytes);
+    }
+
+    /**
+     * pack 文件中的失效数据过多时，在后台线程上开始压缩。调用时必须持有锁。
+     */
+    private void compactIfNeeded() {
+        if (compacting || packBytes < MIN_COMPACTION_SIZE || liveBytes * 2 > packBytes) {
+            return;
+        }
+        compacting = true;
+        // 压缩偶尔发生且以顺序 I/O 为主，不占用调度服务中任何一个交互相关的线程池
+        Thread compactor = new Thread(() -> {
+            try {
+                compact();
+            } catch (IOException e) {
+                logger.warn("Failed to compact thumbnail cache.", e);
+            } finally {
+                synchronized (this) {
+                    compacting = false;
+                }
+            }
+        }, "thumbnail-cache-compactor");
+        compactor.setDaemon(true);
+        compactor.setPriority(Thread.MIN_PRIORITY);
+        compactor.start();
+    }
+
+    private void compact() throws IOException {
+        long start = System.nanoTime();
+        // 1. 在锁内换用新的 pack 接收之后的写入，记下此刻所有存活的索引项，它们都位于旧 pack 中
+        Map<String, Entry> snapshot;
+        List<Integer> oldPackIds;
+        synchronized (this) {
+            if (!opened) {
+                return;
+            }
+            logger.info("Compacting thumbnail cache: {} live bytes in {} pack bytes.", liveBytes, packBytes);
+            rollPack();
+            snapshot = new LinkedHashMap<>(entries);
+            oldPackIds = new ArrayList<>(listPackFiles().headMap(currentPackId).keySet());
+        }
+
+        // 2. 在锁外将快照中的数据按 LRU 顺序复制到新的 pack 文件，旧 pack 使用单独的只读句柄
+        Map<String, Entry> copied = new HashMap<>(snapshot.size() * 2);
+        Map<Integer, RandomAccessFile> sources = new HashMap<>();
+        List<Integer> writtenIds = new ArrayList<>();
+        List<RandomAccessFile> written = new ArrayList<>();
+        boolean succeeded = false;
+        try {
+            RandomAccessFile target = null;
+            int targetId = 0;
+            for (Map.Entry<String, Entry> live : snapshot.entrySet()) {
+                Entry entry = live.getValue();
+                byte[] data;
+                try {
+                    RandomAccessFile source = sources.get(entry.packId);
+                    if (source == null) {
+                        source = new RandomAccessFile(packPath(entry.packId).toFile(), "r");
+                        sources.put(entry.packId, source);
+                    }
+                    data = readEntry(entry, source);
+                } catch (IOException e) {
+                    data = null;
+                }
+                if (data == null) {
+                    continue; // 损坏的数据不再保留
+                }
+                if (target == null || target.length() >= MAX_PACK_SIZE) {
+                    targetId = allocatePackId();
+                    target = openPackForWrite(targetId);
+                    writtenIds.add(targetId);
+                    written.add(target);
+                }
+                copied.put(live.getKey(), appendToPack(target, targetId, live.getKey(), data));
+            }
+            for (RandomAccessFile pack : written) {
+                pack.getFD().sync();
+            }
+            succeeded = true;
+        } finally {
+            for (RandomAccessFile source : sources.values()) {
+                source.close();
+            }
+            for (RandomAccessFile pack : written) {
+                pack.close(); // 新 pack 之后按需以只读方式重新打开
+            }
+            if (!succeeded) {
+                for (Integer id : writtenIds) {
+                    Files.deleteIfExists(packPath(id));
+                }
+            }
+        }
+
+        synchronized (this) {
+            if (!opened) {
+                return; // 缓存已关闭，新 pack 未被引用，下次启动时会被清理
+            }
+            // 3. 复制期间被替换或删除的项保持原样，其余项指向新的位置，LRU 顺序不变
+            LinkedHashMap<String, Entry> compacted = new LinkedHashMap<>(entries.size() * 2, 0.75f, true);
+            for (Map.Entry<String, Entry> live : entries.entrySet()) {
+                Entry entry = live.getValue();
+                if (snapshot.get(live.getKey()) == entry) {
+                    entry = copied.get(live.getKey());
+                }
+                if (entry != null) {
+                    compacted.put(live.getKey(), entry);
+                }
+            }
+
+            // 4. 原子替换索引；此前崩溃只会留下未被引用的新 pack，启动时会被清理
+            indexOut.close();
+            try {
+                writeIndexAtomically(compacted);
+            } finally {
+                indexOut = openIndexOutput();
+            }
+
+            // 5. 删除旧 pack；此处崩溃只会留下未被引用的旧 pack。仍在读取旧 pack 的线程视为未命中
+            for (Integer oldId : oldPackIds) {
+                RandomAccessFile pack = packFiles.remove(oldId);
+                if (pack != null) {
+                    pack.close();
+                }
+                Files.deleteIfExists(packPath(oldId));
+            }
+
+            entries.clear();
+            entries.putAll(compacted);
+            liveBytes = 0;
+            for (Entry entry : entries.values()) {
+                liveBytes += entry.length;
+            }
+            packBytes = 0;
+            for (Path pack : listPackFiles().values()) {
+                packBytes += Files.size(pack);
+            }
+            logger.info("Compacted thumbnail cache to {} bytes in {} ms.", packBytes,
+                    (System.nanoTime() - start) / 1_000_000);
+        }
+    }
+
+    private void writeIndexAtomically(Map<String, Entry> snapshot) throws IOException {
+        Path tmp = directory.resolve(INDEX_FILE_NAME + ".tmp");
+        try (FileOutputStream fos = new FileOutputStream(tmp.toFile());
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos))) {
+            for (Map.Entry<String, Entry> entry : snapshot.entrySet()) {
+                writeIndexRecord(out, OP_PUT, entry.getKey(), entry.getValue());
+            }
+            out.flush();
+            fos.getFD().sync();
+        }
+        Files.move(tmp, directory.resolve(INDEX_FILE_NAME), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private DataOutputStream openIndexOutput() throws IOException {
+        return new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(directory.resolve(INDEX_FILE_NAME).toFile(), true)));
+    }
+
+    private void rollPack() throws IOException {
+        int packId = allocatePackId();
+        currentPack = openPackForWrite(packId);
+        currentPackId = packId;
+        packFiles.put(packId, currentPack);
+    }
+
+    private synchronized int allocatePackId() {
+        return nextPackId++;
+    }
+
+    private static Entry appendToPack(RandomAccessFile pack, int packId, String key, byte[] data) throws IOException {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        int dataCrc = crc(data, 0, data.length);
+        ByteBuffer record = ByteBuffer.allocate(12 + keyBytes.length + data.length + 4);
+        record.putInt(PACK_RECORD_MAGIC).putInt(keyBytes.length).put(keyBytes)
+                .putInt(data.length).put(data).putInt(dataCrc);
+        long recordOffset;
+        synchronized (pack) {
+            recordOffset = pack.length();
+            pack.seek(recordOffset);
+            pack.write(record.array());
+        }
+        return new Entry(packId, recordOffset + 12 + keyBytes.length, data.length, dataCrc);
+    }
+
+    private static void writeIndexRecord(DataOutputStream out, byte op, String key, Entry entry) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        DataOutputStream payload = new DataOutputStream(bytes);
+        payload.writeByte(op);
+        payload.writeUTF(key);
+        if (op == OP_PUT) {
+            payload.writeInt(entry.packId);
+            payload.writeLong(entry.offset);
+            payload.writeInt(entry.length);
+            payload.writeInt(entry.crc);
+        }
+        byte[] record = bytes.toByteArray();
+        out.writeInt(record.length);
+        out.write(record);
+        out.writeInt(crc(record, 0, record.length));
+    }
+
+    private RandomAccessFile openPackFile(int packId) throws IOException {
+        RandomAccessFile pack = packFiles.get(packId);
+        if (pack == null) {
+            pack = new RandomAccessFile(packPath(packId).toFile(), "r");
+            packFiles.put(packId, pack);
+        }
+        return pack;
+    }
+
+    private RandomAccessFile openPackForWrite(int packId) throws IOException {
+        return new RandomAccessFile(packPath(packId).toFile(), "rw");
+    }
+
+    private Path packPath(int packId) {
+        return directory.resolve(String.format("%s%06d%s", PACK_FILE_PREFIX, packId, PACK_FILE_SUFFIX));
+    }
+
+    private TreeMap<Integer, Path> listPackFiles() throws IOException {
+        TreeMap<Integer, Path> packs = new TreeMap<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.forEach(path -> {
+                String name = path.getFileName().toString();
+                if (name.startsWith(PACK_FILE_PREFIX) && name.endsWith(PACK_FILE_SUFFIX)) {
+                    try {
+                        packs.put(Integer.parseInt(
+                                name.substring(PACK_FILE_PREFIX.length(), name.length() - PACK_FILE_SUFFIX.length())),
+                                path);
+                    } catch (NumberFormatException ignored) {
+                        // 非本缓存生成的文件
+                    }
+                }
+            });
+        }
+        return packs;
+    }
+
+    private void deleteUnreferencedPacks(TreeMap<Integer, Path> packs) throws IOException {
+        Set<Integer> referenced = new HashSet<>();
+        for (Entry entry : entries.values()) {
+            referenced.add(entry.packId);
+        }
+        Iterator<Map.Entry<Integer, Path>> iterator = packs.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Integer, Path> pack = iterator.next();
+            if (!referenced.contains(pack.getKey())) {
+                Files.deleteIfExists(pack.getValue());
+                iterator.remove();
+            }
+        }
+    }
+
+    private void deleteTemporaryFiles() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path path : (Iterable<Path>) files::iterator) {
+                if (path.getFileName().toString().endsWith(".tmp")) {
+                    Files.deleteIfExists(path);
+                }
+            }
+        }
+    }
+
+    private static int crc(byte[] data, int offset, int length) {
+        CRC32 crc32 = new CRC32();
+        crc32.update(data, offset, length);
+        return (int) crc32.getValue();
+    }
+
+    /**
+     * 索引项：数据所在的 pack 编号、数据起始偏移、长度以及 CRC。
+     */
+    private static final class Entry {
+        private final int packId;
+        private final long offset;
+        private final int length;
+        private final int crc;
+
+        private Entry(int packId, long offset, int length, int crc) {
+            this.packId = packId;
+            this.offset = offset;
+            this.length = length;
+            this.crc = crc;
+        }
+    }
+}
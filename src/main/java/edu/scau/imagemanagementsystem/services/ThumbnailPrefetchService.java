@@ -0,0 +1,227 @@
+package edu.scau.imagemanagementsystem.services;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.scau.imagemanagementsystem.model.ImageFileItem;
+import edu.scau.imagemanagementsystem.services.TaskSchedulerService.Priority;
+import edu.scau.imagemanagementsystem.services.TaskSchedulerService.WorkClass;
+import javafx.concurrent.Task;
+import javafx.scene.image.Image;
+
+/**
+ * 由视口驱动的缩略图加载调度。
+ * <p>
+ * 每当网格视口变化时，调用方传入当前可见的数据项和预取窗口中的数据项：可见项以最高优先级加载，
+ * 预取项以较低优先级加载；已经离开窗口且尚未开始执行的请求会被取消，
+ * 仍在排队的预取请求进入视口时会以更高优先级重新提交。
+ * <p>
+ * 可见项分两遍加载：第一遍只取缓存或内嵌缩略图作为预览，立即显示；如果预览不是最终质量，
+ * 第二遍在所有可见预览之后解码原图，并替换数据项中的缩略图。
+ * <p>
+ * 此类的所有方法都必须在 JavaFX 应用线程上调用。
+ */
+public class ThumbnailPrefetchService {
+    private static final Logger logger = LoggerFactory.getLogger(ThumbnailPrefetchService.class);
+
+    /**
+     * 默认在滚动方向上预取的行数，可通过系统属性 {@code ims.thumbnail.prefetchRows} 调整。
+     */
+    public static final int DEFAULT_PREFETCH_ROWS = Integer.getInteger("ims.thumbnail.prefetchRows", 4);
+
+    private final ImageLoadService imageLoadService;
+    private final TaskSchedulerService taskScheduler = TaskSchedulerService.getInstance();
+    private final double thumbnailWidth;
+    private final double thumbnailHeight;
+    private final ImageMemoryCache memoryCache = ImageMemoryCache.getInstance();
+    private final Map<ImageFileItem, Request> pendingRequests = new HashMap<>();
+    // 当前只显示粗略预览、仍需细化的数据项
+    private final Set<ImageFileItem> coarseItems = new HashSet<>();
+    private BiConsumer<ImageFileItem, Image> onThumbnailLoaded;
+    private int prefetchRows = DEFAULT_PREFETCH_ROWS;
+
+    /**
+     * 构造一个缩略图预取服务。
+     *
+     * @param imageLoadService 用于创建缩略图加载任务的服务
+     * @param thumbnailWidth   缩略图宽度
+     * @param thumbnailHeight  缩略图高度
+     */
+    public ThumbnailPrefetchService(ImageLoadService imageLoadService, double thumbnailWidth,
+            double thumbnailHeight) {
+        this.imageLoadService = imageLoadService;
+        this.thumbnailWidth = thumbnailWidth;
+        this.thumbnailHeight = thumbnailHeight;
+    }
+
+    /**
+     * 设置缩略图加载完成后的回调，回调在 FX 线程上执行。
+     *
+     * @param onThumbnailLoaded 回调，参数为数据项和加载得到的缩略图
+     */
+    public void setOnThumbnailLoaded(BiConsumer<ImageFileItem, Image> onThumbnailLoaded) {
+        this.onThumbnailLoaded = onThumbnailLoaded;
+    }
+
+    public int getPrefetchRows() {
+        return prefetchRows;
+    }
+
+    public void setPrefetchRows(int prefetchRows) {
+        this.prefetchRows = Math.max(0, prefetchRows);
+    }
+
+    /**
+     * 根据新的视口更新加载请求。
+     *
+     * @param visibleItems  视口内的数据项，按显示顺序
+     * @param prefetchItems 预取窗口中的数据项，越靠前越先加载
+     * @param generation    当前目录的任务代编号
+     */
+    public void updateWindow(List<ImageFileItem> visibleItems, List<ImageFileItem> prefetchItems,
+            long generation) {
+        Set<ImageFileItem> window = new HashSet<>(visibleItems);
+        window.addAll(prefetchItems);
+        // 先收集离开窗口的请求再取消：取消会同步触发 onCancelled，从 pendingRequests 中移除请求
+        List<Map.Entry<ImageFileItem, Request>> leaving = new ArrayList<>();
+        for (Map.Entry<ImageFileItem, Request> entry : pendingRequests.entrySet()) {
+            if (!window.contains(entry.getKey())) {
+                leaving.add(Map.entry(entry.getKey(), entry.getValue()));
+            }
+        }
+        int cancelled = 0;
+        for (Map.Entry<ImageFileItem, Request> entry : leaving) {
+            if (taskScheduler.cancelIfQueued(entry.getValue().task)) {
+                pendingRequests.remove(entry.getKey(), entry.getValue());
+                cancelled++;
+            }
+        }
+        if (cancelled > 0) {
+            logger.debug("Cancelled {} thumbnail requests that left the viewport.", cancelled);
+        }
+        for (ImageFileItem item : visibleItems) {
+            request(item, Priority.VISIBLE_THUMBNAIL, generation);
+        }
+        for (ImageFileItem item : prefetchItems) {
+            request(item, Priority.PREFETCH, generation);
+        }
+    }
+
+    /**
+     * 取消所有尚未完成的请求，例如切换目录时。
+     */
+    public void cancelAll() {
+        List<Request> requests = new ArrayList<>(pendingRequests.values());
+        pendingRequests.clear();
+        coarseItems.clear();
+        for (Request request : requests) {
+            request.task.cancel();
+        }
+    }
+
+    /**
+     * 丢弃一个数据项尚未完成的请求和预览状态，例如文件内容被修改后，旧的请求会得到过时的缩略图。
+     *
+     * @param item 数据项
+     */
+    public void invalidate(ImageFileItem item) {
+        Request request = pendingRequests.remove(item);
+        if (request != null) {
+            request.task.cancel();
+        }
+        coarseItems.remove(item);
+    }
+
+    private void request(ImageFileItem item, Priority priority, long generation) {
+        boolean coarse = coarseItems.contains(item);
+        if (item.getThumbnail() != null && !coarse) {
+            return;
+        }
+        // 可见项先取预览；已经显示预览的数据项直接进入细化
+        boolean preview = priority == Priority.VISIBLE_THUMBNAIL && !coarse;
+        Priority effectivePriority = priority == Priority.VISIBLE_THUMBNAIL && coarse
+                ? Priority.THUMBNAIL_REFINE
+                : priority;
+        Request existing = pendingRequests.get(item);
+        if (existing != null) {
+            // 仍在排队的低优先级请求进入了视口，取消后以更高优先级重新提交；已经开始解码的请求不打断
+            if (existing.priority.compareTo(effectivePriority) <= 0 || !taskScheduler.cancelIfQueued(existing.task)) {
+                return;
+            }
+            pendingRequests.remove(item);
+        }
+        if (preview) {
+            submitPreview(item, generation);
+        } else {
+            submitLoad(item, effectivePriority, generation);
+        }
+    }
+
+    private void submitPreview(ImageFileItem item, long generation) {
+        Task<Image> task = imageLoadService.loadThumbnailPreviewAsync(item.getFile(), thumbnailWidth,
+                thumbnailHeight);
+        Request request = track(item, task, Priority.VISIBLE_THUMBNAIL);
+        task.setOnSucceeded(event -> {
+            pendingRequests.remove(item, request);
+            Image preview = task.getValue();
+            // 最终缩略图总会放入内存缓存；缓存中没有说明预览只是粗略的，或者还没有预览
+            if (memoryCache.contains(ImageMemoryCache.thumbnailKey(item.getFile(), thumbnailWidth, thumbnailHeight))) {
+                coarseItems.remove(item);
+                deliver(item, preview);
+                return;
+            }
+            if (preview != null) {
+                coarseItems.add(item);
+                deliver(item, preview);
+            }
+            submitLoad(item, Priority.THUMBNAIL_REFINE, generation);
+        });
+        taskScheduler.submit(task, WorkClass.THUMBNAIL_DECODE, Priority.VISIBLE_THUMBNAIL, generation);
+    }
+
+    private void submitLoad(ImageFileItem item, Priority priority, long generation) {
+        Task<Image> task = imageLoadService.loadThumbnailAsync(item.getFile(), thumbnailWidth, thumbnailHeight);
+        Request request = track(item, task, priority);
+        task.setOnSucceeded(event -> {
+            pendingRequests.remove(item, request);
+            coarseItems.remove(item);
+            deliver(item, task.getValue());
+        });
+        taskScheduler.submit(task, WorkClass.THUMBNAIL_DECODE, priority, generation);
+    }
+
+    private Request track(ImageFileItem item, Task<Image> task, Priority priority) {
+        Request request = new Request(task, priority);
+        pendingRequests.put(item, request);
+        task.setOnFailed(event -> {
+            pendingRequests.remove(item, request);
+            logger.error("Failed to load thumbnail for {}", item.getName(), task.getException());
+        });
+        task.setOnCancelled(event -> pendingRequests.remove(item, request));
+        return request;
+    }
+
+    private void deliver(ImageFileItem item, Image thumbnail) {
+        if (thumbnail != null && onThumbnailLoaded != null) {
+            onThumbnailLoaded.accept(item, thumbnail);
+        }
+    }
+
+    private static final class Request {
+        private final Task<Image> task;
+        private final Priority priority;
+
+        private Request(Task<Image> task, Priority priority) {
+            this.task = task;
+            this.priority = priority;
+        }
+    }
+}
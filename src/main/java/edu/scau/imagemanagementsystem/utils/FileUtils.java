@@ -1,11 +1,16 @@
 package edu.scau.imagemanagementsystem.utils;
 
 import java.io.File;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.DecimalFormat;
 import java.util.Arrays;
 import java.util.List;
 
 public class FileUtils {
 
+    private static final String APPLICATION_DIRECTORY_NAME = "ImageManagementSystem";
+
     /**
      * 支持的图片文件扩展名列表。
      */
@@ -21,8 +26,17 @@ public class FileUtils {
         if (file == null || !file.isFile()) {
             return false;
         }
-        String extension = getFileExtension(file.getName());
-        return SUPPORTED_EXTENSIONS.contains(extension.toLowerCase());
+        return hasImageExtension(file.getName());
+    }
+
+    /**
+     * 仅根据文件名判断扩展名是否为支持的图片格式，不访问文件系统。
+     *
+     * @param fileName 文件名
+     * @return 如果扩展名是支持的图片格式则返回 true，否则返回 false
+     */
+    public static boolean hasImageExtension(String fileName) {
+        return SUPPORTED_EXTENSIONS.contains(getFileExtension(fileName).toLowerCase());
     }
 
     /**
@@ -102,4 +116,64 @@ public class FileUtils {
             counter++;
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * 获取当前用户的应用缓存目录，该目录不保证已经存在。
+     * Windows 下位于 {@code %LOCALAPPDATA%}，macOS 下位于 {@code ~/Library/Caches}，
+     * 其他系统遵循 {@code $XDG_CACHE_HOME}（默认为 {@code ~/.cache}）。
+     *
+     * @return 应用缓存目录的路径
+     */
+    public static Path getApplicationCacheDirectory() {
+        String os = System.getProperty("os.name", "").toLowerCase();
+        String home = System.getProperty("user.home");
+        String base;
+        if (os.contains("win")) {
+            String localAppData = System.getenv("LOCALAPPDATA");
+            base = localAppData != null ? localAppData : Paths.get(home, "AppData", "Local").toString();
+        } else if (os.contains("mac")) {
+            base = Paths.get(home, "Library", "Caches").toString();
+        } else {
+            String xdgCache = System.getenv("XDG_CACHE_HOME");
+            base = xdgCache != null && !xdgCache.isEmpty() ? xdgCache : Paths.get(home, ".cache").toString();
+        }
+        return Paths.get(base, APPLICATION_DIRECTORY_NAME);
+    }
+
+    /**
+     * 获取当前用户的应用数据目录，用于保存图片目录库等需要长期保留的数据，该目录不保证已经存在。
+     * Windows 下位于 {@code %APPDATA%}，macOS 下位于 {@code ~/Library/Application Support}，
+     * 其他系统遵循 {@code $XDG_DATA_HOME}（默认为 {@code ~/.local/share}）。
+     *
+     * @return 应用数据目录的路径
+     */
+    public static Path getApplicationDataDirectory() {
+        String os = System.getProperty("os.name", "").toLowerCase();
+        String home = System.getProperty("user.home");
+        String base;
+        if (os.contains("win")) {
+            String appData = System.getenv("APPDATA");
+            base = appData != null ? appData : Paths.get(home, "AppData", "Roaming").toString();
+        } else if (os.contains("mac")) {
+            base = Paths.get(home, "Library", "Application Support").toString();
+        } else {
+            String xdgData = System.getenv("XDG_DATA_HOME");
+            base = xdgData != null && !xdgData.isEmpty() ? xdgData : Paths.get(home, ".local", "share").toString();
+        }
+        return Paths.get(base, APPLICATION_DIRECTORY_NAME);
+    }
+
+    /**
+     * 把字节数格式化为便于阅读的大小，如 "2.4 MB"。
+     *
+     * @param size 字节数
+     * @return 格式化后的大小
+     */
+    public static String formatFileSize(long size) {
+        if (size <= 0)
+            return "0 B";
+        final String[] units = new String[] { "B", "KB", "MB", "GB", "TB" };
+        int digitGroups = (int) (Math.log10(size) / Math.log10(1024));
+        return new DecimalFormat("#,##0.#").format(size / Math.pow(1024, digitGroups)) + " " + units[digitGroups];
+    }
+}
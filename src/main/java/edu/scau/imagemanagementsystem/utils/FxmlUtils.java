@@ -7,11 +7,16 @@ import java.util.Objects;
 import java.util.Optional;
 import java.util.function.Consumer;
 
+import edu.scau.imagemanagementsystem.controllers.DuplicatesDialogController;
 import edu.scau.imagemanagementsystem.controllers.MetadataDialogController;
 import edu.scau.imagemanagementsystem.controllers.RenameDialogController;
+import edu.scau.imagemanagementsystem.controllers.SimilarImagesDialogController;
 import edu.scau.imagemanagementsystem.controllers.SlideshowController;
 import edu.scau.imagemanagementsystem.model.BatchRenameParams;
+import edu.scau.imagemanagementsystem.model.DuplicateGroup;
 import edu.scau.imagemanagementsystem.model.ImageFileItem;
+import edu.scau.imagemanagementsystem.model.SimilarImageGroup;
+import edu.scau.imagemanagementsystem.services.FileOperationService;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Parent;
 import javafx.scene.Scene;
@@ -110,23 +115,99 @@ public class FxmlUtils {
      * @param owner     父窗口，可以为 null
      */
     public static void openMetadataDialog(File imageFile, Window owner) {
+        openMetadataDialog(List.of(imageFile), owner);
+    }
+
+    /**
+     * 打开元数据查看窗口。指定多张图片时并排比较它们的元数据。
+     *
+     * @param imageFiles 要查看元数据的图片文件
+     * @param owner      父窗口，可以为 null
+     */
+    public static void openMetadataDialog(List<File> imageFiles, Window owner) {
         try {
             FXMLLoader loader = new FXMLLoader(Objects.requireNonNull(
                     FxmlUtils.class.getResource("/edu/scau/imagemanagementsystem/fxml/MetadataDialog.fxml")));
             Parent root = loader.load();
             MetadataDialogController controller = loader.getController();
-            controller.initializeData(imageFile);
+            controller.initializeData(imageFiles);
             Stage dialog = new Stage();
-            dialog.setTitle("查看元数据 - " + imageFile.getName());
+            dialog.setTitle(imageFiles.size() == 1 ? "查看元数据 - " + imageFiles.get(0).getName()
+                    : "比较元数据 - " + imageFiles.size() + " 张图片");
             dialog.initModality(Modality.APPLICATION_MODAL);
             if (owner != null) {
                 dialog.initOwner(owner);
             }
             dialog.setScene(new Scene(root));
+            // 读取在后台进行，窗口关闭时取消
+            dialog.setOnHidden(event -> controller.shutdown());
             dialog.showAndWait();
         } catch (IOException e) {
             e.printStackTrace();
             UiUtils.showErrorDialog("错误", "无法打开元数据窗口", e.getMessage());
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * 打开重复图片窗口。
+     *
+     * @param groups               重复文件的分组
+     * @param fileOperationService 删除文件时使用的服务
+     * @param owner                父窗口，可以为 null
+     */
+    public static void openDuplicatesDialog(List<DuplicateGroup> groups, FileOperationService fileOperationService,
+            Window owner) {
+        try {
+            FXMLLoader loader = new FXMLLoader(Objects.requireNonNull(
+                    FxmlUtils.class.getResource("/edu/scau/imagemanagementsystem/fxml/DuplicatesDialog.fxml")));
+            Parent root = loader.load();
+            DuplicatesDialogController controller = loader.getController();
+            controller.initializeData(groups, fileOperationService);
+            Stage dialog = new Stage();
+            dialog.setTitle("重复的图片");
+            dialog.initModality(Modality.WINDOW_MODAL);
+            if (owner != null) {
+                dialog.initOwner(owner);
+            }
+            dialog.setScene(new Scene(root));
+            dialog.show();
+        } catch (IOException e) {
+            e.printStackTrace();
+            UiUtils.showErrorDialog("错误", "无法打开重复图片窗口", e.getMessage());
+        }
+    }
+
+    /**
+     * 打开相似图片窗口。
+     *
+     * @param title                窗口标题
+     * @param groups               相似图片的分组
+     * @param fileOperationService 删除文件时使用的服务
+     * @param thumbnailWidth       网格中的缩略图宽度
+     * @param thumbnailHeight      网格中的缩略图高度
+     * @param owner                父窗口，可以为 null
+     */
+    public static void openSimilarImagesDialog(String title, List<SimilarImageGroup> groups,
+            FileOperationService fileOperationService, double thumbnailWidth, double thumbnailHeight, Window owner) {
+        try {
+            FXMLLoader loader = new FXMLLoader(Objects.requireNonNull(
+                    FxmlUtils.class.getResource("/edu/scau/imagemanagementsystem/fxml/SimilarImagesDialog.fxml")));
+            Parent root = loader.load();
+            SimilarImagesDialogController controller = loader.getController();
+            controller.initializeData(groups, fileOperationService, thumbnailWidth, thumbnailHeight);
+            Stage dialog = new Stage();
+            dialog.setTitle(title);
+            dialog.initModality(Modality.WINDOW_MODAL);
+            if (owner != null) {
+                dialog.initOwner(owner);
+            }
+            dialog.setScene(new Scene(root));
+            // 缩略图在后台加载，窗口关闭时取消
+            dialog.setOnHidden(event -> controller.shutdown());
+            dialog.show();
+        } catch (IOException e) {
+            e.printStackTrace();
+            UiUtils.showErrorDialog("错误", "无法打开相似图片窗口", e.getMessage());
+        }
+    }
+}
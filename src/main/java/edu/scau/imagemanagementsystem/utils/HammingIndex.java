@@ -0,0 +1,128 @@
+package edu.scau.imagemanagementsystem.utils;
+
+import java.util.function.IntConsumer;
+
+/**
+ * 64 位哈希的多索引哈希 (multi-index hashing) 表，用于查找汉明距离不超过给定半径的哈希。
+ * <p>
+ * 哈希被切分为 {@value #CHUNKS} 段 16 位，每一段建立一张按段值分桶的表。根据抽屉原理，两个距离不超过
+ * {@code r} 的哈希至少有一段的距离不超过为该段分配的小半径（各段半径加一之和大于 {@code r}）。
+ * 查询时只需在每段中枚举与查询段值相近的少数桶，再对桶中的候选计算完整距离，
+ * 而不必与所有哈希比较。每个结果只报告一次：只在第一个能找到它的段中报告。
+ * <p>
+ * 表在构造时一次建好，之后只读，可以在多个线程上同时查询。
+ */
+public final class HammingIndex {
+    private static final int CHUNKS = 4;
+    private static final int CHUNK_BITS = 16;
+    private static final int BUCKETS = 1 << CHUNK_BITS;
+
+    private final long[] hashes;
+    // 每段一张表：ids[c] 中的编号按段值排列，段值 v 的编号位于 [offsets[c][v], offsets[c][v + 1])
+    private final int[][] offsets = new int[CHUNKS][];
+    private final int[][] ids = new int[CHUNKS][];
+
+    /**
+     * 以给定的哈希建立索引，哈希的编号就是它在数组中的下标。
+     *
+     * @param hashes 哈希，构造后不应再修改
+     */
+    public HammingIndex(long[] hashes) {
+        this.hashes = hashes;
+        for (int c = 0; c < CHUNKS; c++) {
+            // 计数排序：先统计每个桶的大小，再把编号放到各桶的位置
+            int[] starts = new int[BUCKETS + 1];
+            for (long hash : hashes) {
+                starts[chunk(hash, c) + 1]++;
+            }
+            for (int v = 0; v < BUCKETS; v++) {
+                starts[v + 1] += starts[v];
+            }
+            int[] next = starts.clone();
+            int[] sorted = new int[hashes.length];
+            for (int i = 0; i < hashes.length; i++) {
+                sorted[next[chunk(hashes[i], c)]++] = i;
+            }
+            offsets[c] = starts;
+            ids[c] = sorted;
+        }
+    }
+
+    /**
+     * @return 索引中的哈希数量
+     */
+    public int size() {
+        return hashes.length;
+    }
+
+    /**
+     * @param id 哈希的编号
+     * @return 编号对应的哈希
+     */
+    public long get(int id) {
+        return hashes[id];
+    }
+
+    /**
+     * 查找与给定哈希距离不超过 {@code maxDistance} 的所有哈希，每个编号只报告一次，顺序不确定。
+     *
+     * @param query       要查找的哈希
+     * @param maxDistance 最大汉明距离
+     * @param consumer    接收找到的编号
+     */
+    public void search(long query, int maxDistance, IntConsumer consumer) {
+        int[] radii = chunkRadii(maxDistance);
+        for (int c = 0; c < CHUNKS; c++) {
+            if (radii[c] >= 0) {
+                int queryChunk = chunk(query, c);
+                probe(query, queryChunk, c, radii, maxDistance, radii[c], 0, consumer);
+            }
+        }
+    }
+
+    /**
+     * 枚举与 {@code value} 的距离不超过 {@code remaining} 的段值（只翻转 {@code lowestBit} 及以上的位），
+     * 检查每个桶中的候选。
+     */
+    private void probe(long query, int value, int c, int[] radii, int maxDistance, int remaining, int lowestBit,
+            IntConsumer consumer) {
+        int[] chunkIds = ids[c];
+        for (int p = offsets[c][value], end = offsets[c][value + 1]; p < end; p++) {
+            int id = chunkIds[p];
+            long hash = hashes[id];
+            if (PerceptualHash.distance(hash, query) <= maxDistance && !foundInEarlierChunk(hash, query, c, radii)) {
+                consumer.accept(id);
+            }
+        }
+        if (remaining > 0) {
+            for (int bit = lowestBit; bit < CHUNK_BITS; bit++) {
+                probe(query, value ^ (1 << bit), c, radii, maxDistance, remaining - 1, bit + 1, consumer);
+            }
+        }
+    }
+
+    private static boolean foundInEarlierChunk(long hash, long query, int c, int[] radii) {
+        for (int earlier = 0; earlier < c; earlier++) {
+            if (Integer.bitCount(chunk(hash, earlier) ^ chunk(query, earlier)) <= radii[earlier]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 为各段分配查询半径，使各段半径加一之和等于 {@code maxDistance + 1}。半径为 -1 的段不需要查询。
+     */
+    private static int[] chunkRadii(int maxDistance) {
+        int units = maxDistance + 1;
+        int[] radii = new int[CHUNKS];
+        for (int c = 0; c < CHUNKS; c++) {
+            radii[c] = units / CHUNKS + (c < units % CHUNKS ? 1 : 0) - 1;
+        }
+        return radii;
+    }
+
+    private static int chunk(long hash, int c) {
+        return (int) (hash >>> (c * CHUNK_BITS)) & (BUCKETS - 1);
+    }
+}
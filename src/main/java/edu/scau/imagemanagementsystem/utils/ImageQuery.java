@@ -0,0 +1,401 @@
+package edu.scau.imagemanagementsystem.utils;
+
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 搜索框中输入的图片查询，例如 {@code iso>=1600 camera:"X-T4" date:2024-05 size>10MB ext:png}。
+ * <p>
+ * 查询由空白分隔的条件组成，条件之间为"与"关系。形如 {@code 字段 运算符 值} 的词是字段条件，运算符为
+ * {@code : = > >= < <=}，值含空白时用双引号括起；其余的词是文件名条件，匹配包含该词的文件名。
+ * 条件前加 {@code -} 表示取反。查询中没有字段条件时整个字符串作为一个文件名条件，与普通的文件名搜索一致。
+ * <p>
+ * 查询只解析一次：数值与日期在解析时换算成闭区间，字符串转换为规范化形式，求值时不再解析文本。
+ * 无法识别的条件不参与过滤，由 {@link #getErrors()} 返回。
+ */
+public final class ImageQuery {
+    /**
+     * 可以查询的字段。
+     */
+    public enum Field {
+        NAME, EXTENSION, CAMERA, LENS, ISO, DATE, MODIFIED, SIZE, WIDTH, HEIGHT, APERTURE, FOCAL_LENGTH;
+
+        /**
+         * @return 字段的值是否来自图片的元数据（而不是文件名或文件属性）
+         */
+        public boolean isMetadata() {
+            return this != NAME && this != EXTENSION && this != MODIFIED && this != SIZE;
+        }
+    }
+
+    private static final Map<String, Field> FIELD_NAMES = new HashMap<>();
+
+    static {
+        FIELD_NAMES.put("name", Field.NAME);
+        FIELD_NAMES.put("ext", Field.EXTENSION);
+        FIELD_NAMES.put("type", Field.EXTENSION);
+        FIELD_NAMES.put("camera", Field.CAMERA);
+        FIELD_NAMES.put("cam", Field.CAMERA);
+        FIELD_NAMES.put("lens", Field.LENS);
+        FIELD_NAMES.put("iso", Field.ISO);
+        FIELD_NAMES.put("date", Field.DATE);
+        FIELD_NAMES.put("taken", Field.DATE);
+        FIELD_NAMES.put("modified", Field.MODIFIED);
+        FIELD_NAMES.put("size", Field.SIZE);
+        FIELD_NAMES.put("width", Field.WIDTH);
+        FIELD_NAMES.put("w", Field.WIDTH);
+        FIELD_NAMES.put("height", Field.HEIGHT);
+        FIELD_NAMES.put("h", Field.HEIGHT);
+        FIELD_NAMES.put("f", Field.APERTURE);
+        FIELD_NAMES.put("aperture", Field.APERTURE);
+        FIELD_NAMES.put("focal", Field.FOCAL_LENGTH);
+    }
+
+    private static final Pattern FIELD_PREFIX = Pattern.compile("([A-Za-z]+)(>=|<=|[:=<>])");
+    private static final Pattern SIZE_VALUE = Pattern.compile("(\\d+(?:\\.\\d+)?)\\s*([kmgt]?)i?b?",
+            Pattern.CASE_INSENSITIVE);
+    private static final Pattern DATE_VALUE = Pattern.compile("(\\d{4})(?:[-/.](\\d{1,2})(?:[-/.](\\d{1,2}))?)?");
+
+    private final List<Clause> clauses;
+    private final List<String> errors;
+
+    private ImageQuery(List<Clause> clauses, List<String> errors) {
+        this.clauses = Collections.unmodifiableList(clauses);
+        this.errors = Collections.unmodifiableList(errors);
+    }
+
+    /**
+     * 解析查询字符串。
+     *
+     * @param text 查询字符串，可以为 null
+     * @return 解析后的查询
+     */
+    public static ImageQuery parse(String text) {
+        List<Clause> clauses = new ArrayList<>();
+        List<String> errors = new ArrayList<>();
+        if (text == null || text.isBlank()) {
+            return new ImageQuery(clauses, errors);
+        }
+        String trimmed = text.strip();
+        boolean hasFieldClause = false;
+        int position = 0;
+        while (position < trimmed.length()) {
+            if (Character.isWhitespace(trimmed.charAt(position))) {
+                position++;
+                continue;
+            }
+            int start = position;
+            boolean negated = false;
+            if (trimmed.charAt(position) == '-' && position + 1 < trimmed.length()
+                    && !Character.isWhitespace(trimmed.charAt(position + 1))) {
+                negated = true;
+                position++;
+            }
+            Matcher prefix = FIELD_PREFIX.matcher(trimmed).region(position, trimmed.length());
+            Field field = prefix.lookingAt() ? FIELD_NAMES.get(prefix.group(1).toLowerCase(Locale.ROOT)) : null;
+            if (field != null) {
+                position = prefix.end();
+            }
+            int[] end = new int[1];
+            String value = readValue(trimmed, position, end);
+            position = end[0];
+            String token = trimmed.substring(start, position);
+            if (field == null) {
+                if (!value.isEmpty()) {
+                    clauses.add(Clause.name(value, negated));
+                }
+                continue;
+            }
+            hasFieldClause = true;
+            try {
+                clauses.add(Clause.parse(field, prefix.group(2), value, negated));
+            } catch (IllegalArgumentException e) {
+                errors.add(token);
+            }
+        }
+        if (!hasFieldClause && clauses.size() > 1) {
+            // 不含字段条件时按整个字符串匹配文件名
+            clauses.clear();
+            clauses.add(Clause.name(trimmed, false));
+        }
+        return new ImageQuery(clauses, errors);
+    }
+
+    /**
+     * 读取一个值：以双引号开始时读到下一个双引号，否则读到空白。
+     */
+    private static String readValue(String text, int position, int[] end) {
+        if (position < text.length() && text.charAt(position) == '"') {
+            int close = text.indexOf('"', position + 1);
+            if (close < 0) {
+                end[0] = text.length();
+                return text.substring(position + 1);
+            }
+            end[0] = close + 1;
+            return text.substring(position + 1, close);
+        }
+        int stop = position;
+        while (stop < text.length() && !Character.isWhitespace(text.charAt(stop))) {
+            stop++;
+        }
+        end[0] = stop;
+        return text.substring(position, stop);
+    }
+
+    /**
+     * @return 查询的条件，按输入顺序
+     */
+    public List<Clause> getClauses() {
+        return clauses;
+    }
+
+    /**
+     * @return 无法识别的条件的原文
+     */
+    public List<String> getErrors() {
+        return errors;
+    }
+
+    /**
+     * @return 查询是否没有任何有效条件
+     */
+    public boolean isEmpty() {
+        return clauses.isEmpty();
+    }
+
+    /**
+     * @return 查询是否用到图片的元数据；元数据更新后需要重新过滤
+     */
+    public boolean usesMetadata() {
+        for (Clause clause : clauses) {
+            if (clause.getField().isMetadata()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return 未取反的文件名条件中最长的一个，用于在文件系统中递归搜索；没有时返回空字符串
+     */
+    public String getLongestNameTerm() {
+        String longest = "";
+        for (Clause clause : clauses) {
+            if (clause.getField() == Field.NAME && !clause.isNegated()
+                    && clause.getText().length() > longest.length()) {
+                longest = clause.getText();
+            }
+        }
+        return longest;
+    }
+
+    /**
+     * 一个条件。字符串字段的值为 {@link #getText()}；整数字段（包括以毫秒表示的时间）的取值范围为
+     * [{@link #getMin()}, {@link #getMax()}]，浮点数字段的取值范围为
+     * [{@link #getFloatMin()}, {@link #getFloatMax()}]。
+     */
+    public static final class Clause {
+        private final Field field;
+        private final boolean negated;
+        private final String text;
+        private final boolean exact;
+        private final long min;
+        private final long max;
+        private final float floatMin;
+        private final float floatMax;
+
+        private Clause(Field field, boolean negated, String text, boolean exact, long min, long max,
+                float floatMin, float floatMax) {
+            this.field = field;
+            this.negated = negated;
+            this.text = text;
+            this.exact = exact;
+            this.min = min;
+            this.max = max;
+            this.floatMin = floatMin;
+            this.floatMax = floatMax;
+        }
+
+        private static Clause name(String text, boolean negated) {
+            return new Clause(Field.NAME, negated, text, false, 0, 0, 0, 0);
+        }
+
+        private static Clause parse(Field field, String operator, String value, boolean negated) {
+            if (value.isEmpty()) {
+                throw new IllegalArgumentException("Missing value");
+            }
+            switch (field) {
+                case NAME:
+                case EXTENSION:
+                case CAMERA:
+                case LENS: {
+                    if (!operator.equals(":") && !operator.equals("=")) {
+                        throw new IllegalArgumentException("Unsupported operator " + operator);
+                    }
+                    String text = field == Field.NAME ? value : NameIndex.normalize(value);
+                    if (field == Field.EXTENSION && text.startsWith(".")) {
+                        text = text.substring(1);
+                    }
+                    boolean exact = field == Field.EXTENSION || operator.equals("=");
+                    return new Clause(field, negated, text, exact, 0, 0, 0, 0);
+                }
+                case DATE:
+                case MODIFIED: {
+                    long[] interval = parseDate(value);
+                    long[] range = range(operator, interval[0], interval[1] - 1);
+                    return new Clause(field, negated, value, false, range[0], range[1], 0, 0);
+                }
+                case APERTURE:
+                case FOCAL_LENGTH: {
+                    float number = Float.parseFloat(stripSuffix(value, field == Field.APERTURE ? "f/" : "mm"));
+                    float floatMin = -Float.MAX_VALUE;
+                    float floatMax = Float.MAX_VALUE;
+                    switch (operator) {
+                        case ">":
+                            floatMin = Math.nextUp(number);
+                            break;
+                        case ">=":
+                            floatMin = number;
+                            break;
+                        case "<":
+                            floatMax = Math.nextDown(number);
+                            break;
+                        case "<=":
+                            floatMax = number;
+                            break;
+                        default:
+                            floatMin = number;
+                            floatMax = number;
+                            break;
+                    }
+                    return new Clause(field, negated, value, false, 0, 0, floatMin, floatMax);
+                }
+                default: {
+                    long number = field == Field.SIZE ? parseSize(value) : Long.parseLong(value);
+                    long[] range = range(operator, number, number);
+                    return new Clause(field, negated, value, false, range[0], range[1], 0, 0);
+                }
+            }
+        }
+
+        /**
+         * 把运算符与值所表示的区间 [low, high] 换算成满足条件的闭区间。
+         */
+        private static long[] range(String operator, long low, long high) {
+            switch (operator) {
+                case ">":
+                    return new long[] { high + 1, Long.MAX_VALUE };
+                case ">=":
+                    return new long[] { low, Long.MAX_VALUE };
+                case "<":
+                    return new long[] { Long.MIN_VALUE, low - 1 };
+                case "<=":
+                    return new long[] { Long.MIN_VALUE, high };
+                default:
+                    return new long[] { low, high };
+            }
+        }
+
+        /**
+         * 解析形如 10MB、1.5G、2048 的大小，单位按 1024 进位，没有单位时为字节。
+         */
+        private static long parseSize(String value) {
+            Matcher matcher = SIZE_VALUE.matcher(value);
+            if (!matcher.matches()) {
+                throw new IllegalArgumentException("Invalid size " + value);
+            }
+            double number = Double.parseDouble(matcher.group(1));
+            String unit = matcher.group(2).toLowerCase(Locale.ROOT);
+            int exponent = unit.isEmpty() ? 0 : "kmgt".indexOf(unit) + 1;
+            return Math.round(number * (1L << (10 * exponent)));
+        }
+
+        /**
+         * 解析形如 2024、2024-05、2024-05-17 的日期，返回本地时区中该年、月或日的起止时刻 [开始, 结束)。
+         */
+        private static long[] parseDate(String value) {
+            Matcher matcher = DATE_VALUE.matcher(value);
+            if (!matcher.matches()) {
+                throw new IllegalArgumentException("Invalid date " + value);
+            }
+            try {
+                int year = Integer.parseInt(matcher.group(1));
+                LocalDate start;
+                LocalDate end;
+                if (matcher.group(2) == null) {
+                    start = LocalDate.of(year, 1, 1);
+                    end = start.plusYears(1);
+                } else if (matcher.group(3) == null) {
+                    start = LocalDate.of(year, Integer.parseInt(matcher.group(2)), 1);
+                    end = start.plusMonths(1);
+                } else {
+                    start = LocalDate.of(year, Integer.parseInt(matcher.group(2)), Integer.parseInt(matcher.group(3)));
+                    end = start.plusDays(1);
+                }
+                ZoneId zone = ZoneId.systemDefault();
+                return new long[] { start.atStartOfDay(zone).toInstant().toEpochMilli(),
+                        end.atStartOfDay(zone).toInstant().toEpochMilli() };
+            } catch (DateTimeException e) {
+                throw new IllegalArgumentException("Invalid date " + value, e);
+            }
+        }
+
+        private static String stripSuffix(String value, String affix) {
+            String lower = value.toLowerCase(Locale.ROOT);
+            if (lower.startsWith(affix)) {
+                return value.substring(affix.length());
+            }
+            if (lower.endsWith(affix)) {
+                return value.substring(0, value.length() - affix.length());
+            }
+            return value;
+        }
+
+        public Field getField() {
+            return field;
+        }
+
+        public boolean isNegated() {
+            return negated;
+        }
+
+        /**
+         * @return 字符串字段的值；除文件名外已经过 {@link NameIndex#normalize(String)} 规范化
+         */
+        public String getText() {
+            return text;
+        }
+
+        /**
+         * @return 字符串字段是否要求完全相同（否则为包含）
+         */
+        public boolean isExact() {
+            return exact;
+        }
+
+        public long getMin() {
+            return min;
+        }
+
+        public long getMax() {
+            return max;
+        }
+
+        public float getFloatMin() {
+            return floatMin;
+        }
+
+        public float getFloatMax() {
+            return floatMax;
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package edu.scau.imagemanagementsystem.utils;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 文件名的三字符组（trigram）索引，用于在大量数据项中按子串过滤。
+ * <p>
+ * 每个数据项分配一个整数编号，每个三字符组对应一个有序的编号数组。长度不小于 3 的查询先取出查询中
+ * 所有三字符组的编号数组求交集得到候选项，只对候选项验证完整的子串匹配；更短的查询直接扫描预先规范化的名称。
+ * 名称与查询都经过 {@link #normalize(String)} 规范化，因此匹配不区分大小写和全角半角。
+ * <p>
+ * 所有方法都在实例上同步：数据项在 FX 线程上增删，查询可以在后台线程上进行。
+ *
+ * @param <T> 数据项类型
+ */
+public class NameIndex<T> {
+    private static final int GRAM_LENGTH = 3;
+
+    // 编号到数据项与规范化名称的映射，空闲编号处为 null
+    private final List<T> items = new ArrayList<>();
+    private final List<String> normalizedNames = new ArrayList<>();
+    private final Map<T, Integer> ids = new HashMap<>();
+    private final Map<Long, Posting> postings = new HashMap<>();
+    // 被删除的数据项留下的编号，添加时优先复用
+    private int[] freeIds = new int[16];
+    private int freeCount;
+
+    /**
+     * 规范化名称：兼容等价分解后组合 (NFKC)，再转为小写。
+     *
+     * @param name 名称
+     * @return 规范化后的名称
+     */
+    public static String normalize(String name) {
+        return Normalizer.normalize(name, Normalizer.Form.NFKC).toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * 添加一个数据项。数据项已经存在时先移除旧的名称，因此也用于数据项改名。
+     *
+     * @param item 数据项
+     * @param name 数据项的名称
+     */
+    public synchronized void add(T item, String name) {
+        remove(item);
+        String normalized = normalize(name);
+        int id;
+        if (freeCount > 0) {
+            id = freeIds[--freeCount];
+            items.set(id, item);
+            normalizedNames.set(id, normalized);
+        } else {
+            id = items.size();
+            items.add(item);
+            normalizedNames.add(normalized);
+        }
+        ids.put(item, id);
+        for (int i = 0; i + GRAM_LENGTH <= normalized.length(); i++) {
+            postings.computeIfAbsent(gram(normalized, i), key -> new Posting()).add(id);
+        }
+    }
+
+    /**
+     * 移除一个数据项。
+     *
+     * @param item 数据项
+     * @return 如果数据项在索引中则返回 true
+     */
+    public synchronized boolean remove(T item) {
+        Integer id = ids.remove(item);
+        if (id == null) {
+            return false;
+        }
+        String normalized = normalizedNames.get(id);
+        for (int i = 0; i + GRAM_LENGTH <= normalized.length(); i++) {
+            Long key = gram(normalized, i);
+            Posting posting = postings.get(key);
+            if (posting != null && posting.remove(id) && posting.size == 0) {
+                postings.remove(key);
+            }
+        }
+        items.set(id, null);
+        normalizedNames.set(id, null);
+        if (freeCount == freeIds.length) {
+            freeIds = Arrays.copyOf(freeIds, freeCount * 2);
+        }
+        freeIds[freeCount++] = id;
+        return true;
+    }
+
+    public synchronized void clear() {
+        items.clear();
+        normalizedNames.clear();
+        ids.clear();
+        postings.clear();
+        freeCount = 0;
+    }
+
+    public synchronized int size() {
+        return ids.size();
+    }
+
+    /**
+     * 查找名称包含查询字符串的数据项。
+     *
+     * @param query 查询字符串，为 null 或空时返回所有数据项
+     * @return 匹配的数据项，按编号顺序
+     */
+    public synchronized List<T> search(String query) {
+        String needle = query == null ? "" : normalize(query);
+        List<T> result = new ArrayList<>();
+        if (needle.length() < GRAM_LENGTH) {
+            for (int id = 0; id < items.size(); id++) {
+                String name = normalizedNames.get(id);
+                if (name != null && (needle.isEmpty() || name.contains(needle))) {
+                    result.add(items.get(id));
+                }
+            }
+            return result;
+        }
+
+        // 从最短的编号数组开始求交集，候选集合只会越来越小
+        List<Posting> grams = new ArrayList<>();
+        for (int i = 0; i + GRAM_LENGTH <= needle.length(); i++) {
+            Posting posting = postings.get(gram(needle, i));
+            if (posting == null) {
+                return result;
+            }
+            grams.add(posting);
+        }
+        grams.sort((a, b) -> Integer.compare(a.size, b.size));
+        Posting smallest = grams.get(0);
+        int[] candidates = Arrays.copyOf(smallest.ids, smallest.size);
+        int candidateCount = candidates.length;
+        for (int g = 1; g < grams.size() && candidateCount > 0; g++) {
+            Posting posting = grams.get(g);
+            if (posting == smallest) {
+                continue;
+            }
+            int kept = 0;
+            for (int c = 0; c < candidateCount; c++) {
+                if (posting.contains(candidates[c])) {
+                    candidates[kept++] = candidates[c];
+                }
+            }
+            candidateCount = kept;
+        }
+        // 三字符组都出现不代表它们相邻，候选项需要验证完整的子串
+        for (int c = 0; c < candidateCount; c++) {
+            int id = candidates[c];
+            if (normalizedNames.get(id).contains(needle)) {
+                result.add(items.get(id));
+            }
+        }
+        return result;
+    }
+
+    private static long gram(String text, int index) {
+        return ((long) text.charAt(index) << 32) | ((long) text.charAt(index + 1) << 16) | text.charAt(index + 2);
+    }
+
+    /**
+     * 一个三字符组出现在哪些数据项中：升序排列的编号数组。
+     */
+    private static class Posting {
+        private int[] ids = new int[4];
+        private int size;
+
+        void add(int id) {
+            int index = Arrays.binarySearch(ids, 0, size, id);
+            if (index >= 0) {
+                return; // 同一个三字符组在名称中出现多次
+            }
+            index = -index - 1;
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            System.arraycopy(ids, index, ids, index + 1, size - index);
+            ids[index] = id;
+            size++;
+        }
+
+        boolean remove(int id) {
+            int index = Arrays.binarySearch(ids, 0, size, id);
+            if (index < 0) {
+                return false;
+            }
+            System.arraycopy(ids, index + 1, ids, index, size - index - 1);
+            size--;
+            return true;
+        }
+
+        boolean contains(int id) {
+            return Arrays.binarySearch(ids, 0, size, id) >= 0;
+        }
+    }
+}
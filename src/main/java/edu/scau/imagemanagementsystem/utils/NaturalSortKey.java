@@ -0,0 +1,164 @@
+package edu.scau.imagemanagementsystem.utils;
+
+import java.text.CollationKey;
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 文件名的自然排序键：名称被拆分为文字段、数字段和单个的符号（如 "."、"_"、空格），文字段与符号按当前语言的
+ * 排序规则比较（不区分大小写），数字段按数值比较，因此 IMG_2 排在 IMG_10 之前。
+ * <p>
+ * 符号单独成段，使 photo.jpg 与 photo10.jpg 在 "photo" 之后比较的是 "." 与 10；与逐字符比较一样，
+ * 排序规则中排在数字之前的符号也排在数字段之前，因此 photo.jpg 排在 photo2.jpg 与 photo10.jpg 之前。
+ * <p>
+ * 排序键由 {@link #forNames(List)} 为一批名称一次性计算：一批名称中不同的文字段通常很少（如 "IMG_"、".jpg"），
+ * 只为这些文字段计算一次 {@link CollationKey} 并排出名次，每个排序键因此只是一个 long 数组，
+ * 比较时不再转换大小写、解析数字或调用排序规则。名次只在同一批内有意义，不同批的排序键不能互相比较。
+ */
+public final class NaturalSortKey implements Comparable<NaturalSortKey> {
+    // 段的类别放在高位：排序规则中排在数字之前的文字段（通常是符号）、数字段、其余文字段
+    private static final long BEFORE_NUMBER_TAG = 0;
+    private static final long NUMBER_TAG = 1L << 60;
+    private static final long AFTER_NUMBER_TAG = 2L << 60;
+    // 不超过 18 位的数字小于 2^60，可以直接放进一个 long 中比较，更长的数字段按文字处理
+    private static final int MAX_NUMERIC_DIGITS = 18;
+    // 拆分名称时的字符类别
+    private static final int DIGITS = 0;
+    private static final int WORD = 1;
+    private static final int SYMBOL = 2;
+
+    private final String name;
+    private final long[] segments;
+    private final int leadingZeros; // 数值相同的数字段中，前导零较少的排在前面
+
+    private NaturalSortKey(String name, long[] segments, int leadingZeros) {
+        this.name = name;
+        this.segments = segments;
+        this.leadingZeros = leadingZeros;
+    }
+
+    /**
+     * 为一批名称计算排序键。
+     *
+     * @param names 名称
+     * @return 与名称一一对应的排序键
+     */
+    public static NaturalSortKey[] forNames(List<String> names) {
+        // 1. 拆分名称，收集不同的文字段
+        List<List<String>> splitNames = new ArrayList<>(names.size());
+        // 文字段的编码：类别与名次
+        Map<String, Long> textCodes = new HashMap<>();
+        for (String name : names) {
+            List<String> parts = split(name);
+            for (String part : parts) {
+                if (!isNumeric(part)) {
+                    textCodes.put(part, 0L);
+                }
+            }
+            splitNames.add(parts);
+        }
+
+        // 2. 按排序规则为文字段排出名次，排序规则认为相同的文字段名次相同；
+        // 同时按它们与数字 "0" 的先后关系确定排在数字段之前还是之后
+        Collator collator = Collator.getInstance();
+        collator.setStrength(Collator.SECONDARY);
+        CollationKey zero = collator.getCollationKey("0");
+        CollationKey[] keys = new CollationKey[textCodes.size()];
+        int next = 0;
+        for (String text : textCodes.keySet()) {
+            keys[next++] = collator.getCollationKey(text);
+        }
+        Arrays.sort(keys);
+        long rank = 0;
+        for (int i = 0; i < keys.length; i++) {
+            if (i > 0 && keys[i].compareTo(keys[i - 1]) != 0) {
+                rank++;
+            }
+            long tag = keys[i].compareTo(zero) < 0 ? BEFORE_NUMBER_TAG : AFTER_NUMBER_TAG;
+            textCodes.put(keys[i].getSourceString(), tag | rank);
+        }
+
+        // 3. 组合成排序键
+        NaturalSortKey[] result = new NaturalSortKey[names.size()];
+        for (int n = 0; n < result.length; n++) {
+            List<String> parts = splitNames.get(n);
+            long[] segments = new long[parts.size()];
+            int leadingZeros = 0;
+            for (int i = 0; i < segments.length; i++) {
+                String part = parts.get(i);
+                if (isNumeric(part)) {
+                    int firstSignificant = 0;
+                    while (firstSignificant < part.length() - 1 && part.charAt(firstSignificant) == '0') {
+                        firstSignificant++;
+                    }
+                    leadingZeros += firstSignificant;
+                    segments[i] = NUMBER_TAG | Long.parseLong(part, firstSignificant, part.length(), 10);
+                } else {
+                    segments[i] = textCodes.get(part);
+                }
+            }
+            result[n] = new NaturalSortKey(names.get(n), segments, leadingZeros);
+        }
+        return result;
+    }
+
+    /**
+     * 把名称拆分为连续的数字、连续的文字（字母、汉字等）以及单个的符号。
+     */
+    private static List<String> split(String name) {
+        List<String> parts = new ArrayList<>(6);
+        int length = name.length();
+        int start = 0;
+        while (start < length) {
+            int kind = kindOf(name.charAt(start));
+            int end = start + 1;
+            if (kind != SYMBOL) {
+                while (end < length && kindOf(name.charAt(end)) == kind) {
+                    end++;
+                }
+            }
+            parts.add(name.substring(start, end));
+            start = end;
+        }
+        return parts;
+    }
+
+    private static int kindOf(char c) {
+        if (isDigit(c)) {
+            return DIGITS;
+        }
+        // 代理对和组合附加符号属于前面的字符，不能拆开
+        return Character.isLetterOrDigit(c) || Character.isSurrogate(c)
+                || Character.getType(c) == Character.NON_SPACING_MARK ? WORD : SYMBOL;
+    }
+
+    private static boolean isNumeric(String part) {
+        return isDigit(part.charAt(0)) && part.length() <= MAX_NUMERIC_DIGITS;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    @Override
+    public int compareTo(NaturalSortKey other) {
+        int result = Arrays.compare(segments, other.segments);
+        if (result != 0) {
+            return result;
+        }
+        if (leadingZeros != other.leadingZeros) {
+            return Integer.compare(leadingZeros, other.leadingZeros);
+        }
+        // 排序规则认为相同的名称（如只有大小写不同）按字符比较，保证顺序确定
+        return name.compareTo(other.name);
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
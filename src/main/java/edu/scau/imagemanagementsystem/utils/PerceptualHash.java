@@ -0,0 +1,116 @@
+package edu.scau.imagemanagementsystem.utils;
+
+import javafx.scene.image.Image;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.PixelReader;
+
+/**
+ * 64 位差异哈希 (dHash)，用于找出缩放、重新压缩或轻微调色后的同一张图片。
+ * <p>
+ * 图片被缩小为 9×8 的灰度网格，每一行中左侧格子比右侧亮时对应的位为 1。哈希只反映亮度的相对变化，
+ * 因此对尺寸、压缩质量和整体亮度的变化不敏感；两个哈希的汉明距离越小，图片越相似。
+ * 哈希从已经解码好的缩略图计算，不需要再次读取原图。
+ */
+public final class PerceptualHash {
+    /**
+     * 哈希的位数，也是两个哈希之间的最大距离。
+     */
+    public static final int BITS = 64;
+
+    private static final int GRID_WIDTH = 9;
+    private static final int GRID_HEIGHT = 8;
+    // 置位数少于此值（或多于 BITS 减此值）的哈希来自几乎没有亮度变化的图片，例如纯色或全黑的图片，
+    // 这些图片彼此的哈希都很接近，不应被视为相似
+    private static final int MIN_DETAIL_BITS = 4;
+
+    private PerceptualHash() {
+    }
+
+    /**
+     * 计算一张已解码图片的哈希。
+     *
+     * @param image 图片，通常是缩略图
+     * @return 哈希；图片无效或无法读取像素时返回 null
+     */
+    public static Long of(Image image) {
+        if (image == null || image.isError()) {
+            return null;
+        }
+        int width = (int) image.getWidth();
+        int height = (int) image.getHeight();
+        PixelReader reader = image.getPixelReader();
+        if (width <= 0 || height <= 0 || reader == null) {
+            return null;
+        }
+        int[] pixels = new int[width * height];
+        reader.getPixels(0, 0, width, height, PixelFormat.getIntArgbInstance(), pixels, 0, width);
+        return of(pixels, width, height);
+    }
+
+    /**
+     * 计算 ARGB 像素数组的哈希。透明像素按叠加在白色背景上计算亮度。
+     *
+     * @param argb   按行排列的像素
+     * @param width  宽度
+     * @param height 高度
+     * @return 哈希
+     */
+    public static long of(int[] argb, int width, int height) {
+        // 每个格子取区域内的平均亮度，而不是单个采样点，避免缩略图中的细节和噪点影响结果
+        long[] sums = new long[GRID_WIDTH * GRID_HEIGHT];
+        int[] counts = new int[GRID_WIDTH * GRID_HEIGHT];
+        for (int y = 0; y < height; y++) {
+            int row = Math.min(GRID_HEIGHT - 1, y * GRID_HEIGHT / height) * GRID_WIDTH;
+            int offset = y * width;
+            for (int x = 0; x < width; x++) {
+                int pixel = argb[offset + x];
+                int alpha = pixel >>> 24;
+                int luma = (77 * ((pixel >> 16) & 0xFF) + 150 * ((pixel >> 8) & 0xFF) + 29 * (pixel & 0xFF)) >> 8;
+                if (alpha != 0xFF) {
+                    luma = (luma * alpha + 0xFF * (0xFF - alpha)) / 0xFF;
+                }
+                int cell = row + Math.min(GRID_WIDTH - 1, x * GRID_WIDTH / width);
+                sums[cell] += luma;
+                counts[cell]++;
+            }
+        }
+        double[] cells = new double[sums.length];
+        for (int i = 0; i < cells.length; i++) {
+            cells[i] = counts[i] == 0 ? 0 : (double) sums[i] / counts[i];
+        }
+        // 图片窄于 9 像素或矮于 8 像素时有的格子没有像素，取左侧或上方的格子
+        for (int i = 0; i < cells.length; i++) {
+            if (counts[i] == 0) {
+                cells[i] = i % GRID_WIDTH > 0 ? cells[i - 1] : i >= GRID_WIDTH ? cells[i - GRID_WIDTH] : 0;
+            }
+        }
+        long hash = 0;
+        for (int y = 0; y < GRID_HEIGHT; y++) {
+            for (int x = 0; x < GRID_WIDTH - 1; x++) {
+                hash <<= 1;
+                if (cells[y * GRID_WIDTH + x] > cells[y * GRID_WIDTH + x + 1]) {
+                    hash |= 1;
+                }
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * @return 两个哈希之间不同的位数
+     */
+    public static int distance(long a, long b) {
+        return Long.bitCount(a ^ b);
+    }
+
+    /**
+     * 判断哈希是否包含足够的亮度变化，可以用来比较相似度。
+     *
+     * @param hash 哈希
+     * @return 几乎没有亮度变化的图片返回 false
+     */
+    public static boolean hasDetail(long hash) {
+        int bits = Long.bitCount(hash);
+        return bits >= MIN_DETAIL_BITS && bits <= BITS - MIN_DETAIL_BITS;
+    }
+}
@@ -0,0 +1,94 @@
+package edu.scau.imagemanagementsystem.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+
+import javax.imageio.ImageIO;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import javafx.scene.image.Image;
+
+/**
+ * 子采样解码的内存测量：以当前线程分配的字节数比较子采样解码与完整解码，结果可以重复得到。
+ */
+class ImageDecoderTest {
+    private static final int WIDTH = 4000;
+    private static final int HEIGHT = 3000;
+    private static final double THUMBNAIL_SIZE = 120;
+
+    private static File png;
+
+    @BeforeAll
+    static void writeLargePng() throws IOException {
+        BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                image.setRGB(x, y, (x * 255 / WIDTH) << 16 | (y * 255 / HEIGHT) << 8 | ((x ^ y) & 0xFF));
+            }
+        }
+        png = Files.createTempFile("decoder-test", ".png").toFile();
+        ImageIO.write(image, "png", png);
+    }
+
+    @AfterAll
+    static void deletePng() throws IOException {
+        Files.deleteIfExists(png.toPath());
+    }
+
+    @Test
+    void subsampledDecodeFitsRequestedSize() throws IOException {
+        Image thumbnail = ImageDecoder.decodeSubsampled(png, THUMBNAIL_SIZE, THUMBNAIL_SIZE);
+        assertNotNull(thumbnail);
+        assertEquals(THUMBNAIL_SIZE, thumbnail.getWidth());
+        assertEquals(THUMBNAIL_SIZE * HEIGHT / WIDTH, thumbnail.getHeight());
+    }
+
+    @Test
+    void subsampledDecodeDoesNotAllocateFullResolutionRaster() throws IOException {
+        com.sun.management.ThreadMXBean threads = threadBean();
+        // 预热：加载类并缓存 ImageReader，不计入测量
+        ImageDecoder.decodeSubsampled(png, THUMBNAIL_SIZE, THUMBNAIL_SIZE);
+        ImageIO.read(png);
+
+        long subsampled = allocatedBy(threads, () -> ImageDecoder.decodeSubsampled(png, THUMBNAIL_SIZE,
+                THUMBNAIL_SIZE));
+        long full = allocatedBy(threads, () -> ImageIO.read(png));
+
+        long fullRaster = 3L * WIDTH * HEIGHT; // 完整解码得到的 24 位 RGB 位图
+        String measured = String.format("subsampled %,d bytes, full decode %,d bytes", subsampled, full);
+        assertTrue(full >= fullRaster, measured);
+        assertTrue(subsampled < fullRaster / 4, measured);
+        assertTrue(subsampled * 10 < full, measured);
+    }
+
+    private static com.sun.management.ThreadMXBean threadBean() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+        return threads;
+    }
+
+    private static long allocatedBy(com.sun.management.ThreadMXBean threads, Decode decode) throws IOException {
+        long before = threads.getCurrentThreadAllocatedBytes();
+        assertNotNull(decode.run());
+        return threads.getCurrentThreadAllocatedBytes() - before;
+    }
+
+    @FunctionalInterface
+    private interface Decode {
+        Object run() throws IOException;
+    }
+}
@@ -0,0 +1,98 @@
+package edu.scau.imagemanagementsystem.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class HammingIndexTest {
+
+    private static final int[] RADII = { 0, 1, 8, 20 };
+
+    /**
+     * 随机哈希，另外混入若干哈希的近邻，使小半径的查询也有结果。
+     */
+    private static long[] randomHashes(Random random, int count) {
+        long[] hashes = new long[count];
+        for (int i = 0; i < count; i++) {
+            if (i > 0 && random.nextInt(3) == 0) {
+                long hash = hashes[random.nextInt(i)];
+                for (int flips = random.nextInt(12); flips > 0; flips--) {
+                    hash ^= 1L << random.nextInt(PerceptualHash.BITS);
+                }
+                hashes[i] = hash;
+            } else {
+                hashes[i] = random.nextLong();
+            }
+        }
+        return hashes;
+    }
+
+    /**
+     * @return 每个编号被报告的次数
+     */
+    private static int[] searchCounts(HammingIndex index, long query, int maxDistance) {
+        int[] counts = new int[index.size()];
+        index.search(query, maxDistance, id -> counts[id]++);
+        return counts;
+    }
+
+    /**
+     * 与逐个比较的结果一致：距离不超过半径的编号恰好报告一次，其余编号不报告。
+     */
+    private static void assertMatchesBruteForce(HammingIndex index, long[] hashes, long query, int radius) {
+        int[] counts = searchCounts(index, query, radius);
+        for (int id = 0; id < hashes.length; id++) {
+            int expected = PerceptualHash.distance(hashes[id], query) <= radius ? 1 : 0;
+            assertEquals(expected, counts[id], "id " + id + " at radius " + radius);
+        }
+    }
+
+    @Test
+    void searchMatchesBruteForceScan() {
+        Random random = new Random(42);
+        long[] hashes = randomHashes(random, 2000);
+        HammingIndex index = new HammingIndex(hashes);
+        for (int radius : RADII) {
+            for (int q = 0; q < 50; q++) {
+                long query = q % 2 == 0 ? hashes[random.nextInt(hashes.length)] : random.nextLong();
+                assertMatchesBruteForce(index, hashes, query, radius);
+            }
+        }
+    }
+
+    @Test
+    void neighboursAtEveryDistanceAreReportedOnce() {
+        // 查询的近邻分布在 0 到 20 的每个距离上，翻转的位跨越不同的段
+        Random random = new Random(7);
+        long query = random.nextLong();
+        List<Long> neighbours = new ArrayList<>();
+        for (int distance = 0; distance <= RADII[RADII.length - 1]; distance++) {
+            for (int copy = 0; copy < 5; copy++) {
+                long hash = query;
+                while (PerceptualHash.distance(hash, query) < distance) {
+                    hash ^= 1L << random.nextInt(PerceptualHash.BITS);
+                }
+                neighbours.add(hash);
+            }
+        }
+        long[] hashes = neighbours.stream().mapToLong(Long::longValue).toArray();
+        HammingIndex index = new HammingIndex(hashes);
+        for (int radius : RADII) {
+            assertMatchesBruteForce(index, hashes, query, radius);
+        }
+    }
+
+    @Test
+    void duplicateHashesAreAllReported() {
+        long hash = 0x0123_4567_89AB_CDEFL;
+        long[] hashes = { hash, hash, hash ^ 1, ~hash };
+        HammingIndex index = new HammingIndex(hashes);
+        for (int radius : RADII) {
+            assertMatchesBruteForce(index, hashes, hash, radius);
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package edu.scau.imagemanagementsystem.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+
+class NaturalSortKeyTest {
+
+    private static List<String> sorted(String... names) {
+        NaturalSortKey[] keys = NaturalSortKey.forNames(Arrays.asList(names));
+        Arrays.sort(keys);
+        return Arrays.stream(keys).map(NaturalSortKey::toString).collect(Collectors.toList());
+    }
+
+    @Test
+    void numbersCompareByValue() {
+        assertEquals(List.of("IMG_2.jpg", "IMG_10.jpg", "IMG_100.jpg"),
+                sorted("IMG_100.jpg", "IMG_10.jpg", "IMG_2.jpg"));
+    }
+
+    @Test
+    void nameWithoutNumberSortsBeforeNumberedVariants() {
+        assertEquals(List.of("photo.jpg", "photo2.jpg", "photo10.jpg"),
+                sorted("photo10.jpg", "photo2.jpg", "photo.jpg"));
+    }
+
+    @Test
+    void separatorsSortBeforeNumbersAndNumbersBeforeLetters() {
+        assertEquals(List.of("photo_1.jpg", "photo1.jpg", "photoa.jpg"),
+                sorted("photoa.jpg", "photo1.jpg", "photo_1.jpg"));
+    }
+
+    @Test
+    void agreesWithCaseInsensitiveOrderWithoutNumbers() {
+        String[] names = { "Beach.png", "apple.jpg", "apples.jpg", "APPLE.gif", "b.jpg" };
+        List<String> expected = Arrays.stream(names).sorted(String.CASE_INSENSITIVE_ORDER.thenComparing(s -> s))
+                .collect(Collectors.toList());
+        assertEquals(expected, sorted(names));
+    }
+
+    @Test
+    void fewerLeadingZerosSortFirst() {
+        assertEquals(List.of("a1.jpg", "a01.jpg", "a001.jpg", "a2.jpg"),
+                sorted("a001.jpg", "a2.jpg", "a01.jpg", "a1.jpg"));
+    }
+
+    @Test
+    void longDigitRunsSortAfterNumbers() {
+        assertEquals(List.of("x999.jpg", "x12345678901234567890.jpg"),
+                sorted("x12345678901234567890.jpg", "x999.jpg"));
+    }
+}